@@ -47,4 +47,9 @@ public class ServiceProxy implements HopperService.Iface {
     @Override
     public void statusChange(int oldStatus, int newStatus) throws TException {
     }
+
+    @Override
+    public ScanResult scan(String prefix, String fromKey, String toKey, int limit, String cursor) throws RetryException, TException {
+        return null;
+    }
 }
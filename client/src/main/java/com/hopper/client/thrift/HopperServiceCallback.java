@@ -50,4 +50,9 @@ public class HopperServiceCallback implements HopperService.Iface {
     @Override
     public void statusChange(int oldStatus, int newStatus) throws TException {
     }
+
+    @Override
+    public ScanResult scan(String prefix, String fromKey, String toKey, int limit, String cursor) throws RetryException, TException {
+        throw new UnsupportedOperationException();
+    }
 }
@@ -108,6 +108,18 @@ public class HopperService {
      */
     public void statusChange(int oldStatus, int newStatus) throws org.apache.thrift.TException;
 
+    /**
+     * Scan the states whose key starts with prefix, or whose key is in range [fromKey, toKey) if prefix
+     * is absent. The scan starts after cursor(exclusive) and returns limit states at most.
+     * 
+     * @param prefix
+     * @param fromKey
+     * @param toKey
+     * @param limit
+     * @param cursor
+     */
+    public ScanResult scan(String prefix, String fromKey, String toKey, int limit, String cursor) throws RetryException, org.apache.thrift.TException;
+
   }
 
   public interface AsyncIface {
@@ -133,6 +145,8 @@ public class HopperService {
 
     public void statusChange(int oldStatus, int newStatus, org.apache.thrift.async.AsyncMethodCallback<AsyncClient.statusChange_call> resultHandler) throws org.apache.thrift.TException;
 
+    public void scan(String prefix, String fromKey, String toKey, int limit, String cursor, org.apache.thrift.async.AsyncMethodCallback<AsyncClient.scan_call> resultHandler) throws org.apache.thrift.TException;
+
   }
 
   public static class Client extends org.apache.thrift.TServiceClient implements Iface {
@@ -378,6 +392,36 @@ public class HopperService {
       sendBase("statusChange", args);
     }
 
+    public ScanResult scan(String prefix, String fromKey, String toKey, int limit, String cursor) throws RetryException, org.apache.thrift.TException
+    {
+      send_scan(prefix, fromKey, toKey, limit, cursor);
+      return recv_scan();
+    }
+
+    public void send_scan(String prefix, String fromKey, String toKey, int limit, String cursor) throws org.apache.thrift.TException
+    {
+      scan_args args = new scan_args();
+      args.setPrefix(prefix);
+      args.setFromKey(fromKey);
+      args.setToKey(toKey);
+      args.setLimit(limit);
+      args.setCursor(cursor);
+      sendBase("scan", args);
+    }
+
+    public ScanResult recv_scan() throws RetryException, org.apache.thrift.TException
+    {
+      scan_result result = new scan_result();
+      receiveBase(result, "scan");
+      if (result.isSetSuccess()) {
+        return result.success;
+      }
+      if (result.re != null) {
+        throw result.re;
+      }
+      throw new org.apache.thrift.TApplicationException(org.apache.thrift.TApplicationException.MISSING_RESULT, "scan failed: unknown result");
+    }
+
   }
   public static class AsyncClient extends org.apache.thrift.async.TAsyncClient implements AsyncIface {
     public static class Factory implements org.apache.thrift.async.TAsyncClientFactory<AsyncClient> {
@@ -719,6 +763,50 @@ public class HopperService {
       }
     }
 
+    public void scan(String prefix, String fromKey, String toKey, int limit, String cursor, org.apache.thrift.async.AsyncMethodCallback<scan_call> resultHandler) throws org.apache.thrift.TException {
+      checkReady();
+      scan_call method_call = new scan_call(prefix, fromKey, toKey, limit, cursor, resultHandler, this, ___protocolFactory, ___transport);
+      this.___currentMethod = method_call;
+      ___manager.call(method_call);
+    }
+
+    public static class scan_call extends org.apache.thrift.async.TAsyncMethodCall {
+      private String prefix;
+      private String fromKey;
+      private String toKey;
+      private int limit;
+      private String cursor;
+      public scan_call(String prefix, String fromKey, String toKey, int limit, String cursor, org.apache.thrift.async.AsyncMethodCallback<scan_call> resultHandler, org.apache.thrift.async.TAsyncClient client, org.apache.thrift.protocol.TProtocolFactory protocolFactory, org.apache.thrift.transport.TNonblockingTransport transport) throws org.apache.thrift.TException {
+        super(client, protocolFactory, transport, resultHandler, false);
+        this.prefix = prefix;
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+        this.limit = limit;
+        this.cursor = cursor;
+      }
+
+      public void write_args(org.apache.thrift.protocol.TProtocol prot) throws org.apache.thrift.TException {
+        prot.writeMessageBegin(new org.apache.thrift.protocol.TMessage("scan", org.apache.thrift.protocol.TMessageType.CALL, 0));
+        scan_args args = new scan_args();
+        args.setPrefix(prefix);
+        args.setFromKey(fromKey);
+        args.setToKey(toKey);
+        args.setLimit(limit);
+        args.setCursor(cursor);
+        args.write(prot);
+        prot.writeMessageEnd();
+      }
+
+      public ScanResult getResult() throws RetryException, org.apache.thrift.TException {
+        if (getState() != State.RESPONSE_READ) {
+          throw new IllegalStateException("Method call not finished!");
+        }
+        org.apache.thrift.transport.TMemoryInputTransport memoryTransport = new org.apache.thrift.transport.TMemoryInputTransport(getFrameBuffer().array());
+        org.apache.thrift.protocol.TProtocol prot = client.getProtocolFactory().getProtocol(memoryTransport);
+        return (new Client(prot)).recv_scan();
+      }
+    }
+
   }
 
   public static class Processor<I extends Iface> extends org.apache.thrift.TBaseProcessor<I> implements org.apache.thrift.TProcessor {
@@ -741,6 +829,7 @@ public class HopperService {
       processMap.put("expandLease", new expandLease());
       processMap.put("watch", new watch());
       processMap.put("statusChange", new statusChange());
+      processMap.put("scan", new scan());
       return processMap;
     }
 
@@ -923,6 +1012,26 @@ public class HopperService {
       }
     }
 
+    private static class scan<I extends Iface> extends org.apache.thrift.ProcessFunction<I, scan_args> {
+      public scan() {
+        super("scan");
+      }
+
+      protected scan_args getEmptyArgsInstance() {
+        return new scan_args();
+      }
+
+      protected scan_result getResult(I iface, scan_args args) throws org.apache.thrift.TException {
+        scan_result result = new scan_result();
+        try {
+          result.success = iface.scan(args.prefix, args.fromKey, args.toKey, args.limit, args.cursor);
+        } catch (RetryException re) {
+          result.re = re;
+        }
+        return result;
+      }
+    }
+
   }
 
   public static class login_args implements org.apache.thrift.TBase<login_args, login_args._Fields>, java.io.Serializable, Cloneable   {
@@ -8591,4 +8700,1213 @@ public class HopperService {
 
   }
 
+  public static class scan_args implements org.apache.thrift.TBase<scan_args, scan_args._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("scan_args");
+
+    private static final org.apache.thrift.protocol.TField PREFIX_FIELD_DESC = new org.apache.thrift.protocol.TField("prefix", org.apache.thrift.protocol.TType.STRING, (short)1);
+    private static final org.apache.thrift.protocol.TField FROM_KEY_FIELD_DESC = new org.apache.thrift.protocol.TField("fromKey", org.apache.thrift.protocol.TType.STRING, (short)2);
+    private static final org.apache.thrift.protocol.TField TO_KEY_FIELD_DESC = new org.apache.thrift.protocol.TField("toKey", org.apache.thrift.protocol.TType.STRING, (short)3);
+    private static final org.apache.thrift.protocol.TField LIMIT_FIELD_DESC = new org.apache.thrift.protocol.TField("limit", org.apache.thrift.protocol.TType.I32, (short)4);
+    private static final org.apache.thrift.protocol.TField CURSOR_FIELD_DESC = new org.apache.thrift.protocol.TField("cursor", org.apache.thrift.protocol.TType.STRING, (short)5);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new scan_argsStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new scan_argsTupleSchemeFactory());
+    }
+
+    public String prefix; // required
+    public String fromKey; // required
+    public String toKey; // required
+    public int limit; // required
+    public String cursor; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      PREFIX((short)1, "prefix"),
+      FROM_KEY((short)2, "fromKey"),
+      TO_KEY((short)3, "toKey"),
+      LIMIT((short)4, "limit"),
+      CURSOR((short)5, "cursor");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 1: // PREFIX
+            return PREFIX;
+          case 2: // FROM_KEY
+            return FROM_KEY;
+          case 3: // TO_KEY
+            return TO_KEY;
+          case 4: // LIMIT
+            return LIMIT;
+          case 5: // CURSOR
+            return CURSOR;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    private static final int __LIMIT_ISSET_ID = 0;
+    private BitSet __isset_bit_vector = new BitSet(1);
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.PREFIX, new org.apache.thrift.meta_data.FieldMetaData("prefix", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
+      tmpMap.put(_Fields.FROM_KEY, new org.apache.thrift.meta_data.FieldMetaData("fromKey", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
+      tmpMap.put(_Fields.TO_KEY, new org.apache.thrift.meta_data.FieldMetaData("toKey", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
+      tmpMap.put(_Fields.LIMIT, new org.apache.thrift.meta_data.FieldMetaData("limit", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
+      tmpMap.put(_Fields.CURSOR, new org.apache.thrift.meta_data.FieldMetaData("cursor", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(scan_args.class, metaDataMap);
+    }
+
+    public scan_args() {
+    }
+
+    public scan_args(
+      String prefix,
+      String fromKey,
+      String toKey,
+      int limit,
+      String cursor)
+    {
+      this();
+      this.prefix = prefix;
+      this.fromKey = fromKey;
+      this.toKey = toKey;
+      this.limit = limit;
+      setLimitIsSet(true);
+      this.cursor = cursor;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public scan_args(scan_args other) {
+      __isset_bit_vector.clear();
+      __isset_bit_vector.or(other.__isset_bit_vector);
+      if (other.isSetPrefix()) {
+        this.prefix = other.prefix;
+      }
+      if (other.isSetFromKey()) {
+        this.fromKey = other.fromKey;
+      }
+      if (other.isSetToKey()) {
+        this.toKey = other.toKey;
+      }
+      this.limit = other.limit;
+      if (other.isSetCursor()) {
+        this.cursor = other.cursor;
+      }
+    }
+
+    public scan_args deepCopy() {
+      return new scan_args(this);
+    }
+
+    @Override
+    public void clear() {
+      this.prefix = null;
+      this.fromKey = null;
+      this.toKey = null;
+      setLimitIsSet(false);
+      this.limit = 0;
+      this.cursor = null;
+    }
+
+    public String getPrefix() {
+      return this.prefix;
+    }
+
+    public scan_args setPrefix(String prefix) {
+      this.prefix = prefix;
+      return this;
+    }
+
+    public void unsetPrefix() {
+      this.prefix = null;
+    }
+
+    /** Returns true if field prefix is set (has been assigned a value) and false otherwise */
+    public boolean isSetPrefix() {
+      return this.prefix != null;
+    }
+
+    public void setPrefixIsSet(boolean value) {
+      if (!value) {
+        this.prefix = null;
+      }
+    }
+
+    public String getFromKey() {
+      return this.fromKey;
+    }
+
+    public scan_args setFromKey(String fromKey) {
+      this.fromKey = fromKey;
+      return this;
+    }
+
+    public void unsetFromKey() {
+      this.fromKey = null;
+    }
+
+    /** Returns true if field fromKey is set (has been assigned a value) and false otherwise */
+    public boolean isSetFromKey() {
+      return this.fromKey != null;
+    }
+
+    public void setFromKeyIsSet(boolean value) {
+      if (!value) {
+        this.fromKey = null;
+      }
+    }
+
+    public String getToKey() {
+      return this.toKey;
+    }
+
+    public scan_args setToKey(String toKey) {
+      this.toKey = toKey;
+      return this;
+    }
+
+    public void unsetToKey() {
+      this.toKey = null;
+    }
+
+    /** Returns true if field toKey is set (has been assigned a value) and false otherwise */
+    public boolean isSetToKey() {
+      return this.toKey != null;
+    }
+
+    public void setToKeyIsSet(boolean value) {
+      if (!value) {
+        this.toKey = null;
+      }
+    }
+
+    public int getLimit() {
+      return this.limit;
+    }
+
+    public scan_args setLimit(int limit) {
+      this.limit = limit;
+      setLimitIsSet(true);
+      return this;
+    }
+
+    public void unsetLimit() {
+      __isset_bit_vector.clear(__LIMIT_ISSET_ID);
+    }
+
+    /** Returns true if field limit is set (has been assigned a value) and false otherwise */
+    public boolean isSetLimit() {
+      return __isset_bit_vector.get(__LIMIT_ISSET_ID);
+    }
+
+    public void setLimitIsSet(boolean value) {
+      __isset_bit_vector.set(__LIMIT_ISSET_ID, value);
+    }
+
+    public String getCursor() {
+      return this.cursor;
+    }
+
+    public scan_args setCursor(String cursor) {
+      this.cursor = cursor;
+      return this;
+    }
+
+    public void unsetCursor() {
+      this.cursor = null;
+    }
+
+    /** Returns true if field cursor is set (has been assigned a value) and false otherwise */
+    public boolean isSetCursor() {
+      return this.cursor != null;
+    }
+
+    public void setCursorIsSet(boolean value) {
+      if (!value) {
+        this.cursor = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case PREFIX:
+        if (value == null) {
+          unsetPrefix();
+        } else {
+          setPrefix((String)value);
+        }
+        break;
+
+      case FROM_KEY:
+        if (value == null) {
+          unsetFromKey();
+        } else {
+          setFromKey((String)value);
+        }
+        break;
+
+      case TO_KEY:
+        if (value == null) {
+          unsetToKey();
+        } else {
+          setToKey((String)value);
+        }
+        break;
+
+      case LIMIT:
+        if (value == null) {
+          unsetLimit();
+        } else {
+          setLimit((Integer)value);
+        }
+        break;
+
+      case CURSOR:
+        if (value == null) {
+          unsetCursor();
+        } else {
+          setCursor((String)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case PREFIX:
+        return getPrefix();
+
+      case FROM_KEY:
+        return getFromKey();
+
+      case TO_KEY:
+        return getToKey();
+
+      case LIMIT:
+        return Integer.valueOf(getLimit());
+
+      case CURSOR:
+        return getCursor();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case PREFIX:
+        return isSetPrefix();
+      case FROM_KEY:
+        return isSetFromKey();
+      case TO_KEY:
+        return isSetToKey();
+      case LIMIT:
+        return isSetLimit();
+      case CURSOR:
+        return isSetCursor();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof scan_args)
+        return this.equals((scan_args)that);
+      return false;
+    }
+
+    public boolean equals(scan_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_prefix = true && this.isSetPrefix();
+      boolean that_present_prefix = true && that.isSetPrefix();
+      if (this_present_prefix || that_present_prefix) {
+        if (!(this_present_prefix && that_present_prefix))
+          return false;
+        if (!this.prefix.equals(that.prefix))
+          return false;
+      }
+
+      boolean this_present_fromKey = true && this.isSetFromKey();
+      boolean that_present_fromKey = true && that.isSetFromKey();
+      if (this_present_fromKey || that_present_fromKey) {
+        if (!(this_present_fromKey && that_present_fromKey))
+          return false;
+        if (!this.fromKey.equals(that.fromKey))
+          return false;
+      }
+
+      boolean this_present_toKey = true && this.isSetToKey();
+      boolean that_present_toKey = true && that.isSetToKey();
+      if (this_present_toKey || that_present_toKey) {
+        if (!(this_present_toKey && that_present_toKey))
+          return false;
+        if (!this.toKey.equals(that.toKey))
+          return false;
+      }
+
+      boolean this_present_limit = true;
+      boolean that_present_limit = true;
+      if (this_present_limit || that_present_limit) {
+        if (!(this_present_limit && that_present_limit))
+          return false;
+        if (this.limit != that.limit)
+          return false;
+      }
+
+      boolean this_present_cursor = true && this.isSetCursor();
+      boolean that_present_cursor = true && that.isSetCursor();
+      if (this_present_cursor || that_present_cursor) {
+        if (!(this_present_cursor && that_present_cursor))
+          return false;
+        if (!this.cursor.equals(that.cursor))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(scan_args other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      scan_args typedOther = (scan_args)other;
+
+      lastComparison = Boolean.valueOf(isSetPrefix()).compareTo(typedOther.isSetPrefix());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetPrefix()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.prefix, typedOther.prefix);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetFromKey()).compareTo(typedOther.isSetFromKey());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetFromKey()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.fromKey, typedOther.fromKey);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetToKey()).compareTo(typedOther.isSetToKey());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetToKey()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.toKey, typedOther.toKey);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetLimit()).compareTo(typedOther.isSetLimit());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetLimit()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.limit, typedOther.limit);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetCursor()).compareTo(typedOther.isSetCursor());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetCursor()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.cursor, typedOther.cursor);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("scan_args(");
+      boolean first = true;
+
+      sb.append("prefix:");
+      if (this.prefix == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.prefix);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("fromKey:");
+      if (this.fromKey == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.fromKey);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("toKey:");
+      if (this.toKey == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.toKey);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("limit:");
+      sb.append(this.limit);
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("cursor:");
+      if (this.cursor == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.cursor);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        // it doesn't seem like you should have to do this, but java serialization is wacky, and doesn't call the default constructor.
+        __isset_bit_vector = new BitSet(1);
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class scan_argsStandardSchemeFactory implements SchemeFactory {
+      public scan_argsStandardScheme getScheme() {
+        return new scan_argsStandardScheme();
+      }
+    }
+
+    private static class scan_argsStandardScheme extends StandardScheme<scan_args> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, scan_args struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 1: // PREFIX
+              if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+                struct.prefix = iprot.readString();
+                struct.setPrefixIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 2: // FROM_KEY
+              if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+                struct.fromKey = iprot.readString();
+                struct.setFromKeyIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 3: // TO_KEY
+              if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+                struct.toKey = iprot.readString();
+                struct.setToKeyIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 4: // LIMIT
+              if (schemeField.type == org.apache.thrift.protocol.TType.I32) {
+                struct.limit = iprot.readI32();
+                struct.setLimitIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 5: // CURSOR
+              if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+                struct.cursor = iprot.readString();
+                struct.setCursorIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, scan_args struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (struct.prefix != null) {
+          oprot.writeFieldBegin(PREFIX_FIELD_DESC);
+          oprot.writeString(struct.prefix);
+          oprot.writeFieldEnd();
+        }
+        if (struct.fromKey != null) {
+          oprot.writeFieldBegin(FROM_KEY_FIELD_DESC);
+          oprot.writeString(struct.fromKey);
+          oprot.writeFieldEnd();
+        }
+        if (struct.toKey != null) {
+          oprot.writeFieldBegin(TO_KEY_FIELD_DESC);
+          oprot.writeString(struct.toKey);
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldBegin(LIMIT_FIELD_DESC);
+        oprot.writeI32(struct.limit);
+        oprot.writeFieldEnd();
+        if (struct.cursor != null) {
+          oprot.writeFieldBegin(CURSOR_FIELD_DESC);
+          oprot.writeString(struct.cursor);
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class scan_argsTupleSchemeFactory implements SchemeFactory {
+      public scan_argsTupleScheme getScheme() {
+        return new scan_argsTupleScheme();
+      }
+    }
+
+    private static class scan_argsTupleScheme extends TupleScheme<scan_args> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, scan_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetPrefix()) {
+          optionals.set(0);
+        }
+        if (struct.isSetFromKey()) {
+          optionals.set(1);
+        }
+        if (struct.isSetToKey()) {
+          optionals.set(2);
+        }
+        if (struct.isSetLimit()) {
+          optionals.set(3);
+        }
+        if (struct.isSetCursor()) {
+          optionals.set(4);
+        }
+        oprot.writeBitSet(optionals, 5);
+        if (struct.isSetPrefix()) {
+          oprot.writeString(struct.prefix);
+        }
+        if (struct.isSetFromKey()) {
+          oprot.writeString(struct.fromKey);
+        }
+        if (struct.isSetToKey()) {
+          oprot.writeString(struct.toKey);
+        }
+        if (struct.isSetLimit()) {
+          oprot.writeI32(struct.limit);
+        }
+        if (struct.isSetCursor()) {
+          oprot.writeString(struct.cursor);
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, scan_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(5);
+        if (incoming.get(0)) {
+          struct.prefix = iprot.readString();
+          struct.setPrefixIsSet(true);
+        }
+        if (incoming.get(1)) {
+          struct.fromKey = iprot.readString();
+          struct.setFromKeyIsSet(true);
+        }
+        if (incoming.get(2)) {
+          struct.toKey = iprot.readString();
+          struct.setToKeyIsSet(true);
+        }
+        if (incoming.get(3)) {
+          struct.limit = iprot.readI32();
+          struct.setLimitIsSet(true);
+        }
+        if (incoming.get(4)) {
+          struct.cursor = iprot.readString();
+          struct.setCursorIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class scan_result implements org.apache.thrift.TBase<scan_result, scan_result._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("scan_result");
+
+    private static final org.apache.thrift.protocol.TField SUCCESS_FIELD_DESC = new org.apache.thrift.protocol.TField("success", org.apache.thrift.protocol.TType.STRUCT, (short)0);
+    private static final org.apache.thrift.protocol.TField RE_FIELD_DESC = new org.apache.thrift.protocol.TField("re", org.apache.thrift.protocol.TType.STRUCT, (short)1);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new scan_resultStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new scan_resultTupleSchemeFactory());
+    }
+
+    public ScanResult success; // required
+    public RetryException re; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      SUCCESS((short)0, "success"),
+      RE((short)1, "re");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 0: // SUCCESS
+            return SUCCESS;
+          case 1: // RE
+            return RE;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.SUCCESS, new org.apache.thrift.meta_data.FieldMetaData("success", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, ScanResult.class)));
+      tmpMap.put(_Fields.RE, new org.apache.thrift.meta_data.FieldMetaData("re", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRUCT)));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(scan_result.class, metaDataMap);
+    }
+
+    public scan_result() {
+    }
+
+    public scan_result(
+      ScanResult success,
+      RetryException re)
+    {
+      this();
+      this.success = success;
+      this.re = re;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public scan_result(scan_result other) {
+      if (other.isSetSuccess()) {
+        this.success = new ScanResult(other.success);
+      }
+      if (other.isSetRe()) {
+        this.re = new RetryException(other.re);
+      }
+    }
+
+    public scan_result deepCopy() {
+      return new scan_result(this);
+    }
+
+    @Override
+    public void clear() {
+      this.success = null;
+      this.re = null;
+    }
+
+    public ScanResult getSuccess() {
+      return this.success;
+    }
+
+    public scan_result setSuccess(ScanResult success) {
+      this.success = success;
+      return this;
+    }
+
+    public void unsetSuccess() {
+      this.success = null;
+    }
+
+    /** Returns true if field success is set (has been assigned a value) and false otherwise */
+    public boolean isSetSuccess() {
+      return this.success != null;
+    }
+
+    public void setSuccessIsSet(boolean value) {
+      if (!value) {
+        this.success = null;
+      }
+    }
+
+    public RetryException getRe() {
+      return this.re;
+    }
+
+    public scan_result setRe(RetryException re) {
+      this.re = re;
+      return this;
+    }
+
+    public void unsetRe() {
+      this.re = null;
+    }
+
+    /** Returns true if field re is set (has been assigned a value) and false otherwise */
+    public boolean isSetRe() {
+      return this.re != null;
+    }
+
+    public void setReIsSet(boolean value) {
+      if (!value) {
+        this.re = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case SUCCESS:
+        if (value == null) {
+          unsetSuccess();
+        } else {
+          setSuccess((ScanResult)value);
+        }
+        break;
+
+      case RE:
+        if (value == null) {
+          unsetRe();
+        } else {
+          setRe((RetryException)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case SUCCESS:
+        return getSuccess();
+
+      case RE:
+        return getRe();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case SUCCESS:
+        return isSetSuccess();
+      case RE:
+        return isSetRe();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof scan_result)
+        return this.equals((scan_result)that);
+      return false;
+    }
+
+    public boolean equals(scan_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_success = true && this.isSetSuccess();
+      boolean that_present_success = true && that.isSetSuccess();
+      if (this_present_success || that_present_success) {
+        if (!(this_present_success && that_present_success))
+          return false;
+        if (!this.success.equals(that.success))
+          return false;
+      }
+
+      boolean this_present_re = true && this.isSetRe();
+      boolean that_present_re = true && that.isSetRe();
+      if (this_present_re || that_present_re) {
+        if (!(this_present_re && that_present_re))
+          return false;
+        if (!this.re.equals(that.re))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(scan_result other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      scan_result typedOther = (scan_result)other;
+
+      lastComparison = Boolean.valueOf(isSetSuccess()).compareTo(typedOther.isSetSuccess());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSuccess()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.success, typedOther.success);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetRe()).compareTo(typedOther.isSetRe());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetRe()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.re, typedOther.re);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("scan_result(");
+      boolean first = true;
+
+      sb.append("success:");
+      if (this.success == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.success);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("re:");
+      if (this.re == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.re);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class scan_resultStandardSchemeFactory implements SchemeFactory {
+      public scan_resultStandardScheme getScheme() {
+        return new scan_resultStandardScheme();
+      }
+    }
+
+    private static class scan_resultStandardScheme extends StandardScheme<scan_result> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, scan_result struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 0: // SUCCESS
+              if (schemeField.type == org.apache.thrift.protocol.TType.STRUCT) {
+                struct.success = new ScanResult();
+                struct.success.read(iprot);
+                struct.setSuccessIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 1: // RE
+              if (schemeField.type == org.apache.thrift.protocol.TType.STRUCT) {
+                struct.re = new RetryException();
+                struct.re.read(iprot);
+                struct.setReIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, scan_result struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (struct.success != null) {
+          oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
+          struct.success.write(oprot);
+          oprot.writeFieldEnd();
+        }
+        if (struct.re != null) {
+          oprot.writeFieldBegin(RE_FIELD_DESC);
+          struct.re.write(oprot);
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class scan_resultTupleSchemeFactory implements SchemeFactory {
+      public scan_resultTupleScheme getScheme() {
+        return new scan_resultTupleScheme();
+      }
+    }
+
+    private static class scan_resultTupleScheme extends TupleScheme<scan_result> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, scan_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetSuccess()) {
+          optionals.set(0);
+        }
+        if (struct.isSetRe()) {
+          optionals.set(1);
+        }
+        oprot.writeBitSet(optionals, 2);
+        if (struct.isSetSuccess()) {
+          struct.success.write(oprot);
+        }
+        if (struct.isSetRe()) {
+          struct.re.write(oprot);
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, scan_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(2);
+        if (incoming.get(0)) {
+          struct.success = new ScanResult();
+          struct.success.read(iprot);
+          struct.setSuccessIsSet(true);
+        }
+        if (incoming.get(1)) {
+          struct.re = new RetryException();
+          struct.re.read(iprot);
+          struct.setReIsSet(true);
+        }
+      }
+    }
+
+  }
+
 }
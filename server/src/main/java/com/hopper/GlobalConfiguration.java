@@ -2,6 +2,7 @@ package com.hopper;
 
 import com.hopper.lifecycle.LifecycleProxy;
 import com.hopper.server.Endpoint;
+import com.hopper.util.merkle.MerkleTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
@@ -29,7 +30,7 @@ public class GlobalConfiguration extends LifecycleProxy {
     }
 
     public static enum StorageMode {
-        HASH, TREE
+        HASH, TREE, OFFHEAP, SHARDED
     }
 
     public static enum ElectionMode {
@@ -109,6 +110,34 @@ public class GlobalConfiguration extends LifecycleProxy {
         return innerConfig.getLong("rpc_timeout", 2000);
     }
 
+    /**
+     * The max mutations replicated by leader in a batch
+     */
+    public int getMutationBatchSize() {
+        return innerConfig.getIntFromNestedMap("replication", "mutation_batch_size", 128);
+    }
+
+    /**
+     * The max milliseconds for waiting a batch of replicated mutations to fill up, 0 sends the queued ones at once
+     */
+    public long getMutationBatchLinger() {
+        return innerConfig.getLongFromNestedMap("replication", "mutation_batch_linger", 0);
+    }
+
+    /**
+     * The max batches of replicated mutations in flight per leader
+     */
+    public int getReplicationWindow() {
+        return innerConfig.getIntFromNestedMap("replication", "replication_window", 4);
+    }
+
+    /**
+     * The max batches kept per follower for retransmission, a follower lagging further is reset
+     */
+    public int getReplicationBuffer() {
+        return innerConfig.getIntFromNestedMap("replication", "replication_buffer", 1024);
+    }
+
     public long getPingPeriod() {
         return innerConfig.getLong("ping_period", 1000);
     }
@@ -147,6 +176,13 @@ public class GlobalConfiguration extends LifecycleProxy {
         return (int) innerConfig.getLong("schedule_thread_count", 3);
     }
 
+    /**
+     * Return the tick duration(milliseconds) of timing wheel
+     */
+    public long getTimingWheelTick() {
+        return innerConfig.getLong("timing_wheel_tick", 10);
+    }
+
     public Endpoint[] getGroupEndpoints() {
         return innerConfig.endpointMap.values().toArray(new Endpoint[0]);
     }
@@ -196,17 +232,137 @@ public class GlobalConfiguration extends LifecycleProxy {
 
     public long getSyncTimeout() {
         final long defaultValue = 10 * 1000L;
-        return innerConfig.getLongFromNestedMap("data_sync", "sync_threadpool_maxsize", defaultValue);
+        return innerConfig.getLongFromNestedMap("data_sync", "sync_timeout", defaultValue);
+    }
+
+    /**
+     * The levels of merkle tree descended per round of data synchronization
+     */
+    public int getMerkleExchangeLevels() {
+        return innerConfig.getIntFromNestedMap("data_sync", "merkle_exchange_levels", 4);
+    }
+
+    /**
+     * The max count of state nodes transferred per chunk of data synchronization
+     */
+    public int getDiffChunkSize() {
+        return innerConfig.getIntFromNestedMap("data_sync", "diff_chunk_size", 1000);
+    }
+
+    /**
+     * The count of recent mutations kept by leader for the lagging followers, 0 disables the log shipping
+     */
+    public int getMutationRingSize() {
+        return innerConfig.getIntFromNestedMap("data_sync", "mutation_ring_size", 4096);
+    }
+
+    /**
+     * The milliseconds for waiting the snapshot streamed to an empty server, 0 disables the snapshot bootstrap
+     */
+    public long getSnapshotBootstrapTimeout() {
+        return innerConfig.getLongFromNestedMap("data_sync", "snapshot_bootstrap_timeout", 60000);
+    }
+
+    /**
+     * The min milliseconds between the starts of two synchronizations from the same server
+     */
+    public long getSyncMinInterval() {
+        return innerConfig.getLongFromNestedMap("data_sync", "sync_min_interval", 1000);
+    }
+
+    /**
+     * The max synchronization requests per second, 0 means unlimited
+     */
+    public long getSyncOpsPerSecond() {
+        return innerConfig.getLongFromNestedMap("data_sync", "sync_ops_per_second", 200);
+    }
+
+    /**
+     * The max synchronization bytes per second, 0 means unlimited
+     */
+    public long getSyncBytesPerSecond() {
+        return innerConfig.getLongFromNestedMap("data_sync", "sync_bytes_per_second", 8 * 1024 * 1024);
+    }
+
+    /**
+     * The average mutation latency(milliseconds) above which the synchronization backs off, 0 disables the backoff
+     */
+    public long getSyncBackoffLatency() {
+        return innerConfig.getLongFromNestedMap("data_sync", "sync_backoff_latency", 50);
+    }
+
+    /**
+     * The cells of the key/version sketch exchanged before the merkle comparison, a divergence of up to about 3/4 of
+     * them is found in one round trip. 0 disables the sketch.
+     */
+    public int getSketchCells() {
+        return innerConfig.getIntFromNestedMap("data_sync", "sketch_cells", 300);
     }
 
     public byte getMerkleTreeDepth() {
         return (byte) innerConfig.getIntFromNestedMap("storage", "merkle_tree_depth", 15);
     }
 
+    public MerkleTree.Layout getMerkleTreeLayout() {
+        String layout = innerConfig.getStringFromNestedMap("storage", "merkle_tree_layout", MerkleTree.Layout.NODE
+                .name());
+        return MerkleTree.Layout.valueOf(layout.toUpperCase());
+    }
+
+    /**
+     * Return the parallelism of hashing merkle tree, 0 means the count of processors, 1 means hashing serially
+     */
+    public int getMerkleHashThreads() {
+        int threads = innerConfig.getIntFromNestedMap("storage", "merkle_hash_threads", 0);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
     public long getStateNodePurgeExpire() {
         return innerConfig.getLongFromNestedMap("data_sync", "state_node_purge_period", 30000);
     }
 
+    /**
+     * Return the directory of commit log, the commit log will be disabled if it's not configured
+     */
+    public String getCommitLogDirectory() {
+        return innerConfig.getStringFromNestedMap("storage", "commit_log_directory", null);
+    }
+
+    public long getCommitLogSegmentSize() {
+        return innerConfig.getLongFromNestedMap("storage", "commit_log_segment_size", 64 * 1024 * 1024);
+    }
+
+    /**
+     * Return the directory of snapshot, the snapshot will be disabled if it's not configured
+     */
+    public String getSnapshotDirectory() {
+        return innerConfig.getStringFromNestedMap("storage", "snapshot_directory", null);
+    }
+
+    /**
+     * Return the period(milliseconds) of taking snapshot, 0 means only taking snapshot on shutdown
+     */
+    public long getSnapshotPeriod() {
+        return innerConfig.getLongFromNestedMap("storage", "snapshot_period", 0);
+    }
+
+    public int getSnapshotLoadThreads() {
+        return innerConfig.getIntFromNestedMap("storage", "snapshot_load_threads", Runtime.getRuntime()
+                .availableProcessors());
+    }
+
+    public int getOffHeapKeyCapacity() {
+        return innerConfig.getIntFromNestedMap("storage", "offheap_key_capacity", 64);
+    }
+
+    public int getOffHeapOwnerCapacity() {
+        return innerConfig.getIntFromNestedMap("storage", "offheap_owner_capacity", 32);
+    }
+
+    public int getStorageShardCount() {
+        return innerConfig.getIntFromNestedMap("storage", "shard_count", 0);
+    }
+
     public long getRetryPeriod() {
         return innerConfig.getLong("service_retry_period", 3000);
     }
@@ -360,6 +516,18 @@ public class GlobalConfiguration extends LifecycleProxy {
             return (Long) v;
         }
 
+        String getStringFromNestedMap(String mapKey, String itemKey, String defaultValue) {
+            Map<String, Object> map = innerConfig.getMap(mapKey);
+
+            if (map == null) {
+                return defaultValue;
+            }
+
+            Object v = map.get(itemKey);
+
+            return v == null ? defaultValue : (String) v;
+        }
+
         int getIntFromNestedMap(String mapKey, String itemKey, int defaultValue) {
             long v = getLongFromNestedMap(mapKey, itemKey, defaultValue);
             return (int) v;
@@ -20,12 +20,12 @@ public class DefaultLatchFuture<T> implements LatchFuture<T> {
     /**
      * All registered listeners
      */
-    private final List<LatchFutureListener> listeners = new ArrayList<LatchFutureListener>();
+    private final List<LatchFutureListener<T>> listeners = new ArrayList<LatchFutureListener<T>>();
 
     /**
      * Synchronization control for MessageTask
      */
-    private final Sync<T> sync = new Sync<T>();
+    private final Sync sync = new Sync();
     /**
      * Latch
      */
@@ -70,9 +70,18 @@ public class DefaultLatchFuture<T> implements LatchFuture<T> {
         return sync.get(unit.toNanos(timeout));
     }
 
+    /**
+     * The listener is invoked at once if the future is done already
+     */
     @Override
-    public void addListener(LatchFutureListener listener) {
-        listeners.add(listener);
+    public void addListener(LatchFutureListener<T> listener) {
+        synchronized (listeners) {
+            if (!sync.isDone()) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.complete(this);
     }
 
     @Override
@@ -90,7 +99,7 @@ public class DefaultLatchFuture<T> implements LatchFuture<T> {
      * usage of {@link Lock},{@link Condition}, instead of using the shared mode
      * of {@link AbstractQueuedSynchronizer}
      */
-    private final class Sync<T> extends AbstractQueuedSynchronizer {
+    private final class Sync extends AbstractQueuedSynchronizer {
         /**
          * Serial Version UID
          */
@@ -103,6 +112,10 @@ public class DefaultLatchFuture<T> implements LatchFuture<T> {
          * State: Done
          */
         private static final int DONE = 2;
+        /**
+         * State: the result(or exception) is being set, it's published by the volatile write of DONE
+         */
+        private static final int COMPLETING = 3;
 
         /**
          * The result to return from get()
@@ -132,35 +145,26 @@ public class DefaultLatchFuture<T> implements LatchFuture<T> {
         }
 
         void set(T result) {
-            for (; ; ) {
-                int s = getState();
-                if (s == DONE) {
-                    return;
-                }
-
-                if (compareAndSetState(s, DONE)) {
-                    this.result = result;
-                    releaseShared(0);
-                    innerDone();
-                    return;
-                }
+            // the state is CASed to COMPLETING first, so the readers never see DONE before the result is written
+            if (!compareAndSetState(RUNNING, COMPLETING)) {
+                return;
             }
+
+            this.result = result;
+            setState(DONE);
+            releaseShared(0);
+            innerDone();
         }
 
         void setException(Throwable exception) {
-            for (; ; ) {
-                int s = getState();
-                if (s == DONE) {
-                    return;
-                }
-
-                if (compareAndSetState(s, DONE)) {
-                    this.exception = exception;
-                    releaseShared(0);
-                    innerDone();
-                    return;
-                }
+            if (!compareAndSetState(RUNNING, COMPLETING)) {
+                return;
             }
+
+            this.exception = exception;
+            setState(DONE);
+            releaseShared(0);
+            innerDone();
         }
 
         T get() throws InterruptedException, ExecutionException {
@@ -193,7 +197,11 @@ public class DefaultLatchFuture<T> implements LatchFuture<T> {
                 latch.countDown();
             }
 
-            for (LatchFutureListener listener : listeners) {
+            List<LatchFutureListener<T>> completed;
+            synchronized (listeners) {
+                completed = new ArrayList<LatchFutureListener<T>>(listeners);
+            }
+            for (LatchFutureListener<T> listener : completed) {
                 listener.complete(DefaultLatchFuture.this);
             }
         }
@@ -12,7 +12,7 @@ public interface LatchFuture<T> extends Future<T> {
     /**
      * Add one  LatchFutureListener instance which will be triggered when operation complete
      */
-    void addListener(LatchFutureListener listener);
+    void addListener(LatchFutureListener<T> listener);
 
     /**
      * Set a CountDownLatch instance, when future is done successfully, the  <code>countDown</code> method will be
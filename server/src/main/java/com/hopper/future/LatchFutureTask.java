@@ -16,7 +16,7 @@ public class LatchFutureTask<T> extends FutureTask<T> implements LatchFuture<T>
     /**
      * All registered listeners
      */
-    private final List<LatchFutureListener> listeners = new ArrayList<LatchFutureListener>();
+    private final List<LatchFutureListener<T>> listeners = new ArrayList<LatchFutureListener<T>>();
 
     private CountDownLatch latch;
 
@@ -29,7 +29,7 @@ public class LatchFutureTask<T> extends FutureTask<T> implements LatchFuture<T>
     }
 
     @Override
-    public void addListener(LatchFutureListener listener) {
+    public void addListener(LatchFutureListener<T> listener) {
         listeners.add(listener);
     }
 
@@ -62,7 +62,7 @@ public class LatchFutureTask<T> extends FutureTask<T> implements LatchFuture<T>
             latch.countDown();
         }
 
-        for (LatchFutureListener listener : listeners) {
+        for (LatchFutureListener<T> listener : listeners) {
             listener.complete(this);
         }
     }
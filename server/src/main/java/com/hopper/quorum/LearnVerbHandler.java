@@ -10,7 +10,6 @@ import com.hopper.session.ClientSession;
 import com.hopper.session.Message;
 import com.hopper.session.MessageService;
 import com.hopper.sync.DataSyncService;
-import com.hopper.sync.DiffResult;
 import com.hopper.sync.SyncException;
 import com.hopper.verb.Verb;
 import com.hopper.verb.VerbHandler;
@@ -174,12 +173,9 @@ public class LearnVerbHandler implements VerbHandler {
         // Local data is up-to-date
         if (componentManager.getStateStorage().getMaxXid() < result.getMaxXid()) {
             try {
-                // Retrieve the diff from remote server
-                LatchFuture<DiffResult> future = dataSyncService.diff(result.getServerId());
-                DiffResult diff = future.get();
-
-                // Apply the diff to local
-                dataSyncService.applyDiff(diff);
+                // Pull the diff from remote server and apply it to local chunk by chunk
+                LatchFuture<Boolean> future = dataSyncService.pull(result.getServerId());
+                future.get();
 
                 // Retrieve all stale servers(need synchronize to up-to-date)
                 Integer[] staleServers = getStaleServers(componentManager.getStateStorage().getMaxXid(), maxXidResult);
@@ -197,9 +193,9 @@ public class LearnVerbHandler implements VerbHandler {
                     if (upToDateNum < config.getQuorumSize()) {
                         final CountDownLatch latch = new CountDownLatch(config.getQuorumSize() - upToDateNum);
                         for (LatchFuture<Boolean> syncFuture : futures) {
-                            syncFuture.addListener(new LatchFutureListener() {
+                            syncFuture.addListener(new LatchFutureListener<Boolean>() {
                                 @Override
-                                public void complete(LatchFuture future) {
+                                public void complete(LatchFuture<Boolean> future) {
                                     if (future.isSuccess()) {
                                         latch.countDown();
                                     }
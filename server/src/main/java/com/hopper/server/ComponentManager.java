@@ -12,6 +12,8 @@ import com.hopper.session.MessageService;
 import com.hopper.session.SessionManager;
 import com.hopper.session.SessionSnooper;
 import com.hopper.stage.StageManager;
+import com.hopper.storage.OffHeapStorage;
+import com.hopper.storage.ShardedStorage;
 import com.hopper.storage.StateStorage;
 import com.hopper.storage.TreeStorage;
 import com.hopper.sync.DataSyncService;
@@ -174,8 +176,16 @@ public class ComponentManager extends LifecycleProxy {
 
     private StateStorage createStateStorage() {
         GlobalConfiguration.StorageMode mode = globalConfiguration.getStorageMode();
-        StateStorage storage = mode == GlobalConfiguration.StorageMode.TREE ? new TreeStorage() : new MapStorage();
-        return storage;
+        switch (mode) {
+            case TREE:
+                return new TreeStorage();
+            case OFFHEAP:
+                return new OffHeapStorage();
+            case SHARDED:
+                return new ShardedStorage();
+            default:
+                return new MapStorage();
+        }
     }
 
     public GlobalConfiguration getGlobalConfiguration() {
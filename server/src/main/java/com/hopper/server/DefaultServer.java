@@ -7,6 +7,7 @@ import com.hopper.session.ClientSession;
 import com.hopper.session.OutgoingSession;
 import com.hopper.session.SessionManager;
 import com.hopper.stage.Stage;
+import com.hopper.thrift.AsyncMutationFunctions;
 import com.hopper.thrift.HopperService;
 import com.hopper.thrift.HopperServiceImpl;
 import com.hopper.thrift.netty.ThriftPipelineFactory;
@@ -141,9 +142,12 @@ public class DefaultServer extends LifecycleMBeanProxy implements Server {
                 .RPC_WORKER)));
 
         // set customs pipeline factory
-        HopperService.Processor<HopperServiceImpl> processor = new HopperService.Processor<HopperServiceImpl>(new
-                HopperServiceImpl());
+        HopperServiceImpl service = new HopperServiceImpl();
+        HopperService.Processor<HopperServiceImpl> processor = new HopperService.Processor<HopperServiceImpl>(service);
         ThriftServerHandler handler = new ThriftServerHandler(processor);
+
+        // the mutations are processed with continuation, they don't block the rpc workers during replication
+        new AsyncMutationFunctions(service).registerTo(handler);
         rpcBootstrap.setPipelineFactory(new ThriftPipelineFactory(handler));
 
         // configure tcp
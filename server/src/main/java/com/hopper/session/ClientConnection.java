@@ -7,6 +7,7 @@ import com.hopper.server.Endpoint;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.FileRegion;
 
 /**
  * Client connection
@@ -99,6 +100,10 @@ public class ClientConnection extends LifecycleProxy implements Connection {
     public void sendOnewayUntilComplete(Message message) {
     }
 
+    @Override
+    public void sendWithRegion(Message message, FileRegion region, long timeout) {
+    }
+
     @Override
     public LatchFuture<Message> send(Message message) {
         return null;
@@ -4,6 +4,7 @@ import com.hopper.future.LatchFuture;
 import com.hopper.lifecycle.Lifecycle;
 import com.hopper.server.Endpoint;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.FileRegion;
 
 import java.util.concurrent.Future;
 
@@ -92,6 +93,14 @@ public interface Connection extends Lifecycle {
 	 */
 	void sendOnewayUntilComplete(Message message);
 
+	/**
+	 * Send the message followed by the raw bytes of <code>region</code>, no
+	 * other message is written between them. It waits until the region has
+	 * been written(or <code>timeout</code> milliseconds elapsed), if exceptions
+	 * occurs, {@link RuntimeException} will be thrown.
+	 */
+	void sendWithRegion(Message message, FileRegion region, long timeout);
+
 	/**
 	 * Send asynchronous message(without waiting for complete) and return the
 	 * {@link Future} immediately. if exceptions occurs(includes local and
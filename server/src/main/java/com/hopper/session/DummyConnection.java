@@ -6,6 +6,7 @@ import com.hopper.lifecycle.LifecycleProxy;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.server.Endpoint;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.FileRegion;
 
 public class DummyConnection extends LifecycleProxy implements Connection {
 
@@ -94,6 +95,10 @@ public class DummyConnection extends LifecycleProxy implements Connection {
     public void sendOnewayUntilComplete(Message message) {
     }
 
+    @Override
+    public void sendWithRegion(Message message, FileRegion region, long timeout) {
+    }
+
     @Override
     public LatchFuture<Message> send(Message message) {
         return null;
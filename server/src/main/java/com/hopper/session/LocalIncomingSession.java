@@ -84,8 +84,8 @@ public class LocalIncomingSession extends SessionProxy implements IncomingSessio
             // records the last heart beat time
             lastHeartBeat.set(System.currentTimeMillis());
 
-            // If the leader's fresh, starting data synchronous
-            if (beat.getMaxXid() > componentManager.getStateStorage().getMaxXid()) {
+            // If the leader's fresh, replaying the missing mutations(or merkle synchronization if they're evicted)
+            if (componentManager.getDataSyncService().isBehind(beat)) {
                 componentManager.getDataSyncService().syncDataFromRemote(componentManager.getDefaultServer()
                         .getLeader());
             }
@@ -42,6 +42,10 @@ public class Message {
      * The associated command
      */
     private Object body;
+    /**
+     * The serialized size, it's available after serializing or deserializing
+     */
+    private int size;
 
     public int getId() {
         return id;
@@ -68,6 +72,10 @@ public class Message {
         this.body = body;
     }
 
+    public int getSize() {
+        return size;
+    }
+
     /**
      * Calculate the next message id, message id will be generated by server id
      */
@@ -112,6 +120,7 @@ public class Message {
         }
 
         output.complete();
+        this.size = output.buffer().readableBytes();
 
         return output.buffer();
     }
@@ -122,6 +131,7 @@ public class Message {
      * body.
      */
     public void deserialize(ChannelBuffer buffer) {
+        this.size = buffer.readableBytes();
 
         BufferDataInput in = new BufferDataInput(buffer);
 
@@ -12,6 +12,7 @@ import com.hopper.verb.VerbMappings;
 import com.hopper.verb.handler.HeartBeat;
 import com.hopper.verb.handler.NotifyStatusChange;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.FileRegion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -154,6 +155,14 @@ public class MessageService {
             throw new IllegalStateException("Not found endpoint for address:" + socketAddress);
         }
 
+        responseOneway(message, endpoint);
+    }
+
+    /**
+     * Response the message with the received message id to <code>endpoint</code>(e.g. from a callback out of the
+     * bound channel)
+     */
+    public void responseOneway(Message message, Endpoint endpoint) {
         logger.debug("Responses message {} to {}", message, endpoint);
 
         try {
@@ -181,6 +190,22 @@ public class MessageService {
         session.sendOnewayUntilComplete(message);
     }
 
+    /**
+     * Send message followed by the raw bytes of <code>region</code> to <code>destServerId</code>, and waits until the
+     * region has been written.
+     */
+    public void sendWithRegion(Message message, FileRegion region, int destServerId, long timeout) throws Exception {
+        Endpoint endpoint = config.getEndpoint(destServerId);
+
+        int messageId = Message.nextId();
+        message.setId(messageId);
+
+        logger.debug("Send message {} with {} bytes to {}", new Object[]{message, region.getCount(), endpoint});
+
+        OutgoingSession session = sessionManager.createOutgoingSession(endpoint);
+        session.getConnection().sendWithRegion(message, region, timeout);
+    }
+
     /**
      * Send   message to  <code>destServerId</code> and return the future instance. The method will generate a new
      * message id for preventing duplication
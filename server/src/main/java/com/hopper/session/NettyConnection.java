@@ -73,6 +73,10 @@ public class NettyConnection extends LifecycleProxy implements Connection {
      * Local associated session
      */
     private Session session;
+    /**
+     * Serializes the writes, so that nothing is written between a message and its file region
+     */
+    private final Object writeLock = new Object();
 
     @Override
     protected void doStart() {
@@ -228,7 +232,7 @@ public class NettyConnection extends LifecycleProxy implements Connection {
             throw new IllegalStateException("Channel is not open or has been closed.");
         }
 
-        ChannelFuture channelFuture = this.channel.write(message);
+        ChannelFuture channelFuture = write(message);
 
         channelFuture.addListener(new ChannelFutureListener() {
             @Override
@@ -247,7 +251,7 @@ public class NettyConnection extends LifecycleProxy implements Connection {
             throw new IllegalStateException("Channel is not open or has been closed.");
         }
 
-        ChannelFuture channelFuture = this.channel.write(message);
+        ChannelFuture channelFuture = write(message);
 
         // waiting for complete
         channelFuture.awaitUninterruptibly(config.getRpcTimeout(), TimeUnit.MILLISECONDS);
@@ -266,7 +270,7 @@ public class NettyConnection extends LifecycleProxy implements Connection {
             throw new IllegalStateException("Channel is not open or has been closed.");
         }
 
-        ChannelFuture channelFuture = channel.write(message);
+        ChannelFuture channelFuture = write(message);
 
         DefaultLatchFuture<Message> future = new DefaultLatchFuture<Message>();
 
@@ -298,6 +302,39 @@ public class NettyConnection extends LifecycleProxy implements Connection {
         return future;
     }
 
+    @Override
+    public void sendWithRegion(Message message, FileRegion region, long timeout) {
+        if (!validate()) {
+            throw new IllegalStateException("Channel is not open or has been closed.");
+        }
+
+        ChannelFuture channelFuture;
+        synchronized (writeLock) {
+            channel.write(message);
+            channelFuture = channel.write(region);
+        }
+
+        // waiting for complete, the region is transferred by the IO thread with zero copy
+        channelFuture.awaitUninterruptibly(timeout, TimeUnit.MILLISECONDS);
+
+        // the receiver can't locate the next message in a broken stream, closes it
+        if (!channelFuture.isSuccess()) {
+            channel.close();
+        }
+
+        if (!channelFuture.isDone()) {
+            throw new TimeoutException();
+        }
+
+        throwRuntimeException(channelFuture.getCause());
+    }
+
+    private ChannelFuture write(Object message) {
+        synchronized (writeLock) {
+            return channel.write(message);
+        }
+    }
+
     private static class SenderPipelineFactory implements ChannelPipelineFactory {
         @Override
         public ChannelPipeline getPipeline() throws Exception {
@@ -4,9 +4,12 @@ import com.hopper.lifecycle.LifecycleProxy;
 import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.server.Endpoint;
+import com.hopper.sync.MutationRing;
 import com.hopper.util.ScheduleManager;
 import com.hopper.verb.Verb;
+import com.hopper.verb.VerbMappings;
 import com.hopper.verb.handler.HeartBeat;
+import com.hopper.verb.handler.MutationVerbHandler;
 
 /**
  * Snoops the outgoing session with fixed period
@@ -48,6 +51,14 @@ public class SessionSnooper extends LifecycleProxy {
             beat.setLeader(componentManager.getDefaultServer().isLeader());
             beat.setMaxXid(componentManager.getStateStorage().getMaxXid());
 
+            // the followers of the stream compare the replication sequences rather than the xids
+            MutationRing ring = componentManager.getDataSyncService().getMutationRing();
+            if (beat.isLeader() && ring != null) {
+                MutationVerbHandler handler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb.MUTATION);
+                beat.setStreamId(handler.getReplicationStream().getStreamId());
+                beat.setLastSeq(ring.getLastSeq());
+            }
+
             message.setBody(beat);
 
             for (Endpoint endpoint : componentManager.getGlobalConfiguration().getGroupEndpoints()) {
@@ -1,52 +1,530 @@
 package com.hopper.storage;
 
+import com.hopper.GlobalConfiguration;
 import com.hopper.lifecycle.LifecycleProxy;
+import com.hopper.quorum.LeaderElection;
 import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.BufferDataInput;
+import com.hopper.stage.Stage;
+import com.hopper.util.MurmurHash;
+import com.hopper.util.merkle.Difference;
+import com.hopper.util.merkle.InvertibleBloomTable;
+import com.hopper.util.merkle.MerkleSpliterator;
 import com.hopper.util.merkle.MerkleTree;
+import com.hopper.util.merkle.Range;
 
-import java.io.*;
-import java.util.Collection;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 
 /**
  * AbstractStateStorage provides some common operations for all storage implementations.
+ * <p/>
+ * The {@link StorageSnapshot} is pinned at a clock value in O(1). Every installed state of node is stamped with the
+ * current clock, and the replaced states are linked as long as some pinned snapshot may see them; the removed nodes
+ * are kept as tombstones for the same purpose. Mutations hold the read lock of their key stripe, pinning a snapshot
+ * takes all write locks for a moment, so a snapshot never sees a half applied mutation.
  */
 public abstract class AbstractStateStorage extends LifecycleProxy implements StateStorage {
+    private static final String SNAPSHOT_PREFIX = "Snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".db";
+    /**
+     * The parts of difference smaller than it are not split further
+     */
+    private static final int MIN_APPLY_PART = 128;
+    /**
+     * The max unfinished scans whose sorted keys are kept
+     */
+    private static final int MAX_SCAN_CURSORS = 16;
+
     private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
 
     /**
      * merkle tree reference
      */
     protected final MerkleTree<StateNode> tree;
+    /**
+     * The pool for hashing the merkle trees in parallel, null means hashing serially
+     */
+    private final ForkJoinPool hashPool = newHashPool();
     /**
      * Monotonically increasing xid
      */
     private final AtomicLong maxXid = new AtomicLong();
+    /**
+     * Whether the snapshot and commit log are being restored
+     */
+    private volatile boolean restoring;
+    /**
+     * Nodes ordered by purge deadline
+     */
+    private final PurgeIndex purgeIndex = new PurgeIndex();
     /**
      * Purge thread
      */
-    private final PurgeThread purgeThread = new PurgeThread();
+    private final PurgeThread purgeThread = new PurgeThread(this, purgeIndex);
 
     private final AtomicBoolean purgeRunning = new AtomicBoolean();
 
+    /**
+     * Striped locks for keeping the order of put/remove between memory and commit log
+     */
+    private final Object[] keyLocks = new Object[64];
+
+    /**
+     * Striped locks for separating mutations from snapshot pinning, mutations take the read locks
+     */
+    private final StampedLock[] pinLocks = new StampedLock[keyLocks.length];
+
+    /**
+     * Snapshot clock, it's increased by pinning snapshot
+     */
+    private final AtomicLong snapshotClock = new AtomicLong();
+
+    /**
+     * Clocks of the active snapshots
+     */
+    private final ConcurrentSkipListSet<Long> activePins = new ConcurrentSkipListSet<Long>();
+
+    /**
+     * The latest active pin, -1 if there is no active snapshot
+     */
+    private volatile long latestPin = -1;
+
+    /**
+     * The nodes removed while there are active snapshots
+     */
+    private final ConcurrentLinkedQueue<Tombstone> tombstones = new ConcurrentLinkedQueue<Tombstone>();
+
+    /**
+     * Commit log, null means the commit log is disabled
+     */
+    private CommitLog commitLog;
+
+    /**
+     * Snapshot directory, null means the snapshot is disabled
+     */
+    private File snapshotDirectory;
+
+    private final Runnable checkpointTask = new CheckpointTask();
+
+    /**
+     * The sorted keys of the unfinished scans by the last returned key, only the recent ones are kept
+     */
+    private final Map<String, SortedKeyIterator> scanCursors = new LinkedHashMap<String, SortedKeyIterator>(16,
+            0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SortedKeyIterator> eldest) {
+            return size() > MAX_SCAN_CURSORS;
+        }
+    };
+
     /**
      * Constructor for initializing the merkle tree uniquely
      */
     public AbstractStateStorage() {
-        this.tree = new MerkleTree<StateNode>(componentManager.getGlobalConfiguration().getMerkleTreeDepth(),
-                StateNode.class);
-        this.tree.setObjectFactory(componentManager.getStateStorage());
+        this.tree = newMerkleTree(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE), componentManager
+                .getGlobalConfiguration().getMerkleTreeDepth());
+
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+            pinLocks[i] = new StampedLock();
+        }
+    }
+
+    @Override
+    protected void doInit() throws Exception {
+        GlobalConfiguration config = componentManager.getGlobalConfiguration();
+        purgeThread.initialize();
+        String directory = config.getCommitLogDirectory();
+
+        if (directory != null) {
+            this.commitLog = new CommitLog(new File(directory), config.getCommitLogSegmentSize());
+            commitLog.initialize();
+        }
+
+        String snapshot = config.getSnapshotDirectory();
+        if (snapshot != null) {
+            this.snapshotDirectory = new File(snapshot);
+        }
+    }
+
+    /**
+     * Restores the state from the latest snapshot and the commit log after it before joining the group, the
+     * mutations will not be logged again.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        restoring = true;
+        final long snapshotXid = restoreSnapshot();
+
+        if (commitLog != null) {
+            commitLog.replay(new CommitLog.ReplayHandler() {
+                @Override
+                public void replay(long xid, byte op, BufferDataInput in) throws IOException {
+                    if (fromLogXid(xid) > snapshotXid) {
+                        replayMutation(xid, op, in);
+                    }
+                }
+            });
+        }
+
+        // the nodes are attached to storage after replaying, so that the replayed mutations are not logged again
+        forEachParallel(new Consumer<StateNode>() {
+            @Override
+            public void accept(StateNode node) {
+                node.setStorage(AbstractStateStorage.this);
+                indexPurge(node);
+            }
+        });
+        restoring = false;
+
+        if (commitLog != null) {
+            commitLog.start();
+            logger.info("Restored the state storage from commit log, max xid: {}", getMaxXid());
+        }
+
+        long period = componentManager.getGlobalConfiguration().getSnapshotPeriod();
+        if (snapshotDirectory != null && period > 0) {
+            componentManager.getScheduleManager().schedule(checkpointTask, period, period);
+        }
+    }
+
+    @Override
+    protected void doShutdown() throws Exception {
+        if (snapshotDirectory != null) {
+            componentManager.getScheduleManager().removeTask(checkpointTask);
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                logger.error("Failed to take snapshot on shutdown.", e);
+            }
+        }
+
+        if (commitLog != null) {
+            commitLog.shutdown();
+        }
+
+        purgeThread.shutdown();
+
+        if (hashPool != null) {
+            hashPool.shutdown();
+        }
+    }
+
+    private ForkJoinPool newHashPool() {
+        int threads = componentManager.getGlobalConfiguration().getMerkleHashThreads();
+        return threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Return the pool for hashing the merkle trees of storage, null means hashing serially
+     */
+    protected ForkJoinPool getHashPool() {
+        return hashPool;
+    }
+
+    /**
+     * Loads the latest snapshot in parallel
+     *
+     * @return the max xid of snapshot, 0 if there is no snapshot
+     */
+    private long restoreSnapshot() throws IOException {
+        File file = latestSnapshot();
+        if (file == null) {
+            return 0;
+        }
+
+        final long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(componentManager.getGlobalConfiguration()
+                .getSnapshotLoadThreads());
+        Snapshot snapshot;
+        try {
+            snapshot = Snapshot.load(file, executor, new Snapshot.NodeHandler() {
+                @Override
+                public void load(StateNode node) {
+                    node.setScheduleManager(componentManager.getScheduleManager());
+                    node.setNotifyExecutorService(componentManager.getStageManager().getThreadPool(Stage
+                            .STATE_CHANGE));
+                    doPut(node);
+                    merkleTree(node.key).put(node);
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+
+        restoreXid(snapshot.getMaxXid());
+
+        LeaderElection leaderElection = componentManager.getLeaderElection();
+        if (leaderElection != null && leaderElection.getPaxos().getEpoch() < snapshot.getEpoch()) {
+            leaderElection.getPaxos().setEpoch(snapshot.getEpoch());
+        }
+
+        logger.info("Restored {} nodes from snapshot {} in {}ms", new Object[]{snapshot.getNodeCount(),
+                file.getName(), System.currentTimeMillis() - start});
+
+        return snapshot.getMaxXid();
+    }
+
+    @Override
+    public long restore(File file) throws IOException {
+        final long start = System.currentTimeMillis();
+        // the loaded nodes are applied chunk by chunk, so the whole snapshot isn't held as one difference
+        final int chunkSize = Math.max(1, componentManager.getGlobalConfiguration().getDiffChunkSize());
+        final AtomicReference<Difference<StateNode>> chunk = new AtomicReference<Difference<StateNode>>(new
+                Difference<StateNode>());
+        final ExecutorService notifyExecutorService = componentManager.getStageManager().getThreadPool(Stage
+                .STATE_CHANGE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(componentManager.getGlobalConfiguration()
+                .getSnapshotLoadThreads());
+        Snapshot snapshot;
+        try {
+            snapshot = Snapshot.load(file, executor, new Snapshot.NodeHandler() {
+                @Override
+                public void load(StateNode node) {
+                    node.setScheduleManager(componentManager.getScheduleManager());
+                    node.setNotifyExecutorService(notifyExecutorService);
+
+                    boolean exists = get(node.key) != null;
+                    Difference<StateNode> full = null;
+                    synchronized (chunk) {
+                        Difference<StateNode> difference = chunk.get();
+                        if (exists) {
+                            difference.updatedList.add(node);
+                        } else {
+                            difference.addedList.add(node);
+                        }
+                        if (difference.updatedList.size() + difference.addedList.size() >= chunkSize) {
+                            full = difference;
+                            chunk.set(new Difference<StateNode>());
+                        }
+                    }
+
+                    if (full != null) {
+                        apply(full);
+                    }
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+
+        apply(chunk.get());
+
+        // the mutations after the snapshot will be fetched from the snapshot xid
+        if (snapshot.getMaxXid() > getMaxXid()) {
+            restoreXid(snapshot.getMaxXid());
+        }
+
+        logger.info("Restored {} nodes from the streamed snapshot in {}ms, max xid: {}", new Object[]{snapshot
+                .getNodeCount(), System.currentTimeMillis() - start, snapshot.getMaxXid()});
+
+        // the commit log records of the restored nodes don't carry the snapshot xid
+        if (snapshotDirectory != null) {
+            checkpoint();
+        }
+
+        return snapshot.getMaxXid();
+    }
+
+    private File latestSnapshot() {
+        File[] files = listSnapshots();
+        File latest = null;
+        for (File file : files) {
+            if (latest == null || snapshotXid(file) > snapshotXid(latest)) {
+                latest = file;
+            }
+        }
+        return latest;
+    }
+
+    private File[] listSnapshots() {
+        if (snapshotDirectory == null) {
+            return new File[0];
+        }
+
+        File[] files = snapshotDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }
+        });
+
+        return files == null ? new File[0] : files;
+    }
+
+    private static long snapshotXid(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    @Override
+    public synchronized long checkpoint() throws IOException {
+        if (snapshotDirectory == null) {
+            throw new IllegalStateException("Snapshot is disabled.");
+        }
+
+        if (!snapshotDirectory.exists() && !snapshotDirectory.mkdirs()) {
+            throw new IOException("Failed to create snapshot directory " + snapshotDirectory);
+        }
+
+        // the view is consistent at xid, the mutations during writing will be replayed
+        StorageSnapshot view = snapshot();
+        final long xid = view.getMaxXid();
+
+        File tmp = new File(snapshotDirectory, SNAPSHOT_PREFIX + xid + ".tmp");
+        tmp.delete();
+        Snapshot snapshot;
+        try {
+            snapshot = Snapshot.write(tmp, xid, currentEpoch(), view.getStateNodes());
+        } finally {
+            view.release();
+        }
+
+        File file = new File(snapshotDirectory, SNAPSHOT_PREFIX + xid + SNAPSHOT_SUFFIX);
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to rename snapshot " + tmp + " to " + file);
+        }
+
+        for (File old : listSnapshots()) {
+            if (snapshotXid(old) < xid) {
+                old.delete();
+            }
+        }
+
+        if (commitLog != null) {
+            commitLog.discard(toLogXid(xid));
+        }
+
+        logger.info("Took snapshot {} with {} nodes", file.getName(), snapshot.getNodeCount());
+        return xid;
+    }
+
+    private int currentEpoch() {
+        LeaderElection leaderElection = componentManager.getLeaderElection();
+        return leaderElection == null ? 0 : leaderElection.getPaxos().getEpoch();
+    }
+
+    private void replayMutation(long xid, byte op, BufferDataInput in) throws IOException {
+        if (op == CommitLog.OP_REMOVE) {
+            String key = in.readUTF();
+            doRemove(key);
+            merkleTree(key).remove(key);
+        } else {
+            StateNode image = new StateNode();
+            image.deserialize(in);
+
+            StateNode node = get(image.key);
+            if (node == null) {
+                node = image;
+                node.setScheduleManager(componentManager.getScheduleManager());
+                node.setNotifyExecutorService(componentManager.getStageManager().getThreadPool(Stage.STATE_CHANGE));
+                doPut(node);
+                node = get(image.key);
+            } else {
+                node.update(image);
+            }
+            merkleTree(node.key).put(node);
+        }
+
+        long restored = fromLogXid(xid);
+        if (restored > getMaxXid()) {
+            restoreXid(restored);
+        }
     }
 
     @Override
     public StateNode put(StateNode node) {
-        maxXid.incrementAndGet();
-        StateNode r = doPut(node);
+        return put(node, null);
+    }
+
+    /**
+     * Puts the node, the merkle tree update and the commit log syncing are deferred to <code>batch</code> if it's not
+     * null
+     */
+    private StateNode put(StateNode node, Batch batch) {
+        long seq = 0;
+        StateNode r;
+
+        synchronized (keyLock(node.key)) {
+            StampedLock pinLock = pinLock(node.key);
+            long stamp = pinLock.readLock();
+            try {
+                long xid = nextXid(node.key);
+
+                // the new node is invisible for the pinned snapshots, the existing one may be replaced
+                StateNode existing = get(node.key);
+                if (existing == null || !existing.isSameNode(node)) {
+                    node.stampClock(snapshotClock.get());
+                    if (existing != null) {
+                        bury(existing);
+                    }
+                }
+
+                // attached before publishing, so that all mutations of the stored node are versioned
+                node.setStorage(this);
+                r = doPut(node);
 
-        // update the merkle tree range
-        tree.put(node);
+                // the implementation may keep the existing node, or store a copy of the node
+                StateNode current = get(node.key);
+                if (!current.isSameNode(node)) {
+                    node.setStorage(null);
+                }
+                if (current == node || r == null) {
+                    indexPurge(current);
+                }
+
+                // update the merkle tree range, the version of a replaced node may go backward
+                boolean replaced = existing != null && !existing.isSameNode(current);
+                if (batch == null) {
+                    if (replaced) {
+                        merkleTree(current.key).remove(current.key);
+                    }
+                    merkleTree(current.key).put(current);
+                } else {
+                    if (replaced) {
+                        batch.remove(current.key);
+                    }
+                    batch.put(current);
+                }
+                if (commitLog != null) {
+                    seq = commitLog.append(xid, CommitLog.OP_PUT, current);
+                }
+            } finally {
+                pinLock.unlockRead(stamp);
+            }
+        }
+
+        if (batch == null) {
+            syncCommitLog(seq);
+        } else {
+            batch.log(seq);
+        }
 
         return r;
     }
@@ -55,15 +533,298 @@ public abstract class AbstractStateStorage extends LifecycleProxy implements Sta
 
     @Override
     public StateNode remove(String key) {
-        maxXid.incrementAndGet();
-        StateNode old = doRemove(key);
+        return remove(key, null);
+    }
+
+    /**
+     * Removes the node of <code>key</code> if it {@link StateNode#shouldPurge()}, the check and the removal are done
+     * under the key lock, so a node replaced in between isn't removed by mistake.
+     *
+     * @return true if the node is removed
+     */
+    boolean purge(String key) {
+        long seq;
+
+        synchronized (keyLock(key)) {
+            StateNode existing = get(key);
+            if (existing == null || !existing.shouldPurge()) {
+                return false;
+            }
+
+            StampedLock pinLock = pinLock(key);
+            long stamp = pinLock.readLock();
+            try {
+                long xid = nextXid(key);
+
+                bury(existing);
+                doRemove(key);
+                merkleTree(key).remove(key);
 
-        // update the merkle tree range
-        tree.remove(key);
+                seq = commitLog == null ? 0 : commitLog.appendRemove(xid, key);
+            } finally {
+                pinLock.unlockRead(stamp);
+            }
+        }
+
+        syncCommitLog(seq);
+        return true;
+    }
+
+    /**
+     * Removes the node, the merkle tree update and the commit log syncing are deferred to <code>batch</code> if it's
+     * not null
+     */
+    private StateNode remove(String key, Batch batch) {
+        long seq = 0;
+        StateNode old;
+
+        synchronized (keyLock(key)) {
+            StampedLock pinLock = pinLock(key);
+            long stamp = pinLock.readLock();
+            try {
+                long xid = nextXid(key);
+
+                StateNode existing = get(key);
+                if (existing != null) {
+                    bury(existing);
+                }
+                old = doRemove(key);
+
+                // update the merkle tree range
+                if (batch == null) {
+                    merkleTree(key).remove(key);
+                } else {
+                    batch.remove(key);
+                }
+
+                if (commitLog != null) {
+                    seq = commitLog.appendRemove(xid, key);
+                }
+            } finally {
+                pinLock.unlockRead(stamp);
+            }
+        }
+
+        if (batch == null) {
+            syncCommitLog(seq);
+        } else {
+            batch.log(seq);
+        }
 
         return old;
     }
 
+    /**
+     * Splits the difference by the merkle ranges and applies the parts on the common fork-join pool, the merkle tree
+     * is updated leaf by leaf for each part. Each mutation still takes its own xid, but the commit log is synced once
+     * for the whole difference.
+     */
+    @Override
+    public void apply(Difference<StateNode> difference) {
+        if (!difference.hasDifferences()) {
+            return;
+        }
+
+        List<Change> changes = new ArrayList<Change>(difference.addedList.size() + difference.removedList.size() +
+                difference.updatedList.size());
+        for (StateNode node : difference.addedList) {
+            changes.add(new Change(Change.ADD, node));
+        }
+        for (StateNode node : difference.removedList) {
+            changes.add(new Change(Change.REMOVE, node));
+        }
+        for (StateNode node : difference.updatedList) {
+            changes.add(new Change(Change.UPDATE, node));
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int depth = 34 - Integer.numberOfLeadingZeros(pool.getParallelism());
+        long seq = pool.invoke(new ApplyTask(changes, new Range(Integer.MIN_VALUE, Integer.MAX_VALUE), depth));
+
+        syncCommitLog(seq);
+    }
+
+    /**
+     * Applies a part of difference
+     *
+     * @return the max commit log sequence of the part
+     */
+    private long apply(List<Change> changes) {
+        Batch batch = new Batch();
+        for (Change change : changes) {
+            StateNode node = change.node;
+            if (change.op == Change.ADD) {
+                put(node, batch);
+            } else if (change.op == Change.REMOVE) {
+                remove(node.key, batch);
+            } else {
+                StateNode existing = get(node.key);
+                if (existing != null) {
+                    batch.log(existing.updateWithoutSync(node));
+                }
+            }
+        }
+
+        batch.flush();
+        return batch.seq;
+    }
+
+    /**
+     * Re-synchronizes the merkle tree with the stored node of <code>key</code>, if it's not of the
+     * <code>expectVersion</code>(-1 means absent) applied to the merkle tree by batch
+     */
+    private void verifyMerkle(String key, long expectVersion) {
+        synchronized (keyLock(key)) {
+            StateNode current = get(key);
+            if (current == null) {
+                if (expectVersion >= 0) {
+                    merkleTree(key).remove(key);
+                }
+            } else if (current.getVersion() != expectVersion) {
+                merkleTree(key).remove(key);
+                merkleTree(key).put(current);
+            }
+        }
+    }
+
+    private void indexPurge(StateNode node) {
+        purgeIndex.add(node.key, node.getLastModified() + componentManager.getGlobalConfiguration()
+                .getStateNodePurgeExpire());
+    }
+
+    private Object keyLock(String key) {
+        return keyLocks[(key.hashCode() & 0x7fffffff) % keyLocks.length];
+    }
+
+    private StampedLock pinLock(String key) {
+        return pinLocks[(key.hashCode() & 0x7fffffff) % pinLocks.length];
+    }
+
+    /**
+     * Installs the state of a stored node, the state is stamped with the current clock and the replaced versions are
+     * retained for the active snapshots. The version bump is reported to merkle tree.
+     */
+    boolean casState(StateNode node, StateNode.State expect, StateNode.State update) {
+        StampedLock pinLock = pinLock(node.key);
+        long stamp = pinLock.readLock();
+        try {
+            update.clock = snapshotClock.get();
+            update.previous = expect == null ? null : expect.visibleAt(latestPin);
+            if (!node.compareAndSetState(expect, update)) {
+                return false;
+            }
+
+            // the removed(or replaced) node must not touch the digest of its successor
+            if (expect != null && update.version != expect.version) {
+                StateNode stored = get(node.key);
+                if (stored != null && stored.isSameNode(node)) {
+                    merkleTree(node.key).update(node.key, update.version);
+                }
+            }
+            return true;
+        } finally {
+            pinLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Keeps the node which is going to be removed(or replaced) for the active snapshots, it must be invoked with the
+     * pin read lock and before unlinking the node. The later states of node are invisible for the active snapshots, so
+     * the current state is enough.
+     */
+    private void bury(StateNode node) {
+        if (latestPin >= 0) {
+            tombstones.add(new Tombstone(node.key, node.type, node.getState(), snapshotClock.get()));
+        }
+    }
+
+    /**
+     * Pins a consistent view of all state nodes, the view must be released after using.
+     */
+    @Override
+    public StorageSnapshot snapshot() {
+        long[] stamps = lockPins();
+        try {
+            long pin = snapshotClock.getAndIncrement();
+            activePins.add(pin);
+            latestPin = pin;
+            return new StorageSnapshot(this, pin, pinXid());
+        } finally {
+            unlockPins(stamps);
+        }
+    }
+
+    /**
+     * Invoked by {@link StorageSnapshot#release()}
+     */
+    void release(long pin) {
+        long oldest;
+        long[] stamps = lockPins();
+        try {
+            activePins.remove(pin);
+            latestPin = activePins.isEmpty() ? -1 : activePins.last();
+            oldest = activePins.isEmpty() ? Long.MAX_VALUE : activePins.first();
+        } finally {
+            unlockPins(stamps);
+        }
+
+        // the tombstones removed before the oldest pin are not visible any more
+        for (Iterator<Tombstone> it = tombstones.iterator(); it.hasNext(); ) {
+            if (it.next().clock <= oldest) {
+                it.remove();
+            }
+        }
+    }
+
+    Iterable<Tombstone> getTombstones() {
+        return tombstones;
+    }
+
+    private long[] lockPins() {
+        long[] stamps = new long[pinLocks.length];
+        for (int i = 0; i < pinLocks.length; i++) {
+            stamps[i] = pinLocks[i].writeLock();
+        }
+        return stamps;
+    }
+
+    private void unlockPins(long[] stamps) {
+        for (int i = 0; i < pinLocks.length; i++) {
+            pinLocks[i].unlockWrite(stamps[i]);
+        }
+    }
+
+    /**
+     * Assigns a new xid for the mutation and writes the node <code>image</code> to commit log. The records of the same
+     * node may be appended out of order, the replaying relies on the node version.
+     *
+     * @return the commit log sequence, 0 if the commit log is disabled
+     */
+    long logMutation(String key, byte op, CommitLog.Record image) {
+        // the replayed mutations have their own xid
+        if (restoring) {
+            return 0;
+        }
+
+        long xid = nextXid(key);
+
+        // the commit log doesn't start until replaying is completed
+        if (commitLog == null || !commitLog.isRunning()) {
+            return 0;
+        }
+
+        return commitLog.append(xid, op, image);
+    }
+
+    /**
+     * Waiting until the commit log record is durable
+     */
+    void syncCommitLog(long seq) {
+        if (seq > 0) {
+            commitLog.sync(seq);
+        }
+    }
+
     @Override
     public StateNode find(String key) {
         return get(key);
@@ -76,45 +837,60 @@ public abstract class AbstractStateStorage extends LifecycleProxy implements Sta
      */
     @Override
     public void dump(String location) throws IOException {
-        StateStorage snapshot = this.snapshot();
-
-        Collection<StateNode> nodes = snapshot.getStateNodes();
-
         File file = new File(location);
         if (file.exists()) {
             throw new IOException("File already exists.");
         }
 
-        FileOutputStream fout = new FileOutputStream(file);
-        DataOutput out = new DataOutputStream(fout);
-
-        for (StateNode node : nodes) {
-            node.serialize(out);
+        StorageSnapshot snapshot = snapshot();
+        try {
+            Snapshot.write(file, snapshot.getMaxXid(), currentEpoch(), snapshot.getStateNodes());
+        } finally {
+            snapshot.release();
         }
-
-        fout.flush();
-        fout.close();
     }
 
     @Override
     public void executeInvalidateTask() {
-        for (StateNode node : getStateNodes()) {
-            node.executeInvalidateTask();
-        }
+        forEachParallel(new Consumer<StateNode>() {
+            @Override
+            public void accept(StateNode node) {
+                node.executeInvalidateTask();
+            }
+        });
     }
 
     @Override
     public void removeInvalidateTask() {
-        for (StateNode node : getStateNodes()) {
-            node.removeInvalidateTask();
-        }
+        forEachParallel(new Consumer<StateNode>() {
+            @Override
+            public void accept(StateNode node) {
+                node.removeInvalidateTask();
+            }
+        });
+    }
+
+    /**
+     * Traverses the nodes leaf by leaf of merkle tree
+     */
+    @Override
+    public Spliterator<StateNode> spliterator() {
+        return new MerkleSpliterator<StateNode>(this, Collections.singletonList(tree.getRoot()));
+    }
+
+    @Override
+    public void forEachParallel(Consumer<StateNode> action) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // a few more parts than workers for balancing the uneven hash ranges
+        int depth = 34 - Integer.numberOfLeadingZeros(pool.getParallelism());
+        pool.invoke(new ForEachTask(spliterator(), action, depth));
     }
 
     @Override
     public void enablePurgeThread() {
         if (purgeRunning.compareAndSet(false, true)) {
-            componentManager.getScheduleManager().schedule(purgeThread, componentManager.getGlobalConfiguration()
-                    .getStateNodePurgeExpire());
+            long period = componentManager.getGlobalConfiguration().getStateNodePurgeExpire();
+            componentManager.getScheduleManager().schedule(purgeThread, period, period);
         } else {
             throw new IllegalStateException("Purge has already running.");
         }
@@ -127,13 +903,376 @@ public abstract class AbstractStateStorage extends LifecycleProxy implements Sta
         }
     }
 
+    @Override
+    public List<StateNode> scan(String prefix, int limit, String cursor) {
+        if (prefix == null) {
+            prefix = "";
+        }
+        if (cursor != null && cursor.compareTo(prefix) >= 0) {
+            return scan(cursor, false, prefix, null, limit);
+        }
+        return scan(prefix, true, prefix, null, limit);
+    }
+
+    @Override
+    public List<StateNode> scan(String fromKey, String toKey, int limit, String cursor) {
+        if (cursor != null && (fromKey == null || cursor.compareTo(fromKey) >= 0)) {
+            return scan(cursor, false, "", toKey, limit);
+        }
+        return scan(fromKey == null ? "" : fromKey, true, "", toKey, limit);
+    }
+
+    private List<StateNode> scan(String fromKey, boolean inclusive, String prefix, String toKey, int limit) {
+        List<StateNode> nodes = new ArrayList<StateNode>();
+
+        Iterator<StateNode> it = iterate(fromKey, inclusive);
+        boolean ended = false;
+        while (nodes.size() < limit) {
+            if (!it.hasNext()) {
+                ended = true;
+                break;
+            }
+            StateNode node = it.next();
+            // keys are visited in order, the first mismatched key ends the scan
+            if (!node.key.startsWith(prefix) || (toKey != null && node.key.compareTo(toKey) >= 0)) {
+                ended = true;
+                break;
+            }
+            nodes.add(node);
+        }
+
+        // the next page continues the sorted keys
+        if (!ended && !nodes.isEmpty() && it instanceof SortedKeyIterator) {
+            synchronized (scanCursors) {
+                scanCursors.put(nodes.get(nodes.size() - 1).key, (SortedKeyIterator) it);
+            }
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Iterate the nodes whose key is greater than(or equal to if <code>inclusive</code>) <code>fromKey</code> in key
+     * order. The storages without ordering sort the keys once per scan, the following pages continue the sorted keys
+     * by cursor(the keys added after the first page may be missed); the ordered one should override it.
+     */
+    protected Iterator<StateNode> iterate(String fromKey, boolean inclusive) {
+        if (!inclusive) {
+            SortedKeyIterator it;
+            synchronized (scanCursors) {
+                it = scanCursors.remove(fromKey);
+            }
+            if (it != null) {
+                return it;
+            }
+        }
+
+        List<String> keys = new ArrayList<String>();
+        for (StateNode node : getStateNodes()) {
+            int c = node.key.compareTo(fromKey);
+            if (c > 0 || (c == 0 && inclusive)) {
+                keys.add(node.key);
+            }
+        }
+        Collections.sort(keys);
+
+        return new SortedKeyIterator(keys.toArray(new String[keys.size()]));
+    }
+
     @Override
     public MerkleTree<StateNode> getMerkleTree() {
+        tree.loadHash();
         return tree;
     }
 
+    @Override
+    public InvertibleBloomTable getSketch() {
+        return tree.getSketch() == null ? null : tree.getSketch().copy();
+    }
+
     @Override
     public long getMaxXid() {
         return maxXid.longValue();
     }
+
+    /**
+     * Assigns the xid of a mutation on <code>key</code>, it's invoked under the key lock(except the state mutations
+     * of node). The xid must be greater than {@link #toLogXid(long)} of {@link #pinXid()} at any pinning before the
+     * mutation, so that the snapshot and commit log never take a later mutation as covered.
+     */
+    protected long nextXid(String key) {
+        return maxXid.incrementAndGet();
+    }
+
+    /**
+     * Returns the max xid for pinning a snapshot, it's invoked with all pin locks
+     */
+    protected long pinXid() {
+        return getMaxXid();
+    }
+
+    /**
+     * Converts the max xid of snapshot to the greatest xid it covers in commit log, the xids in commit log are the
+     * ones assigned by {@link #nextXid(String)}
+     */
+    protected long toLogXid(long maxXid) {
+        return maxXid;
+    }
+
+    /**
+     * Converts the xid in commit log to the max xid restored by it
+     */
+    protected long fromLogXid(long logXid) {
+        return logXid;
+    }
+
+    /**
+     * Sets the max xid while restoring, no mutation is running at the time(or the xid is raised by a streamed
+     * snapshot)
+     */
+    protected void restoreXid(long xid) {
+        maxXid.set(xid);
+    }
+
+    /**
+     * Create the merkle tree over <code>range</code> of the configured layout, the storage is its object factory
+     */
+    protected MerkleTree<StateNode> newMerkleTree(Range range, byte depth) {
+        MerkleTree<StateNode> tree = MerkleTree.create(componentManager.getGlobalConfiguration()
+                .getMerkleTreeLayout(), range, depth, StateNode.class);
+        tree.setObjectFactory(this);
+        tree.setHashPool(hashPool);
+
+        int cells = componentManager.getGlobalConfiguration().getSketchCells();
+        if (cells > 0) {
+            tree.setSketch(new InvertibleBloomTable(cells));
+        }
+        return tree;
+    }
+
+    /**
+     * Retrieve the merkle tree which maintains the range of <code>key</code>
+     */
+    protected MerkleTree<StateNode> merkleTree(String key) {
+        return tree;
+    }
+
+    /**
+     * The state of node removed at <code>clock</code>
+     */
+    static class Tombstone {
+        final String key;
+        final int type;
+        final StateNode.State state;
+        final long clock;
+
+        Tombstone(String key, int type, StateNode.State state, long clock) {
+            this.key = key;
+            this.type = type;
+            this.state = state;
+            this.clock = clock;
+        }
+    }
+
+    /**
+     * A change of {@link Difference}
+     */
+    private static class Change {
+        static final byte ADD = 0;
+        static final byte REMOVE = 1;
+        static final byte UPDATE = 2;
+
+        final byte op;
+        final StateNode node;
+        final int hash;
+
+        Change(byte op, StateNode node) {
+            this.op = op;
+            this.node = node;
+            this.hash = MurmurHash.hash(node.key);
+        }
+    }
+
+    /**
+     * Splits the changes by the halves of merkle range until <code>depth</code> is exhausted(or the part is small),
+     * and applies each part on the pool
+     */
+    private class ApplyTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 7407525841626402093L;
+
+        private final List<Change> changes;
+        private final Range range;
+        private final int depth;
+
+        ApplyTask(List<Change> changes, Range range, int depth) {
+            this.changes = changes;
+            this.range = range;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Range left = range.getLeftRange();
+            if (depth == 0 || left == null || changes.size() <= MIN_APPLY_PART) {
+                return apply(changes);
+            }
+
+            List<Change> lefts = new ArrayList<Change>();
+            List<Change> rights = new ArrayList<Change>();
+            for (Change change : changes) {
+                if (left.contains(change.hash)) {
+                    lefts.add(change);
+                } else {
+                    rights.add(change);
+                }
+            }
+
+            ApplyTask leftTask = new ApplyTask(lefts, left, depth - 1);
+            ApplyTask rightTask = new ApplyTask(rights, range.getRightRange(), depth - 1);
+            invokeAll(leftTask, rightTask);
+            return Math.max(leftTask.join(), rightTask.join());
+        }
+    }
+
+    /**
+     * The merkle tree changes and the commit log sequence of a part of difference, the merkle trees are updated leaf
+     * by leaf on flushing. The nodes are copied at mutating, since the stored ones may be removed before flushing.
+     */
+    private class Batch {
+        private final Map<MerkleTree<StateNode>, List<StateNode>> puts = new IdentityHashMap<MerkleTree<StateNode>,
+                List<StateNode>>();
+        private final Map<MerkleTree<StateNode>, List<String>> removes = new IdentityHashMap<MerkleTree<StateNode>,
+                List<String>>();
+        private long seq;
+
+        /**
+         * Invoked under the key lock
+         */
+        void put(StateNode node) {
+            MerkleTree<StateNode> tree = merkleTree(node.key);
+            List<StateNode> nodes = puts.get(tree);
+            if (nodes == null) {
+                nodes = new ArrayList<StateNode>();
+                puts.put(tree, nodes);
+            }
+            nodes.add(new StateNode(node.key, node.type, node.getState()));
+        }
+
+        /**
+         * Invoked under the key lock
+         */
+        void remove(String key) {
+            MerkleTree<StateNode> tree = merkleTree(key);
+            List<String> keys = removes.get(tree);
+            if (keys == null) {
+                keys = new ArrayList<String>();
+                removes.put(tree, keys);
+            }
+            keys.add(key);
+        }
+
+        void log(long seq) {
+            if (seq > this.seq) {
+                this.seq = seq;
+            }
+        }
+
+        /**
+         * Updates the merkle trees, the keys mutated by others after the batch mutations are re-synchronized with
+         * storage, the later mutations update the merkle tree by themselves.
+         */
+        void flush() {
+            for (Map.Entry<MerkleTree<StateNode>, List<String>> e : removes.entrySet()) {
+                e.getKey().removeAll(e.getValue());
+            }
+            for (Map.Entry<MerkleTree<StateNode>, List<StateNode>> e : puts.entrySet()) {
+                e.getKey().putAll(e.getValue());
+            }
+
+            for (List<String> keys : removes.values()) {
+                for (String key : keys) {
+                    verifyMerkle(key, -1);
+                }
+            }
+            for (List<StateNode> nodes : puts.values()) {
+                for (StateNode node : nodes) {
+                    verifyMerkle(node.key, node.getVersion());
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the nodes in halves until <code>depth</code> is exhausted, and visits each part on the pool
+     */
+    private static class ForEachTask extends RecursiveAction {
+        private static final long serialVersionUID = -1622870497219436350L;
+
+        private final Spliterator<StateNode> spliterator;
+        private final Consumer<StateNode> action;
+        private final int depth;
+
+        ForEachTask(Spliterator<StateNode> spliterator, Consumer<StateNode> action, int depth) {
+            this.spliterator = spliterator;
+            this.action = action;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            Spliterator<StateNode> prefix = depth > 0 ? spliterator.trySplit() : null;
+            if (prefix == null) {
+                spliterator.forEachRemaining(action);
+            } else {
+                invokeAll(new ForEachTask(prefix, action, depth - 1), new ForEachTask(spliterator, action, depth - 1));
+            }
+        }
+    }
+
+    /**
+     * Iterates the nodes of sorted keys, the removed ones are skipped
+     */
+    private class SortedKeyIterator implements Iterator<StateNode> {
+        private final String[] keys;
+        private int position;
+        private StateNode next;
+
+        SortedKeyIterator(String[] keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && position < keys.length) {
+                next = get(keys[position++]);
+            }
+            return next != null;
+        }
+
+        @Override
+        public StateNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            StateNode node = next;
+            next = null;
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class CheckpointTask implements Runnable {
+        @Override
+        public void run() {
+            try {
+                checkpoint();
+            } catch (Exception e) {
+                logger.error("Failed to take snapshot.", e);
+            }
+        }
+    }
 }
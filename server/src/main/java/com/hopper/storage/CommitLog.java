@@ -0,0 +1,504 @@
+package com.hopper.storage;
+
+import com.hopper.lifecycle.LifecycleProxy;
+import com.hopper.session.BufferDataInput;
+import com.hopper.session.BufferDataOutput;
+import com.hopper.session.Serializer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link CommitLog} is an append-only mutation log for {@link StateStorage}. Every mutation is written as a record
+ * carrying its xid, and records are group-committed by a single writer thread: all records appended while the
+ * previous batch is being written are flushed together with one fsync.
+ * <p/>
+ * Record layout (all integers are big-endian):
+ * <pre>
+ * int   size     (bytes of xid + op + payload)
+ * long  xid
+ * byte  op
+ * bytes payload  (serialized StateNode, or the key for OP_REMOVE)
+ * int   crc32    (of the size, xid, op and payload bytes)
+ * </pre>
+ * The log is split into segments named <tt>CommitLog-&lt;sequence&gt;.log</tt>, a new segment is created when the
+ * active one exceeds the configured segment size.
+ */
+public class CommitLog extends LifecycleProxy {
+
+    public static final byte OP_PUT = 1;
+    public static final byte OP_REMOVE = 2;
+    public static final byte OP_SET_STATUS = 3;
+    public static final byte OP_EXPAND_LEASE = 4;
+    public static final byte OP_INVALIDATE = 5;
+    public static final byte OP_UPDATE = 6;
+
+    private static final String SEGMENT_PREFIX = "CommitLog-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Log directory
+     */
+    private final File directory;
+    /**
+     * Maximum segment size(bytes)
+     */
+    private final long segmentSize;
+
+    /**
+     * Protects the pending queue and the sequence numbers
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Signalled when some records are appended
+     */
+    private final Condition appended = lock.newCondition();
+    /**
+     * Signalled when a batch has been flushed
+     */
+    private final Condition flushed = lock.newCondition();
+
+    /**
+     * Records waiting for the next group commit
+     */
+    private List<byte[]> pending = new ArrayList<byte[]>();
+    /**
+     * The sequence of the last appended record
+     */
+    private long appendedSeq;
+    /**
+     * The sequence of the last durable record
+     */
+    private long durableSeq;
+    /**
+     * The exception occurred on last flushing, all waiters will fail with it
+     */
+    private IOException failure;
+    /**
+     * The max xid of records appended since last group commit
+     */
+    private long pendingMaxXid;
+    /**
+     * The max xid of each segment, it's used for discarding segments covered by snapshot
+     */
+    private final ConcurrentSkipListMap<Integer, Long> segmentMaxXids = new ConcurrentSkipListMap<Integer, Long>();
+
+    private volatile boolean running;
+
+    private Thread writerThread;
+
+    private volatile int segmentSequence;
+    private RandomAccessFile segmentFile;
+    private FileChannel segmentChannel;
+
+    public CommitLog(File directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Read all existing segments(in order) and pass each valid record to <code>handler</code>. A torn or corrupted
+     * record in the last segment indicates the tail of the log, the segment will be truncated at that position; in an
+     * earlier segment it would leave a gap under the later records, so the replay fails. The method must be invoked
+     * before starting the log.
+     *
+     * @throws IOException if a record before the last segment is corrupted
+     */
+    public void replay(ReplayHandler handler) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Can't replay a running commit log.");
+        }
+
+        File[] segments = listSegments();
+        for (int i = 0; i < segments.length; i++) {
+            int sequence = parseSequence(segments[i]);
+            segmentSequence = Math.max(segmentSequence, sequence);
+            segmentMaxXids.put(sequence, replaySegment(segments[i], handler, i == segments.length - 1));
+        }
+    }
+
+    /**
+     * Deletes all inactive segments in which all records' xid are not greater than <code>xid</code>.
+     */
+    public void discard(long xid) {
+        for (Map.Entry<Integer, Long> entry : segmentMaxXids.headMap(segmentSequence).entrySet()) {
+            if (entry.getValue() > xid) {
+                break;
+            }
+
+            File segment = new File(directory, SEGMENT_PREFIX + entry.getKey() + SEGMENT_SUFFIX);
+            if (segment.delete() || !segment.exists()) {
+                segmentMaxXids.remove(entry.getKey());
+                logger.info("Discarded the commit log {}", segment.getName());
+            } else {
+                logger.warn("Failed to delete the commit log {}", segment.getName());
+            }
+        }
+    }
+
+    /**
+     * Replay the segment and return the max xid in it, only the last segment may have a torn tail
+     */
+    private long replaySegment(File segment, ReplayHandler handler, boolean last) throws IOException {
+        long maxXid = 0;
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            long position = 0;
+            final long length = channel.size();
+
+            while (position < length) {
+                byte[] record = readRecord(channel, position, length);
+
+                if (record == null && !last) {
+                    throw new IOException("Corrupted commit log " + segment.getName() + " at position " + position);
+                }
+
+                // torn tail, drop it
+                if (record == null) {
+                    logger.warn("Truncate the commit log {} at position {}", segment.getName(), position);
+                    channel.truncate(position);
+                    break;
+                }
+
+                BufferDataInput in = new BufferDataInput(ChannelBuffers.wrappedBuffer(record));
+                long xid = in.readLong();
+                byte op = in.readByte();
+                handler.replay(xid, op, in);
+                maxXid = Math.max(maxXid, xid);
+
+                position += record.length + 4;
+            }
+        } finally {
+            file.close();
+        }
+
+        return maxXid;
+    }
+
+    /**
+     * Read the record at <code>position</code>, return null if the record is incomplete or corrupted.
+     */
+    private byte[] readRecord(FileChannel channel, long position, long length) throws IOException {
+        if (length - position < 4) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(4);
+        channel.read(header, position);
+        header.flip();
+        int size = header.getInt();
+
+        if (size <= 0 || length - position < 4 + size + 4) {
+            return null;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(4 + size + 4);
+        while (body.hasRemaining()) {
+            if (channel.read(body, position + body.position()) < 0) {
+                return null;
+            }
+        }
+
+        byte[] record = new byte[4 + size];
+        body.flip();
+        body.get(record);
+        int crc = body.getInt();
+
+        return checksum(record, 0, record.length) == crc ? record : null;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create commit log directory " + directory);
+        }
+
+        openSegment(segmentSequence == 0 ? 1 : segmentSequence);
+
+        running = true;
+        writerThread = new Thread(new GroupCommitTask(), "CommitLog_writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    protected void doShutdown() throws Exception {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+
+        lock.lock();
+        try {
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        writerThread.join();
+        segmentChannel.force(true);
+        segmentFile.close();
+    }
+
+    @Override
+    public String getInfo() {
+        return "Commit log";
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Append a record of <code>image</code>(a serialized StateNode), the record will be durable after the next group
+     * commit.
+     *
+     * @return the sequence of the record, use it with {@link #sync(long)} for waiting the durability
+     */
+    public long append(long xid, byte op, final Serializer image) {
+        return append(xid, op, new Record() {
+            @Override
+            public void write(DataOutput out) throws IOException {
+                image.serialize(out);
+            }
+        });
+    }
+
+    /**
+     * Append a record written by <code>record</code>, the record will be durable after the next group commit.
+     *
+     * @return the sequence of the record, use it with {@link #sync(long)} for waiting the durability
+     */
+    public long append(long xid, byte op, Record record) {
+        BufferDataOutput out = new BufferDataOutput();
+        out.writeLong(xid);
+        out.writeByte(op);
+        try {
+            record.write(out);
+        } catch (IOException e) {
+            // never happen on memory buffer
+            throw new IllegalStateException(e);
+        }
+
+        return append(xid, out);
+    }
+
+    /**
+     * Append a remove record of <code>key</code>
+     */
+    public long appendRemove(long xid, String key) {
+        BufferDataOutput out = new BufferDataOutput();
+        out.writeLong(xid);
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(key);
+
+        return append(xid, out);
+    }
+
+    private long append(long xid, BufferDataOutput out) {
+        out.complete();
+
+        final int size = out.size();
+        byte[] record = new byte[size + 4];
+        out.buffer().getBytes(0, record, 0, size);
+
+        int crc = checksum(record, 0, size);
+        record[size] = (byte) (crc >>> 24);
+        record[size + 1] = (byte) (crc >>> 16);
+        record[size + 2] = (byte) (crc >>> 8);
+        record[size + 3] = (byte) crc;
+
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Commit log is not running.");
+            }
+            pending.add(record);
+            pendingMaxXid = Math.max(pendingMaxXid, xid);
+            appended.signal();
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waiting until the record identified by <code>seq</code> is durable.
+     */
+    public void sync(long seq) {
+        lock.lock();
+        try {
+            while (durableSeq < seq && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+
+            if (failure != null) {
+                throw new IllegalStateException("Failed to write commit log.", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void openSegment(int sequence) throws IOException {
+        this.segmentSequence = sequence;
+        File file = new File(directory, SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+        this.segmentFile = new RandomAccessFile(file, "rw");
+        this.segmentChannel = segmentFile.getChannel();
+        segmentChannel.position(segmentChannel.size());
+    }
+
+    private void rollSegment() throws IOException {
+        segmentChannel.force(true);
+        segmentFile.close();
+        openSegment(segmentSequence + 1);
+    }
+
+    /**
+     * Return all segments ordered by sequence
+     */
+    File[] listSegments() {
+        File[] segments = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().startsWith(SEGMENT_PREFIX) && file.getName().endsWith
+                        (SEGMENT_SUFFIX);
+            }
+        });
+
+        if (segments == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return parseSequence(f1) - parseSequence(f2);
+            }
+        });
+
+        return segments;
+    }
+
+    private static int parseSequence(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int checksum(byte[] b, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(b, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * The payload of a record, it's only written to the log and read back by {@link ReplayHandler}
+     */
+    public interface Record {
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * The callback for replaying records
+     */
+    public interface ReplayHandler {
+        /**
+         * Replay a record, <code>in</code> is positioned at the payload.
+         */
+        void replay(long xid, byte op, BufferDataInput in) throws IOException;
+    }
+
+    /**
+     * The writer thread drains all pending records, writes them with one gathering write and fsync once per batch.
+     */
+    private class GroupCommitTask implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                List<byte[]> batch;
+                long batchSeq;
+                long batchMaxXid;
+
+                lock.lock();
+                try {
+                    while (pending.isEmpty() && running) {
+                        appended.awaitUninterruptibly();
+                    }
+
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+
+                    batch = pending;
+                    batchSeq = appendedSeq;
+                    batchMaxXid = pendingMaxXid;
+                    pending = new ArrayList<byte[]>();
+                } finally {
+                    lock.unlock();
+                }
+
+                IOException exception = null;
+                try {
+                    write(batch, batchMaxXid);
+                } catch (IOException e) {
+                    logger.error("Failed to write commit log.", e);
+                    exception = e;
+                }
+
+                lock.lock();
+                try {
+                    if (exception != null) {
+                        failure = exception;
+                    } else {
+                        durableSeq = batchSeq;
+                    }
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void write(List<byte[]> batch, long maxXid) throws IOException {
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            long remaining = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.wrap(batch.get(i));
+                remaining += buffers[i].remaining();
+            }
+
+            while (remaining > 0) {
+                remaining -= segmentChannel.write(buffers);
+            }
+
+            // one fsync per batch
+            segmentChannel.force(false);
+
+            Long segmentMaxXid = segmentMaxXids.get(segmentSequence);
+            if (segmentMaxXid == null || segmentMaxXid < maxXid) {
+                segmentMaxXids.put(segmentSequence, maxXid);
+            }
+
+            if (segmentChannel.size() >= segmentSize) {
+                rollSegment();
+            }
+        }
+    }
+}
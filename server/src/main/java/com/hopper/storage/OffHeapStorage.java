@@ -0,0 +1,662 @@
+package com.hopper.storage;
+
+import com.hopper.GlobalConfiguration;
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.stage.Stage;
+import com.hopper.util.MurmurHash;
+import com.hopper.util.Timeout;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Holds all state nodes on off-heap slabs for saving heap and GC purpose.
+ * <p/>
+ * Each node is a fixed-size record in a direct {@link ByteBuffer} slab, the key and owner are stored inline if they
+ * fit the configured capacities. Keys are indexed by an open-addressing(linear probing) hash table of slot numbers.
+ * Only the watch listeners, the versions retained for storage snapshots and the oversized strings are kept on heap, in
+ * a side table. The invalidate timeout is the handle owned by the timing wheel, it's referenced from a per-slab array
+ * without any per-node wrapper.
+ * <p/>
+ * {@link #get(String)} returns a flyweight view bound to the record, the view reads the record with an optimistic
+ * stamp of its lock stripe and writes it with CAS semantic under the stripe lock. The scalar fields are read from the
+ * record directly, only {@link StateNode#getState()} decodes the whole state. A record slot may be reused after
+ * removing, the generation of the record makes the stale views fail.
+ * <p/>
+ * Record layout:
+ * <pre>
+ * int  generation(positive: live, negative: free), int type, int status, int invalidate status, int lease,
+ * int  key length(-1: on heap), int owner length(-1: null, -2: on heap), int key hash,
+ * long last modified, long version, long snapshot clock, key bytes, owner bytes
+ * </pre>
+ */
+public class OffHeapStorage extends AbstractStateStorage {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int GENERATION = 0;
+    private static final int TYPE = 4;
+    private static final int STATUS = 8;
+    private static final int INVALIDATE_STATUS = 12;
+    private static final int LEASE = 16;
+    private static final int KEY_LENGTH = 20;
+    private static final int OWNER_LENGTH = 24;
+    private static final int HASH = 28;
+    private static final int LAST_MODIFIED = 32;
+    private static final int VERSION = 40;
+    private static final int CLOCK = 48;
+    private static final int KEY = 56;
+
+    private static final int NULL_OWNER = -1;
+    private static final int SPILLED = -2;
+
+    /**
+     * 2^14 records per slab
+     */
+    private static final int SLAB_BITS = 14;
+    private static final int SLAB_RECORDS = 1 << SLAB_BITS;
+    private static final int SLAB_MASK = SLAB_RECORDS - 1;
+
+    private static final int STRIPES = 256;
+
+    private static final String[] NO_LISTENERS = new String[0];
+
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private final int keyCapacity;
+    private final int ownerCapacity;
+    private final int recordSize;
+
+    /**
+     * Protects the index, the slab arrays and the slot allocation
+     */
+    private final StampedLock structureLock = new StampedLock();
+
+    /**
+     * Protects the record fields, striped by slot
+     */
+    private final StampedLock[] stripes = new StampedLock[STRIPES];
+
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private volatile Extras[][] extras = new Extras[0][];
+    private volatile Timeout[][] timeouts = new Timeout[0][];
+
+    /**
+     * Open-addressing index, slot + 1 (0 means empty)
+     */
+    private volatile int[] index = new int[1024];
+    private int size;
+
+    /**
+     * Slots ever allocated
+     */
+    private int allocated;
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+
+    public OffHeapStorage() {
+        super();
+        GlobalConfiguration config = componentManager.getGlobalConfiguration();
+        this.keyCapacity = config.getOffHeapKeyCapacity();
+        this.ownerCapacity = config.getOffHeapOwnerCapacity();
+        this.recordSize = (KEY + keyCapacity + ownerCapacity + 7) & ~7;
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new StampedLock();
+        }
+    }
+
+    @Override
+    protected StateNode doPut(StateNode node) {
+        final int hash = MurmurHash.hash(node.key);
+        long stamp = structureLock.writeLock();
+        try {
+            int slot = find(node.key, hash);
+            if (slot >= 0) {
+                return newView(slot, node.key);
+            }
+
+            slot = allocate();
+            StampedLock stripe = stripe(slot);
+            long recordStamp = stripe.writeLock();
+            try {
+                ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+                int offset = (slot & SLAB_MASK) * recordSize;
+                int generation = Math.abs(slab.getInt(offset + GENERATION)) + 1;
+
+                slab.putInt(offset + GENERATION, generation);
+                slab.putInt(offset + TYPE, node.type);
+                slab.putInt(offset + HASH, hash);
+
+                String spilledKey = null;
+                byte[] key = node.key.getBytes(UTF8);
+                if (key.length <= keyCapacity) {
+                    slab.putInt(offset + KEY_LENGTH, key.length);
+                    putBytes(slab, offset + KEY, key);
+                } else {
+                    slab.putInt(offset + KEY_LENGTH, -1);
+                    spilledKey = node.key;
+                }
+
+                writeState(slot, spilledKey, node.getState());
+            } finally {
+                stripe.unlockWrite(recordStamp);
+            }
+
+            insert(slot, hash);
+            return null;
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    protected StateNode doRemove(String key) {
+        final int hash = MurmurHash.hash(key);
+        long stamp = structureLock.writeLock();
+        try {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+
+            delete(slot, hash);
+
+            StampedLock stripe = stripe(slot);
+            long recordStamp = stripe.writeLock();
+            StateNode.State state;
+            int type;
+            try {
+                ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+                int offset = (slot & SLAB_MASK) * recordSize;
+                state = readState(slot);
+                type = slab.getInt(offset + TYPE);
+
+                // free the record
+                slab.putInt(offset + GENERATION, -slab.getInt(offset + GENERATION));
+                extras[slot >>> SLAB_BITS][slot & SLAB_MASK] = null;
+                timeouts[slot >>> SLAB_BITS][slot & SLAB_MASK] = null;
+            } finally {
+                stripe.unlockWrite(recordStamp);
+            }
+
+            if (state.timeout != null) {
+                state.timeout.cancel();
+            }
+            release(slot);
+
+            // the removed node is detached from the storage
+            return new StateNode(key, type, state);
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public StateNode get(String key) {
+        final int hash = MurmurHash.hash(key);
+
+        long stamp = structureLock.tryOptimisticRead();
+        int slot;
+        int generation = 0;
+        try {
+            slot = find(key, hash);
+            if (slot >= 0) {
+                generation = generation(slot);
+            }
+        } catch (RuntimeException e) {
+            // inconsistent read during resizing
+            slot = -1;
+            stamp = 0;
+        }
+
+        if (!structureLock.validate(stamp)) {
+            stamp = structureLock.readLock();
+            try {
+                slot = find(key, hash);
+                if (slot >= 0) {
+                    generation = generation(slot);
+                }
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        }
+
+        return slot < 0 ? null : newView(slot, generation, key);
+    }
+
+    @Override
+    public Collection<StateNode> getStateNodes() {
+        long stamp = structureLock.readLock();
+        try {
+            List<StateNode> nodes = new ArrayList<StateNode>(size);
+            for (int slot = 0; slot < allocated; slot++) {
+                int generation = generation(slot);
+                if (generation > 0) {
+                    nodes.add(newView(slot, generation, readKey(slot)));
+                }
+            }
+            return nodes;
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Return the count of stored nodes
+     */
+    public int size() {
+        long stamp = structureLock.readLock();
+        try {
+            return size;
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public String getInfo() {
+        return "Off-heap storage";
+    }
+
+    private StampedLock stripe(int slot) {
+        return stripes[slot & (STRIPES - 1)];
+    }
+
+    private int generation(int slot) {
+        return slabs[slot >>> SLAB_BITS].getInt((slot & SLAB_MASK) * recordSize + GENERATION);
+    }
+
+    private StateNode newView(int slot, String key) {
+        return newView(slot, generation(slot), key);
+    }
+
+    private StateNode newView(int slot, int generation, String key) {
+        ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+        NodeView view = new NodeView(key, slab.getInt((slot & SLAB_MASK) * recordSize + TYPE), slot, generation);
+        view.setScheduleManager(componentManager.getScheduleManager());
+        view.setNotifyExecutorService(componentManager.getStageManager().getThreadPool(Stage.STATE_CHANGE));
+        view.setStorage(this);
+        return view;
+    }
+
+    /**
+     * Probes the index, return the slot or -1. It must be invoked with structure lock(or optimistic stamp).
+     */
+    private int find(String key, int hash) {
+        int[] table = index;
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = table[i];
+            if (entry == 0) {
+                return -1;
+            }
+
+            int slot = entry - 1;
+            ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+            int offset = (slot & SLAB_MASK) * recordSize;
+            if (slab.getInt(offset + HASH) == hash && keyEquals(slot, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(int slot, String key) {
+        ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+        int offset = (slot & SLAB_MASK) * recordSize;
+        int length = slab.getInt(offset + KEY_LENGTH);
+
+        if (length < 0) {
+            Extras e = extras[slot >>> SLAB_BITS][slot & SLAB_MASK];
+            return e != null && key.equals(e.key);
+        }
+
+        byte[] b = key.getBytes(UTF8);
+        if (b.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (slab.get(offset + KEY + i) != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readKey(int slot) {
+        ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+        int offset = (slot & SLAB_MASK) * recordSize;
+        int length = slab.getInt(offset + KEY_LENGTH);
+        if (length < 0) {
+            return extras[slot >>> SLAB_BITS][slot & SLAB_MASK].key;
+        }
+        return new String(getBytes(slab, offset + KEY, length), UTF8);
+    }
+
+    private void insert(int slot, int hash) {
+        if ((size + 1) * 2 > index.length) {
+            resize(index.length * 2);
+        }
+
+        int[] table = index;
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+        size++;
+    }
+
+    /**
+     * Backward shift deletion of linear probing, no tombstone is left
+     */
+    private void delete(int slot, int hash) {
+        int[] table = index;
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != slot + 1) {
+            i = (i + 1) & mask;
+        }
+
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == 0) {
+                break;
+            }
+            int home = hashOf(table[j] - 1) & mask;
+            // the entry at j can be moved to i if its home is not in (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+        size--;
+    }
+
+    private int hashOf(int slot) {
+        return slabs[slot >>> SLAB_BITS].getInt((slot & SLAB_MASK) * recordSize + HASH);
+    }
+
+    private void resize(int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry : index) {
+            if (entry != 0) {
+                int i = hashOf(entry - 1) & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry;
+            }
+        }
+        this.index = table;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+
+        if (allocated == slabs.length * SLAB_RECORDS) {
+            ByteBuffer[] newSlabs = Arrays.copyOf(slabs, slabs.length + 1);
+            newSlabs[slabs.length] = ByteBuffer.allocateDirect(SLAB_RECORDS * recordSize);
+            Extras[][] newExtras = Arrays.copyOf(extras, extras.length + 1);
+            newExtras[extras.length] = new Extras[SLAB_RECORDS];
+            Timeout[][] newTimeouts = Arrays.copyOf(timeouts, timeouts.length + 1);
+            newTimeouts[timeouts.length] = new Timeout[SLAB_RECORDS];
+            this.extras = newExtras;
+            this.timeouts = newTimeouts;
+            this.slabs = newSlabs;
+        }
+
+        return allocated++;
+    }
+
+    private void release(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Decode the state of record, it must be invoked with stripe lock(or optimistic stamp)
+     */
+    private StateNode.State readState(int slot) {
+        ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+        int offset = (slot & SLAB_MASK) * recordSize;
+        Extras e = extras[slot >>> SLAB_BITS][slot & SLAB_MASK];
+
+        String owner;
+        int ownerLength = slab.getInt(offset + OWNER_LENGTH);
+        if (ownerLength == NULL_OWNER) {
+            owner = null;
+        } else if (ownerLength == SPILLED) {
+            owner = e.owner;
+        } else {
+            owner = new String(getBytes(slab, offset + KEY + keyCapacity, ownerLength), UTF8);
+        }
+
+        StateNode.State state = new StateNode.State(slab.getInt(offset + STATUS), slab.getInt(offset +
+                INVALIDATE_STATUS), owner, slab.getInt(offset + LEASE), slab.getLong(offset + LAST_MODIFIED), slab
+                .getLong(offset + VERSION), e == null ? NO_LISTENERS : e.listeners, timeouts[slot >>> SLAB_BITS][slot &
+                SLAB_MASK]);
+        state.clock = slab.getLong(offset + CLOCK);
+        state.previous = e == null ? null : e.previous;
+        return state;
+    }
+
+    /**
+     * Encode the state into record, it must be invoked with stripe write lock
+     */
+    private void writeState(int slot, String spilledKey, StateNode.State state) {
+        ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+        int offset = (slot & SLAB_MASK) * recordSize;
+
+        slab.putInt(offset + STATUS, state.status);
+        slab.putInt(offset + INVALIDATE_STATUS, state.invalidateStatus);
+        slab.putInt(offset + LEASE, state.lease);
+        slab.putLong(offset + LAST_MODIFIED, state.lastModified);
+        slab.putLong(offset + VERSION, state.version);
+        slab.putLong(offset + CLOCK, state.clock);
+
+        String spilledOwner = null;
+        if (state.owner == null) {
+            slab.putInt(offset + OWNER_LENGTH, NULL_OWNER);
+        } else {
+            byte[] owner = state.owner.getBytes(UTF8);
+            if (owner.length <= ownerCapacity) {
+                slab.putInt(offset + OWNER_LENGTH, owner.length);
+                putBytes(slab, offset + KEY + keyCapacity, owner);
+            } else {
+                slab.putInt(offset + OWNER_LENGTH, SPILLED);
+                spilledOwner = state.owner;
+            }
+        }
+
+        Extras e = null;
+        if (spilledKey != null || spilledOwner != null || state.listeners.length > 0 || state.previous != null) {
+            e = new Extras(spilledKey, spilledOwner, state.listeners, state.previous);
+        }
+        extras[slot >>> SLAB_BITS][slot & SLAB_MASK] = e;
+        timeouts[slot >>> SLAB_BITS][slot & SLAB_MASK] = state.timeout;
+    }
+
+    private long readRecordField(int slot, int field, boolean isLong) {
+        ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+        int offset = (slot & SLAB_MASK) * recordSize + field;
+        return isLong ? slab.getLong(offset) : slab.getInt(offset);
+    }
+
+    private static void putBytes(ByteBuffer buffer, int offset, byte[] b) {
+        for (int i = 0; i < b.length; i++) {
+            buffer.put(offset + i, b[i]);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int offset, int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = buffer.get(offset + i);
+        }
+        return b;
+    }
+
+    private static boolean sameState(StateNode.State s1, StateNode.State s2) {
+        return s1.status == s2.status && s1.invalidateStatus == s2.invalidateStatus && s1.lease == s2.lease && s1
+                .lastModified == s2.lastModified && s1.version == s2.version && s1.listeners == s2.listeners && s1
+                .timeout == s2.timeout && s1.clock == s2.clock && s1.previous == s2.previous && (s1.owner == null ? s2.owner == null : s1.owner.equals(s2.owner));
+    }
+
+    /**
+     * The on-heap part of record
+     */
+    private static class Extras {
+        final String key;
+        final String owner;
+        final String[] listeners;
+        final StateNode.State previous;
+
+        Extras(String key, String owner, String[] listeners, StateNode.State previous) {
+            this.key = key;
+            this.owner = owner;
+            this.listeners = listeners;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * The flyweight view of a record
+     */
+    private class NodeView extends StateNode {
+        final int slot;
+        final int generation;
+
+        NodeView(String key, int type, int slot, int generation) {
+            super(key, type, null);
+            this.slot = slot;
+            this.generation = generation;
+        }
+
+        @Override
+        State getState() {
+            StampedLock stripe = stripe(slot);
+            long stamp = stripe.tryOptimisticRead();
+            try {
+                if (generation(slot) == generation) {
+                    State state = readState(slot);
+                    if (stripe.validate(stamp)) {
+                        return state;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // inconsistent read, retry with read lock
+            }
+
+            stamp = stripe.readLock();
+            try {
+                assertLive();
+                return readState(slot);
+            } finally {
+                stripe.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public int getStatus() {
+            return (int) readField(STATUS, false);
+        }
+
+        @Override
+        int getInvalidateStatus() {
+            return (int) readField(INVALIDATE_STATUS, false);
+        }
+
+        @Override
+        public int getLease() {
+            return (int) readField(LEASE, false);
+        }
+
+        @Override
+        long getLastModified() {
+            return readField(LAST_MODIFIED, true);
+        }
+
+        @Override
+        public long getVersion() {
+            return readField(VERSION, true);
+        }
+
+        /**
+         * Reads a scalar field of record without decoding the state
+         */
+        private long readField(int field, boolean isLong) {
+            StampedLock stripe = stripe(slot);
+            long stamp = stripe.tryOptimisticRead();
+            try {
+                if (generation(slot) == generation) {
+                    long value = readRecordField(slot, field, isLong);
+                    if (stripe.validate(stamp)) {
+                        return value;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // inconsistent read, retry with read lock
+            }
+
+            stamp = stripe.readLock();
+            try {
+                assertLive();
+                return readRecordField(slot, field, isLong);
+            } finally {
+                stripe.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        boolean compareAndSetState(State expect, State update) {
+            StampedLock stripe = stripe(slot);
+            long stamp = stripe.writeLock();
+            try {
+                assertLive();
+                if (!sameState(readState(slot), expect)) {
+                    return false;
+                }
+
+                Extras e = extras[slot >>> SLAB_BITS][slot & SLAB_MASK];
+                writeState(slot, e == null ? null : e.key, update);
+                return true;
+            } finally {
+                stripe.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        boolean isSameNode(StateNode other) {
+            if (!(other instanceof NodeView)) {
+                return false;
+            }
+            NodeView view = (NodeView) other;
+            return view.getStorage() == OffHeapStorage.this && view.slot == slot && view.generation == generation;
+        }
+
+        private OffHeapStorage getStorage() {
+            return OffHeapStorage.this;
+        }
+
+        private void assertLive() {
+            if (generation(slot) != generation) {
+                throw new IllegalStateException("The state node has been removed: " + key);
+            }
+        }
+    }
+}
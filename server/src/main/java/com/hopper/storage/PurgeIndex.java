@@ -0,0 +1,91 @@
+package com.hopper.storage;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link PurgeIndex} orders the state nodes by purge deadline(<tt>lastModified + purge expire</tt>), so that the
+ * purge task only visits the nodes which are due.
+ * <p/>
+ * The index is maintained lazily: each node has one entry which is added when the node is put, the mutations don't
+ * touch the index. Because <tt>lastModified</tt> only grows, the indexed deadline is never later than the real one;
+ * when a due entry is polled, the caller looks the node up in storage and re-indexes it with its real deadline if
+ * necessary. Only the keys are indexed, so the index doesn't keep the removed nodes reachable.
+ */
+class PurgeIndex {
+
+    private final ConcurrentSkipListSet<Entry> index = new ConcurrentSkipListSet<Entry>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Index the node key with <code>deadline</code>
+     */
+    void add(String key, long deadline) {
+        if (index.add(new Entry(deadline, key))) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove and return the earliest key whose deadline is not later than <code>now</code>, null if there is no due
+     * key.
+     */
+    String pollDue(long now) {
+        while (true) {
+            Iterator<Entry> iterator = index.iterator();
+            Entry first = iterator.hasNext() ? iterator.next() : null;
+            if (first == null || first.deadline > now) {
+                return null;
+            }
+
+            if (index.remove(first)) {
+                size.decrementAndGet();
+                return first.key;
+            }
+        }
+    }
+
+
+    int size() {
+        return size.get();
+    }
+
+    void clear() {
+        index.clear();
+        size.set(0);
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final long deadline;
+        final String key;
+
+        Entry(long deadline, String key) {
+            this.deadline = deadline;
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (deadline != o.deadline) {
+                return deadline < o.deadline ? -1 : 1;
+            }
+            return key.compareTo(o.key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry e = (Entry) obj;
+            return deadline == e.deadline && key.equals(e.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + (int) (deadline ^ (deadline >>> 32));
+        }
+    }
+}
@@ -1,23 +1,123 @@
 package com.hopper.storage;
 
+import com.hopper.lifecycle.LifecycleMBeanProxy;
 import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * The PurgeThread will remove "unused" state nodes, if some nodes that are not be modified by some times,
  * and there no some state listeners, they should be purged.
+ * <p/>
+ * Only the due nodes in {@link PurgeIndex} are visited by each pass, the purge statistics are published through JMX.
  */
-public class PurgeThread implements Runnable {
+public class PurgeThread extends LifecycleMBeanProxy implements Runnable {
     private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
 
-    final StateStorage storage = componentManager.getStateStorage();
+    private final AbstractStateStorage storage;
+
+    private final PurgeIndex purgeIndex;
+
+    private final AtomicLong passCount = new AtomicLong();
+    private final AtomicLong purgedCount = new AtomicLong();
+    private volatile int lastPurgedCount;
+    private volatile int lastVisitedCount;
+    private volatile long lastPassDuration;
+
+    PurgeThread(AbstractStateStorage storage, PurgeIndex purgeIndex) {
+        this.storage = storage;
+        this.purgeIndex = purgeIndex;
+    }
+
+    @Override
+    protected String getObjectNameKeyProperties() {
+        return "type=PurgeThread";
+    }
+
+    @Override
+    public String getInfo() {
+        return "State node purge thread";
+    }
 
     @Override
     public void run() {
-        for (StateNode node : storage.getStateNodes()) {
-            if (node.shouldPurge()) {
-                storage.remove(node.key);
+        final long start = System.currentTimeMillis();
+        final long expire = componentManager.getGlobalConfiguration().getStateNodePurgeExpire();
+        int visited = 0;
+        int purged = 0;
+
+        String key;
+        while ((key = purgeIndex.pollDue(start)) != null) {
+            visited++;
+
+            // removed
+            StateNode node = storage.get(key);
+            if (node == null) {
+                continue;
+            }
+
+            long deadline = node.getLastModified() + expire;
+            if (deadline > start) {
+                purgeIndex.add(key, deadline);
+            } else if (storage.purge(key)) {
+                purged++;
+            } else if (storage.get(key) != null) {
+                // waiting for the state listeners, or modified since
+                purgeIndex.add(key, start + expire);
             }
         }
+
+        passCount.incrementAndGet();
+        purgedCount.addAndGet(purged);
+        lastPurgedCount = purged;
+        lastVisitedCount = visited;
+        lastPassDuration = System.currentTimeMillis() - start;
+
+        if (purged > 0) {
+            logger.debug("Purged {} state nodes in {}ms", purged, lastPassDuration);
+        }
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getPassCount() {
+        return passCount.get();
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getPurgedCount() {
+        return purgedCount.get();
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public int getLastPurgedCount() {
+        return lastPurgedCount;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public int getLastVisitedCount() {
+        return lastVisitedCount;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getLastPassDuration() {
+        return lastPassDuration;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public int getIndexSize() {
+        return purgeIndex.size();
     }
 }
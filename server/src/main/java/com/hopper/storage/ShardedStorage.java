@@ -0,0 +1,286 @@
+package com.hopper.storage;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.util.MurmurHash;
+import com.hopper.util.merkle.InnerNode;
+import com.hopper.util.merkle.InvertibleBloomTable;
+import com.hopper.util.merkle.MerkleNode;
+import com.hopper.util.merkle.MerkleSpliterator;
+import com.hopper.util.merkle.MerkleTree;
+import com.hopper.util.merkle.Range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits the keys into 2<sup>n</sup> shards by key's {@link MurmurHash}, each shard has its own map, merkle tree over
+ * its hash range and xid counter, so that the mutations on different shards don't contend on a shared counter or
+ * tree. The shard ranges are the nodes at level n of the global merkle tree, so the shard trees are the sub-trees of
+ * global tree.
+ * <p/>
+ * The max xid of storage is the sum of the shard mutation counts, it's the count of mutations(same as the other
+ * storages) and it's only summed up for the heartbeat and the queries. A mutation takes a shard-local xid encoded
+ * with the shard index(<tt>local &lt;&lt; shard bits | index</tt>), so the xids are unique without touching the other
+ * shards. Pinning a snapshot raises the floor of local xids to the max xid, so the mutations after pinning are
+ * ordered after {@link #toLogXid(long)} of the snapshot for the commit log.
+ */
+public class ShardedStorage extends AbstractStateStorage {
+
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private static final Range HASH_RANGE = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    private final Shard[] shards;
+
+    /**
+     * The left positions of shard ranges(ascending) for locating shard
+     */
+    private final int[] lefts;
+
+    private final byte hashDepth;
+
+    private final int shardBits;
+
+    /**
+     * The floor of shard-local xids, raised to the max xid on pinning
+     */
+    private volatile long xidFloor;
+
+    /**
+     * The restored xid, the shard counters start from zero
+     */
+    private volatile long baseXid;
+
+    public ShardedStorage() {
+        super();
+
+        int count = componentManager.getGlobalConfiguration().getStorageShardCount();
+        if (count <= 0) {
+            count = Runtime.getRuntime().availableProcessors();
+        }
+
+        this.hashDepth = componentManager.getGlobalConfiguration().getMerkleTreeDepth();
+
+        // the shard tree keeps one level at least
+        int bits = Math.min(32 - Integer.numberOfLeadingZeros(Math.max(count - 1, 1)), hashDepth - 1);
+
+        this.shardBits = bits;
+        this.shards = new Shard[1 << bits];
+        this.lefts = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            Range range = rangeOf(i, bits);
+            shards[i] = new Shard(i, range, (byte) (hashDepth - bits));
+            lefts[i] = range.getLeft();
+        }
+    }
+
+    /**
+     * The hash range of shard, it's split from the entire hash range in the same way with merkle tree
+     */
+    private static Range rangeOf(int index, int bits) {
+        Range range = HASH_RANGE;
+        for (int i = bits - 1; i >= 0; i--) {
+            range = ((index >>> i) & 1) == 0 ? range.getLeftRange() : range.getRightRange();
+        }
+        return range;
+    }
+
+    private Shard shard(String key) {
+        int i = Arrays.binarySearch(lefts, MurmurHash.hash(key));
+        // Integer.MAX_VALUE is out of the ranges, it goes to the last shard as merkle tree does
+        return shards[i >= 0 ? i : -i - 2];
+    }
+
+    @Override
+    protected StateNode doPut(StateNode node) {
+        return shard(node.key).map.putIfAbsent(node.key, node);
+    }
+
+    @Override
+    protected StateNode doRemove(String key) {
+        return shard(key).map.remove(key);
+    }
+
+    @Override
+    public StateNode get(String key) {
+        return shard(key).map.get(key);
+    }
+
+    @Override
+    public Collection<StateNode> getStateNodes() {
+        List<StateNode> nodes = new ArrayList<StateNode>(size());
+        for (Shard shard : shards) {
+            nodes.addAll(shard.map.values());
+        }
+        return nodes;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.map.size();
+        }
+        return size;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Takes the next local xid of the key's shard, no other shard is touched
+     */
+    @Override
+    protected long nextXid(String key) {
+        Shard shard = shard(key);
+        shard.count.incrementAndGet();
+
+        long floor = xidFloor;
+        long current;
+        long local;
+        do {
+            current = shard.xid.get();
+            local = Math.max(current, floor) + 1;
+        } while (!shard.xid.compareAndSet(current, local));
+
+        return (local << shardBits) | shard.index;
+    }
+
+    @Override
+    protected long pinXid() {
+        long xid = getMaxXid();
+        if (xid > xidFloor) {
+            xidFloor = xid;
+        }
+        return xid;
+    }
+
+    @Override
+    protected long toLogXid(long maxXid) {
+        return (maxXid << shardBits) | (shards.length - 1);
+    }
+
+    /**
+     * The local part of xid, it's never greater than the max xid when the xid is taken
+     */
+    @Override
+    protected long fromLogXid(long logXid) {
+        return logXid >>> shardBits;
+    }
+
+    @Override
+    protected void restoreXid(long xid) {
+        long sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.count.get();
+        }
+        baseXid = xid - sum;
+        if (xid > xidFloor) {
+            xidFloor = xid;
+        }
+    }
+
+    @Override
+    public long getMaxXid() {
+        long xid = baseXid;
+        for (Shard shard : shards) {
+            xid += shard.count.get();
+        }
+        return xid;
+    }
+
+    @Override
+    protected MerkleTree<StateNode> merkleTree(String key) {
+        return shard(key).tree;
+    }
+
+    /**
+     * The global tree of same shape with the other servers, the shard trees are grafted under the top levels, only
+     * the dirty paths are re-hashed.
+     */
+    @Override
+    public MerkleTree<StateNode> getMerkleTree() {
+        MerkleTree<StateNode> tree = new MerkleTree<StateNode>(graft(HASH_RANGE, 0, shards.length), hashDepth,
+                StateNode.class);
+        tree.setObjectFactory(this);
+        tree.setHashPool(getHashPool());
+        tree.loadHash();
+        return tree;
+    }
+
+    /**
+     * The sum of the shard sketches
+     */
+    @Override
+    public InvertibleBloomTable getSketch() {
+        InvertibleBloomTable sketch = null;
+        for (Shard shard : shards) {
+            if (shard.tree.getSketch() == null) {
+                return null;
+            }
+            if (sketch == null) {
+                sketch = shard.tree.getSketch().copy();
+            } else {
+                sketch.addAll(shard.tree.getSketch());
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * Build the top levels over shards [from, to)
+     */
+    private MerkleNode<StateNode> graft(Range range, int from, int to) {
+        if (to - from == 1) {
+            return shards[from].tree.getRoot();
+        }
+
+        int mid = (from + to) >>> 1;
+        InnerNode<StateNode> node = new InnerNode<StateNode>(range);
+        node.setClazz(StateNode.class);
+        node.setObjectFactory(this);
+        node.setLeft(graft(range.getLeftRange(), from, mid));
+        node.setRight(graft(range.getRightRange(), mid, to));
+        return node;
+    }
+
+    /**
+     * Traverses the shards' merkle trees, each shard can be split further
+     */
+    @Override
+    public Spliterator<StateNode> spliterator() {
+        List<MerkleNode<StateNode>> roots = new ArrayList<MerkleNode<StateNode>>(shards.length);
+        for (Shard shard : shards) {
+            roots.add(shard.tree.getRoot());
+        }
+        return new MerkleSpliterator<StateNode>(this, roots);
+    }
+
+    @Override
+    public String getInfo() {
+        return "Sharded storage(" + shards.length + " shards)";
+    }
+
+    private class Shard {
+        final int index;
+        final ConcurrentMap<String, StateNode> map = new ConcurrentHashMap<String, StateNode>();
+        /**
+         * The local xid and the count of mutations
+         */
+        final AtomicLong xid = new AtomicLong();
+        final AtomicLong count = new AtomicLong();
+        final MerkleTree<StateNode> tree;
+
+        Shard(int index, Range range, byte depth) {
+            this.index = index;
+            this.tree = newMerkleTree(range, depth);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.hopper.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * {@link Snapshot} is the binary image of {@link StateStorage}. All sections are written and read through {@link
+ * MappedByteBuffer}, records have fixed layout so that they can be decoded in parallel.
+ * <p/>
+ * File layout:
+ * <pre>
+ * header           (64 bytes)
+ *   int  magic, int format version, long max xid, int epoch, int node count, int listener count,
+ *   int  string count, long listener offset, long string index offset, long string data offset
+ * node records     (node count * 48 bytes)
+ *   int  key, int type, int status, int invalidate status, int owner, int lease,
+ *   long last modified, long version, int first listener, int listener count
+ * listener section (listener count * 4 bytes, string references)
+ * string index     ((string count + 1) * 8 bytes, offsets relative to string data)
+ * string data      (UTF-8)
+ * </pre>
+ * Strings are referenced by their index in string table, -1 means null. Owners and listeners are usually shared by
+ * many nodes, so they are stored only once.
+ */
+public class Snapshot {
+
+    public static final int MAGIC = 0x48505353;
+
+    public static final int FORMAT_VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int RECORD_SIZE = 48;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Records for each parallel loading task
+     */
+    private static final int LOAD_BATCH_SIZE = 64 * 1024;
+
+    private final long maxXid;
+    private final int epoch;
+    private final int nodeCount;
+
+    private Snapshot(long maxXid, int epoch, int nodeCount) {
+        this.maxXid = maxXid;
+        this.epoch = epoch;
+        this.nodeCount = nodeCount;
+    }
+
+    public long getMaxXid() {
+        return maxXid;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Writes <code>nodes</code> to <code>file</code>. The nodes are taken from a {@link StorageSnapshot}, so the file is
+     * a point-in-time image at <code>maxXid</code>; the mutations after it must be replayed from commit log.
+     */
+    public static Snapshot write(File file, long maxXid, int epoch, Collection<StateNode> nodes) throws IOException {
+        final List<StateNode> nodeList = new ArrayList<StateNode>(nodes);
+        final int nodeCount = nodeList.size();
+
+        StringTable strings = new StringTable();
+        IntList listeners = new IntList();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+
+            // node records
+            MappedByteBuffer records = map(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE,
+                    (long) nodeCount * RECORD_SIZE);
+            for (StateNode node : nodeList) {
+                StateNode.State state = node.getState();
+
+                records.putInt(strings.ref(node.key));
+                records.putInt(node.type);
+                records.putInt(state.status);
+                records.putInt(state.invalidateStatus);
+                records.putInt(strings.ref(state.owner));
+                records.putInt(state.lease);
+                records.putLong(state.lastModified);
+                records.putLong(state.version);
+                records.putInt(listeners.size());
+                records.putInt(state.listeners.length);
+
+                for (String sessionId : state.listeners) {
+                    listeners.add(strings.ref(sessionId));
+                }
+            }
+            records.force();
+
+            // listener section
+            final long listenerOffset = HEADER_SIZE + (long) nodeCount * RECORD_SIZE;
+            MappedByteBuffer listenerBuffer = map(channel, FileChannel.MapMode.READ_WRITE, listenerOffset,
+                    (long) listeners.size() * 4);
+            listenerBuffer.asIntBuffer().put(listeners.array(), 0, listeners.size());
+            listenerBuffer.force();
+
+            // string index and data
+            final long stringIndexOffset = listenerOffset + (long) listeners.size() * 4;
+            final long stringDataOffset = stringIndexOffset + (long) (strings.size() + 1) * 8;
+
+            List<byte[]> encoded = strings.encode();
+            MappedByteBuffer stringIndex = map(channel, FileChannel.MapMode.READ_WRITE, stringIndexOffset,
+                    (long) (encoded.size() + 1) * 8);
+            long dataSize = 0;
+            for (byte[] b : encoded) {
+                stringIndex.putLong(dataSize);
+                dataSize += b.length;
+            }
+            stringIndex.putLong(dataSize);
+            stringIndex.force();
+
+            MappedByteBuffer stringData = map(channel, FileChannel.MapMode.READ_WRITE, stringDataOffset, dataSize);
+            for (byte[] b : encoded) {
+                stringData.put(b);
+            }
+            stringData.force();
+
+            // the header is written at last, a partial file will be rejected by magic checking
+            MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putLong(maxXid);
+            header.putInt(epoch);
+            header.putInt(nodeCount);
+            header.putInt(listeners.size());
+            header.putInt(encoded.size());
+            header.putLong(listenerOffset);
+            header.putLong(stringIndexOffset);
+            header.putLong(stringDataOffset);
+            header.force();
+        } finally {
+            raf.close();
+        }
+
+        return new Snapshot(maxXid, epoch, nodeCount);
+    }
+
+    /**
+     * Loads the snapshot with the <code>executor</code>, the decoded nodes will be passed to <code>handler</code>
+     * concurrently.
+     */
+    public static Snapshot load(File file, ExecutorService executor, final NodeHandler handler) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Invalid snapshot file " + file);
+            }
+
+            MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Invalid snapshot file " + file);
+            }
+
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+
+            final long maxXid = header.getLong();
+            final int epoch = header.getInt();
+            final int nodeCount = header.getInt();
+            final int listenerCount = header.getInt();
+            final int stringCount = header.getInt();
+            final long listenerOffset = header.getLong();
+            final long stringIndexOffset = header.getLong();
+            final long stringDataOffset = header.getLong();
+
+            final MappedByteBuffer stringIndex = map(channel, FileChannel.MapMode.READ_ONLY, stringIndexOffset,
+                    (long) (stringCount + 1) * 8);
+            final long dataSize = stringIndex.getLong(stringCount * 8);
+            final MappedByteBuffer stringData = map(channel, FileChannel.MapMode.READ_ONLY, stringDataOffset,
+                    dataSize);
+
+            // decode the string table in parallel
+            final String[] strings = new String[stringCount];
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int start = 0; start < stringCount; start += LOAD_BATCH_SIZE) {
+                final int from = start;
+                final int to = Math.min(stringCount, start + LOAD_BATCH_SIZE);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        ByteBuffer data = stringData.duplicate();
+                        for (int i = from; i < to; i++) {
+                            int begin = (int) stringIndex.getLong(i * 8);
+                            int end = (int) stringIndex.getLong((i + 1) * 8);
+                            byte[] b = new byte[end - begin];
+                            data.position(begin);
+                            data.get(b);
+                            strings[i] = new String(b, UTF8);
+                        }
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor, tasks);
+
+            final MappedByteBuffer listeners = map(channel, FileChannel.MapMode.READ_ONLY, listenerOffset,
+                    (long) listenerCount * 4);
+            final MappedByteBuffer records = map(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                    (long) nodeCount * RECORD_SIZE);
+
+            // decode the node records in parallel
+            tasks.clear();
+            for (int start = 0; start < nodeCount; start += LOAD_BATCH_SIZE) {
+                final int from = start;
+                final int to = Math.min(nodeCount, start + LOAD_BATCH_SIZE);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = from; i < to; i++) {
+                            handler.load(readNode(records, i * RECORD_SIZE, listeners, strings));
+                        }
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor, tasks);
+
+            return new Snapshot(maxXid, epoch, nodeCount);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static StateNode readNode(ByteBuffer records, int offset, ByteBuffer listeners, String[] strings) {
+        String key = string(strings, records.getInt(offset));
+        int type = records.getInt(offset + 4);
+        int status = records.getInt(offset + 8);
+        int invalidateStatus = records.getInt(offset + 12);
+        String owner = string(strings, records.getInt(offset + 16));
+        int lease = records.getInt(offset + 20);
+        long lastModified = records.getLong(offset + 24);
+        long version = records.getLong(offset + 32);
+        int firstListener = records.getInt(offset + 40);
+        int listenerCount = records.getInt(offset + 44);
+
+        List<String> sessionIds = new ArrayList<String>(listenerCount);
+        for (int i = 0; i < listenerCount; i++) {
+            sessionIds.add(string(strings, listeners.getInt((firstListener + i) * 4)));
+        }
+
+        StateNode node = new StateNode(key, type, status, invalidateStatus, version);
+        node.restore(owner, lease, lastModified, sessionIds);
+        return node;
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref < 0 ? null : strings[ref];
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position,
+                                        long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot section is too large: " + size);
+        }
+        return channel.map(mode, position, size);
+    }
+
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading snapshot.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to load snapshot.", e.getCause());
+        }
+    }
+
+    /**
+     * The callback for loaded nodes, it will be invoked concurrently
+     */
+    public interface NodeHandler {
+        void load(StateNode node);
+    }
+
+    /**
+     * The interned strings of snapshot
+     */
+    private static class StringTable {
+        private final Map<String, Integer> refs = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+
+        int ref(String s) {
+            if (s == null) {
+                return -1;
+            }
+            Integer ref = refs.get(s);
+            if (ref == null) {
+                ref = strings.size();
+                refs.put(s, ref);
+                strings.add(s);
+            }
+            return ref;
+        }
+
+        int size() {
+            return strings.size();
+        }
+
+        List<byte[]> encode() {
+            List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+            for (String s : strings) {
+                encoded.add(s.getBytes(UTF8));
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Growable primitive int list
+     */
+    private static class IntList {
+        private int[] array = new int[1024];
+        private int size;
+
+        void add(int v) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+            }
+            array[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] array() {
+            return array;
+        }
+    }
+}
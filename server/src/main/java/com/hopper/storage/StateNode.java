@@ -4,18 +4,22 @@ import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.session.Serializer;
 import com.hopper.util.ScheduleManager;
+import com.hopper.util.Timeout;
 import com.hopper.util.merkle.MerkleObjectRef;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+/**
+ * {@link StateNode} holds its mutable fields in an immutable {@link State}
+ * record, readers get a consistent image without locking and writers replace
+ * the record with CAS (retrying on conflict).
+ */
 public class StateNode implements MerkleObjectRef, Serializer {
 	/**
 	 * Temporary node
@@ -34,6 +38,11 @@ public class StateNode implements MerkleObjectRef, Serializer {
 	 */
 	public static final int DEFAULT_INVALIDATE_STATUS = -1;
 
+	private static final String[] NO_LISTENERS = new String[0];
+
+	private static final AtomicReferenceFieldUpdater<StateNode, State> stateUpdater = AtomicReferenceFieldUpdater
+			.newUpdater(StateNode.class, State.class, "state");
+
 	private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
 
 	/**
@@ -41,11 +50,6 @@ public class StateNode implements MerkleObjectRef, Serializer {
 	 */
 	private final Runnable task = new InvalidateTask();
 
-	/**
-	 * Protected lock
-	 */
-	public final transient ReadWriteLock nodeLock = new ReentrantReadWriteLock();
-
 	/**
 	 * Unique key
 	 */
@@ -57,198 +61,267 @@ public class StateNode implements MerkleObjectRef, Serializer {
 	public int type;
 
 	/**
-	 * Invalidate status
+	 * Current state, it's only replaced by CAS
 	 */
-	private final int invalidateStatus;
+	private volatile State state;
+
+	private ScheduleManager scheduleManager;
+	private ExecutorService notifyExecutorService;
+
 	/**
-	 * Status
+	 * The owner storage, all mutations will be written to its commit log
 	 */
-	private int status = DEFAULT_STATUS;
+	private AbstractStateStorage storage;
 
 	/**
-	 * state owner
+	 * Constructor for deserialization
 	 */
-	private String owner;
+	public StateNode() {
+		this(null, TYPE_TEMP, DEFAULT_STATUS, DEFAULT_INVALIDATE_STATUS, 0);
+	}
 
 	/**
-	 * State lease(seconds)
+	 * Constructor
 	 */
-	private int lease = -1;
+	public StateNode(String key, long initialVersion) {
+		this(key, TYPE_TEMP, DEFAULT_STATUS, DEFAULT_INVALIDATE_STATUS, initialVersion);
+	}
+
+	public StateNode(String key, int type, int initStatus, int invalidateStatus, long initalVersion) {
+		this.key = key;
+		this.type = type;
+		this.state = new State(initStatus, invalidateStatus, null, -1, 0, initalVersion, NO_LISTENERS, null);
+	}
+
+	public void setScheduleManager(ScheduleManager scheduleManager) {
+		this.scheduleManager = scheduleManager;
+	}
+
+	public void setNotifyExecutorService(ExecutorService notifyExecutorService) {
+		this.notifyExecutorService = notifyExecutorService;
+	}
+
+	void setStorage(AbstractStateStorage storage) {
+		this.storage = storage;
+	}
 
 	/**
-	 * State last modified
+	 * Constructor for the detached copies of storage snapshot, and for the
+	 * views whose state is held by storage(<code>state</code> is null), see
+	 * {@link #getState()} and {@link #compareAndSetState(State, State)}
 	 */
-	private long lastModified;
+	StateNode(String key, int type, State state) {
+		this.key = key;
+		this.type = type;
+		this.state = state;
+	}
 
 	/**
-	 * Version is a internal flag for data synchronization
+	 * Return the current state image
 	 */
-	private long version;
+	State getState() {
+		return state;
+	}
 
 	/**
-	 * Holds all listeners(session id) for state change
+	 * Replace the state with <code>update</code> if the current state is
+	 * <code>expect</code>, the versions are kept for the storage snapshots.
 	 */
-	private final LinkedList<String> stateChangeListeners = new LinkedList<String>();
+	final boolean casState(State expect, State update) {
+		AbstractStateStorage storage = this.storage;
+		return storage == null ? compareAndSetState(expect, update) : storage.casState(this, expect, update);
+	}
 
-	private ScheduleManager scheduleManager;
-	private ExecutorService notifyExecutorService;
+	/**
+	 * Replace the state without versioning
+	 */
+	boolean compareAndSetState(State expect, State update) {
+		return stateUpdater.compareAndSet(this, expect, update);
+	}
 
 	/**
-	 * Constructor
+	 * Marks the current state as being created at <code>clock</code>, the
+	 * node is invisible for the earlier storage snapshots. It's invoked before
+	 * the node is stored.
 	 */
-	public StateNode(String key, long initialVersion) {
-		this(key, TYPE_TEMP, DEFAULT_STATUS, DEFAULT_INVALIDATE_STATUS, initialVersion);
+	void stampClock(long clock) {
+		State current;
+		State next;
+		do {
+			current = getState();
+			next = current.withTimeout(current.timeout);
+			next.clock = clock;
+		} while (!compareAndSetState(current, next));
 	}
 
-	public StateNode(String key, int type, int initStatus, int invalidateStatus, long initalVersion) {
-		this.key = key;
-		this.type = type;
-		this.status = initStatus;
-		this.invalidateStatus = invalidateStatus;
-		this.version = initalVersion;
+	/**
+	 * Whether <code>other</code> refers to the same stored node
+	 */
+	boolean isSameNode(StateNode other) {
+		return this == other;
 	}
 
-	public void setScheduleManager(ScheduleManager scheduleManager) {
-		this.scheduleManager = scheduleManager;
+	/**
+	 * Write the state image to commit log, it should be invoked after the
+	 * state has been installed.
+	 * 
+	 * @return the commit log sequence for waiting the durability
+	 */
+	private long logMutation(byte op, State image) {
+		return storage == null ? 0 : storage.logMutation(key, op, image(image));
 	}
 
-	public void setNotifyExecutorService(ExecutorService notifyExecutorService) {
-		this.notifyExecutorService = notifyExecutorService;
+	/**
+	 * Waiting until the mutation is durable
+	 */
+	private void syncMutation(long seq) {
+		if (storage != null) {
+			storage.syncCommitLog(seq);
+		}
 	}
 
 	public void setStatus(int expectStatus, int newStatus, String owner, int lease) {
-		nodeLock.writeLock().lock();
-		try {
-			if (expectStatus != this.status) {
-				throw new NotMatchStatusException(expectStatus, status);
+		State current;
+		State next;
+		while (true) {
+			current = getState();
+			if (expectStatus != current.status) {
+				throw new NotMatchStatusException(expectStatus, current.status);
 			}
 
 			// Invalidate owner
-			if (this.owner != null && owner != null && !this.owner.equals(owner)) {
-				throw new NotMatchOwnerException(this.owner, owner);
+			if (current.owner != null && owner != null && !current.owner.equals(owner)) {
+				throw new NotMatchOwnerException(current.owner, owner);
 			}
-			final int oldStatus = this.status;
-			this.status = newStatus;
-			this.owner = owner;
-			this.version++;
-			this.lastModified = System.currentTimeMillis();
 
-			// Remove the old task
-			scheduleManager.removeTask(task);
+			// add new task
+			Timeout timeout = lease > 0 ? scheduleInvalidateTask(lease * 1000L) : null;
 
-			this.lease = lease;
-			if (lease > 0) {
-				// add new task
-				scheduleManager.schedule(task, lease);
+			next = new State(newStatus, current.invalidateStatus, owner, lease, System.currentTimeMillis(),
+					current.version + 1, NO_LISTENERS, timeout);
+			if (casState(current, next)) {
+				break;
 			}
+			cancel(timeout);
+		}
 
-			// fire state change
-			fireStateChangeListeners(oldStatus, newStatus);
+		// Remove the old task
+		cancel(current.timeout);
 
-		} finally {
-			nodeLock.writeLock().unlock();
-		}
+		long seq = logMutation(CommitLog.OP_SET_STATUS, next);
+
+		// fire state change
+		fireStateChangeListeners(current.listeners, current.status, newStatus);
+
+		syncMutation(seq);
 	}
 
 	public int getStatus() {
-		nodeLock.readLock().lock();
-		try {
-			return status;
-		} finally {
-			nodeLock.readLock().unlock();
-		}
+		return getState().status;
+	}
+
+	int getInvalidateStatus() {
+		return getState().invalidateStatus;
+	}
+
+	/**
+	 * Restores the state from snapshot, the version will not be changed.
+	 */
+	void restore(String owner, int lease, long lastModified, List<String> listeners) {
+		State current;
+		do {
+			current = getState();
+		} while (!casState(current, new State(current.status, current.invalidateStatus, owner, lease, lastModified,
+				current.version, listeners.toArray(new String[listeners.size()]), current.timeout)));
 	}
 
 	void setOwner(String owner) {
-		nodeLock.writeLock().lock();
-		this.owner = owner;
-		this.version++;
-		nodeLock.writeLock().unlock();
-	}
-
-	String getOwner() {
-		nodeLock.readLock().lock();
-		try {
-			return owner;
-		} finally {
-			nodeLock.readLock().unlock();
-		}
+		State current;
+		do {
+			current = getState();
+		} while (!casState(current, new State(current.status, current.invalidateStatus, owner, current.lease,
+				current.lastModified, current.version + 1, current.listeners, current.timeout)));
 	}
 
-	public void expandLease(int expectStatus, String owner, int lease) {
-		nodeLock.writeLock().lock();
-		try {
+	public String getOwner() {
+		return getState().owner;
+	}
 
-			if (lease < 0) {
-				throw new IllegalArgumentException();
-			}
+	public void expandLease(int expectStatus, String owner, int lease) {
+		if (lease < 0) {
+			throw new IllegalArgumentException();
+		}
 
-			if (expectStatus != this.status) {
-				throw new NotMatchStatusException(expectStatus, this.status);
+		State current;
+		State next;
+		while (true) {
+			current = getState();
+			if (expectStatus != current.status) {
+				throw new NotMatchStatusException(expectStatus, current.status);
 			}
 
 			// Invalidate owner
-			if (this.owner != null && !this.owner.equals(owner)) {
-				throw new NotMatchOwnerException(owner, this.owner);
+			if (current.owner != null && !current.owner.equals(owner)) {
+				throw new NotMatchOwnerException(owner, current.owner);
 			}
 
-			// Remove the old task
-			removeInvalidateTask();
-
-			this.lease = lease;
-			this.lastModified = System.currentTimeMillis();
-			this.version++;
-
 			// add new task
-			scheduleManager.schedule(task, lease);
+			Timeout timeout = scheduleInvalidateTask(lease * 1000L);
 
-		} finally {
-			nodeLock.writeLock().unlock();
+			next = new State(current.status, current.invalidateStatus, current.owner, lease,
+					System.currentTimeMillis(), current.version + 1, current.listeners, timeout);
+			if (casState(current, next)) {
+				break;
+			}
+			cancel(timeout);
 		}
+
+		// Remove the old task
+		cancel(current.timeout);
+
+		syncMutation(logMutation(CommitLog.OP_EXPAND_LEASE, next));
 	}
 
+	/**
+	 * Register the session as a listener of status changes. The listeners aren't written to commit log deliberately,
+	 * they are bound to the sessions which don't survive a restart either, the clients watch again after reconnecting.
+	 */
 	public void watch(String sessionId, int expectStatus) {
-		nodeLock.writeLock().lock();
-		try {
-			if (this.status != expectStatus) {
-				throw new NotMatchStatusException(expectStatus, status);
+		State current;
+		String[] listeners;
+		do {
+			current = getState();
+			if (current.status != expectStatus) {
+				throw new NotMatchStatusException(expectStatus, current.status);
 			}
-			stateChangeListeners.add(sessionId);
-		} finally {
-			nodeLock.writeLock().unlock();
-		}
-
+			listeners = Arrays.copyOf(current.listeners, current.listeners.length + 1);
+			listeners[current.listeners.length] = sessionId;
+		} while (!casState(current, new State(current.status, current.invalidateStatus, current.owner,
+				current.lease, current.lastModified, current.version, listeners, current.timeout)));
 	}
 
 	void setLease(int lease) {
-		nodeLock.writeLock().lock();
-		this.lease = lease;
-		version++;
-		nodeLock.writeLock().unlock();
-	}
-
-	int getLease() {
-		nodeLock.readLock().lock();
-		try {
-			return lease;
-		} finally {
-			nodeLock.readLock().unlock();
-		}
+		State current;
+		do {
+			current = getState();
+		} while (!casState(current, new State(current.status, current.invalidateStatus, current.owner, lease,
+				current.lastModified, current.version + 1, current.listeners, current.timeout)));
+	}
+
+	public int getLease() {
+		return getState().lease;
 	}
 
 	void setLastModified(long lastModified) {
-		nodeLock.writeLock().lock();
-		this.lastModified = lastModified;
-		nodeLock.writeLock().unlock();
+		State current;
+		do {
+			current = getState();
+		} while (!casState(current, new State(current.status, current.invalidateStatus, current.owner,
+				current.lease, lastModified, current.version, current.listeners, current.timeout)));
 	}
 
 	long getLastModified() {
-		nodeLock.readLock().lock();
-		try {
-			return lastModified;
-		} finally {
-			nodeLock.readLock().unlock();
-		}
+		return getState().lastModified;
 	}
 
 	@Override
@@ -258,48 +331,61 @@ public class StateNode implements MerkleObjectRef, Serializer {
 
 	@Override
 	public long getVersion() {
-		nodeLock.readLock().lock();
-		try {
-			return version;
-		} finally {
-			nodeLock.readLock().unlock();
-		}
+		return getState().version;
 	}
 
 	public void update(StateNode snapshot) {
-		if (snapshot.version <= version) {
-			return;
-		}
-		nodeLock.writeLock().lock();
-		try {
-			if (snapshot.version <= version) {
-				return;
+		syncMutation(updateWithoutSync(snapshot));
+	}
+
+	/**
+	 * Installs the state of <code>snapshot</code> if it's newer, but doesn't
+	 * wait for the commit log, so that a batch of updates is synced once.
+	 * 
+	 * @return the commit log sequence for waiting the durability, 0 if nothing
+	 *         is logged
+	 */
+	long updateWithoutSync(StateNode snapshot) {
+		State image = snapshot.getState();
+		State current;
+		State next;
+		do {
+			current = getState();
+			if (image.version <= current.version) {
+				return 0;
 			}
+			next = new State(image.status, image.invalidateStatus, image.owner, image.lease, image.lastModified,
+					image.version, image.listeners, current.timeout);
+		} while (!casState(current, next));
 
-			this.status = snapshot.status;
-			this.owner = snapshot.owner;
-			this.lease = snapshot.lease;
-			this.lastModified = snapshot.lastModified;
-			this.version = snapshot.version;
-			this.stateChangeListeners.clear();
-			this.stateChangeListeners.addAll(snapshot.stateChangeListeners);
-		} finally {
-			nodeLock.writeLock().unlock();
-		}
+		return logMutation(CommitLog.OP_UPDATE, next);
 	}
 
+	/**
+	 * Invalidates the state if the lease has expired, the lease may be renewed
+	 * after the task was fired.
+	 */
 	private void invalidate() {
-		nodeLock.writeLock().lock();
-		this.lease = -1;
-		this.owner = null;
-		final int oldStatus = this.status;
-		this.status = invalidateStatus;
-		nodeLock.writeLock().unlock();
-		fireStateChangeListeners(oldStatus, invalidateStatus);
+		State current;
+		State next;
+		do {
+			current = getState();
+			if (current.lease <= 0 || System.currentTimeMillis() - current.lastModified < current.lease * 1000L) {
+				return;
+			}
+			next = new State(current.invalidateStatus, current.invalidateStatus, null, -1, current.lastModified,
+					current.version + 1, NO_LISTENERS, null);
+		} while (!casState(current, next));
+
+		cancel(current.timeout);
+
+		long seq = logMutation(CommitLog.OP_INVALIDATE, next);
+		fireStateChangeListeners(current.listeners, current.status, current.invalidateStatus);
+		syncMutation(seq);
 	}
 
 	List<String> getStateChangeListeners() {
-		return new ArrayList<String>(stateChangeListeners);
+		return Arrays.asList(getState().listeners);
 	}
 
 	@Override
@@ -312,7 +398,7 @@ public class StateNode implements MerkleObjectRef, Serializer {
 		}
 
 		StateNode node = (StateNode) obj;
-		return node.key.equals(key) && node.version == version;
+		return node.key.equals(key) && node.getVersion() == getVersion();
 	}
 
 	/**
@@ -320,18 +406,27 @@ public class StateNode implements MerkleObjectRef, Serializer {
 	 * immediately; otherwise, running it after the remaining times.
 	 */
 	void executeInvalidateTask() {
-		if (lease < 0 || lastModified <= 0) {
-			return;
-		}
+		while (true) {
+			State current = getState();
+			if (current.lease < 0 || current.lastModified <= 0) {
+				return;
+			}
 
-		long now = System.currentTimeMillis();
-		// current state is expire
-		if (now - lastModified >= lease * 1000L) {
-			invalidate();
+			long remaining = current.lease * 1000L - (System.currentTimeMillis() - current.lastModified);
+
+			// current state is expire
+			if (remaining <= 0) {
+				invalidate();
+				return;
+			}
 
 			// start tasks with remaining times
-		} else {
-			scheduleManager.schedule(task, now - lastModified);
+			Timeout timeout = scheduleInvalidateTask(remaining);
+			if (casState(current, current.withTimeout(timeout))) {
+				cancel(current.timeout);
+				return;
+			}
+			cancel(timeout);
 		}
 	}
 
@@ -339,57 +434,155 @@ public class StateNode implements MerkleObjectRef, Serializer {
 	 * Remove the invalidate task from schedule manager immediately.
 	 */
 	void removeInvalidateTask() {
-		scheduleManager.removeTask(task);
+		State current;
+		do {
+			current = getState();
+			if (current.timeout == null) {
+				return;
+			}
+		} while (!casState(current, current.withTimeout(null)));
+
+		cancel(current.timeout);
+	}
+
+	private Timeout scheduleInvalidateTask(long delay) {
+		return scheduleManager.newTimeout(task, delay);
+	}
+
+	private static void cancel(Timeout timeout) {
+		if (timeout != null) {
+			timeout.cancel();
+		}
 	}
 
 	boolean shouldPurge() {
-		return System.currentTimeMillis() - lastModified >= componentManager.getGlobalConfiguration()
-				.getStateNodePurgeExpire() && this.stateChangeListeners.isEmpty();
+		State current = getState();
+		return System.currentTimeMillis() - current.lastModified >= componentManager.getGlobalConfiguration()
+				.getStateNodePurgeExpire() && current.listeners.length == 0;
 	}
 
 	/**
 	 * Fire all state change listeners (asynchronous)
 	 */
-	private void fireStateChangeListeners(int oldStatus, int newStatus) {
-		String sessionId = stateChangeListeners.poll();
-
-		while (sessionId != null) {
+	private void fireStateChangeListeners(String[] listeners, int oldStatus, int newStatus) {
+		for (String sessionId : listeners) {
 			Runnable task = new StateChangeNotifyTask(oldStatus, newStatus, sessionId);
 			notifyExecutorService.execute(task);
-			sessionId = stateChangeListeners.poll();
 		}
 	}
 
 	@Override
 	public void serialize(DataOutput out) throws IOException {
+		serialize(out, getState());
+	}
+
+	private void serialize(DataOutput out, State image) throws IOException {
 		out.writeUTF(key);
 		out.writeInt(type);
-		out.writeInt(status);
-		out.writeUTF(owner);
-		out.writeInt(lease);
-		out.writeLong(lastModified);
-		out.writeLong(version);
-		out.writeInt(stateChangeListeners.size());
-		for (String sessionId : stateChangeListeners) {
+		out.writeInt(image.status);
+		out.writeInt(image.invalidateStatus);
+		out.writeUTF(image.owner);
+		out.writeInt(image.lease);
+		out.writeLong(image.lastModified);
+		out.writeLong(image.version);
+		out.writeInt(image.listeners.length);
+		for (String sessionId : image.listeners) {
 			out.writeUTF(sessionId);
 		}
 	}
 
+	/**
+	 * Return the commit log record of the given state image
+	 */
+	private CommitLog.Record image(final State image) {
+		return new CommitLog.Record() {
+			@Override
+			public void write(DataOutput out) throws IOException {
+				StateNode.this.serialize(out, image);
+			}
+		};
+	}
+
 	@Override
 	public void deserialize(DataInput in) throws IOException {
 
 		this.key = in.readUTF();
 		this.type = in.readInt();
-		this.status = in.readInt();
-		this.owner = in.readUTF();
-		this.lease = in.readInt();
-		this.lastModified = in.readLong();
-		this.version = in.readLong();
+		int status = in.readInt();
+		int invalidateStatus = in.readInt();
+		String owner = in.readUTF();
+		int lease = in.readInt();
+		long lastModified = in.readLong();
+		long version = in.readLong();
 
 		int listenerSize = in.readInt();
+		String[] listeners = listenerSize == 0 ? NO_LISTENERS : new String[listenerSize];
 		for (int i = 0; i < listenerSize; i++) {
-			String sessionId = in.readUTF();
-			this.stateChangeListeners.add(sessionId);
+			listeners[i] = in.readUTF();
+		}
+
+		this.state = new State(status, invalidateStatus, owner, lease, lastModified, version, listeners, null);
+	}
+
+	/**
+	 * The immutable state image of {@link StateNode}
+	 */
+	static final class State {
+		final int status;
+		final int invalidateStatus;
+		final String owner;
+		/**
+		 * State lease(seconds)
+		 */
+		final int lease;
+		final long lastModified;
+		/**
+		 * Version is a internal flag for data synchronization
+		 */
+		final long version;
+		/**
+		 * Holds all listeners(session id) for state change
+		 */
+		final String[] listeners;
+		/**
+		 * The handle of scheduled invalidate task
+		 */
+		final Timeout timeout;
+
+		/**
+		 * The snapshot clock of storage when the state is installed, and the
+		 * previous state which is retained for the pinned snapshots. They are
+		 * only assigned before the state is published.
+		 */
+		long clock;
+		State previous;
+
+		State(int status, int invalidateStatus, String owner, int lease, long lastModified, long version,
+				String[] listeners, Timeout timeout) {
+			this.status = status;
+			this.invalidateStatus = invalidateStatus;
+			this.owner = owner;
+			this.lease = lease;
+			this.lastModified = lastModified;
+			this.version = version;
+			this.listeners = listeners;
+			this.timeout = timeout;
+		}
+
+		State withTimeout(Timeout timeout) {
+			return new State(status, invalidateStatus, owner, lease, lastModified, version, listeners, timeout);
+		}
+
+		/**
+		 * Return the latest version which is visible for the snapshot pinned
+		 * at <code>pin</code>, null if the node was created after it.
+		 */
+		State visibleAt(long pin) {
+			State s = this;
+			while (s != null && s.clock > pin) {
+				s = s.previous;
+			}
+			return s;
 		}
 	}
 
@@ -1,16 +1,23 @@
 package com.hopper.storage;
 
 import com.hopper.lifecycle.Lifecycle;
+import com.hopper.util.merkle.Difference;
+import com.hopper.util.merkle.InvertibleBloomTable;
 import com.hopper.util.merkle.MerkleObjectFactory;
 import com.hopper.util.merkle.MerkleTree;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 /**
  * {@link StateStorage} represents a storage interface for StateNode object, all
- * data will be saved only on memory without persistent. There are two storage
- * modes: hash and tree.
+ * data will be saved on memory, the mutations are persisted by
+ * {@link CommitLog} and {@link Snapshot}. There are two storage modes: hash and
+ * tree.
  * <p/>
  * <b>hash</b> mode: Data is holden on hash map(ConcurrentHashMap), it provides
  * significant performance for read/remove operations, but will take up more
@@ -45,24 +52,96 @@ public interface StateStorage extends Lifecycle, MerkleObjectFactory<StateNode>
 	StateNode remove(String key);
 
 	/**
-	 * Dump the memory data to disk for debug purpose
+	 * Apply the difference synchronized from a fresher server in a batch, the
+	 * added nodes are stored as they are. The changes are partitioned by the
+	 * merkle ranges and applied in parallel, the merkle tree is updated once
+	 * per leaf and the commit log is synced once.
+	 */
+	void apply(Difference<StateNode> difference);
+
+	/**
+	 * Load the snapshot file streamed by a fresher server, the nodes are
+	 * applied as differences of bounded chunks(the local newer ones are kept)
+	 * and the max xid is raised to the snapshot's. The storage is
+	 * checkpointed afterwards if the snapshot is enabled.
+	 * 
+	 * @return the max xid of snapshot
+	 */
+	long restore(File file) throws IOException;
+
+	/**
+	 * Dump the memory data to disk with {@link Snapshot} format
 	 */
 	void dump(String location) throws IOException;
 
 	/**
-	 * Retrieve the root of hash tree
+	 * Writes a snapshot to the snapshot directory and discards the commit
+	 * log covered by it.
+	 * 
+	 * @return the max xid of snapshot
+	 */
+	long checkpoint() throws IOException;
+
+	/**
+	 * Retrieve the live hash tree with the hash calculated, the leaf digests
+	 * are maintained on each mutation, so it costs O(depth) per mutation since
+	 * last retrieving. The tree is weakly consistent with the storage.
 	 */
 	MerkleTree<StateNode> getMerkleTree();
 
+	/**
+	 * Retrieve a copy of the sketch of key/version pairs, it's maintained on
+	 * each mutation of merkle tree and is weakly consistent with it. Return
+	 * null if the sketch is disabled.
+	 */
+	InvertibleBloomTable getSketch();
+
 	/**
 	 * Retrieve all saved state nodes
 	 */
 	Collection<StateNode> getStateNodes();
 
 	/**
-	 * Generate a snapshot for current {@link StateStorage} instance.
+	 * Retrieve a weakly consistent {@link Spliterator} over all state nodes
+	 * without copying them, it splits by the hash ranges of merkle tree.
+	 */
+	Spliterator<StateNode> spliterator();
+
+	/**
+	 * Performs <code>action</code> for all state nodes on the common
+	 * fork-join pool, it returns after all nodes have been visited.
+	 */
+	void forEachParallel(Consumer<StateNode> action);
+
+	/**
+	 * Retrieve the state nodes whose key starts with <code>prefix</code> in
+	 * key order.
+	 * 
+	 * @param limit
+	 *            the max count of returned nodes
+	 * @param cursor
+	 *            the last key of previous page(exclusive), null for the first
+	 *            page
+	 */
+	List<StateNode> scan(String prefix, int limit, String cursor);
+
+	/**
+	 * Retrieve the state nodes whose key is in range [<code>fromKey</code>,
+	 * <code>toKey</code>) in key order, null means unbounded.
+	 * 
+	 * @param limit
+	 *            the max count of returned nodes
+	 * @param cursor
+	 *            the last key of previous page(exclusive), null for the first
+	 *            page
+	 */
+	List<StateNode> scan(String fromKey, String toKey, int limit, String cursor);
+
+	/**
+	 * Pin a consistent read-only view of current {@link StateStorage}
+	 * instance, it must be released after using.
 	 */
-	StateStorage snapshot();
+	StorageSnapshot snapshot();
 
 	/**
 	 * Execute the invalidate task
@@ -0,0 +1,160 @@
+package com.hopper.storage;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.util.merkle.MerkleObjectFactory;
+import com.hopper.util.merkle.MerkleTree;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * {@link StorageSnapshot} is a read-only view of {@link StateStorage} pinned at a given xid, it's taken in O(1) and
+ * doesn't block the writers. The view only contains the mutations whose xid is not greater than {@link #getMaxXid()},
+ * the later mutations are invisible.
+ * <p/>
+ * The nodes returned by the view are detached copies. The view must be released after using, otherwise the storage
+ * keeps the old versions for it.
+ */
+public class StorageSnapshot {
+
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private final AbstractStateStorage storage;
+
+    /**
+     * Snapshot clock
+     */
+    private final long pin;
+
+    private final long maxXid;
+
+    private volatile boolean released;
+
+    StorageSnapshot(AbstractStateStorage storage, long pin, long maxXid) {
+        this.storage = storage;
+        this.pin = pin;
+        this.maxXid = maxXid;
+    }
+
+    /**
+     * Return the max xid covered by the view
+     */
+    public long getMaxXid() {
+        return maxXid;
+    }
+
+    /**
+     * Retrieve the state node identified by <code>key</code> at the pinned time
+     */
+    public StateNode get(String key) {
+        assertActive();
+
+        StateNode node = storage.get(key);
+        StateNode.State state = visibleState(node);
+        if (state != null) {
+            return new StateNode(key, node.type, state);
+        }
+
+        // removed after pinning
+        for (AbstractStateStorage.Tombstone tombstone : storage.getTombstones()) {
+            if (tombstone.clock > pin && tombstone.key.equals(key)) {
+                state = tombstone.state.visibleAt(pin);
+                if (state != null) {
+                    return new StateNode(key, tombstone.type, state);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieve all state nodes at the pinned time
+     */
+    public Collection<StateNode> getStateNodes() {
+        return getNodeMap().values();
+    }
+
+    /**
+     * Create a merkle tree over the view and calculate its hash
+     */
+    public MerkleTree<StateNode> getMerkleTree() {
+        final Map<String, StateNode> nodes = getNodeMap();
+
+        MerkleTree<StateNode> tree = new MerkleTree<StateNode>(componentManager.getGlobalConfiguration()
+                .getMerkleTreeDepth(), StateNode.class);
+        tree.setObjectFactory(new MerkleObjectFactory<StateNode>() {
+            @Override
+            public StateNode find(String key) {
+                return nodes.get(key);
+            }
+        });
+
+        for (StateNode node : nodes.values()) {
+            tree.put(node);
+        }
+        tree.setHashPool(storage.getHashPool());
+        tree.loadHash();
+
+        return tree;
+    }
+
+    /**
+     * Release the view, the old versions kept for it can be reclaimed
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            storage.release(pin);
+        }
+    }
+
+    private Map<String, StateNode> getNodeMap() {
+        assertActive();
+
+        final Map<String, StateNode> nodes = new LinkedHashMap<String, StateNode>();
+        storage.spliterator().forEachRemaining(new Consumer<StateNode>() {
+            @Override
+            public void accept(StateNode node) {
+                StateNode.State state = visibleState(node);
+                if (state != null) {
+                    nodes.put(node.key, new StateNode(node.key, node.type, state));
+                }
+            }
+        });
+
+        // the node is buried before unlinking, so it's either listed or found here(maybe both, the same version)
+        for (AbstractStateStorage.Tombstone tombstone : storage.getTombstones()) {
+            if (tombstone.clock > pin && !nodes.containsKey(tombstone.key)) {
+                StateNode.State state = tombstone.state.visibleAt(pin);
+                if (state != null) {
+                    nodes.put(tombstone.key, new StateNode(tombstone.key, tombstone.type, state));
+                }
+            }
+        }
+
+        return nodes;
+    }
+
+    private StateNode.State visibleState(StateNode node) {
+        if (node == null) {
+            return null;
+        }
+
+        try {
+            return node.getState().visibleAt(pin);
+        } catch (IllegalStateException e) {
+            // the off-heap view has been removed, it will be found from tombstones
+            return null;
+        }
+    }
+
+    private void assertActive() {
+        if (released) {
+            throw new IllegalStateException("The snapshot has been released.");
+        }
+    }
+}
@@ -2,7 +2,8 @@ package com.hopper.storage;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
@@ -10,7 +11,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
  */
 public class TreeStorage extends AbstractStateStorage {
 
-    private final Map<String, StateNode> tree = new ConcurrentSkipListMap<String, StateNode>();
+    private final ConcurrentNavigableMap<String, StateNode> tree = new ConcurrentSkipListMap<String, StateNode>();
 
     public TreeStorage() {
         super();
@@ -36,14 +37,12 @@ public class TreeStorage extends AbstractStateStorage {
         return new ArrayList<StateNode>(tree.values());
     }
 
+    /**
+     * Seeks to <code>fromKey</code> in O(logN) instead of sorting all nodes
+     */
     @Override
-    public StateStorage snapshot() {
-        try {
-            // Deep copy
-            return (StateStorage) this.clone();
-        } catch (CloneNotSupportedException e) {
-            return null;
-        }
+    protected Iterator<StateNode> iterate(String fromKey, boolean inclusive) {
+        return tree.tailMap(fromKey, inclusive).values().iterator();
     }
 
     @Override
@@ -3,8 +3,6 @@ package com.hopper.sync;
 import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.session.Message;
-import com.hopper.storage.StateNode;
-import com.hopper.util.merkle.Difference;
 import com.hopper.verb.Verb;
 import com.hopper.verb.VerbHandler;
 
@@ -16,16 +14,14 @@ public class ApplyDiffVerbHandler implements VerbHandler {
 
     @Override
     public void doVerb(Message message) {
-        Difference<StateNode> difference = (Difference<StateNode>) message.getBody();
+        // the max xid is the sender's, the diff(or the stream of chunks) is ignored if local is not stale
+        DiffResult result = (DiffResult) message.getBody();
 
-        DiffResult result = new DiffResult();
-        result.setMaxXid(componentManager.getStateStorage().getMaxXid());
-        result.setDifference(difference);
-
-        componentManager.getDataSyncService().applyDiff(result);
+        boolean applied = componentManager.getDataSyncService().applyDiff(result);
 
+        // 1 tells the sender to stop streaming the rest chunks
         Message reply = message.createResponse(Verb.APPLY_DIFF_RESULT);
-        reply.setBody(new byte[]{0});
+        reply.setBody(new byte[]{(byte) (applied ? 0 : 1)});
 
         componentManager.getMessageService().responseOneway(reply);
     }
@@ -1,27 +1,41 @@
 package com.hopper.sync;
 
 import com.hopper.GlobalConfiguration;
+import com.hopper.future.DefaultLatchFuture;
 import com.hopper.future.LatchFuture;
 import com.hopper.lifecycle.LifecycleProxy;
+import com.hopper.quorum.LeaderElection;
 import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.server.Endpoint;
 import com.hopper.session.Message;
 import com.hopper.stage.Stage;
+import com.hopper.storage.NotMatchOwnerException;
+import com.hopper.storage.NotMatchStatusException;
+import com.hopper.storage.Snapshot;
 import com.hopper.storage.StateNode;
 import com.hopper.storage.StateStorage;
+import com.hopper.storage.StorageSnapshot;
 import com.hopper.util.merkle.Difference;
-import com.hopper.util.merkle.MerkleTree;
 import com.hopper.verb.Verb;
+import com.hopper.verb.VerbMappings;
+import com.hopper.verb.handler.HeartBeat;
+import com.hopper.verb.handler.Mutation;
+import com.hopper.verb.handler.MutationVerbHandler;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * {@link DataSyncService} provides supports for data synchronization between nodes.
@@ -46,17 +60,62 @@ public class DataSyncService extends LifecycleProxy {
      * Data synchronization thread pool
      */
     private ExecutorService threadPool;
+    /**
+     * The local max xid at the first chunk of the difference streamed by leader, a stream is ignored if it's not
+     * newer than it. The leader streams to a follower one at a time.
+     */
+    private volatile long streamBaseXid;
+    /**
+     * The recent mutations replicated by local(as leader), null if the log shipping is disabled
+     */
+    private final MutationRing mutationRing = config.getMutationRingSize() > 0 ? new MutationRing(config
+            .getMutationRingSize()) : null;
+    /**
+     * The leader replication stream followed by local, and the replication sequence of the last mutation applied from
+     * it(the mutations up to it are applied contiguously), guarded by this
+     */
+    private long replicatedStreamId;
+    private long replicatedSeq;
+    /**
+     * Limits the synchronization traffic sent or required by local
+     */
+    private final SyncThrottle syncThrottle = new SyncThrottle(config.getSyncOpsPerSecond(), config
+            .getSyncBytesPerSecond(), config.getSyncBackoffLatency());
+    /**
+     * Dedupes and coalesces the synchronizations triggered by heart beats
+     */
+    private SyncCoordinator syncCoordinator;
+    /**
+     * The future of the snapshot required by local, it's completed after the snapshot file has been received
+     */
+    private volatile DefaultLatchFuture<SnapshotTransfer> snapshotFuture;
 
     @Override
-    protected void doInit() {
+    protected void doInit() throws Exception {
         threadPool = componentManager.getStageManager().getThreadPool(Stage.SYNC);
+        syncThrottle.initialize();
+        syncCoordinator = new SyncCoordinator(threadPool, componentManager.getScheduleManager(), config
+                .getSyncMinInterval(), new SyncCoordinator.SyncAction() {
+            @Override
+            public void sync(int serverId) throws Exception {
+                if (config.getSnapshotBootstrapTimeout() > 0 && storage.getMaxXid() == 0) {
+                    bootstrap(serverId, config.getSnapshotBootstrapTimeout());
+                }
+                shipMutations(serverId);
+            }
+        });
+        syncCoordinator.initialize();
     }
 
     @Override
-    protected void doShutdown() {
+    protected void doShutdown() throws Exception {
+        if (syncCoordinator != null) {
+            syncCoordinator.shutdown();
+        }
         if (threadPool != null) {
             threadPool.shutdown();
         }
+        syncThrottle.shutdown();
     }
 
     @Override
@@ -65,70 +124,303 @@ public class DataSyncService extends LifecycleProxy {
     }
 
     /**
-     * Compares the local merkle tree with remote(the remote is fresh) and return the comparison result.
+     * Compares the local merkle tree with remote(the remote is fresh) and applies the difference chunk by chunk, the
+     * future returns false if local is not stale.
      */
-    public LatchFuture<DiffResult> diff(int remoteServerId) {
+    public LatchFuture<Boolean> pull(int remoteServerId) {
         RequireRemoteDiffTask task = new RequireRemoteDiffTask(remoteServerId);
-        return (LatchFuture<DiffResult>) threadPool.submit(task);
+        return (LatchFuture<Boolean>) threadPool.submit(task);
     }
 
     /**
-     * Executes the comparison result on local storage
+     * Executes the comparison result(or a chunk of streamed result) on local storage, the chunks of a stream are
+     * ignored if the first one is not newer than local.
+     *
+     * @return false if the result is ignored
      */
-    public void applyDiff(DiffResult diff) {
+    public boolean applyDiff(DiffResult diff) {
+        if (diff.getSequence() == 0) {
+            streamBaseXid = storage.getMaxXid();
+        }
 
-        if (diff.getMaxXid() <= storage.getMaxXid()) {
+        if (diff.getMaxXid() <= streamBaseXid) {
             logger.debug("Ignoring the diff result, because oft he target xid {} is smaller than local {}",
-                    new Object[]{diff.getMaxXid(), storage.getMaxXid()});
-            return;
+                    new Object[]{diff.getMaxXid(), streamBaseXid});
+            return false;
         }
 
-        Difference<StateNode> difference = diff.getDifference();
+        apply(diff.getDifference());
+        return true;
+    }
 
+    private void apply(Difference<StateNode> difference) {
         if (!difference.hasDifferences()) {
             return;
         }
 
+        // the added snapshots are stored as they are
+        ExecutorService notifyExecutorService = componentManager.getStageManager().getThreadPool(Stage.STATE_CHANGE);
         for (StateNode snapshot : difference.addedList) {
-            StateNode node = newStateNode(snapshot.key, snapshot.getVersion());
-            node.update(snapshot);
+            snapshot.setScheduleManager(componentManager.getScheduleManager());
+            snapshot.setNotifyExecutorService(notifyExecutorService);
+        }
+
+        storage.apply(difference);
+    }
 
-            storage.put(node);
+    /**
+     * Return the ring of the recent mutations replicated by local, null if the log shipping is disabled
+     */
+    public MutationRing getMutationRing() {
+        return mutationRing;
+    }
+
+    /**
+     * Records a mutation of leader stream applied on local, the position only advances contiguously(a new stream is
+     * followed from its first mutation), so a skipped mutation is shipped later.
+     */
+    public synchronized void replicated(long streamId, long seq) {
+        if (streamId == 0 || seq == 0) {
+            return;
         }
+        if (streamId != replicatedStreamId && seq == 1) {
+            replicatedStreamId = streamId;
+            replicatedSeq = 0;
+        }
+        if (streamId == replicatedStreamId && seq == replicatedSeq + 1) {
+            replicatedSeq = seq;
+        }
+    }
 
-        for (StateNode snapshot : difference.removedList) {
-            storage.remove(snapshot.key);
+    /**
+     * Whether or not local lags behind the leader heart beat, the replication sequences are compared if local follows
+     * the leader stream, otherwise the xids.
+     */
+    public synchronized boolean isBehind(HeartBeat beat) {
+        if (beat.getStreamId() != 0 && beat.getStreamId() == replicatedStreamId) {
+            return beat.getLastSeq() > replicatedSeq;
         }
+        return beat.getMaxXid() > storage.getMaxXid();
+    }
+
+    /**
+     * Return the throttle of synchronization traffic, the latencies of mutations are recorded to it
+     */
+    public SyncThrottle getSyncThrottle() {
+        return syncThrottle;
+    }
+
+    /**
+     * Pull data from remote server(remote is fresh) with asynchronization. The missing mutations are replayed if
+     * remote still keeps them, otherwise the data is synchronized by merkle exchange. The triggers during a running
+     * synchronization from the same server are coalesced into one follow-up.
+     */
+    public void syncDataFromRemote(int serverId) {
+        logger.debug("Synchronize data from {}...", serverId);
+        syncCoordinator.trigger(serverId);
+    }
 
-        for (StateNode snapshot : difference.updatedList) {
-            StateNode node = storage.get(snapshot.key);
-            if (node != null) {
-                if (snapshot.getVersion() > node.getVersion()) {
-                    node.update(snapshot);
+    /**
+     * Requires the snapshot from remote and restores it, so an empty server doesn't synchronize the whole data by
+     * merkle exchange. The merkle exchange takes over if the snapshot doesn't arrive in time.
+     *
+     * @return false if the snapshot doesn't arrive in <code>timeout</code> milliseconds
+     */
+    boolean bootstrap(int serverId, long timeout) throws Exception {
+        DefaultLatchFuture<SnapshotTransfer> future = new DefaultLatchFuture<SnapshotTransfer>();
+        snapshotFuture = future;
+
+        SnapshotTransfer transfer;
+        try {
+            requireSnapshot(serverId);
+
+            transfer = future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Timeout for waiting the snapshot from {}, fall back to merkle synchronization.", serverId);
+            return false;
+        } finally {
+            snapshotFuture = null;
+        }
+
+        try {
+            long xid = storage.restore(transfer.getFile());
+            logger.info("Bootstrapped from the snapshot of {} at xid {}", serverId, xid);
+
+            // local follows the leader stream from the snapshot, so the mutations after it are shipped
+            if (transfer.getStreamId() != 0) {
+                synchronized (this) {
+                    replicatedStreamId = transfer.getStreamId();
+                    replicatedSeq = transfer.getLastSeq();
                 }
             }
+        } finally {
+            transfer.getFile().delete();
         }
+        return true;
     }
 
     /**
-     * Pull data from remote server(remote is fresh) with asynchronization
+     * Sends the REQUIRE_SNAPSHOT request, the snapshot is streamed back asynchronously(see {@link
+     * #snapshotReceived(SnapshotTransfer)})
      */
-    public void syncDataFromRemote(final int serverId) {
-        logger.debug("Synchronize data from {}...", serverId);
+    void requireSnapshot(int serverId) {
+        Message message = new Message();
+        message.setVerb(Verb.REQUIRE_SNAPSHOT);
+        componentManager.getMessageService().sendOneway(message, serverId);
+    }
 
-        Runnable task = new Runnable() {
+    /**
+     * Invoked after the snapshot streamed by remote has been received, it's discarded if local isn't waiting for it
+     */
+    public void snapshotReceived(SnapshotTransfer transfer) {
+        DefaultLatchFuture<SnapshotTransfer> future = snapshotFuture;
+        if (future != null && !future.isDone()) {
+            future.set(transfer);
+        } else {
+            transfer.abort();
+        }
+    }
+
+    /**
+     * Writes a point-in-time snapshot of local storage and streams it to <code>serverId</code> on the SYNC pool, the
+     * file is transferred with zero copy.
+     */
+    public void sendSnapshot(final int serverId) {
+        threadPool.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    DiffResult diffResult = syncDiff(serverId);
-                    applyDiff(diffResult);
+                    streamSnapshot(serverId);
                 } catch (Exception e) {
-                    logger.error("Failed to pull data from remote[server:{}]", new Object[]{serverId, e});
+                    logger.error("Failed to stream snapshot to remote[server:{}]", new Object[]{serverId, e});
+                }
+            }
+        });
+    }
+
+    private void streamSnapshot(int serverId) throws Exception {
+        final long start = System.currentTimeMillis();
+        File file = SnapshotTransfer.newFile();
+        try {
+            file.delete();
+
+            // the stamped mutations have been applied on local, so they are all covered by the snapshot pinned after
+            SnapshotTransfer transfer = new SnapshotTransfer();
+            if (componentManager.getDefaultServer().isLeader() && mutationRing != null) {
+                MutationVerbHandler handler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb.MUTATION);
+                transfer.setStreamId(handler.getReplicationStream().getStreamId());
+                transfer.setLastSeq(mutationRing.getLastSeq());
+            }
+
+            StorageSnapshot view = storage.snapshot();
+            Snapshot snapshot;
+            try {
+                LeaderElection leaderElection = componentManager.getLeaderElection();
+                int epoch = leaderElection == null ? 0 : leaderElection.getPaxos().getEpoch();
+                snapshot = Snapshot.write(file, view.getMaxXid(), epoch, view.getStateNodes());
+            } finally {
+                view.release();
+            }
+
+            transfer.setMaxXid(snapshot.getMaxXid());
+            transfer.setLength(file.length());
+
+            Message message = new Message();
+            message.setVerb(Verb.SNAPSHOT_TRANSFER);
+            message.setBody(transfer);
+
+            // the file is streamed as a whole, it's charged afterwards and delays the following synchronization
+            syncThrottle.acquire();
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                FileRegion region = new DefaultFileRegion(in.getChannel(), 0, transfer.getLength());
+                componentManager.getMessageService().sendWithRegion(message, region, serverId, config
+                        .getSnapshotBootstrapTimeout());
+            } finally {
+                in.close();
+                syncThrottle.consume(transfer.getLength());
+            }
+
+            logger.info("Streamed the snapshot of {} nodes({} bytes) to {} in {}ms", new Object[]{snapshot
+                    .getNodeCount(), transfer.getLength(), serverId, System.currentTimeMillis() - start});
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Fetch the mutations after the local position in leader stream from remote ring and replay them, it falls back
+     * to merkle synchronization if remote doesn't keep all of them or some one fails to replay(the local diverges)
+     */
+    private void shipMutations(int serverId) throws Exception {
+        MutationVerbHandler handler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb.MUTATION);
+
+        Mutations mutations;
+        while (true) {
+            RequireMutations request = new RequireMutations();
+            synchronized (this) {
+                request.setStreamId(replicatedStreamId);
+                request.setSeq(replicatedSeq);
+            }
+            request.setLimit(Math.max(1, config.getDiffChunkSize()));
+
+            Message message = new Message();
+            message.setVerb(Verb.REQUIRE_MUTATIONS);
+            message.setBody(request);
+
+            syncThrottle.acquire();
+            Future<Message> future = componentManager.getMessageService().send(message, serverId);
+            Message reply = future.get(config.getSyncTimeout(), TimeUnit.MILLISECONDS);
+            syncThrottle.consume(message.getSize() + reply.getSize());
+
+            mutations = (Mutations) reply.getBody();
+
+            if (!mutations.isAvailable()) {
+                logger.debug("The mutations after {} are not kept on {}, fall back to merkle synchronization.",
+                        request.getSeq(), serverId);
+                syncDiff(serverId, mutations);
+                return;
+            }
+            if (mutations.getMutations().isEmpty()) {
+                return;
+            }
+
+            for (Mutation mutation : mutations.getMutations()) {
+                try {
+                    handler.apply(mutation);
+                } catch (NotMatchStatusException e) {
+                    logger.debug("Failed to replay mutation, fall back to merkle synchronization.", e);
+                    syncDiff(serverId, mutations);
+                    return;
+                } catch (NotMatchOwnerException e) {
+                    logger.debug("Failed to replay mutation, fall back to merkle synchronization.", e);
+                    syncDiff(serverId, mutations);
+                    return;
                 }
+                replicated(mutations.getStreamId(), mutation.getSeq());
             }
-        };
 
-        threadPool.execute(task);
+            // the replay doesn't advance the position, the local diverges from the ring
+            synchronized (this) {
+                if (replicatedSeq <= request.getSeq()) {
+                    break;
+                }
+            }
+        }
+        syncDiff(serverId, mutations);
+    }
+
+    /**
+     * Synchronizes by merkle exchange, local follows the leader stream from the last sequence replied with the
+     * mutations if it succeeds(the difference covers the mutations up to it)
+     */
+    private void syncDiff(int serverId, Mutations position) throws Exception {
+        if (syncDiff(serverId)) {
+            synchronized (this) {
+                replicatedStreamId = position.getStreamId();
+                replicatedSeq = position.getLastSeq();
+            }
+        }
     }
 
     /**
@@ -145,20 +437,11 @@ public class DataSyncService extends LifecycleProxy {
         return futures;
     }
 
-    private StateNode newStateNode(String key, long initialVersion) {
-        StateNode node = new StateNode(key, initialVersion);
-        node.setScheduleManager(componentManager.getScheduleManager());
-        ExecutorService notifyExecutorService = componentManager.getStageManager().getThreadPool(Stage.STATE_CHANGE);
-        node.setNotifyExecutorService(notifyExecutorService);
-
-        return node;
-    }
-
     /**
-     * {@link com.hopper.sync.DataSyncService.RequireRemoteDiffTask} will send local data to remote
-     * server, and requires the remote server to return the diff data.
+     * {@link com.hopper.sync.DataSyncService.RequireRemoteDiffTask} compares the local merkle tree with remote level
+     * by level, and requires the remote server to return the diff data.
      */
-    private class RequireRemoteDiffTask implements Callable<DiffResult> {
+    private class RequireRemoteDiffTask implements Callable<Boolean> {
         final int remoteServerId;
 
         private RequireRemoteDiffTask(int remoteServerId) {
@@ -166,26 +449,31 @@ public class DataSyncService extends LifecycleProxy {
         }
 
         @Override
-        public DiffResult call() throws Exception {
+        public Boolean call() throws Exception {
             return syncDiff(remoteServerId);
         }
     }
 
-    private DiffResult syncDiff(int remoteServerId) throws Exception {
-        Message message = new Message();
-        message.setVerb(Verb.REQUIRE_DIFF);
-
-        RequireDiff diff = new RequireDiff();
-        diff.setMaxXid(storage.getMaxXid());
-        storage.getMerkleTree().loadHash();
-        diff.setTree(storage.getMerkleTree());
-
-        message.setBody(diff);
-
-        Future<Message> future = componentManager.getMessageService().send(message, remoteServerId);
-        Message reply = future.get(config.getSyncTimeout(), TimeUnit.MILLISECONDS);
+    /**
+     * Pull the difference from remote and apply it chunk by chunk, the difference is only applied if remote is newer
+     * than local at the beginning
+     */
+    private boolean syncDiff(int remoteServerId) throws Exception {
+        final long baseXid = storage.getMaxXid();
+        final MerkleExchange exchange = new MerkleExchange(storage, remoteServerId);
 
-        return (DiffResult) reply.getBody();
+        return exchange.pull(new MerkleExchange.ChunkHandler() {
+            @Override
+            public boolean handle(Difference<StateNode> chunk) {
+                if (exchange.getRemoteMaxXid() <= baseXid) {
+                    logger.debug("Ignoring the diff result, because oft he target xid {} is smaller than local {}",
+                            new Object[]{exchange.getRemoteMaxXid(), baseXid});
+                    return false;
+                }
+                apply(chunk);
+                return true;
+            }
+        }) && exchange.getRemoteMaxXid() > baseXid;
     }
 
     private class RequireRemoteSyncTask implements Callable<Boolean> {
@@ -197,30 +485,37 @@ public class DataSyncService extends LifecycleProxy {
 
         @Override
         public Boolean call() throws Exception {
-            Message request = new Message();
-            request.setVerb(Verb.REQUIRE_TREE);
-
-            Future<Message> future = componentManager.getMessageService().send(request, remoteServer.serverId);
-
-            Message reply = future.get(config.getRpcTimeout(), TimeUnit.MILLISECONDS);
-
-            MerkleTree<StateNode> tree = (MerkleTree<StateNode>) reply.getBody();
-
-            storage.getMerkleTree().loadHash();
-
-            request = new Message();
-            request.setVerb(Verb.APPLY_DIFF);
-
-            Difference<StateNode> difference = storage.getMerkleTree().difference(tree);
-            request.setBody(difference);
-
-            future = componentManager.getMessageService().send(request, remoteServer.serverId);
-
-            reply = future.get(config.getRpcTimeout(), TimeUnit.MILLISECONDS);
-
-            byte[] body = (byte[]) reply.getBody();
-
-            return body[0] == 0;
+            // the xid is read before comparing, the difference covers the mutations up to it at least
+            final long maxXid = storage.getMaxXid();
+            final int[] sequence = {0};
+
+            // the next chunk is sent after the previous one has been applied, the follower ignores the stream if
+            // it's not stale, it's taken as synchronized
+            new MerkleExchange(storage, remoteServer.serverId).push(new MerkleExchange.ChunkHandler() {
+                @Override
+                public boolean handle(Difference<StateNode> chunk) throws Exception {
+                    DiffResult diff = new DiffResult();
+                    diff.setMaxXid(maxXid);
+                    diff.setSequence(sequence[0]++);
+                    diff.setDifference(chunk);
+
+                    Message request = new Message();
+                    request.setVerb(Verb.APPLY_DIFF);
+                    request.setBody(diff);
+
+                    syncThrottle.acquire();
+                    Future<Message> future = componentManager.getMessageService().send(request,
+                            remoteServer.serverId);
+
+                    Message reply = future.get(config.getSyncTimeout(), TimeUnit.MILLISECONDS);
+                    syncThrottle.consume(request.getSize() + reply.getSize());
+
+                    byte[] body = (byte[]) reply.getBody();
+
+                    return body[0] == 0;
+                }
+            });
+            return true;
         }
     }
 }
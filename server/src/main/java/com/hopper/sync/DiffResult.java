@@ -16,6 +16,10 @@ public class DiffResult implements Serializer {
      * Remote max xid
      */
     private long maxXid;
+    /**
+     * The sequence of chunk in a streamed difference, 0 means the first(or the only) one
+     */
+    private int sequence;
     /**
      * Difference result
      */
@@ -29,7 +33,15 @@ public class DiffResult implements Serializer {
         this.maxXid = maxXid;
     }
 
-    public Difference getDifference() {
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public Difference<StateNode> getDifference() {
         return difference;
     }
 
@@ -43,13 +55,16 @@ public class DiffResult implements Serializer {
             throw new IllegalArgumentException("Please set difference first.");
         }
         out.writeLong(maxXid);
+        out.writeInt(sequence);
         difference.serialize(out);
     }
 
     @Override
     public void deserialize(DataInput in) throws IOException {
         this.maxXid = in.readLong();
-        this.difference = new Difference();
+        this.sequence = in.readInt();
+        this.difference = new Difference<StateNode>();
+        this.difference.setClazz(StateNode.class);
         this.difference.deserialize(in);
     }
 }
@@ -0,0 +1,83 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The merkle digests replied for {@link RequireDigests}, the digests of each required node take 2<sup>levels</sup>
+ * continuous entries.
+ */
+public class Digests implements Serializer {
+    /**
+     * Remote max xid(read before hashing)
+     */
+    private long maxXid;
+    /**
+     * Remote tree height
+     */
+    private byte hashDepth;
+
+    private long[] keyHashes;
+
+    private long[] versionHashes;
+
+    public long getMaxXid() {
+        return maxXid;
+    }
+
+    public void setMaxXid(long maxXid) {
+        this.maxXid = maxXid;
+    }
+
+    public byte getHashDepth() {
+        return hashDepth;
+    }
+
+    public void setHashDepth(byte hashDepth) {
+        this.hashDepth = hashDepth;
+    }
+
+    public long[] getKeyHashes() {
+        return keyHashes;
+    }
+
+    public void setKeyHashes(long[] keyHashes) {
+        this.keyHashes = keyHashes;
+    }
+
+    public long[] getVersionHashes() {
+        return versionHashes;
+    }
+
+    public void setVersionHashes(long[] versionHashes) {
+        this.versionHashes = versionHashes;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeLong(maxXid);
+        out.writeByte(hashDepth);
+        out.writeInt(keyHashes.length);
+        for (int i = 0; i < keyHashes.length; i++) {
+            out.writeLong(keyHashes[i]);
+            out.writeLong(versionHashes[i]);
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.maxXid = in.readLong();
+        this.hashDepth = in.readByte();
+
+        int size = in.readInt();
+        this.keyHashes = new long[size];
+        this.versionHashes = new long[size];
+        for (int i = 0; i < size; i++) {
+            keyHashes[i] = in.readLong();
+            versionHashes[i] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The key/version entries of the leaves replied for {@link RequireLeafEntries}
+ */
+public class LeafEntries implements Serializer {
+    /**
+     * Key to version
+     */
+    private final Map<String, Long> entries = new HashMap<String, Long>();
+    /**
+     * The count of leaves replied(from the first required one)
+     */
+    private int leaves;
+
+    public Map<String, Long> getEntries() {
+        return entries;
+    }
+
+    public int getLeaves() {
+        return leaves;
+    }
+
+    public void setLeaves(int leaves) {
+        this.leaves = leaves;
+    }
+
+    public void add(String key, long version) {
+        entries.put(key, version);
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(leaves);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.leaves = in.readInt();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            entries.put(in.readUTF(), in.readLong());
+        }
+    }
+}
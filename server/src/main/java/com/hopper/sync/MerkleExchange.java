@@ -0,0 +1,370 @@
+package com.hopper.sync;
+
+import com.hopper.GlobalConfiguration;
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Message;
+import com.hopper.session.Serializer;
+import com.hopper.storage.StateNode;
+import com.hopper.storage.StateStorage;
+import com.hopper.util.merkle.Difference;
+import com.hopper.util.merkle.InvertibleBloomTable;
+import com.hopper.util.merkle.MerkleNode;
+import com.hopper.util.merkle.MerkleTree;
+import com.hopper.verb.Verb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link MerkleExchange} compares the local merkle tree with a remote one level by level. It starts from the root,
+ * fetches the digests of the nodes some levels below each mismatching node per round, and only descends into the
+ * mismatching ones. For the mismatching leaves, only the key/version entries are fetched, and only the state nodes
+ * that really differ are transferred. So the traffic is proportional to the divergence rather than the data set.
+ * <p/>
+ * The difference is streamed as chunks of at most {@link GlobalConfiguration#getDiffChunkSize()} state nodes(except a
+ * single oversize leaf). The mismatching leaves are walked by a cursor, the next chunk is only fetched after the
+ * previous one has been handled, and a failed request is resent from the same cursor. So the memory needed for
+ * synchronization doesn't grow with the divergence.
+ * <p/>
+ * For a small divergence, the key/version sketches(see {@link InvertibleBloomTable}) are exchanged first and the
+ * mismatching leaves are decoded from them in one round trip, the descent is only taken if the decoding fails.
+ * <p/>
+ * The nodes are addressed by the heap-style positions(root is 0, the children of <code>i</code> are
+ * <code>2i+1</code> and <code>2i+2</code>), both tree layouts are of same shape.
+ */
+class MerkleExchange {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MerkleExchange.class);
+
+    /**
+     * The times of resending a timeout request
+     */
+    private static final int MAX_RETRIES = 2;
+
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private final GlobalConfiguration config = componentManager.getGlobalConfiguration();
+
+    private final StateStorage storage;
+
+    private final int remoteServerId;
+    /**
+     * Remote max xid, it's read before the remote hashing
+     */
+    private long remoteMaxXid;
+
+    /**
+     * The handler of the streamed chunks
+     */
+    interface ChunkHandler {
+        /**
+         * Handle a chunk of difference, the next chunk is fetched after it returns
+         *
+         * @return false to stop the streaming
+         */
+        boolean handle(Difference<StateNode> chunk) throws Exception;
+    }
+
+    MerkleExchange(StateStorage storage, int remoteServerId) {
+        this.storage = storage;
+        this.remoteServerId = remoteServerId;
+    }
+
+    /**
+     * Return the remote max xid, it's available after comparing
+     */
+    long getRemoteMaxXid() {
+        return remoteMaxXid;
+    }
+
+    /**
+     * Compares with remote and streams the difference of remote(remote is the comparison standard), the remote state
+     * nodes which are newer or absent on local are fetched.
+     *
+     * @return false if the trees are equal
+     */
+    boolean pull(ChunkHandler handler) throws Exception {
+        long[] leaves = mismatchingLeaves();
+        if (leaves.length == 0) {
+            return false;
+        }
+
+        int chunkSize = chunkSize();
+        for (int cursor = 0; cursor < leaves.length; ) {
+            LeafEntries remote = leafEntries(leaves, cursor);
+            Map<String, StateNode> local = localNodes(leaves, cursor, remote.getLeaves());
+            cursor += remote.getLeaves();
+
+            Difference<StateNode> chunk = newDifference();
+            for (StateNode node : local.values()) {
+                if (!remote.getEntries().containsKey(node.key)) {
+                    chunk.removedList.add(node);
+                }
+            }
+
+            List<String> keys = new ArrayList<String>();
+            for (Map.Entry<String, Long> entry : remote.getEntries().entrySet()) {
+                StateNode node = local.get(entry.getKey());
+                if (node == null || node.getVersion() < entry.getValue()) {
+                    keys.add(entry.getKey());
+                }
+            }
+
+            for (int from = 0; from < keys.size(); from += chunkSize) {
+                RequireStateNodes request = new RequireStateNodes();
+                request.getKeys().addAll(keys.subList(from, Math.min(keys.size(), from + chunkSize)));
+
+                for (StateNode node : ((StateNodes) request(Verb.REQUIRE_STATE_NODES, request)).getNodes()) {
+                    if (local.containsKey(node.key)) {
+                        chunk.updatedList.add(node);
+                    } else {
+                        chunk.addedList.add(node);
+                    }
+                }
+
+                if (!handler.handle(chunk)) {
+                    return true;
+                }
+                chunk = newDifference();
+            }
+
+            if (chunk.hasDifferences() && !handler.handle(chunk)) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares with remote and streams the difference of local(local is the comparison standard), it's applied on
+     * remote.
+     *
+     * @return false if the trees are equal
+     */
+    boolean push(ChunkHandler handler) throws Exception {
+        long[] leaves = mismatchingLeaves();
+        if (leaves.length == 0) {
+            return false;
+        }
+
+        for (int cursor = 0; cursor < leaves.length; ) {
+            LeafEntries remote = leafEntries(leaves, cursor);
+            Map<String, StateNode> local = localNodes(leaves, cursor, remote.getLeaves());
+            cursor += remote.getLeaves();
+
+            Difference<StateNode> chunk = newDifference();
+            for (StateNode node : local.values()) {
+                Long version = remote.getEntries().get(node.key);
+                if (version == null) {
+                    chunk.addedList.add(node);
+                } else if (node.getVersion() > version) {
+                    chunk.updatedList.add(node);
+                }
+            }
+
+            for (Map.Entry<String, Long> entry : remote.getEntries().entrySet()) {
+                if (!local.containsKey(entry.getKey())) {
+                    chunk.removedList.add(new StateNode(entry.getKey(), entry.getValue()));
+                }
+            }
+
+            if (chunk.hasDifferences() && !handler.handle(chunk)) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    private Difference<StateNode> newDifference() {
+        Difference<StateNode> difference = new Difference<StateNode>();
+        difference.setClazz(StateNode.class);
+        return difference;
+    }
+
+    private int chunkSize() {
+        return Math.max(1, config.getDiffChunkSize());
+    }
+
+    /**
+     * Fetch the remote entries of the leaves from <code>cursor</code>, at most a chunk of entries are replied
+     */
+    private LeafEntries leafEntries(long[] leaves, int cursor) throws Exception {
+        RequireLeafEntries request = new RequireLeafEntries();
+        request.setPositions(Arrays.copyOfRange(leaves, cursor, Math.min(leaves.length, cursor + chunkSize())));
+        request.setLimit(chunkSize());
+
+        LeafEntries entries = (LeafEntries) request(Verb.REQUIRE_LEAF_ENTRIES, request);
+        if (entries.getLeaves() <= 0) {
+            throw new SyncException("No leaf replied by remote " + remoteServerId);
+        }
+        return entries;
+    }
+
+    /**
+     * The local state nodes of the <code>count</code> leaves from <code>cursor</code>
+     */
+    private Map<String, StateNode> localNodes(long[] leaves, int cursor, int count) {
+        MerkleTree<StateNode> tree = storage.getMerkleTree();
+        Map<String, StateNode> nodes = new HashMap<String, StateNode>();
+
+        for (int i = cursor; i < cursor + count; i++) {
+            MerkleNode<StateNode> leaf = tree.getNode(leaves[i]);
+            if (leaf != null) {
+                for (StateNode node : leaf.getObjectRefs()) {
+                    nodes.put(node.key, node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * The positions of the mismatching leaves(ascending), empty if the trees are equal
+     */
+    private long[] mismatchingLeaves() throws Exception {
+        long[] leaves = reconcile();
+        return leaves != null ? leaves : compare();
+    }
+
+    /**
+     * Decodes the key/version pairs of symmetric difference from the remote sketch
+     *
+     * @return the positions of the leaves holding the differences, null if the sketch is disabled or the divergence
+     *         is too large to decode
+     */
+    private long[] reconcile() throws Exception {
+        InvertibleBloomTable local = storage.getSketch();
+        if (local == null) {
+            return null;
+        }
+
+        Sketch remote = (Sketch) request(Verb.REQUIRE_SKETCH, null);
+        MerkleTree<StateNode> tree = storage.getMerkleTree();
+        if (remote.getTable() == null || remote.getTable().getCells() != local.getCells() || remote.getHashDepth()
+                != tree.getHashDepth()) {
+            return null;
+        }
+
+        List<InvertibleBloomTable.Entry> entries = local.difference(remote.getTable());
+        if (entries == null) {
+            logger.debug("Failed to decode the sketch of {}, fall back to merkle comparison.", remoteServerId);
+            return null;
+        }
+
+        remoteMaxXid = remote.getMaxXid();
+
+        TreeSet<Long> leaves = new TreeSet<Long>();
+        for (InvertibleBloomTable.Entry entry : entries) {
+            leaves.add(tree.leafPosition(entry.hash));
+        }
+
+        long[] result = new long[leaves.size()];
+        int i = 0;
+        for (long leaf : leaves) {
+            result[i++] = leaf;
+        }
+        return result;
+    }
+
+    /**
+     * Descends from root to the mismatching leaves
+     *
+     * @return the positions of the mismatching leaves, empty if the trees are equal
+     */
+    private long[] compare() throws Exception {
+        MerkleTree<StateNode> tree = storage.getMerkleTree();
+        int leafLevel = tree.getHashDepth() + 1;
+        int levels = Math.max(1, config.getMerkleExchangeLevels());
+
+        long[] positions = {0};
+        for (int level = 0; level < leafLevel && positions.length > 0; ) {
+            int step = Math.min(levels, leafLevel - level);
+
+            RequireDigests request = new RequireDigests();
+            request.setPositions(positions);
+            request.setLevels(step);
+            Digests digests = (Digests) request(Verb.REQUIRE_DIGESTS, request);
+
+            if (digests.getHashDepth() != tree.getHashDepth()) {
+                throw new SyncException("Different tree depth with remote " + remoteServerId + ": " + digests
+                        .getHashDepth());
+            }
+            if (level == 0) {
+                remoteMaxXid = digests.getMaxXid();
+            }
+
+            positions = mismatches(tree, positions, step, digests);
+            level += step;
+        }
+        return positions;
+    }
+
+    /**
+     * The positions of the descendants(<code>step</code> levels below <code>positions</code>) which digests differ
+     * from remote
+     */
+    private long[] mismatches(MerkleTree<StateNode> tree, long[] positions, int step, Digests digests) {
+        int width = 1 << step;
+        long[] keyHashes = new long[positions.length * width];
+        long[] versionHashes = new long[positions.length * width];
+        for (int i = 0; i < positions.length; i++) {
+            tree.collectDigests(positions[i], step, keyHashes, versionHashes, i * width);
+        }
+
+        List<Long> mismatches = new ArrayList<Long>();
+        for (int i = 0; i < positions.length; i++) {
+            long first = ((positions[i] + 1) << step) - 1;
+            for (int j = 0; j < width; j++) {
+                int offset = i * width + j;
+                if (keyHashes[offset] != digests.getKeyHashes()[offset] || versionHashes[offset] != digests
+                        .getVersionHashes()[offset]) {
+                    mismatches.add(first + j);
+                }
+            }
+        }
+
+        long[] result = new long[mismatches.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = mismatches.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Sends a request to remote and waits for the reply body, the timeout request is resent(the requests carry the
+     * cursors, so resending resumes the streaming). The requests are limited by the {@link SyncThrottle}.
+     */
+    Object request(Verb verb, Serializer body) throws Exception {
+        SyncThrottle throttle = componentManager.getDataSyncService().getSyncThrottle();
+
+        for (int retries = 0; ; retries++) {
+            Message message = new Message();
+            message.setVerb(verb);
+            message.setBody(body);
+
+            throttle.acquire();
+            Future<Message> future = componentManager.getMessageService().send(message, remoteServerId);
+            try {
+                Message reply = future.get(config.getSyncTimeout(), TimeUnit.MILLISECONDS);
+                throttle.consume(message.getSize() + reply.getSize());
+                return reply.getBody();
+            } catch (TimeoutException e) {
+                if (retries >= MAX_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
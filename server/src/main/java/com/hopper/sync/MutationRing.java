@@ -0,0 +1,81 @@
+package com.hopper.sync;
+
+import com.hopper.verb.handler.Mutation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link MutationRing} keeps the recent mutations replicated by leader in a bounded ring, each one is stamped with the
+ * next replication sequence(see {@link Mutation#getSeq()}) in the replication order. A lagging follower which reports
+ * the sequence of its last applied mutation gets exactly the missing suffix, the merkle synchronization is only needed
+ * if the suffix has been evicted from the ring.
+ * <p/>
+ * The mutations aren't indexed by xid, as the xid is bumped by the local purges and lease invalidations too.
+ */
+public class MutationRing {
+
+    private final Mutation[] mutations;
+    /**
+     * The index of the oldest mutation
+     */
+    private int head;
+
+    private int size;
+    /**
+     * The sequence of the latest mutation, the sequences of the kept ones are contiguous up to it
+     */
+    private long lastSeq;
+
+    public MutationRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        this.mutations = new Mutation[capacity];
+    }
+
+    /**
+     * Append a mutation in the replication order and stamp it with the next sequence(starting from 1), the oldest one
+     * is evicted if the ring is full.
+     *
+     * @return the sequence of mutation
+     */
+    public synchronized long append(Mutation mutation) {
+        if (size == mutations.length) {
+            mutations[head] = null;
+            head = (head + 1) % mutations.length;
+            size--;
+        }
+
+        mutation.setSeq(++lastSeq);
+        mutations[(head + size) % mutations.length] = mutation;
+        size++;
+        return lastSeq;
+    }
+
+    /**
+     * Retrieve the mutations after <code>seq</code>(in order), at most <code>limit</code> ones
+     *
+     * @return null if some of the mutations after <code>seq</code> have been evicted(or <code>seq</code> is not
+     *         issued by this ring)
+     */
+    public synchronized List<Mutation> since(long seq, int limit) {
+        long firstSeq = lastSeq - size + 1;
+        if (seq < firstSeq - 1 || seq > lastSeq) {
+            return null;
+        }
+
+        List<Mutation> result = new ArrayList<Mutation>();
+        for (long s = seq + 1; s <= lastSeq && result.size() < limit; s++) {
+            result.add(mutations[(int) ((head + s - firstSeq) % mutations.length)]);
+        }
+        return result;
+    }
+
+    /**
+     * Return the sequence of the latest mutation, 0 if nothing has been appended
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+}
@@ -0,0 +1,84 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+import com.hopper.verb.handler.Mutation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The mutations replied for {@link RequireMutations}
+ */
+public class Mutations implements Serializer {
+    /**
+     * False if the required mutations have been evicted from leader ring, the follower must be synchronized by merkle
+     * exchange
+     */
+    private boolean available;
+    /**
+     * The leader replication stream
+     */
+    private long streamId;
+    /**
+     * The replication sequence of the latest mutation in leader ring, the mutations up to it have been applied on
+     * leader
+     */
+    private long lastSeq;
+
+    private final List<Mutation> mutations = new ArrayList<Mutation>();
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(long streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public List<Mutation> getMutations() {
+        return mutations;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeBoolean(available);
+        out.writeLong(streamId);
+        out.writeLong(lastSeq);
+        out.writeInt(mutations.size());
+        for (Mutation mutation : mutations) {
+            mutation.serialize(out);
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.available = in.readBoolean();
+        this.streamId = in.readLong();
+        this.lastSeq = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Mutation mutation = new Mutation();
+            mutation.deserialize(in);
+            mutations.add(mutation);
+        }
+    }
+}
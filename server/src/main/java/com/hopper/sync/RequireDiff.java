@@ -1,9 +1,11 @@
 package com.hopper.sync;
 
+import com.hopper.GlobalConfiguration;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.session.Serializer;
 import com.hopper.storage.StateNode;
 import com.hopper.util.merkle.MerkleTree;
+import com.hopper.util.merkle.Range;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -52,8 +54,9 @@ public class RequireDiff implements Serializer {
     @Override
     public void deserialize(DataInput in) throws IOException {
         this.maxXid = in.readLong();
-        this.tree = new MerkleTree(ComponentManagerFactory.getComponentManager().getGlobalConfiguration()
-                .getMerkleTreeDepth(), StateNode.class);
+        GlobalConfiguration config = ComponentManagerFactory.getComponentManager().getGlobalConfiguration();
+        this.tree = MerkleTree.create(config.getMerkleTreeLayout(), new Range(Integer.MIN_VALUE, Integer.MAX_VALUE),
+                config.getMerkleTreeDepth(), StateNode.class);
         tree.deserialize(in);
     }
 }
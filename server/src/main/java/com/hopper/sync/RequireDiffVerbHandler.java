@@ -24,12 +24,13 @@ public class RequireDiffVerbHandler implements VerbHandler {
         RequireDiff requireDiff = (RequireDiff) message.getBody();
 
         MerkleTree<StateNode> targetTree = requireDiff.getTree();
-        storage.getMerkleTree().loadHash();
-        Difference<StateNode> difference = storage.getMerkleTree().difference(targetTree);
-        difference.setClazz(StateNode.class);
 
+        // the xid is read before hashing, the tree covers the mutations up to it at least
         DiffResult result = new DiffResult();
         result.setMaxXid(storage.getMaxXid());
+
+        Difference<StateNode> difference = storage.getMerkleTree().difference(targetTree);
+        difference.setClazz(StateNode.class);
         result.setDifference(difference);
 
         Message reply = message.createResponse(Verb.DIFF_RESULT);
@@ -0,0 +1,55 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Requires the merkle digests of the descendants of some nodes, see {@link MerkleExchange}
+ */
+public class RequireDigests implements Serializer {
+    /**
+     * The heap-style positions of nodes(root is 0)
+     */
+    private long[] positions;
+    /**
+     * The levels of descendants below the nodes
+     */
+    private int levels;
+
+    public long[] getPositions() {
+        return positions;
+    }
+
+    public void setPositions(long[] positions) {
+        this.positions = positions;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public void setLevels(int levels) {
+        this.levels = levels;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(levels);
+        out.writeInt(positions.length);
+        for (long position : positions) {
+            out.writeLong(position);
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.levels = in.readInt();
+        this.positions = new long[in.readInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Message;
+import com.hopper.storage.StateNode;
+import com.hopper.storage.StateStorage;
+import com.hopper.util.merkle.MerkleTree;
+import com.hopper.verb.Verb;
+import com.hopper.verb.VerbHandler;
+
+/**
+ * The message handler for processing the REQUIRE_DIGESTS request, it replies the digests of the descendants of the
+ * required nodes.
+ */
+public class RequireDigestsVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private final StateStorage storage = componentManager.getStateStorage();
+
+    @Override
+    public void doVerb(Message message) {
+        Message reply = message.createResponse(Verb.DIGESTS_RESULT);
+        reply.setBody(digests((RequireDigests) message.getBody()));
+
+        componentManager.getMessageService().responseOneway(reply);
+    }
+
+    Digests digests(RequireDigests request) {
+        // the xid is read before hashing, the tree covers the mutations up to it at least
+        Digests digests = new Digests();
+        digests.setMaxXid(storage.getMaxXid());
+
+        MerkleTree<StateNode> tree = storage.getMerkleTree();
+        digests.setHashDepth(tree.getHashDepth());
+
+        long[] positions = request.getPositions();
+        int width = 1 << request.getLevels();
+        long[] keyHashes = new long[positions.length * width];
+        long[] versionHashes = new long[positions.length * width];
+
+        for (int i = 0; i < positions.length; i++) {
+            tree.collectDigests(positions[i], request.getLevels(), keyHashes, versionHashes, i * width);
+        }
+
+        digests.setKeyHashes(keyHashes);
+        digests.setVersionHashes(versionHashes);
+        return digests;
+    }
+}
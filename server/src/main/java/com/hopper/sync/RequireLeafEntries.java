@@ -0,0 +1,56 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Requires the key/version entries of merkle leaves, see {@link MerkleExchange}. The leaves are replied in order until
+ * the entries reach the limit, the requester resumes from the first leaf not replied.
+ */
+public class RequireLeafEntries implements Serializer {
+    /**
+     * The heap-style positions of leaves
+     */
+    private long[] positions;
+    /**
+     * The max count of entries, one leaf is replied at least
+     */
+    private int limit = Integer.MAX_VALUE;
+
+    public long[] getPositions() {
+        return positions;
+    }
+
+    public void setPositions(long[] positions) {
+        this.positions = positions;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(positions.length);
+        for (long position : positions) {
+            out.writeLong(position);
+        }
+        out.writeInt(limit);
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.positions = new long[in.readInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readLong();
+        }
+        this.limit = in.readInt();
+    }
+}
@@ -0,0 +1,47 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Message;
+import com.hopper.storage.StateNode;
+import com.hopper.storage.StateStorage;
+import com.hopper.util.merkle.MerkleNode;
+import com.hopper.util.merkle.MerkleTree;
+import com.hopper.verb.Verb;
+import com.hopper.verb.VerbHandler;
+
+/**
+ * The message handler for processing the REQUIRE_LEAF_ENTRIES request, it replies the key/version entries of the
+ * required leaves in order until the entries reach the limit.
+ */
+public class RequireLeafEntriesVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private final StateStorage storage = componentManager.getStateStorage();
+
+    @Override
+    public void doVerb(Message message) {
+        Message reply = message.createResponse(Verb.LEAF_ENTRIES_RESULT);
+        reply.setBody(entries((RequireLeafEntries) message.getBody()));
+
+        componentManager.getMessageService().responseOneway(reply);
+    }
+
+    LeafEntries entries(RequireLeafEntries request) {
+        LeafEntries entries = new LeafEntries();
+        MerkleTree<StateNode> tree = storage.getMerkleTree();
+
+        long[] positions = request.getPositions();
+        int count = 0;
+        while (count < positions.length && (count == 0 || entries.getEntries().size() < request.getLimit())) {
+            MerkleNode<StateNode> leaf = tree.getNode(positions[count++]);
+            if (leaf != null) {
+                for (StateNode node : leaf.getObjectRefs()) {
+                    entries.add(node.key, node.getVersion());
+                }
+            }
+        }
+        entries.setLeaves(count);
+        return entries;
+    }
+}
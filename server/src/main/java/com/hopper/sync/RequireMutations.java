@@ -0,0 +1,64 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Requires the mutations replicated by leader after the follower position in leader stream, see {@link
+ * MutationRing}
+ */
+public class RequireMutations implements Serializer {
+    /**
+     * The leader replication stream followed by follower
+     */
+    private long streamId;
+    /**
+     * The replication sequence of the last mutation applied by follower
+     */
+    private long seq;
+    /**
+     * The max count of mutations
+     */
+    private int limit;
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(long streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeLong(streamId);
+        out.writeLong(seq);
+        out.writeInt(limit);
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.streamId = in.readLong();
+        this.seq = in.readLong();
+        this.limit = in.readInt();
+    }
+}
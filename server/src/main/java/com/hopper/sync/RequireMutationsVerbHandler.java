@@ -0,0 +1,50 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Message;
+import com.hopper.verb.Verb;
+import com.hopper.verb.VerbHandler;
+import com.hopper.verb.VerbMappings;
+import com.hopper.verb.handler.Mutation;
+import com.hopper.verb.handler.MutationVerbHandler;
+
+import java.util.List;
+
+/**
+ * The message handler for processing the REQUIRE_MUTATIONS request, it replies the mutations after the follower
+ * position from the leader ring, they're only available if the follower follows the current leader stream.
+ */
+public class RequireMutationsVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    @Override
+    public void doVerb(Message message) {
+        Message reply = message.createResponse(Verb.MUTATIONS_RESULT);
+        reply.setBody(mutations((RequireMutations) message.getBody()));
+
+        componentManager.getMessageService().responseOneway(reply);
+    }
+
+    Mutations mutations(RequireMutations request) {
+        Mutations result = new Mutations();
+        MutationRing ring = componentManager.getDataSyncService().getMutationRing();
+        if (ring == null) {
+            return result;
+        }
+
+        MutationVerbHandler handler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb.MUTATION);
+        result.setStreamId(handler.getReplicationStream().getStreamId());
+        result.setLastSeq(ring.getLastSeq());
+        if (request.getStreamId() != result.getStreamId()) {
+            return result;
+        }
+
+        List<Mutation> mutations = ring.since(request.getSeq(), request.getLimit());
+        if (mutations != null) {
+            result.setAvailable(true);
+            result.getMutations().addAll(mutations);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Message;
+import com.hopper.storage.StateStorage;
+import com.hopper.verb.Verb;
+import com.hopper.verb.VerbHandler;
+
+/**
+ * The message handler for processing the REQUIRE_SKETCH request, it replies the key/version sketch of local storage.
+ */
+public class RequireSketchVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private final StateStorage storage = componentManager.getStateStorage();
+
+    @Override
+    public void doVerb(Message message) {
+        // the xid is read before copying, the sketch covers the mutations up to it at least
+        Sketch sketch = new Sketch();
+        sketch.setMaxXid(storage.getMaxXid());
+        sketch.setHashDepth(componentManager.getGlobalConfiguration().getMerkleTreeDepth());
+        sketch.setTable(storage.getSketch());
+
+        Message reply = message.createResponse(Verb.SKETCH_RESULT);
+        reply.setBody(sketch);
+
+        componentManager.getMessageService().responseOneway(reply);
+    }
+}
@@ -0,0 +1,28 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.server.Endpoint;
+import com.hopper.session.Message;
+import com.hopper.thrift.ChannelBound;
+import com.hopper.verb.VerbHandler;
+
+/**
+ * The message handler for processing the REQUIRE_SNAPSHOT request, the snapshot is written and streamed back to the
+ * requester on the SYNC pool.
+ */
+public class RequireSnapshotVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    @Override
+    public void doVerb(Message message) {
+        Endpoint endpoint = componentManager.getGlobalConfiguration().getEndpoint(ChannelBound.get()
+                .getRemoteAddress());
+
+        if (endpoint == null) {
+            throw new IllegalStateException("Not found endpoint for address:" + ChannelBound.get().getRemoteAddress());
+        }
+
+        componentManager.getDataSyncService().sendSnapshot(endpoint.serverId);
+    }
+}
@@ -0,0 +1,37 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requires the state nodes of keys, see {@link MerkleExchange}
+ */
+public class RequireStateNodes implements Serializer {
+
+    private final List<String> keys = new ArrayList<String>();
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            out.writeUTF(key);
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            keys.add(in.readUTF());
+        }
+    }
+}
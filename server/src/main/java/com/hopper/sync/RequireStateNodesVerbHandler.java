@@ -0,0 +1,38 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Message;
+import com.hopper.storage.StateNode;
+import com.hopper.storage.StateStorage;
+import com.hopper.verb.Verb;
+import com.hopper.verb.VerbHandler;
+
+/**
+ * The message handler for processing the REQUIRE_STATE_NODES request, it replies the state nodes of the required keys.
+ */
+public class RequireStateNodesVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    private final StateStorage storage = componentManager.getStateStorage();
+
+    @Override
+    public void doVerb(Message message) {
+        Message reply = message.createResponse(Verb.STATE_NODES_RESULT);
+        reply.setBody(nodes((RequireStateNodes) message.getBody()));
+
+        componentManager.getMessageService().responseOneway(reply);
+    }
+
+    StateNodes nodes(RequireStateNodes request) {
+        StateNodes nodes = new StateNodes();
+        for (String key : request.getKeys()) {
+            StateNode node = storage.get(key);
+            // the key may be removed after comparing
+            if (node != null) {
+                nodes.getNodes().add(node);
+            }
+        }
+        return nodes;
+    }
+}
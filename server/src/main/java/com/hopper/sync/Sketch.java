@@ -0,0 +1,70 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+import com.hopper.util.merkle.InvertibleBloomTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The key/version sketch replied for REQUIRE_SKETCH, see {@link MerkleExchange}
+ */
+public class Sketch implements Serializer {
+    /**
+     * Remote max xid(read before copying the sketch)
+     */
+    private long maxXid;
+    /**
+     * Remote tree height
+     */
+    private byte hashDepth;
+    /**
+     * Remote sketch, null if it's disabled on remote
+     */
+    private InvertibleBloomTable table;
+
+    public long getMaxXid() {
+        return maxXid;
+    }
+
+    public void setMaxXid(long maxXid) {
+        this.maxXid = maxXid;
+    }
+
+    public byte getHashDepth() {
+        return hashDepth;
+    }
+
+    public void setHashDepth(byte hashDepth) {
+        this.hashDepth = hashDepth;
+    }
+
+    public InvertibleBloomTable getTable() {
+        return table;
+    }
+
+    public void setTable(InvertibleBloomTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeLong(maxXid);
+        out.writeByte(hashDepth);
+        out.writeBoolean(table != null);
+        if (table != null) {
+            table.serialize(out);
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.maxXid = in.readLong();
+        this.hashDepth = in.readByte();
+        if (in.readBoolean()) {
+            this.table = new InvertibleBloomTable();
+            table.deserialize(in);
+        }
+    }
+}
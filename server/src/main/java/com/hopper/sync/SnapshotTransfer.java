@@ -0,0 +1,155 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Serializer;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * The header of a snapshot streamed by leader, the <code>length</code> bytes of the snapshot file follow the message
+ * on the same connection. The receiver writes them to a local file before dispatching the message.
+ */
+public class SnapshotTransfer implements Serializer {
+    /**
+     * The max xid of snapshot
+     */
+    private long maxXid;
+    /**
+     * The replication stream of leader and its last sequence covered by the snapshot, the stream id is 0 if the
+     * sender isn't leader
+     */
+    private long streamId;
+
+    private long lastSeq;
+    /**
+     * The length of snapshot file
+     */
+    private long length;
+    /**
+     * The received snapshot file
+     */
+    private File file;
+
+    private FileChannel channel;
+
+    private long received;
+
+    public long getMaxXid() {
+        return maxXid;
+    }
+
+    public void setMaxXid(long maxXid) {
+        this.maxXid = maxXid;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(long streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Creates the file for receiving the snapshot
+     */
+    public void open() throws IOException {
+        this.file = newFile();
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    /**
+     * Creates a file for the streamed snapshot in the snapshot directory(or the temporary directory if the snapshot
+     * is disabled)
+     */
+    static File newFile() throws IOException {
+        String directory = ComponentManagerFactory.getComponentManager().getGlobalConfiguration()
+                .getSnapshotDirectory();
+        File dir = directory == null ? null : new File(directory);
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create snapshot directory " + dir);
+        }
+
+        return File.createTempFile("Bootstrap-", ".tmp", dir);
+    }
+
+    /**
+     * Writes the available bytes of snapshot in <code>buffer</code> to file
+     *
+     * @return true if the whole snapshot has been received
+     */
+    public boolean receive(ChannelBuffer buffer) throws IOException {
+        int n = (int) Math.min(buffer.readableBytes(), length - received);
+        while (n > 0) {
+            int written = buffer.readBytes(channel, n);
+            received += written;
+            n -= written;
+        }
+
+        if (received < length) {
+            return false;
+        }
+
+        channel.force(false);
+        channel.close();
+        return true;
+    }
+
+    /**
+     * Discards the partially received snapshot
+     */
+    public void abort() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // nothing
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeLong(maxXid);
+        out.writeLong(streamId);
+        out.writeLong(lastSeq);
+        out.writeLong(length);
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.maxXid = in.readLong();
+        this.streamId = in.readLong();
+        this.lastSeq = in.readLong();
+        this.length = in.readLong();
+    }
+}
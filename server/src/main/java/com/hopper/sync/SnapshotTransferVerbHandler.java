@@ -0,0 +1,18 @@
+package com.hopper.sync;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.session.Message;
+import com.hopper.verb.VerbHandler;
+
+/**
+ * The handler for processing the snapshot streamed by leader, the snapshot file has been received by the decoder
+ */
+public class SnapshotTransferVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    @Override
+    public void doVerb(Message message) {
+        componentManager.getDataSyncService().snapshotReceived((SnapshotTransfer) message.getBody());
+    }
+}
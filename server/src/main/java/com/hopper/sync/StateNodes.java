@@ -0,0 +1,40 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+import com.hopper.storage.StateNode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state nodes replied for {@link RequireStateNodes}, the removed keys are absent
+ */
+public class StateNodes implements Serializer {
+
+    private final List<StateNode> nodes = new ArrayList<StateNode>();
+
+    public List<StateNode> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(nodes.size());
+        for (StateNode node : nodes) {
+            node.serialize(out);
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            StateNode node = new StateNode();
+            node.deserialize(in);
+            nodes.add(node);
+        }
+    }
+}
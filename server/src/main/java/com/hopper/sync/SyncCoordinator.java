@@ -0,0 +1,285 @@
+package com.hopper.sync;
+
+import com.hopper.lifecycle.LifecycleMBeanProxy;
+import com.hopper.util.ScheduleManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SyncCoordinator} schedules the synchronizations from peers. At most one synchronization is in flight per
+ * peer, the triggers arriving during it are coalesced into a single follow-up, and two synchronizations from the
+ * same peer start at least <code>minInterval</code> milliseconds apart. The statistics are published through JMX.
+ */
+public class SyncCoordinator extends LifecycleMBeanProxy {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SyncCoordinator.class);
+
+    /**
+     * The synchronization from a peer
+     */
+    public interface SyncAction {
+        void sync(int serverId) throws Exception;
+    }
+
+    private final Executor executor;
+
+    private final ScheduleManager scheduleManager;
+
+    private final long minInterval;
+
+    private final SyncAction action;
+
+    private final ConcurrentMap<Integer, Peer> peers = new ConcurrentHashMap<Integer, Peer>();
+
+    private final AtomicLong triggerCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalSyncDuration = new AtomicLong();
+    private volatile long lastSyncDuration;
+    private volatile long maxSyncDuration;
+
+    /**
+     * @param executor        The executor running the synchronizations
+     * @param scheduleManager The schedule manager delaying the synchronizations within the min interval, it's
+     *                        unused if the min interval is 0
+     * @param minInterval     The min milliseconds between the starts of two synchronizations from the same peer
+     * @param action          The synchronization
+     */
+    public SyncCoordinator(Executor executor, ScheduleManager scheduleManager, long minInterval, SyncAction action) {
+        this.executor = executor;
+        this.scheduleManager = scheduleManager;
+        this.minInterval = minInterval;
+        this.action = action;
+    }
+
+    @Override
+    protected String getObjectNameKeyProperties() {
+        return "type=SyncCoordinator";
+    }
+
+    @Override
+    public String getInfo() {
+        return "Data synchronization coordinator";
+    }
+
+    /**
+     * Requires a synchronization from the peer, it's absorbed if one is waiting to start, or deferred until the
+     * running one completes.
+     */
+    public void trigger(int serverId) {
+        triggerCount.incrementAndGet();
+
+        Peer peer = peers.get(serverId);
+        if (peer == null) {
+            peer = new Peer(serverId);
+            Peer old = peers.putIfAbsent(serverId, peer);
+            if (old != null) {
+                peer = old;
+            }
+        }
+
+        synchronized (peer) {
+            if (peer.state == PeerState.SCHEDULED || (peer.state == PeerState.RUNNING && peer.pending)) {
+                coalescedCount.incrementAndGet();
+                return;
+            }
+            if (peer.state == PeerState.RUNNING) {
+                peer.pending = true;
+                return;
+            }
+            peer.state = PeerState.SCHEDULED;
+        }
+
+        dispatch(peer);
+    }
+
+    /**
+     * Submits the synchronization of peer to executor, it's delayed if the last one started within the min interval
+     */
+    private void dispatch(final Peer peer) {
+        long delay = minInterval <= 0 || peer.lastStart == 0 ? 0 : peer.lastStart + minInterval - System
+                .currentTimeMillis();
+
+        try {
+            if (delay <= 0) {
+                executor.execute(peer);
+            } else {
+                scheduleManager.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            executor.execute(peer);
+                        } catch (RejectedExecutionException e) {
+                            reset(peer);
+                            logger.debug("Discard the synchronization from {}, executor is shutdown.", peer.serverId);
+                        }
+                    }
+                }, delay);
+            }
+        } catch (RuntimeException e) {
+            reset(peer);
+            throw e;
+        }
+    }
+
+    private void reset(Peer peer) {
+        synchronized (peer) {
+            peer.state = PeerState.IDLE;
+            peer.pending = false;
+        }
+    }
+
+    private void complete(Peer peer, long start, boolean succeed) {
+        long duration = System.currentTimeMillis() - start;
+
+        syncCount.incrementAndGet();
+        if (!succeed) {
+            failedCount.incrementAndGet();
+        }
+        totalSyncDuration.addAndGet(duration);
+        lastSyncDuration = duration;
+        if (duration > maxSyncDuration) {
+            maxSyncDuration = duration;
+        }
+
+        synchronized (peer) {
+            if (!peer.pending) {
+                peer.state = PeerState.IDLE;
+                return;
+            }
+            peer.pending = false;
+            peer.state = PeerState.SCHEDULED;
+        }
+
+        dispatch(peer);
+    }
+
+    private enum PeerState {
+        IDLE, SCHEDULED, RUNNING
+    }
+
+    private class Peer implements Runnable {
+        final int serverId;
+        /**
+         * Guarded by this
+         */
+        PeerState state = PeerState.IDLE;
+        /**
+         * Whether or not a follow-up is required after the running one, guarded by this
+         */
+        boolean pending;
+        volatile long lastStart;
+
+        Peer(int serverId) {
+            this.serverId = serverId;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                state = PeerState.RUNNING;
+                lastStart = start;
+            }
+
+            boolean succeed = false;
+            try {
+                action.sync(serverId);
+                succeed = true;
+            } catch (Exception e) {
+                logger.error("Failed to synchronize data from remote[server:{}]", new Object[]{serverId, e});
+            } finally {
+                complete(this, start, succeed);
+            }
+        }
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getTriggerCount() {
+        return triggerCount.get();
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * The count of the peers whose synchronization is waiting to start or waiting for a follow-up
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Peer peer : peers.values()) {
+            synchronized (peer) {
+                if (peer.state == PeerState.SCHEDULED || peer.pending) {
+                    depth++;
+                }
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * The count of the running synchronizations
+     */
+    public int getRunningCount() {
+        int running = 0;
+        for (Peer peer : peers.values()) {
+            synchronized (peer) {
+                if (peer.state == PeerState.RUNNING) {
+                    running++;
+                }
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getLastSyncDuration() {
+        return lastSyncDuration;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getMaxSyncDuration() {
+        return maxSyncDuration;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getAverageSyncDuration() {
+        long count = syncCount.get();
+        return count == 0 ? 0 : totalSyncDuration.get() / count;
+    }
+}
@@ -0,0 +1,287 @@
+package com.hopper.sync;
+
+import com.hopper.lifecycle.LifecycleMBeanProxy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SyncThrottle} limits the data synchronization traffic by token buckets of operations(requests) and bytes per
+ * second, so a large synchronization doesn't crowd out the mutations and heart beats on the same connection.
+ * <p/>
+ * The byte size of a request is only known after its reply arrives, so the bytes are charged afterwards and the
+ * bucket may go into debt, the next request waits until the debt is paid off.
+ * <p/>
+ * The rates back off adaptively: the latency of mutations is averaged, the rates are halved(down to
+ * {@link #MIN_RATE_FACTOR}) while it's above <code>backoffLatency</code>, and recover step by step while it's below.
+ */
+public class SyncThrottle extends LifecycleMBeanProxy {
+    /**
+     * The min fraction of the configured rates while backing off
+     */
+    static final double MIN_RATE_FACTOR = 1.0 / 16;
+    /**
+     * The fraction of the configured rates recovered per adjusting
+     */
+    private static final double RECOVER_STEP = 1.0 / 8;
+    /**
+     * The weight of a new sample of mutation latency
+     */
+    private static final double LATENCY_ALPHA = 0.2;
+    /**
+     * The milliseconds between two adjustments of the rates
+     */
+    private static final long ADJUST_INTERVAL = 100;
+    /**
+     * The max milliseconds of a single sleep, so the changed rates take effect soon
+     */
+    private static final long MAX_SLEEP = 100;
+
+    /**
+     * The configured rates, 0 means unlimited
+     */
+    private volatile long opsPerSecond;
+    private volatile long bytesPerSecond;
+    /**
+     * The mutation latency(milliseconds) above which the rates back off, 0 disables the backoff
+     */
+    private volatile long backoffLatency;
+
+    /**
+     * The state below is guarded by this
+     */
+    private double opTokens;
+    private double byteTokens;
+    private long lastRefill = System.nanoTime();
+    private long lastAdjust = System.currentTimeMillis();
+    private double rateFactor = 1;
+    private double mutationLatency;
+    private int latencySamples;
+
+    /**
+     * Statistics
+     */
+    private long acquiredOps;
+    private long consumedBytes;
+    private long throttledCount;
+    private long throttledTime;
+    private long backoffCount;
+
+    public SyncThrottle(long opsPerSecond, long bytesPerSecond, long backoffLatency) {
+        this.opsPerSecond = opsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.backoffLatency = backoffLatency;
+        this.opTokens = opsPerSecond;
+        this.byteTokens = bytesPerSecond;
+    }
+
+    @Override
+    protected String getObjectNameKeyProperties() {
+        return "type=SyncThrottle";
+    }
+
+    @Override
+    public String getInfo() {
+        return "Data synchronization throttle";
+    }
+
+    /**
+     * Waits for the permit of a synchronization request
+     */
+    public void acquire() throws InterruptedException {
+        long start = 0;
+        while (true) {
+            long wait;
+            synchronized (this) {
+                refill();
+                wait = waitMillis();
+                if (wait <= 0) {
+                    if (opsPerSecond > 0) {
+                        opTokens--;
+                    }
+                    acquiredOps++;
+                    if (start > 0) {
+                        throttledCount++;
+                        throttledTime += System.currentTimeMillis() - start;
+                    }
+                    return;
+                }
+            }
+
+            if (start == 0) {
+                start = System.currentTimeMillis();
+            }
+            TimeUnit.MILLISECONDS.sleep(Math.min(wait, MAX_SLEEP));
+        }
+    }
+
+    /**
+     * Charges the bytes transferred by a synchronization request(including its reply)
+     */
+    public synchronized void consume(long bytes) {
+        refill();
+        if (bytesPerSecond > 0) {
+            byteTokens -= bytes;
+        }
+        consumedBytes += bytes;
+    }
+
+    /**
+     * Records the latency of a mutation
+     */
+    public synchronized void recordMutationLatency(long millis) {
+        mutationLatency = latencySamples == 0 ? millis : mutationLatency + LATENCY_ALPHA * (millis -
+                mutationLatency);
+        latencySamples++;
+    }
+
+    /**
+     * The milliseconds until both buckets allow a request, guarded by this
+     */
+    private long waitMillis() {
+        double seconds = 0;
+        if (opsPerSecond > 0 && opTokens < 1) {
+            seconds = (1 - opTokens) / (opsPerSecond * rateFactor);
+        }
+        if (bytesPerSecond > 0 && byteTokens < 0) {
+            seconds = Math.max(seconds, -byteTokens / (bytesPerSecond * rateFactor));
+        }
+        return (long) Math.ceil(seconds * 1000);
+    }
+
+    /**
+     * Adds the tokens accumulated since the last refill(at most a second of tokens are kept), guarded by this
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        double seconds = (now - lastRefill) / 1e9;
+        lastRefill = now;
+
+        if (System.currentTimeMillis() - lastAdjust >= ADJUST_INTERVAL) {
+            adjust();
+        }
+
+        opTokens = Math.min(opsPerSecond, opTokens + seconds * opsPerSecond * rateFactor);
+        byteTokens = Math.min(bytesPerSecond, byteTokens + seconds * bytesPerSecond * rateFactor);
+    }
+
+    /**
+     * Backs off or recovers the rates by the average mutation latency, the average decays if no mutation is recorded
+     * since the last adjustment.
+     */
+    synchronized void adjust() {
+        lastAdjust = System.currentTimeMillis();
+        if (latencySamples == 0) {
+            mutationLatency *= 1 - LATENCY_ALPHA;
+        }
+        latencySamples = 0;
+
+        if (backoffLatency > 0 && mutationLatency > backoffLatency) {
+            if (rateFactor > MIN_RATE_FACTOR) {
+                rateFactor = Math.max(MIN_RATE_FACTOR, rateFactor / 2);
+                backoffCount++;
+            }
+        } else {
+            rateFactor = Math.min(1, rateFactor + RECOVER_STEP);
+        }
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getOpsPerSecond() {
+        return opsPerSecond;
+    }
+
+    /**
+     * Invoke from JMX, 0 means unlimited
+     */
+    public synchronized void setOpsPerSecond(long opsPerSecond) {
+        this.opsPerSecond = opsPerSecond;
+        this.opTokens = Math.min(opTokens, opsPerSecond);
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Invoke from JMX, 0 means unlimited
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.byteTokens = Math.min(byteTokens, bytesPerSecond);
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public long getBackoffLatency() {
+        return backoffLatency;
+    }
+
+    /**
+     * Invoke from JMX, 0 disables the backoff
+     */
+    public void setBackoffLatency(long backoffLatency) {
+        this.backoffLatency = backoffLatency;
+    }
+
+    /**
+     * The fraction of the configured rates currently allowed
+     */
+    public synchronized double getRateFactor() {
+        return rateFactor;
+    }
+
+    /**
+     * Whether or not the rates are backed off
+     */
+    public synchronized boolean isBackingOff() {
+        return rateFactor < 1;
+    }
+
+    /**
+     * The average latency(milliseconds) of mutations
+     */
+    public synchronized double getMutationLatency() {
+        return mutationLatency;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public synchronized long getAcquiredOps() {
+        return acquiredOps;
+    }
+
+    /**
+     * Invoke from JMX
+     */
+    public synchronized long getConsumedBytes() {
+        return consumedBytes;
+    }
+
+    /**
+     * The count of the requests delayed by throttle
+     */
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * The total milliseconds of the requests delayed by throttle
+     */
+    public synchronized long getThrottledTime() {
+        return throttledTime;
+    }
+
+    /**
+     * The count of halving the rates
+     */
+    public synchronized long getBackoffCount() {
+        return backoffCount;
+    }
+}
@@ -0,0 +1,226 @@
+package com.hopper.thrift;
+
+import com.hopper.future.LatchFuture;
+import com.hopper.future.LatchFutureListener;
+import com.hopper.thrift.netty.AsyncProcessFunction;
+import com.hopper.thrift.netty.Continuation;
+import com.hopper.thrift.netty.ThriftServerHandler;
+import com.hopper.verb.handler.Mutation;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The continuation-based processing of the mutation methods of HopperService. The request is parked after the
+ * mutation is applied on local(or transferred to leader), and the response is written from the replication callback,
+ * so the Netty workers aren't blocked by the replication and the in-flight requests aren't limited by them.
+ */
+public class AsyncMutationFunctions {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AsyncMutationFunctions.class);
+
+    private final HopperServiceImpl service;
+
+    public AsyncMutationFunctions(HopperServiceImpl service) {
+        this.service = service;
+    }
+
+    /**
+     * Registers the mutation methods to handler
+     */
+    public void registerTo(ThriftServerHandler handler) {
+        handler.registerAsyncFunction("create", new MutationFunction<HopperService.create_args,
+                HopperService.create_result>() {
+            @Override
+            HopperService.create_args newArgs() {
+                return new HopperService.create_args();
+            }
+
+            @Override
+            HopperService.create_result newResult() {
+                return new HopperService.create_result();
+            }
+
+            @Override
+            Mutation getMutation(HopperService.create_args args) throws Exception {
+                return service.createMutation(args.key, args.owner, args.initStatus, args.invalidateStatus);
+            }
+
+            @Override
+            boolean setException(HopperService.create_result result, Exception e) {
+                if (e instanceof RetryException) {
+                    result.e = (RetryException) e;
+                }
+                // the existed state isn't a failure of create
+                return e instanceof RetryException || e instanceof CASException;
+            }
+        });
+
+        handler.registerAsyncFunction("updateStatus", new MutationFunction<HopperService.updateStatus_args,
+                HopperService.updateStatus_result>() {
+            @Override
+            HopperService.updateStatus_args newArgs() {
+                return new HopperService.updateStatus_args();
+            }
+
+            @Override
+            HopperService.updateStatus_result newResult() {
+                return new HopperService.updateStatus_result();
+            }
+
+            @Override
+            Mutation getMutation(HopperService.updateStatus_args args) throws Exception {
+                return service.updateStatusMutation(args.key, args.expectStatus, args.newStatus, args.owner,
+                        args.lease);
+            }
+
+            @Override
+            boolean setException(HopperService.updateStatus_result result, Exception e) {
+                if (e instanceof RetryException) {
+                    result.re = (RetryException) e;
+                } else if (e instanceof CASException) {
+                    result.se = (CASException) e;
+                } else {
+                    return false;
+                }
+                return true;
+            }
+        });
+
+        handler.registerAsyncFunction("expandLease", new MutationFunction<HopperService.expandLease_args,
+                HopperService.expandLease_result>() {
+            @Override
+            HopperService.expandLease_args newArgs() {
+                return new HopperService.expandLease_args();
+            }
+
+            @Override
+            HopperService.expandLease_result newResult() {
+                return new HopperService.expandLease_result();
+            }
+
+            @Override
+            Mutation getMutation(HopperService.expandLease_args args) throws Exception {
+                return service.expandLeaseMutation(args.key, args.expectStatus, args.owner, args.lease);
+            }
+
+            @Override
+            boolean setException(HopperService.expandLease_result result, Exception e) {
+                if (e instanceof RetryException) {
+                    result.re = (RetryException) e;
+                } else if (e instanceof CASException) {
+                    result.se = (CASException) e;
+                } else if (e instanceof NoStateNodeException) {
+                    result.nse = (NoStateNodeException) e;
+                } else {
+                    return false;
+                }
+                return true;
+            }
+        });
+
+        handler.registerAsyncFunction("watch", new MutationFunction<HopperService.watch_args,
+                HopperService.watch_result>() {
+            @Override
+            HopperService.watch_args newArgs() {
+                return new HopperService.watch_args();
+            }
+
+            @Override
+            HopperService.watch_result newResult() {
+                return new HopperService.watch_result();
+            }
+
+            @Override
+            Mutation getMutation(HopperService.watch_args args) throws Exception {
+                return service.watchMutation(args.key, args.expectStatus);
+            }
+
+            @Override
+            boolean setException(HopperService.watch_result result, Exception e) {
+                if (e instanceof RetryException) {
+                    result.re = (RetryException) e;
+                } else if (e instanceof CASException) {
+                    result.ese = (CASException) e;
+                } else if (e instanceof NoStateNodeException) {
+                    result.nse = (NoStateNodeException) e;
+                } else {
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * The template of mutation methods, the declared exceptions are written in result, others are written as
+     * {@link TApplicationException}
+     */
+    private abstract class MutationFunction<A extends TBase<?, ?>, R extends TBase<?, ?>> implements
+            AsyncProcessFunction {
+
+        abstract A newArgs();
+
+        abstract R newResult();
+
+        /**
+         * Checks the request and builds the mutation, it's invoked on the Netty worker(with the bound channel)
+         */
+        abstract Mutation getMutation(A args) throws Exception;
+
+        /**
+         * @return false if the exception isn't declared by method
+         */
+        abstract boolean setException(R result, Exception e);
+
+        @Override
+        public void process(TProtocol in, final Continuation continuation) throws TException {
+            A args = newArgs();
+            args.read(in);
+            in.readMessageEnd();
+
+            final R result = newResult();
+            try {
+                service.executeMutationAsync(getMutation(args)).addListener(new LatchFutureListener<Void>() {
+                    @Override
+                    public void complete(LatchFuture<Void> future) {
+                        if (future.isSuccess()) {
+                            continuation.resume(result);
+                        } else {
+                            resume(continuation, result, getException(future));
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                resume(continuation, result, e);
+            }
+        }
+
+        private void resume(Continuation continuation, R result, Exception e) {
+            if (setException(result, e)) {
+                continuation.resume(result);
+            } else {
+                logger.error("Failed to process the mutation.", e);
+                continuation.resume(new TApplicationException(TApplicationException.INTERNAL_ERROR, e.getMessage()));
+            }
+        }
+
+        private Exception getException(LatchFuture<Void> future) {
+            try {
+                future.get();
+                return null;
+            } catch (ExecutionException e) {
+                return e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (InterruptedException e) {
+                return e;
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.hopper.thrift;
 
 import com.hopper.GlobalConfiguration;
-import com.hopper.quorum.NoQuorumException;
+import com.hopper.future.DefaultLatchFuture;
+import com.hopper.future.LatchFuture;
+import com.hopper.future.LatchFutureListener;
 import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.server.Server;
@@ -12,7 +14,9 @@ import com.hopper.session.Message;
 import com.hopper.session.SessionIdGenerator;
 import com.hopper.storage.NotMatchOwnerException;
 import com.hopper.storage.NotMatchStatusException;
+import com.hopper.storage.StateNode;
 import com.hopper.storage.StateStorage;
+import com.hopper.util.Timeout;
 import com.hopper.verb.Verb;
 import com.hopper.verb.VerbMappings;
 import com.hopper.verb.handler.BatchMultiplexerSessions;
@@ -24,8 +28,9 @@ import org.jboss.netty.channel.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The implementation of HopperService.Iface,HopperService.Iface is a facade of client interface.
@@ -44,6 +49,11 @@ public class HopperServiceImpl implements HopperService.Iface {
 
     private int responseSize = 4096;
 
+    /**
+     * The max count of states returned by one scan
+     */
+    private static final int MAX_SCAN_LIMIT = 1000;
+
     /**
      * Singleton
      */
@@ -146,86 +156,76 @@ public class HopperServiceImpl implements HopperService.Iface {
     }
 
     @Override
-    public void create(final String key, final String owner, final int initStatus, final int invalidateStatus) throws
-            RetryException, TException {
-
-        assertServiceAvaliable();
+    public void create(String key, String owner, int initStatus, int invalidateStatus) throws RetryException,
+            TException {
         try {
-            executeMutation(new MutationTask() {
-                @Override
-                public void mutation() {
-                    MutationVerbHandler mutationVerbHandler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb
-                            .MUTATION);
-                    mutationVerbHandler.create(key, owner, initStatus, invalidateStatus);
-                }
-
-                @Override
-                public Mutation getMutation() {
-                    Mutation mutation = new Mutation();
-                    mutation.addCreate(key, owner, initStatus, invalidateStatus);
-                    return mutation;
-                }
-            });
+            awaitMutation(executeMutationAsync(createMutation(key, owner, initStatus, invalidateStatus)));
         } catch (CASException e) {
             // nothing
         }
     }
 
-    @Override
-    public void updateStatus(final String key, final int expectStatus, final int newStatus, final String owner,
-                             final int lease) throws RetryException, CASException, TException {
+    /**
+     * Build the mutation of create request
+     */
+    Mutation createMutation(String key, String owner, int initStatus, int invalidateStatus) throws RetryException {
         assertServiceAvaliable();
 
-        executeMutation(new MutationTask() {
-            @Override
-            public void mutation() {
-                MutationVerbHandler mutationVerbHandler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb
-                        .MUTATION);
-                mutationVerbHandler.updateStatus(key, expectStatus, newStatus, owner, lease);
-            }
+        Mutation mutation = new Mutation();
+        mutation.addCreate(key, owner, initStatus, invalidateStatus);
+        return mutation;
+    }
 
-            @Override
-            public Mutation getMutation() {
-                Mutation mutation = new Mutation();
-                mutation.addUpdateStatus(key, expectStatus, newStatus, owner, lease);
-                return mutation;
-            }
-        });
+    @Override
+    public void updateStatus(String key, int expectStatus, int newStatus, String owner, int lease) throws
+            RetryException, CASException, TException {
+        awaitMutation(executeMutationAsync(updateStatusMutation(key, expectStatus, newStatus, owner, lease)));
+    }
+
+    /**
+     * Build the mutation of updateStatus request
+     */
+    Mutation updateStatusMutation(String key, int expectStatus, int newStatus, String owner, int lease) throws
+            RetryException {
+        assertServiceAvaliable();
+
+        Mutation mutation = new Mutation();
+        mutation.addUpdateStatus(key, expectStatus, newStatus, owner, lease);
+        return mutation;
     }
 
     @Override
-    public void expandLease(final String key, final int expectStatus, final String owner,
-                            final int lease) throws RetryException, CASException, NoStateNodeException, TException {
+    public void expandLease(String key, int expectStatus, String owner, int lease) throws RetryException,
+            CASException, NoStateNodeException, TException {
+        awaitMutation(executeMutationAsync(expandLeaseMutation(key, expectStatus, owner, lease)));
+    }
 
+    /**
+     * Build the mutation of expandLease request
+     */
+    Mutation expandLeaseMutation(String key, int expectStatus, String owner, int lease) throws RetryException,
+            NoStateNodeException {
         assertServiceAvaliable();
 
         if (storage.get(key) == null) {
             throw new NoStateNodeException(key);
         }
 
-        final Mutation mutation = new Mutation();
+        Mutation mutation = new Mutation();
         mutation.addUpdateLease(key, expectStatus, owner, lease);
-
-        executeMutation(new MutationTask() {
-            @Override
-            public void mutation() {
-                MutationVerbHandler mutationVerbHandler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb
-                        .MUTATION);
-                mutationVerbHandler.updateLease(key, expectStatus, owner, lease);
-            }
-
-            @Override
-            public Mutation getMutation() {
-                Mutation mutation = new Mutation();
-                mutation.addUpdateLease(key, expectStatus, owner, lease);
-                return mutation;
-            }
-        });
+        return mutation;
     }
 
     @Override
-    public void watch(final String key, final int expectStatus) throws RetryException, CASException,
-            NoStateNodeException, TException {
+    public void watch(String key, int expectStatus) throws RetryException, CASException, NoStateNodeException,
+            TException {
+        awaitMutation(executeMutationAsync(watchMutation(key, expectStatus)));
+    }
+
+    /**
+     * Build the mutation of watch request, the session is bound with current channel
+     */
+    Mutation watchMutation(String key, int expectStatus) throws RetryException, NoStateNodeException {
         assertServiceAvaliable();
 
         if (storage.get(key) == null) {
@@ -233,23 +233,11 @@ public class HopperServiceImpl implements HopperService.Iface {
         }
 
         Channel channel = ChannelBound.get();
-        final ClientSession session = componentManager.getSessionManager().getClientSession(channel);
-
-        executeMutation(new MutationTask() {
-            @Override
-            public void mutation() {
-                MutationVerbHandler mutationVerbHandler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb
-                        .MUTATION);
-                mutationVerbHandler.watch(session.getId(), key, expectStatus);
-            }
+        ClientSession session = componentManager.getSessionManager().getClientSession(channel);
 
-            @Override
-            public Mutation getMutation() {
-                Mutation mutation = new Mutation();
-                mutation.addWatch(session.getId(), key, expectStatus);
-                return mutation;
-            }
-        });
+        Mutation mutation = new Mutation();
+        mutation.addWatch(session.getId(), key, expectStatus);
+        return mutation;
     }
 
     @Override
@@ -257,6 +245,32 @@ public class HopperServiceImpl implements HopperService.Iface {
         throw new TException("The method should not be invoked by client.");
     }
 
+    @Override
+    public ScanResult scan(String prefix, String fromKey, String toKey, int limit, String cursor) throws
+            RetryException, TException {
+        assertServiceAvaliable();
+
+        if (limit <= 0 || limit > MAX_SCAN_LIMIT) {
+            limit = MAX_SCAN_LIMIT;
+        }
+
+        List<StateNode> nodes = prefix != null ? storage.scan(prefix, limit, cursor) : storage.scan(fromKey, toKey,
+                limit, cursor);
+
+        ScanResult result = new ScanResult(new ArrayList<StateInfo>(nodes.size()), null);
+        for (StateNode node : nodes) {
+            result.addToStates(new StateInfo(node.key, node.getStatus(), node.getOwner(), node.getLease(),
+                    node.getVersion()));
+        }
+
+        // a full page may be followed by more states
+        if (nodes.size() == limit) {
+            result.setCursor(nodes.get(nodes.size() - 1).key);
+        }
+
+        return result;
+    }
+
     /**
      * Check server running state
      */
@@ -276,57 +290,109 @@ public class HopperServiceImpl implements HopperService.Iface {
     }
 
     /**
-     * This method is a template method for executing all mutations, the concrete mutation execution will be delegate
-     * to {@link MutationTask}, other common processing will be done on there.
+     * Executes the mutation without blocking: on leader the mutation is applied on local and replicated to quorum, on
+     * follower it's transferred to leader. The returned future completes when quorum acknowledges it(or the leader
+     * replies), it fails with {@link RetryException} or {@link CASException}.
      */
-    private void executeMutation(MutationTask task) throws RetryException, CASException {
+    LatchFuture<Void> executeMutationAsync(Mutation mutation) {
+        final DefaultLatchFuture<Void> result = new DefaultLatchFuture<Void>();
+
         if (server.isLeader()) {
             MutationVerbHandler mutationVerbHandler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb.MUTATION);
+            LatchFuture<Boolean> replication;
             try {
-                task.mutation();
-            } catch (NoQuorumException e) {
-                throw new RetryException(config.getRetryPeriod());
+                replication = mutationVerbHandler.mutateAsync(mutation);
+            } catch (ServiceUnavailableException e) {
+                result.setException(new RetryException(config.getRetryPeriod()));
+                return result;
             } catch (NotMatchStatusException e) {
-                throw new CASException(1);
+                result.setException(new CASException(1));
+                return result;
             } catch (NotMatchOwnerException e) {
-                throw new CASException(2);
+                result.setException(new CASException(2));
+                return result;
             }
-        } else {
-            Mutation mutation = task.getMutation();
 
-            Message message = makeMutationRequest(mutation);
-            MutationReply mutationReply = null;
+            replication.addListener(new LatchFutureListener<Boolean>() {
+                @Override
+                public void complete(LatchFuture<Boolean> future) {
+                    if (Boolean.TRUE.equals(getResult(future))) {
+                        result.set(null);
+                    } else {
+                        result.setException(new RetryException(config.getRetryPeriod()));
+                    }
+                }
+            });
+        } else {
+            LatchFuture<Message> reply;
             try {
                 // If current node is follower, transfers the request to leader
-                Future<Message> future = componentManager.getMessageService().send(message, server.getLeader());
-                Message reply = future.get(config.getRpcTimeout(), TimeUnit.MILLISECONDS);
-                mutationReply = (MutationReply) reply.getBody();
+                reply = componentManager.getMessageService().send(makeMutationRequest(mutation), server.getLeader());
             } catch (Exception e) {
-                throw new RetryException(config.getRetryPeriod());
+                result.setException(new RetryException(config.getRetryPeriod()));
+                return result;
             }
 
-            if (mutationReply.getStatus() == MutationReply.STATUS_CAS) {
-                throw new CASException(1);
-            }
+            // the reply future isn't completed if the reply is lost
+            final Timeout timeout = componentManager.getScheduleManager().newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    result.setException(new RetryException(config.getRetryPeriod()));
+                }
+            }, config.getRpcTimeout());
+
+            reply.addListener(new LatchFutureListener<Message>() {
+                @Override
+                public void complete(LatchFuture<Message> future) {
+                    timeout.cancel();
+
+                    Message message = getResult(future);
+                    MutationReply mutationReply = message == null ? null : (MutationReply) message.getBody();
+
+                    if (mutationReply == null) {
+                        result.setException(new RetryException(config.getRetryPeriod()));
+                    } else if (mutationReply.getStatus() == MutationReply.STATUS_CAS) {
+                        result.setException(new CASException(1));
+                    } else if (mutationReply.getStatus() == MutationReply.OWNER_CAS) {
+                        result.setException(new CASException(2));
+                    } else {
+                        result.set(null);
+                    }
+                }
+            });
+        }
 
-            if (mutationReply.getStatus() == MutationReply.OWNER_CAS) {
-                throw new CASException(2);
+        return result;
+    }
+
+    /**
+     * Waits for the mutation executed by {@link #executeMutationAsync(Mutation)}
+     */
+    private void awaitMutation(LatchFuture<Void> future) throws RetryException, CASException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RetryException(config.getRetryPeriod());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CASException) {
+                throw (CASException) e.getCause();
             }
+            throw new RetryException(config.getRetryPeriod());
         }
     }
 
     /**
-     * MutationTask supports a abstract for all mutation executions.
+     * The result of a completed future, null if it's failed
      */
-    private interface MutationTask {
-        /**
-         * Execute the concrete mutation
-         */
-        void mutation();
-
-        /**
-         * Retrieve the bound Mutation instance
-         */
-        Mutation getMutation();
+    private static <T> T getResult(LatchFuture<T> future) {
+        if (!future.isSuccess()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (Exception e) {
+            return null;
+        }
     }
 }
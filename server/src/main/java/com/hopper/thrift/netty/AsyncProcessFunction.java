@@ -0,0 +1,15 @@
+package com.hopper.thrift.netty;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+
+/**
+ * The continuation-based processing of a Thrift method, the request is parked instead of blocking the Netty worker
+ */
+public interface AsyncProcessFunction {
+    /**
+     * Reads the arguments(the message header has been read) and starts the call, the response is written by resuming
+     * the continuation
+     */
+    void process(TProtocol in, Continuation continuation) throws TException;
+}
@@ -0,0 +1,103 @@
+package com.hopper.thrift.netty;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A parked Thrift request, the response is written to channel when it's resumed(by any thread, once)
+ */
+public class Continuation {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(Continuation.class);
+
+    private final Channel channel;
+
+    private final TProtocolFactory protocolFactory;
+    /**
+     * The header of request
+     */
+    private final TMessage message;
+
+    private final int responseSize;
+
+    private final AtomicBoolean resumed = new AtomicBoolean();
+
+    public Continuation(Channel channel, TProtocolFactory protocolFactory, TMessage message, int responseSize) {
+        this.channel = channel;
+        this.protocolFactory = protocolFactory;
+        this.message = message;
+        this.responseSize = responseSize;
+    }
+
+    /**
+     * Writes the result(the generated <code>xxx_result</code>) of request
+     *
+     * @return false if it has been resumed
+     */
+    public boolean resume(final TBase<?, ?> result) {
+        return write(TMessageType.REPLY, new Body() {
+            @Override
+            public void write(TProtocol protocol) throws TException {
+                result.write(protocol);
+            }
+        });
+    }
+
+    /**
+     * Writes the application exception of request
+     *
+     * @return false if it has been resumed
+     */
+    public boolean resume(final TApplicationException exception) {
+        return write(TMessageType.EXCEPTION, new Body() {
+            @Override
+            public void write(TProtocol protocol) throws TException {
+                exception.write(protocol);
+            }
+        });
+    }
+
+    private boolean write(byte type, Body body) {
+        if (!resumed.compareAndSet(false, true)) {
+            return false;
+        }
+
+        ChannelBuffer output = ChannelBuffers.dynamicBuffer(responseSize);
+        TProtocol protocol = protocolFactory.getProtocol(new TNettyServerTransport(ChannelBuffers.EMPTY_BUFFER,
+                output));
+        try {
+            protocol.writeMessageBegin(new TMessage(message.name, type, message.seqid));
+            body.write(protocol);
+            protocol.writeMessageEnd();
+        } catch (TException e) {
+            logger.warn("Failed to write the response of " + message.name, e);
+            channel.close();
+            return true;
+        }
+
+        channel.write(output);
+        return true;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    private interface Body {
+        void write(TProtocol protocol) throws TException;
+    }
+}
@@ -1,9 +1,13 @@
 package com.hopper.thrift.netty;
 
 import com.hopper.thrift.ChannelBound;
+import org.apache.thrift.TApplicationException;
 import org.apache.thrift.TProcessor;
 import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
 import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
 import org.apache.thrift.protocol.TProtocolFactory;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -12,6 +16,9 @@ import org.jboss.netty.channel.ChildChannelStateEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Handler for Thrift RPC processors
  * <p/>
@@ -22,6 +29,9 @@ import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
  * <p/>
  * For optimal performance, please tweak the default response size by
  * setting {@link #setResponseSize(int)}
+ * <p/>
+ * The methods registered with {@link AsyncProcessFunction} are processed with continuation, their responses are
+ * written when the calls complete(e.g. from the replication callback), so the Netty worker isn't blocked by them.
  *
  * @author <a href="http://www.pedantique.org/">Carl Bystr&ouml;m</a>
  */
@@ -29,6 +39,10 @@ public class ThriftServerHandler extends SimpleChannelUpstreamHandler {
     private TProcessor processor;
     private TProtocolFactory protocolFactory;
     private int responseSize = 1024;
+    /**
+     * The continuation-based methods by name
+     */
+    private final Map<String, AsyncProcessFunction> asyncFunctions = new HashMap<String, AsyncProcessFunction>();
 
     /**
      * Creates a Thrift processor handler with the default binary protocol
@@ -67,6 +81,24 @@ public class ThriftServerHandler extends SimpleChannelUpstreamHandler {
             ChannelBuffer output = ChannelBuffers.dynamicBuffer(responseSize);
             TProtocol protocol = protocolFactory.getProtocol(new TNettyServerTransport(input, output));
 
+            input.markReaderIndex();
+            TMessage message = protocol.readMessageBegin();
+            AsyncProcessFunction function = message.type == TMessageType.CALL ? asyncFunctions.get(message.name) :
+                    null;
+
+            // parks the request, the response is written by continuation
+            if (function != null) {
+                Continuation continuation = new Continuation(e.getChannel(), protocolFactory, message, responseSize);
+                try {
+                    function.process(protocol, continuation);
+                } catch (TProtocolException ex) {
+                    continuation.resume(new TApplicationException(TApplicationException.PROTOCOL_ERROR, ex
+                            .getMessage()));
+                }
+                return;
+            }
+
+            input.resetReaderIndex();
             processor.process(protocol, protocol);
 
             e.getChannel().write(output);
@@ -75,6 +107,13 @@ public class ThriftServerHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
+    /**
+     * Processes the method with continuation instead of the processor
+     */
+    public void registerAsyncFunction(String name, AsyncProcessFunction function) {
+        asyncFunctions.put(name, function);
+    }
+
     /**
      * @return Default size for response buffer
      */
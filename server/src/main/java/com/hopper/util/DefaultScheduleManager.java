@@ -5,8 +5,12 @@ import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
 import com.hopper.stage.Stage;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -21,16 +25,35 @@ public class DefaultScheduleManager extends LifecycleProxy implements ScheduleMa
      */
     private ScheduledExecutorService scheduleExecutor;
 
+    /**
+     * The handles of scheduled commands for removing, a command may be scheduled more than once. A handle is
+     * registered before scheduling, so a command completed immediately can't leave its handle behind.
+     */
+    private final Map<Runnable, List<TaskHandle>> handles = new HashMap<Runnable, List<TaskHandle>>();
+
+    /**
+     * Timing wheel for lease tasks
+     */
+    private HashedTimingWheel timingWheel;
+
     /**
      * Start the Schedule service
      */
     @Override
     protected void doStart() {
         this.scheduleExecutor = (ScheduledExecutorService) componentManager.getStageManager().getThreadPool(Stage.SCHEDULE);
+
+        // 4 levels with 256 buckets, it covers 2^32 ticks
+        this.timingWheel = new HashedTimingWheel(scheduleExecutor, componentManager.getGlobalConfiguration()
+                .getTimingWheelTick(), 8, 4, "TimingWheel");
+        timingWheel.start();
     }
 
     @Override
     protected void doShutdown() {
+        if (timingWheel != null) {
+            timingWheel.stop();
+        }
         if (scheduleExecutor != null) {
             this.scheduleExecutor.shutdown();
         }
@@ -48,8 +71,19 @@ public class DefaultScheduleManager extends LifecycleProxy implements ScheduleMa
      * @param delay   Delay milli seconds for start
      */
     @Override
-    public void schedule(Runnable command, long delay) {
-        scheduleExecutor.schedule(command, delay, TimeUnit.MILLISECONDS);
+    public void schedule(final Runnable command, long delay) {
+        final TaskHandle handle = register(command);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                } finally {
+                    unregister(command, handle);
+                }
+            }
+        };
+        handle.setFuture(scheduleExecutor.schedule(task, delay, TimeUnit.MILLISECONDS));
     }
 
     /**
@@ -61,7 +95,8 @@ public class DefaultScheduleManager extends LifecycleProxy implements ScheduleMa
      */
     @Override
     public void schedule(Runnable command, long initialDelay, long period) {
-        scheduleExecutor.scheduleAtFixedRate(command, initialDelay, period, TimeUnit.MILLISECONDS);
+        TaskHandle handle = register(command);
+        handle.setFuture(scheduleExecutor.scheduleAtFixedRate(command, initialDelay, period, TimeUnit.MILLISECONDS));
     }
 
     /**
@@ -70,8 +105,63 @@ public class DefaultScheduleManager extends LifecycleProxy implements ScheduleMa
     @Override
     public void removeTask(Runnable command) {
         if (command != null) {
-            if (scheduleExecutor instanceof ThreadPoolExecutor) {
-                ((ThreadPoolExecutor) scheduleExecutor).remove(command);
+            List<TaskHandle> removed;
+            synchronized (handles) {
+                removed = handles.remove(command);
+            }
+            if (removed != null) {
+                for (TaskHandle handle : removed) {
+                    handle.cancel();
+                }
+            }
+        }
+    }
+
+    private TaskHandle register(Runnable command) {
+        TaskHandle handle = new TaskHandle();
+        synchronized (handles) {
+            List<TaskHandle> list = handles.get(command);
+            if (list == null) {
+                list = new ArrayList<TaskHandle>(1);
+                handles.put(command, list);
+            }
+            list.add(handle);
+        }
+        return handle;
+    }
+
+    private void unregister(Runnable command, TaskHandle handle) {
+        synchronized (handles) {
+            List<TaskHandle> list = handles.get(command);
+            if (list != null && list.remove(handle) && list.isEmpty()) {
+                handles.remove(command);
+            }
+        }
+    }
+
+    @Override
+    public Timeout newTimeout(Runnable task, long delay) {
+        return timingWheel.newTimeout(task, delay);
+    }
+
+    /**
+     * The handle of a scheduled command, it may be cancelled before the future is set
+     */
+    private static class TaskHandle {
+        private ScheduledFuture<?> future;
+        private boolean cancelled;
+
+        synchronized void setFuture(ScheduledFuture<?> future) {
+            this.future = future;
+            if (cancelled) {
+                future.cancel(false);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
             }
         }
     }
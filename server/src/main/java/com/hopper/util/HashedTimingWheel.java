@@ -0,0 +1,346 @@
+package com.hopper.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link HashedTimingWheel} is a hierarchical hashed timing wheel for a large number of timeouts (leases), both
+ * scheduling and cancelling are O(1).
+ * <p/>
+ * There are <tt>levels</tt> wheels, each one has <tt>2^wheelBits</tt> buckets. A bucket of level 0 covers one tick, a
+ * bucket of level n covers <tt>2^(wheelBits * n)</tt> ticks. A timeout is placed on the lowest level which can hold
+ * its remaining ticks, when the wheel reaches a higher level bucket, all timeouts in it are cascaded to lower levels.
+ * <p/>
+ * New and cancelled timeouts are passed to the worker thread through lock-free queues, so that the buckets are only
+ * accessed by the worker thread. Expired tasks are executed by the given {@link Executor}.
+ */
+public class HashedTimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    /**
+     * Tick duration(nanoseconds)
+     */
+    private final long tickDuration;
+    private final int wheelBits;
+    private final int mask;
+    private final Bucket[][] wheels;
+
+    private final Executor executor;
+    private final String threadName;
+
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+
+    /**
+     * Current tick, only accessed by worker thread
+     */
+    private long tick;
+
+    private volatile long startTime;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * Constructor
+     *
+     * @param executor     The executor for running expired tasks
+     * @param tickDuration The tick duration(milliseconds)
+     * @param wheelBits    The bits of bucket count for each wheel
+     * @param levels       The wheel levels
+     */
+    public HashedTimingWheel(Executor executor, long tickDuration, int wheelBits, int levels, String threadName) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0.");
+        }
+        if (wheelBits <= 0 || levels <= 0 || wheelBits * levels > 62) {
+            throw new IllegalArgumentException("Invalid wheel bits or levels.");
+        }
+
+        this.executor = executor;
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.wheelBits = wheelBits;
+        this.mask = (1 << wheelBits) - 1;
+        this.threadName = threadName;
+        this.wheels = new Bucket[levels][1 << wheelBits];
+
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        this.startTime = System.nanoTime();
+        this.running = true;
+        this.worker = new Thread(new Worker(), threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedule the <code>task</code> after <code>delay</code> milliseconds
+     */
+    public Timeout newTimeout(Runnable task, long delay) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (!running) {
+            throw new IllegalStateException("Timing wheel is not running.");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+        WheelTimeout timeout = new WheelTimeout(task, deadline);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Place the timeout on the lowest level which can hold its remaining ticks
+     */
+    private void place(WheelTimeout timeout) {
+        long remaining = timeout.deadlineTick - tick;
+        if (remaining < 0) {
+            timeout.deadlineTick = tick;
+            remaining = 0;
+        }
+
+        int level = 0;
+        while (level < wheels.length - 1 && remaining >= 1L << (wheelBits * (level + 1))) {
+            level++;
+        }
+
+        int slot;
+        if (remaining >= 1L << (wheelBits * (level + 1))) {
+            // beyond the span of top wheel, place it on the farthest bucket and it will be placed again
+            slot = (int) (((tick >>> (wheelBits * level)) - 1) & mask);
+        } else {
+            slot = (int) ((timeout.deadlineTick >>> (wheelBits * level)) & mask);
+        }
+
+        wheels[level][slot].add(timeout);
+    }
+
+    private void transferPendingTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.state.get() == ST_INIT) {
+                long ticks = (timeout.deadline - startTime + tickDuration - 1) / tickDuration;
+                timeout.deadlineTick = ticks;
+                place(timeout);
+            }
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Cascade the higher levels' buckets which are reached by current tick
+     */
+    private void cascade() {
+        for (int level = wheels.length - 1; level > 0; level--) {
+            int shift = wheelBits * level;
+            if ((tick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+
+            Bucket bucket = wheels[level][(int) ((tick >>> shift) & mask)];
+            WheelTimeout timeout = bucket.clear();
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                timeout.next = null;
+                timeout.prev = null;
+                place(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void expireTimeouts() {
+        Bucket bucket = wheels[0][(int) (tick & mask)];
+        WheelTimeout timeout = bucket.clear();
+        while (timeout != null) {
+            WheelTimeout next = timeout.next;
+            timeout.next = null;
+            timeout.prev = null;
+
+            if (timeout.deadlineTick <= tick) {
+                timeout.expire();
+            } else {
+                place(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Sleep until the next tick
+     */
+    private boolean waitForNextTick() {
+        long deadline = startTime + (tick + 1) * tickDuration;
+
+        while (running) {
+            long sleepTime = deadline - System.nanoTime();
+            if (sleepTime <= 0) {
+                return true;
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+        return false;
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (waitForNextTick()) {
+                tick++;
+                transferPendingTimeouts();
+                removeCancelledTimeouts();
+                cascade();
+                expireTimeouts();
+            }
+        }
+    }
+
+    /**
+     * Doubly linked timeout list, only accessed by worker thread
+     */
+    private static class Bucket {
+        WheelTimeout head;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(WheelTimeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else if (head == timeout) {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Detach all timeouts, return the list head
+         */
+        WheelTimeout clear() {
+            WheelTimeout h = head;
+            head = null;
+            for (WheelTimeout t = h; t != null; t = t.next) {
+                t.bucket = null;
+            }
+            return h;
+        }
+    }
+
+    private class WheelTimeout implements Timeout {
+        final Runnable task;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // accessed by worker thread only
+        long deadlineTick;
+        Bucket bucket;
+        WheelTimeout prev;
+        WheelTimeout next;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public Runnable getTask() {
+            return task;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                cancelledTimeouts.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+
+            try {
+                if (executor == null) {
+                    task.run();
+                } else {
+                    executor.execute(task);
+                }
+            } catch (RejectedExecutionException e) {
+                logger.warn("Rejected the expired task {}", task);
+            } catch (Throwable e) {
+                logger.warn("Failed to execute the expired task.", e);
+            }
+        }
+    }
+}
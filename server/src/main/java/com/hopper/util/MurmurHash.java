@@ -110,4 +110,71 @@ public class MurmurHash {
 
         return h;
     }
+
+    /**
+     * 64-bit hash of the string, takes the length as seed
+     */
+    public static long hash64(String str) {
+        if (str == null) {
+            throw new NullPointerException();
+        }
+
+        byte[] data = str.getBytes();
+        return hash64(data, 0, data.length, str.length());
+    }
+
+    /**
+     * The 64-bit version of MurmurHash 2.0(MurmurHash64A)
+     */
+    @SuppressWarnings("fallthrough")
+    public static long hash64(byte[] data, int offset, int length, long seed) {
+        long m = 0xc6a4a7935bd1e995L;
+        int r = 47;
+
+        long h = seed ^ (length * m);
+
+        int len_8 = length >> 3;
+        for (int i = 0; i < len_8; i++) {
+            int i_8 = offset + (i << 3);
+            long k = (data[i_8] & 0xffL) | (data[i_8 + 1] & 0xffL) << 8 | (data[i_8 + 2] & 0xffL) << 16
+                    | (data[i_8 + 3] & 0xffL) << 24 | (data[i_8 + 4] & 0xffL) << 32 | (data[i_8 + 5] & 0xffL) << 40
+                    | (data[i_8 + 6] & 0xffL) << 48 | (data[i_8 + 7] & 0xffL) << 56;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+
+        int tail = offset + (len_8 << 3);
+        switch (length & 7) {
+            case 7:
+                h ^= (data[tail + 6] & 0xffL) << 48;
+                // fall through
+            case 6:
+                h ^= (data[tail + 5] & 0xffL) << 40;
+                // fall through
+            case 5:
+                h ^= (data[tail + 4] & 0xffL) << 32;
+                // fall through
+            case 4:
+                h ^= (data[tail + 3] & 0xffL) << 24;
+                // fall through
+            case 3:
+                h ^= (data[tail + 2] & 0xffL) << 16;
+                // fall through
+            case 2:
+                h ^= (data[tail + 1] & 0xffL) << 8;
+                // fall through
+            case 1:
+                h ^= data[tail] & 0xffL;
+                h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
 }
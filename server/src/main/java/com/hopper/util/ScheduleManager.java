@@ -33,4 +33,13 @@ public interface ScheduleManager extends Lifecycle {
      * Remove command from task queue
      */
     void removeTask(Runnable command);
+
+    /**
+     * Schedule a one-shot task on the timing wheel, the returned {@link Timeout} can be cancelled in constant time.
+     * It's designed for a large number of short tasks(for example, lease expiration).
+     *
+     * @param task  The task
+     * @param delay Delay milli seconds for start
+     */
+    Timeout newTimeout(Runnable task, long delay);
 }
@@ -0,0 +1,21 @@
+package com.hopper.util;
+
+/**
+ * {@link Timeout} is the handle of a task scheduled by {@link HashedTimingWheel}, it can be cancelled in constant time.
+ */
+public interface Timeout {
+
+    /**
+     * Return the scheduled task
+     */
+    Runnable getTask();
+
+    /**
+     * Cancel the task, it returns false if the task has expired or has been cancelled.
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+
+    boolean isExpired();
+}
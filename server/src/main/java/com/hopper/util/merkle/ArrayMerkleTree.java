@@ -0,0 +1,884 @@
+package com.hopper.util.merkle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.hopper.util.MurmurHash;
+
+/**
+ * {@link ArrayMerkleTree} lays out the tree as an implicit complete binary
+ * tree(heap-style): the node <code>i</code> has children <code>2i+1</code>
+ * and <code>2i+2</code>, the leaves follow the inner nodes. The digests and
+ * object counts of all nodes are kept in flat arrays, and the keys of leaf are
+ * kept in an open-addressing table, so no object is created per tree node or
+ * per key.
+ * <p/>
+ * The tree is of same shape and same digests with {@link MerkleTree}, so the
+ * two layouts can be compared or exchanged with each other. The nodes returned
+ * by {@link #getRoot()} are the views over the arrays.
+ */
+public class ArrayMerkleTree<T extends MerkleObjectRef> extends MerkleTree<T> {
+	/**
+	 * Keep the arrays within a reasonable size
+	 */
+	private static final int MAX_DEPTH = 24;
+
+	private Range range;
+	/**
+	 * Count of inner nodes, the leaves are [innerCount, 2 * innerCount]
+	 */
+	private final int innerCount;
+
+	private final long[] keyHashes;
+	private final long[] versionHashes;
+	/**
+	 * Object count under the node, the counts of inner nodes are calculated
+	 * with hash
+	 */
+	private final int[] counts;
+	/**
+	 * Whether or not a leaf under the inner node has changed since last
+	 * hashing
+	 */
+	private final AtomicIntegerArray dirty;
+
+	private final AtomicReferenceArray<KeyTable> tables;
+	/**
+	 * The objects of leaves for readonly(deserialized) tree
+	 */
+	private Object[] leafRefs;
+
+	private boolean readonly;
+
+	private final Object hashLock = new Object();
+
+	public ArrayMerkleTree(byte hashDepth, Class<T> clazz) {
+		this(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE), hashDepth, clazz);
+	}
+
+	public ArrayMerkleTree(Range range, byte hashDepth, Class<T> clazz) {
+		super(range, hashDepth, clazz);
+		if (hashDepth > MAX_DEPTH) {
+			throw new IllegalArgumentException("hashDepth of array layout must be less than " + (MAX_DEPTH + 1)
+					+ ".");
+		}
+
+		this.range = range;
+		this.innerCount = (1 << (hashDepth + 1)) - 1;
+
+		int nodeCount = 2 * innerCount + 1;
+		this.keyHashes = new long[nodeCount];
+		this.versionHashes = new long[nodeCount];
+		this.counts = new int[nodeCount];
+		this.tables = new AtomicReferenceArray<KeyTable>(innerCount + 1);
+
+		// all inner nodes are dirty on creation
+		this.dirty = new AtomicIntegerArray(innerCount);
+		for (int i = 0; i < innerCount; i++) {
+			dirty.set(i, 1);
+		}
+	}
+
+	/**
+	 * Locate the leaf by hash, the range is split in the same way with
+	 * {@link Range}
+	 */
+	private int leafOf(int hash) {
+		int left = range.getLeft();
+		int right = range.getRight();
+		int i = 0;
+
+		while (i < innerCount) {
+			int mid = (int) (((long) left + (long) right) / 2);
+			if (hash >= left && hash < mid) {
+				right = mid;
+				i = 2 * i + 1;
+			} else {
+				left = mid;
+				i = 2 * i + 2;
+			}
+		}
+		return i;
+	}
+
+	private Range rangeOf(int index) {
+		// the path from root, the lowest bit is the first step
+		long path = 0;
+		int level = 0;
+		for (int i = index; i > 0; i = (i - 1) >> 1) {
+			path = (path << 1) | ((i & 1) == 0 ? 1 : 0);
+			level++;
+		}
+
+		Range r = range;
+		for (; level > 0; level--, path >>= 1) {
+			r = (path & 1) == 0 ? r.getLeftRange() : r.getRightRange();
+		}
+		return r;
+	}
+
+	private KeyTable table(int leaf) {
+		KeyTable table = tables.get(leaf - innerCount);
+		if (table == null) {
+			tables.compareAndSet(leaf - innerCount, null, new KeyTable());
+			table = tables.get(leaf - innerCount);
+		}
+		return table;
+	}
+
+	/**
+	 * Mark the inner nodes on the path of <code>leaf</code> dirty, it must be
+	 * invoked after changing the leaf.
+	 */
+	private void markDirty(int leaf) {
+		for (int i = leaf; i > 0;) {
+			i = (i - 1) >> 1;
+			dirty.set(i, 1);
+		}
+	}
+
+	@Override
+	public void put(T obj) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to put for readonly tree.");
+		}
+		if (obj == null) {
+			throw new NullPointerException();
+		}
+
+		String key = obj.getKey();
+		int hash = MurmurHash.hash(key);
+		int leaf = leafOf(hash);
+		KeyTable table = table(leaf);
+
+		synchronized (table) {
+			put(leaf, table, obj, hash);
+		}
+		markDirty(leaf);
+	}
+
+	/**
+	 * Put the object into leaf, it must be invoked under the lock of table
+	 */
+	private void put(int leaf, KeyTable table, T obj, int hash) {
+		// read under the leaf lock, so a version bump during putting is never
+		// lost
+		String key = obj.getKey();
+		long version = obj.getVersion();
+		int slot = table.find(key, hash);
+		if (slot < 0) {
+			long keyHash = Leaf.keyHash(key);
+			long id = Leaf.versionHash(keyHash, version);
+			table.add(key, hash, version);
+			keyHashes[leaf] += keyHash;
+			versionHashes[leaf] += id;
+			counts[leaf]++;
+			if (getSketch() != null) {
+				getSketch().add(hash, id);
+			}
+		} else if (table.versions[slot] < version) {
+			replace(leaf, table, slot, key, hash, version);
+		}
+	}
+
+	/**
+	 * Replace the version of the key in slot, it must be invoked under the
+	 * lock of table
+	 */
+	private void replace(int leaf, KeyTable table, int slot, String key, int hash, long version) {
+		long keyHash = Leaf.keyHash(key);
+		long oldId = Leaf.versionHash(keyHash, table.versions[slot]);
+		long newId = Leaf.versionHash(keyHash, version);
+		versionHashes[leaf] += newId - oldId;
+		table.versions[slot] = version;
+		if (getSketch() != null) {
+			getSketch().replace(hash, oldId, newId);
+		}
+	}
+
+	/**
+	 * Put the objects leaf by leaf, each leaf is locked and its path is marked
+	 * dirty only once.
+	 */
+	@Override
+	public void putAll(List<T> objs) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to put for readonly tree.");
+		}
+
+		int[] hashes = new int[objs.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = MurmurHash.hash(objs.get(i).getKey());
+		}
+
+		long[] order = hashOrder(hashes);
+		for (int from = 0; from < order.length;) {
+			int leaf = leafOf((int) (order[from] >> 32));
+			int to = leafEnd(order, from, leaf);
+			KeyTable table = table(leaf);
+
+			synchronized (table) {
+				for (int i = from; i < to; i++) {
+					put(leaf, table, objs.get((int) order[i]), (int) (order[i] >> 32));
+				}
+			}
+			markDirty(leaf);
+			from = to;
+		}
+	}
+
+	/**
+	 * The end(exclusive) of the entries of <code>leaf</code> in the sorted
+	 * <code>order</code> from <code>from</code>
+	 */
+	private int leafEnd(long[] order, int from, int leaf) {
+		Range leafRange = rangeOf(leaf);
+		int to = from + 1;
+		while (to < order.length && leafRange.contains((int) (order[to] >> 32))) {
+			to++;
+		}
+		return to;
+	}
+
+	@Override
+	public void update(String key, long version) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to update for readonly tree.");
+		}
+
+		int hash = MurmurHash.hash(key);
+		int leaf = leafOf(hash);
+		KeyTable table = table(leaf);
+
+		synchronized (table) {
+			int slot = table.find(key, hash);
+			// the bumps of a key may be reported out of order
+			if (slot < 0 || table.versions[slot] >= version) {
+				return;
+			}
+			replace(leaf, table, slot, key, hash, version);
+		}
+		markDirty(leaf);
+	}
+
+	@Override
+	public void remove(String key) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to remove for readonly tree.");
+		}
+		if (key == null) {
+			throw new NullPointerException();
+		}
+
+		int hash = MurmurHash.hash(key);
+		int leaf = leafOf(hash);
+		KeyTable table = tables.get(leaf - innerCount);
+		if (table == null) {
+			return;
+		}
+
+		synchronized (table) {
+			if (!remove(leaf, table, key, hash)) {
+				return;
+			}
+		}
+		markDirty(leaf);
+	}
+
+	/**
+	 * Remove the key from leaf, it must be invoked under the lock of table
+	 * 
+	 * @return false if the key is absent
+	 */
+	private boolean remove(int leaf, KeyTable table, String key, int hash) {
+		int slot = table.find(key, hash);
+		if (slot < 0) {
+			return false;
+		}
+		long keyHash = Leaf.keyHash(key);
+		long id = Leaf.versionHash(keyHash, table.versions[slot]);
+		keyHashes[leaf] -= keyHash;
+		versionHashes[leaf] -= id;
+		counts[leaf]--;
+		if (getSketch() != null) {
+			getSketch().remove(hash, id);
+		}
+		table.delete(slot);
+		return true;
+	}
+
+	@Override
+	public void removeAll(List<String> keys) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to remove for readonly tree.");
+		}
+
+		int[] hashes = new int[keys.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = MurmurHash.hash(keys.get(i));
+		}
+
+		long[] order = hashOrder(hashes);
+		for (int from = 0; from < order.length;) {
+			int leaf = leafOf((int) (order[from] >> 32));
+			int to = leafEnd(order, from, leaf);
+			KeyTable table = tables.get(leaf - innerCount);
+
+			if (table != null) {
+				boolean removed = false;
+				synchronized (table) {
+					for (int i = from; i < to; i++) {
+						removed |= remove(leaf, table, keys.get((int) order[i]), (int) (order[i] >> 32));
+					}
+				}
+				if (removed) {
+					markDirty(leaf);
+				}
+			}
+			from = to;
+		}
+	}
+
+	@Override
+	public void loadHash() {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to calculate hash for readonly tree.");
+		}
+		synchronized (hashLock) {
+			rehash(0);
+		}
+	}
+
+	/**
+	 * Re-hash the dirty inner nodes under <code>index</code> in the hash pool
+	 * if it's set, it must be invoked under the hash lock.
+	 */
+	private void rehash(int index) {
+		if (getHashPool() == null || index >= innerCount) {
+			hash(index);
+		} else {
+			// the levels from node to leaves
+			int height = getHashDepth() + 1 - (31 - Integer.numberOfLeadingZeros(index + 1));
+			invoke(new HashTask(index, height));
+		}
+	}
+
+	/**
+	 * Re-hash the dirty inner nodes under <code>index</code>, the flag is
+	 * cleared before reading the children, so a concurrent change marks it
+	 * again.
+	 */
+	private void hash(int index) {
+		if (index >= innerCount || dirty.getAndSet(index, 0) == 0) {
+			return;
+		}
+
+		hash(2 * index + 1);
+		hash(2 * index + 2);
+		combine(index);
+	}
+
+	private void combine(int index) {
+		int left = 2 * index + 1;
+		int right = left + 1;
+		keyHashes[index] = keyHashes[left] + keyHashes[right];
+		versionHashes[index] = versionHashes[left] + versionHashes[right];
+		counts[index] = counts[left] + counts[right];
+	}
+
+	/**
+	 * Re-hash the sub-tree of <code>index</code>, the two children of a high
+	 * dirty node are hashed in parallel. The tasks write the disjoint slots of
+	 * arrays, and joining publishes them to the parent.
+	 */
+	private class HashTask extends RecursiveAction {
+		private static final long serialVersionUID = -3068741258396432740L;
+
+		private final int index;
+		private final int height;
+
+		HashTask(int index, int height) {
+			this.index = index;
+			this.height = height;
+		}
+
+		@Override
+		protected void compute() {
+			if (height <= PARALLEL_HEIGHT) {
+				hash(index);
+				return;
+			}
+			if (dirty.getAndSet(index, 0) == 0) {
+				return;
+			}
+
+			int left = 2 * index + 1;
+			invokeAll(new HashTask(left, height - 1), new HashTask(left + 1, height - 1));
+			combine(index);
+		}
+	}
+
+	@Override
+	public MerkleNode<T> getRoot() {
+		return new Node(0);
+	}
+
+	@Override
+	public MerkleNode<T> getNode(long position) {
+		if (position < 0 || position >= keyHashes.length) {
+			throw new IllegalArgumentException("Position " + position + " is out of tree.");
+		}
+		return new Node((int) position);
+	}
+
+	/**
+	 * The descendants at same level are continuous in the arrays
+	 */
+	@Override
+	public void collectDigests(long position, int levels, long[] keyHashes, long[] versionHashes, int offset) {
+		long first = ((position + 1) << levels) - 1;
+		int count = 1 << levels;
+		if (position < 0 || first + count > this.keyHashes.length) {
+			throw new IllegalArgumentException("Position " + position + " is out of tree.");
+		}
+
+		synchronized (hashLock) {
+			System.arraycopy(this.keyHashes, (int) first, keyHashes, offset, count);
+			System.arraycopy(this.versionHashes, (int) first, versionHashes, offset, count);
+		}
+	}
+
+	/**
+	 * Retrieve the objects under <code>index</code>, the leaves under a node
+	 * are continuous in the array.
+	 */
+	private List<T> getObjectRefs(int index) {
+		int first = index;
+		int last = index;
+		while (first < innerCount) {
+			first = 2 * first + 1;
+			last = 2 * last + 2;
+		}
+
+		List<T> refs = new ArrayList<T>();
+		for (int leaf = first; leaf <= last; leaf++) {
+			if (readonly) {
+				List<T> objs = (List<T>) leafRefs[leaf - innerCount];
+				if (objs != null) {
+					refs.addAll(objs);
+				}
+				continue;
+			}
+
+			for (String key : getKeys(leaf)) {
+				T obj = getObjectFactory().find(key);
+				// the key may be removed after reading
+				if (obj != null) {
+					refs.add(obj);
+				}
+			}
+		}
+		return refs;
+	}
+
+	private List<String> getKeys(int leaf) {
+		KeyTable table = tables.get(leaf - innerCount);
+		if (table == null) {
+			return Collections.emptyList();
+		}
+
+		synchronized (table) {
+			List<String> keys = new ArrayList<String>(table.size);
+			for (String key : table.keys) {
+				if (key != null) {
+					keys.add(key);
+				}
+			}
+			return keys;
+		}
+	}
+
+	/**
+	 * Compares over the arrays if target is of same layout, the sub-trees
+	 * without object are taken as absent. The hash must be calculated before
+	 * comparing.
+	 */
+	@Override
+	public Difference<T> difference(MerkleTree<T> target) {
+		Difference<T> difference = new Difference<T>();
+
+		synchronized (hashLock) {
+			if (target instanceof ArrayMerkleTree && ((ArrayMerkleTree<T>) target).innerCount == innerCount) {
+				difference(0, (ArrayMerkleTree<T>) target, difference);
+			} else {
+				difference(0, target.getRoot(), difference);
+			}
+		}
+		return difference;
+	}
+
+	private void difference(int index, ArrayMerkleTree<T> target, Difference<T> difference) {
+		boolean present1 = counts[index] > 0;
+		boolean present2 = target.counts[index] > 0;
+
+		if (present1 && present2) {
+			if (keyHashes[index] == target.keyHashes[index] && versionHashes[index] == target.versionHashes[index]) {
+				return;
+			}
+
+			if (index >= innerCount) {
+				difference.updated(new Node(index), target.new Node(index));
+			} else {
+				difference(2 * index + 1, target, difference);
+				difference(2 * index + 2, target, difference);
+			}
+		} else if (present1) {
+			difference.added(new Node(index));
+		} else if (present2) {
+			difference.removed(target.new Node(index));
+		}
+	}
+
+	private void difference(int index, MerkleNode<T> node, Difference<T> difference) {
+		boolean present = counts[index] > 0;
+
+		if (node == null) {
+			if (present) {
+				difference.added(new Node(index));
+			}
+			return;
+		}
+
+		if (!present) {
+			difference.removed(node);
+			return;
+		}
+
+		if (keyHashes[index] == node.getKeyHash() && versionHashes[index] == node.getVersionHash()) {
+			return;
+		}
+
+		if (node.isLeaf() != (index >= innerCount)) {
+			throw new IllegalStateException("Different tree structure.");
+		}
+
+		if (node.isLeaf()) {
+			difference.updated(new Node(index), node);
+		} else {
+			difference(2 * index + 1, node.getLeft(), difference);
+			difference(2 * index + 2, node.getRight(), difference);
+		}
+	}
+
+	/**
+	 * Same format with {@link MerkleTree}, the sub-trees without object are
+	 * written as absent.
+	 */
+	@Override
+	public void serialize(DataOutput out) throws IOException {
+		synchronized (hashLock) {
+			out.writeInt(range.getLeft());
+			out.writeInt(range.getRight());
+			serialize(0, out);
+		}
+	}
+
+	private void serialize(int index, DataOutput out) throws IOException {
+		if (index >= innerCount) {
+			out.writeLong(keyHashes[index]);
+			out.writeLong(versionHashes[index]);
+
+			List<T> refs = getObjectRefs(index);
+			out.writeInt(refs.size());
+			for (T obj : refs) {
+				obj.serialize(out);
+			}
+			return;
+		}
+
+		int left = 2 * index + 1;
+		int right = left + 1;
+		boolean hasLeft = counts[left] > 0;
+		boolean hasRight = counts[right] > 0;
+
+		out.writeByte(hasLeft ? childFlag(left) : 0);
+		out.writeByte(hasRight ? childFlag(right) : 0);
+
+		if (hasLeft) {
+			serialize(left, out);
+		}
+		if (hasRight) {
+			serialize(right, out);
+		}
+	}
+
+	private byte childFlag(int index) {
+		return index >= innerCount ? (byte) 2 : (byte) 1;
+	}
+
+	@Override
+	public void deserialize(DataInput in) throws IOException {
+		// Lock the tree
+		readonly = true;
+
+		this.range = new Range(in.readInt(), in.readInt());
+		this.leafRefs = new Object[innerCount + 1];
+		deserialize(0, in);
+
+		synchronized (hashLock) {
+			hash(0);
+		}
+	}
+
+	private void deserialize(int index, DataInput in) throws IOException {
+		if (index >= innerCount) {
+			keyHashes[index] = in.readLong();
+			versionHashes[index] = in.readLong();
+
+			int size = in.readInt();
+			List<T> objs = new ArrayList<T>(size);
+			for (int i = 0; i < size; i++) {
+				try {
+					T instance = getClazz().newInstance();
+					instance.deserialize(in);
+					objs.add(instance);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+			leafRefs[index - innerCount] = objs;
+			counts[index] = size;
+			return;
+		}
+
+		byte leftFlag = in.readByte();
+		byte rightFlag = in.readByte();
+
+		deserializeChild(2 * index + 1, leftFlag, in);
+		deserializeChild(2 * index + 2, rightFlag, in);
+	}
+
+	private void deserializeChild(int index, byte flag, DataInput in) throws IOException {
+		if (flag == 0) {
+			return;
+		}
+		if (flag != childFlag(index)) {
+			throw new IOException("Different tree structure.");
+		}
+		deserialize(index, in);
+	}
+
+	/**
+	 * The open-addressing(linear probing) table of leaf keys, it's guarded by
+	 * itself.
+	 */
+	private static final class KeyTable {
+		int[] hashes = new int[4];
+		long[] versions = new long[4];
+		String[] keys = new String[4];
+		int size;
+
+		/**
+		 * The keys of a leaf share the high bits of hash, so it probes from
+		 * the mixed low bits
+		 */
+		private int slotOf(int hash) {
+			int h = hash * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & (keys.length - 1);
+		}
+
+		int find(String key, int hash) {
+			int mask = keys.length - 1;
+			for (int i = slotOf(hash); keys[i] != null; i = (i + 1) & mask) {
+				if (hashes[i] == hash && keys[i].equals(key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void add(String key, int hash, long version) {
+			if ((size + 1) * 4 > keys.length * 3) {
+				resize(keys.length * 2);
+			}
+
+			int mask = keys.length - 1;
+			int i = slotOf(hash);
+			while (keys[i] != null) {
+				i = (i + 1) & mask;
+			}
+
+			keys[i] = key;
+			hashes[i] = hash;
+			versions[i] = version;
+			size++;
+		}
+
+		/**
+		 * Delete with backward shifting, so no tombstone is left
+		 */
+		void delete(int slot) {
+			int mask = keys.length - 1;
+			int hole = slot;
+
+			for (int i = (slot + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+				int home = slotOf(hashes[i]);
+				// move the entry if its home is not in (hole, i]
+				if (((i - home) & mask) >= ((i - hole) & mask)) {
+					keys[hole] = keys[i];
+					hashes[hole] = hashes[i];
+					versions[hole] = versions[i];
+					hole = i;
+				}
+			}
+
+			keys[hole] = null;
+			size--;
+		}
+
+		private void resize(int capacity) {
+			String[] oldKeys = keys;
+			int[] oldHashes = hashes;
+			long[] oldVersions = versions;
+
+			keys = new String[capacity];
+			hashes = new int[capacity];
+			versions = new long[capacity];
+			size = 0;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					add(oldKeys[i], oldHashes[i], oldVersions[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The view of a node over the arrays, the children of inner node are
+	 * always present for traversing.
+	 */
+	private class Node implements MerkleNode<T> {
+		private final int index;
+
+		Node(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public long getKeyHash() {
+			return keyHashes[index];
+		}
+
+		@Override
+		public long getVersionHash() {
+			return versionHashes[index];
+		}
+
+		@Override
+		public void hash() {
+			if (!readonly) {
+				synchronized (hashLock) {
+					rehash(index);
+				}
+			}
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return index >= innerCount;
+		}
+
+		@Override
+		public MerkleNode<T> getLeft() {
+			return isLeaf() ? null : new Node(2 * index + 1);
+		}
+
+		@Override
+		public MerkleNode<T> getRight() {
+			return isLeaf() ? null : new Node(2 * index + 2);
+		}
+
+		@Override
+		public void setClazz(Class<T> clazz) {
+		}
+
+		@Override
+		public Class<T> getClazz() {
+			return ArrayMerkleTree.this.getClazz();
+		}
+
+		@Override
+		public void setObjectFactory(MerkleObjectFactory<T> objectFactory) {
+		}
+
+		@Override
+		public Range getRange() {
+			return rangeOf(index);
+		}
+
+		@Override
+		public List<T> getObjectRefs() {
+			return ArrayMerkleTree.this.getObjectRefs(index);
+		}
+
+		@Override
+		public Collection<String> getKeys() {
+			if (!isLeaf()) {
+				return Collections.emptySet();
+			}
+			if (readonly) {
+				List<String> keys = new ArrayList<String>();
+				for (T obj : ArrayMerkleTree.this.getObjectRefs(index)) {
+					keys.add(obj.getKey());
+				}
+				return keys;
+			}
+			return ArrayMerkleTree.this.getKeys(index);
+		}
+
+		@Override
+		public void serialize(DataOutput out) throws IOException {
+			synchronized (hashLock) {
+				ArrayMerkleTree.this.serialize(index, out);
+			}
+		}
+
+		@Override
+		public void deserialize(DataInput in) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+
+			if (!(obj instanceof MerkleNode)) {
+				return false;
+			}
+
+			MerkleNode<T> target = (MerkleNode<T>) obj;
+
+			return getKeyHash() == target.getKeyHash() && this.getVersionHash() == target.getVersionHash();
+		}
+
+		/**
+		 * Consistent with {@link #equals(Object)}, by the digests
+		 */
+		@Override
+		public int hashCode() {
+			long h = getKeyHash() * 31 + getVersionHash();
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -49,7 +49,10 @@ public class Difference<T extends MerkleObjectRef> implements Serializer {
         removedList.addAll(node.getObjectRefs());
     }
 
-    public void updated(Leaf<T> node1, Leaf<T> node2) {
+    /**
+     * Compares the objects of two leaves
+     */
+    public void updated(MerkleNode<T> node1, MerkleNode<T> node2) {
         List<T> refs1 = node1.getObjectRefs();
         List<T> refs2 = node2.getObjectRefs();
 
@@ -4,6 +4,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -15,18 +17,23 @@ public class InnerNode<T extends MerkleObjectRef> implements MerkleNode<T> {
 	/**
 	 * Left sub tree
 	 */
-	private MerkleNode<T> left;
+	private volatile MerkleNode<T> left;
 	/**
 	 * Right sub tree
 	 */
-	private MerkleNode<T> right;
+	private volatile MerkleNode<T> right;
 	/**
 	 * Associated range
 	 */
 	private final Range range;
 
-	private int keyHash;
-	private int valueHash;
+	private volatile long keyHash;
+	private volatile long valueHash;
+	/**
+	 * Whether or not a leaf under the node has changed since last hashing, a
+	 * new node is dirty.
+	 */
+	private volatile boolean dirty = true;
 
 	public InnerNode(Range range) {
 		this.range = range;
@@ -52,50 +59,78 @@ public class InnerNode<T extends MerkleObjectRef> implements MerkleNode<T> {
 	}
 
 	@Override
-	public int getKeyHash() {
+	public long getKeyHash() {
 		return keyHash;
 	}
 
 	@Override
-	public int getVersionHash() {
+	public long getVersionHash() {
 		return valueHash;
 	}
 
+	/**
+	 * Mark the node should be re-hashed, it must be invoked after changing the
+	 * leaf digests.
+	 */
+	void markDirty() {
+		this.dirty = true;
+	}
+
+	/**
+	 * Clear the dirty flag, return whether or not the node should be
+	 * re-hashed. The flag is cleared before reading the children, so a
+	 * concurrent change marks it again.
+	 */
+	boolean clearDirty() {
+		if (!dirty) {
+			return false;
+		}
+		dirty = false;
+		return true;
+	}
+
+	/**
+	 * Only the dirty sub-trees are re-hashed.
+	 */
 	@Override
 	public void hash() {
-		Integer leftKeyHash = null;
-		Integer leftValueHash = null;
+		if (!clearDirty()) {
+			return;
+		}
 
+		MerkleNode<T> left = this.left;
+		MerkleNode<T> right = this.right;
 		if (left != null) {
 			left.hash();
-			leftKeyHash = left.getKeyHash();
-			leftValueHash = left.getVersionHash();
 		}
-
-		Integer rightKeyHash = null;
-		Integer rightValueHash = null;
-
 		if (right != null) {
 			right.hash();
-			rightKeyHash = right.getKeyHash();
-			rightValueHash = right.getVersionHash();
 		}
+		combine();
+	}
 
-		if (leftKeyHash != null && rightKeyHash != null) {
-			this.keyHash = leftKeyHash ^ rightKeyHash;
-		} else if (leftKeyHash == null && rightKeyHash == null) {
-			this.keyHash = 0;
-		} else {
-			this.keyHash = leftKeyHash != null ? leftKeyHash : rightKeyHash;
-		}
+	/**
+	 * Combine the digests of children(an absent child is of zero digests),
+	 * the children must have been hashed. The digests are summed modulo
+	 * 2<sup>64</sup>, so the order doesn't matter and the equal digests
+	 * don't cancel out each other as XOR.
+	 */
+	void combine() {
+		MerkleNode<T> left = this.left;
+		MerkleNode<T> right = this.right;
 
-		if (leftValueHash != null && rightValueHash != null) {
-			this.valueHash = leftValueHash ^ rightValueHash;
-		} else if (leftValueHash == null && rightValueHash == null) {
-			this.valueHash = 0;
-		} else {
-			this.valueHash = leftValueHash != null ? leftValueHash : rightValueHash;
-		}
+		this.keyHash = (left == null ? 0 : left.getKeyHash()) + (right == null ? 0 : right.getKeyHash());
+		this.valueHash = (left == null ? 0 : left.getVersionHash()) + (right == null ? 0 : right.getVersionHash());
+	}
+
+	@Override
+	public boolean isLeaf() {
+		return false;
+	}
+
+	@Override
+	public Collection<String> getKeys() {
+		return Collections.emptySet();
 	}
 
 	public void setLeft(MerkleNode<T> left) {
@@ -151,7 +186,7 @@ public class InnerNode<T extends MerkleObjectRef> implements MerkleNode<T> {
 	}
 
 	private byte getChildFlag(MerkleNode<T> child) {
-		return child == null ? 0 : (child instanceof Leaf) ? (byte) 2 : (byte) 1;
+		return child == null ? 0 : child.isLeaf() ? (byte) 2 : (byte) 1;
 	}
 
 	@Override
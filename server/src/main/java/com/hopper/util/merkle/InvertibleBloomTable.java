@@ -0,0 +1,268 @@
+package com.hopper.util.merkle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.hopper.session.Serializer;
+
+/**
+ * {@link InvertibleBloomTable} is an invertible bloom lookup table of the
+ * key/version pairs of a merkle tree. A pair is identified by its version
+ * digest(see {@link Leaf#versionHash(long, long)}) and is added to
+ * {@link #HASH_COUNT} cells, each cell keeps the count, the sums of the pair
+ * ids, the 32-bit key hashes(locating the merkle leaves) and the check
+ * digests.
+ * <p/>
+ * The cells are sums modulo 2<sup>32</sup>(or 2<sup>64</sup>) as the merkle
+ * digests, so the table is maintained incrementally on each change, and the
+ * tables of sub-trees are summed up. Subtracting the table of another tree
+ * leaves the pairs of symmetric difference only, they are decoded by peeling
+ * the cells holding a single pair, the decoding succeeds if the difference
+ * is small enough(up to about 3/4 of the cells).
+ */
+public class InvertibleBloomTable implements Serializer {
+	/**
+	 * The cells of a pair, each one falls into a separated third of table
+	 */
+	static final int HASH_COUNT = 3;
+
+	private AtomicIntegerArray counts;
+	private AtomicLongArray idSums;
+	private AtomicIntegerArray hashSums;
+	private AtomicLongArray checkSums;
+
+	public InvertibleBloomTable() {
+	}
+
+	/**
+	 * @param cells
+	 *            The count of cells, it's rounded up to a multiple of
+	 *            {@link #HASH_COUNT}
+	 */
+	public InvertibleBloomTable(int cells) {
+		int size = (Math.max(cells, HASH_COUNT) + HASH_COUNT - 1) / HASH_COUNT * HASH_COUNT;
+		this.counts = new AtomicIntegerArray(size);
+		this.idSums = new AtomicLongArray(size);
+		this.hashSums = new AtomicIntegerArray(size);
+		this.checkSums = new AtomicLongArray(size);
+	}
+
+	public int getCells() {
+		return counts.length();
+	}
+
+	/**
+	 * Add the pair of <code>id</code>, <code>hash</code> is the 32-bit hash of
+	 * key
+	 */
+	public void add(int hash, long id) {
+		update(hash, id, 1);
+	}
+
+	/**
+	 * Remove the pair of <code>id</code>
+	 */
+	public void remove(int hash, long id) {
+		update(hash, id, -1);
+	}
+
+	/**
+	 * Replace the old version digest of key with the new one
+	 */
+	public void replace(int hash, long oldId, long newId) {
+		update(hash, oldId, -1);
+		update(hash, newId, 1);
+	}
+
+	private void update(int hash, long id, int sign) {
+		long check = check(id);
+		int part = counts.length() / HASH_COUNT;
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int cell = cell(id, i, part);
+			counts.addAndGet(cell, sign);
+			idSums.addAndGet(cell, sign * id);
+			hashSums.addAndGet(cell, sign * hash);
+			checkSums.addAndGet(cell, sign * check);
+		}
+	}
+
+	/**
+	 * The <code>i</code>th cell of the pair
+	 */
+	private static int cell(long id, int i, int part) {
+		long h = mix(id + i * 0x9E3779B97F4A7C15L);
+		return i * part + (int) ((h >>> 1) % part);
+	}
+
+	private static long check(long id) {
+		return mix(id ^ 0xC2B2AE3D27D4EB4FL);
+	}
+
+	/**
+	 * The finalizer of MurmurHash3(64-bit)
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Add the cells of <code>table</code>(e.g. the table of a sub-tree), the
+	 * tables must be of same size
+	 */
+	public void addAll(InvertibleBloomTable table) {
+		checkSize(table);
+		for (int i = 0; i < counts.length(); i++) {
+			counts.addAndGet(i, table.counts.get(i));
+			idSums.addAndGet(i, table.idSums.get(i));
+			hashSums.addAndGet(i, table.hashSums.get(i));
+			checkSums.addAndGet(i, table.checkSums.get(i));
+		}
+	}
+
+	/**
+	 * Copy the table, the changes during copying may be partially taken(the
+	 * decoding fails or takes the pair as a difference)
+	 */
+	public InvertibleBloomTable copy() {
+		InvertibleBloomTable table = new InvertibleBloomTable(counts.length());
+		table.addAll(this);
+		return table;
+	}
+
+	private void checkSize(InvertibleBloomTable table) {
+		if (table.counts.length() != counts.length()) {
+			throw new IllegalArgumentException("Different table size " + table.counts.length() + " with "
+					+ counts.length());
+		}
+	}
+
+	/**
+	 * Decode the symmetric difference of the pairs with <code>table</code>, the
+	 * tables must be of same size
+	 *
+	 * @return the pairs of difference, null if the difference is too large to
+	 *         decode
+	 */
+	public List<Entry> difference(InvertibleBloomTable table) {
+		checkSize(table);
+
+		int size = counts.length();
+		int part = size / HASH_COUNT;
+		int[] count = new int[size];
+		long[] idSum = new long[size];
+		int[] hashSum = new int[size];
+		long[] checkSum = new long[size];
+
+		LinkedList<Integer> pures = new LinkedList<Integer>();
+		for (int i = 0; i < size; i++) {
+			count[i] = counts.get(i) - table.counts.get(i);
+			idSum[i] = idSums.get(i) - table.idSums.get(i);
+			hashSum[i] = hashSums.get(i) - table.hashSums.get(i);
+			checkSum[i] = checkSums.get(i) - table.checkSums.get(i);
+			if (isPure(count[i], idSum[i], checkSum[i])) {
+				pures.add(i);
+			}
+		}
+
+		List<Entry> entries = new ArrayList<Entry>();
+		while (!pures.isEmpty()) {
+			int i = pures.poll();
+			if (!isPure(count[i], idSum[i], checkSum[i])) {
+				continue;
+			}
+
+			int sign = count[i];
+			long id = sign * idSum[i];
+			int hash = sign * hashSum[i];
+			long check = check(id);
+			entries.add(new Entry(hash, id, sign > 0));
+
+			for (int j = 0; j < HASH_COUNT; j++) {
+				int cell = cell(id, j, part);
+				count[cell] -= sign;
+				idSum[cell] -= sign * id;
+				hashSum[cell] -= sign * hash;
+				checkSum[cell] -= sign * check;
+				if (isPure(count[cell], idSum[cell], checkSum[cell])) {
+					pures.add(cell);
+				}
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (count[i] != 0 || idSum[i] != 0 || hashSum[i] != 0 || checkSum[i] != 0) {
+				return null;
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Whether or not the cell holds a single pair(of this or of the other
+	 * table)
+	 */
+	private static boolean isPure(int count, long idSum, long checkSum) {
+		return (count == 1 || count == -1) && count * checkSum == check(count * idSum);
+	}
+
+	@Override
+	public void serialize(DataOutput out) throws IOException {
+		out.writeInt(counts.length());
+		for (int i = 0; i < counts.length(); i++) {
+			out.writeInt(counts.get(i));
+			out.writeLong(idSums.get(i));
+			out.writeInt(hashSums.get(i));
+			out.writeLong(checkSums.get(i));
+		}
+	}
+
+	@Override
+	public void deserialize(DataInput in) throws IOException {
+		int size = in.readInt();
+		this.counts = new AtomicIntegerArray(size);
+		this.idSums = new AtomicLongArray(size);
+		this.hashSums = new AtomicIntegerArray(size);
+		this.checkSums = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			counts.set(i, in.readInt());
+			idSums.set(i, in.readLong());
+			hashSums.set(i, in.readInt());
+			checkSums.set(i, in.readLong());
+		}
+	}
+
+	/**
+	 * A decoded pair of difference
+	 */
+	public static class Entry {
+		/**
+		 * The 32-bit hash of key, it locates the merkle leaf
+		 */
+		public final int hash;
+		/**
+		 * The version digest of the pair
+		 */
+		public final long id;
+		/**
+		 * Whether the pair is of this table(or of the other one)
+		 */
+		public final boolean local;
+
+		Entry(int hash, long id, boolean local) {
+			this.hash = hash;
+			this.id = id;
+			this.local = local;
+		}
+	}
+}
@@ -5,9 +5,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 import com.hopper.util.ByteUtils;
 import com.hopper.util.MurmurHash;
@@ -17,15 +17,23 @@ import com.hopper.util.MurmurHash;
  */
 public class Leaf<T extends MerkleObjectRef> extends InnerNode<T> {
 
-	private final ConcurrentMap<String, AtomicLong> keyVersionMap = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, Long> keyVersionMap = new ConcurrentHashMap<String, Long>();
+	/**
+	 * The objects deserialized for readonly leaf
+	 */
 	private final List<T> objRefs = new ArrayList<T>();
 	/**
-	 * Associated range
+	 * Digests of the keys and versions(the sums of 64-bit key/version hashes
+	 * modulo 2<sup>64</sup>), maintained incrementally
 	 */
-	private int keyHash;
-	private int versionHash;
+	private volatile long keyHash;
+	private volatile long versionHash;
 
 	private boolean readonly;
+	/**
+	 * The sketch of the tree's key/version pairs, null if it's not maintained
+	 */
+	private InvertibleBloomTable sketch;
 
 	public Leaf(Range range) {
 		super(range);
@@ -39,6 +47,15 @@ public class Leaf<T extends MerkleObjectRef> extends InnerNode<T> {
 		this.readonly = readonly;
 	}
 
+	void setSketch(InvertibleBloomTable sketch) {
+		this.sketch = sketch;
+	}
+
+	@Override
+	public boolean isLeaf() {
+		return true;
+	}
+
 	/**
 	 * Leaf is the lowest level node, no left or right
 	 */
@@ -56,88 +73,139 @@ public class Leaf<T extends MerkleObjectRef> extends InnerNode<T> {
 	}
 
 	@Override
-	public int getKeyHash() {
+	public long getKeyHash() {
 		return keyHash;
 	}
 
 	@Override
-	public int getVersionHash() {
+	public long getVersionHash() {
 		return versionHash;
 	}
 
+	/**
+	 * The digests are maintained on each put/remove/version bump, nothing to
+	 * calculate
+	 */
 	@Override
 	public void hash() {
-		if (isReadonly()) {
-			return;
-		}
-
-		this.objRefs.addAll(_getObjectRefs());
-
-		loadVersions();
-		this.keyHash = keyHash();
-		this.versionHash = versionHash();
 	}
 
 	/**
-	 * Lazy load real versions from storage
+	 * The 64-bit digest of a key
 	 */
-	private void loadVersions() {
-		for (String key : keyVersionMap.keySet()) {
-			AtomicLong version = keyVersionMap.get(key);
-			T node = getObjectFactory().find(key);
+	static long keyHash(String key) {
+		return MurmurHash.hash64(key);
+	}
 
-			version.set(node.getVersion());
-		}
+	/**
+	 * The 64-bit version digest of a key, it's seeded by the key digest, so
+	 * the same versions of different keys are of different digests.
+	 */
+	static long versionHash(long keyHash, long version) {
+		byte[] bytes = ByteUtils.long2Bytes(version);
+		return MurmurHash.hash64(bytes, 0, bytes.length, keyHash);
 	}
 
-	public int keyHash() {
-		int hash = 0;
+	/**
+	 * Retrieve the objects mapped to the leaf, the objects of a writable leaf
+	 * are resolved by object factory on calling.
+	 */
+	@Override
+	public List<T> getObjectRefs() {
+		if (isReadonly()) {
+			return objRefs;
+		}
 
+		List<T> nodes = new ArrayList<T>(keyVersionMap.size());
 		for (String key : keyVersionMap.keySet()) {
-			hash ^= MurmurHash.hash(key);
+			T node = getObjectFactory().find(key);
+			// the key may be removed after reading
+			if (node != null) {
+				nodes.add(node);
+			}
 		}
-		return hash;
+		return nodes;
 	}
 
-	public int versionHash() {
-		int hash = 0;
-
-		for (AtomicLong version : keyVersionMap.values()) {
-			byte[] b = ByteUtils.long2Bytes(version.get());
-			hash ^= MurmurHash.hash(b);
-		}
-		return hash;
+	/**
+	 * Retrieve the keys mapped to the leaf(weakly consistent)
+	 */
+	@Override
+	public Set<String> getKeys() {
+		return keyVersionMap.keySet();
 	}
 
-	@Override
-	public List<T> getObjectRefs() {
-		return objRefs;
+	/**
+	 * Put the object or bump its version if it's newer(same as
+	 * {@link #update(String, long)}), the version is read under the leaf lock,
+	 * so a version bump during putting is never lost. A replaced object of
+	 * lower version must be removed before putting.
+	 */
+	public synchronized void put(T obj) {
+		long version = obj.getVersion();
+		Long old = keyVersionMap.get(obj.getKey());
+
+		if (old == null) {
+			keyVersionMap.put(obj.getKey(), version);
+			long hash = keyHash(obj.getKey());
+			long id = versionHash(hash, version);
+			keyHash += hash;
+			versionHash += id;
+			if (sketch != null) {
+				sketch.add(MurmurHash.hash(obj.getKey()), id);
+			}
+		} else if (old < version) {
+			keyVersionMap.put(obj.getKey(), version);
+			replace(obj.getKey(), keyHash(obj.getKey()), old, version);
+		}
 	}
 
-	private List<T> _getObjectRefs() {
-		List<T> nodes = new ArrayList<T>(keyVersionMap.size());
-		for (String key : keyVersionMap.keySet()) {
-			nodes.add(getObjectFactory().find(key));
+	/**
+	 * Replace the version digest of key, guarded by this
+	 */
+	private void replace(String key, long hash, long oldVersion, long newVersion) {
+		long oldId = versionHash(hash, oldVersion);
+		long newId = versionHash(hash, newVersion);
+		versionHash += newId - oldId;
+		if (sketch != null) {
+			sketch.replace(MurmurHash.hash(key), oldId, newId);
 		}
-		return nodes;
 	}
 
-	public void put(T stateNode) {
-		keyVersionMap.putIfAbsent(stateNode.getKey(), new AtomicLong(stateNode.getVersion()));
+	/**
+	 * Bump the version of key if it's newer, the bumps of a key may be
+	 * reported out of order.
+	 */
+	public synchronized void update(String key, long version) {
+		Long old = keyVersionMap.get(key);
+		if (old != null && old < version) {
+			keyVersionMap.put(key, version);
+			replace(key, keyHash(key), old, version);
+		}
 	}
 
 	/**
 	 * Remove data by key
 	 */
-	public void remove(String key) {
-		this.keyVersionMap.remove(key);
+	public synchronized void remove(String key) {
+		Long old = this.keyVersionMap.remove(key);
+		if (old != null) {
+			long hash = keyHash(key);
+			long id = versionHash(hash, old);
+			keyHash -= hash;
+			versionHash -= id;
+			if (sketch != null) {
+				sketch.remove(MurmurHash.hash(key), id);
+			}
+		}
 	}
 
 	@Override
 	public void serialize(DataOutput out) throws IOException {
-		out.writeInt(keyHash);
-		out.writeInt(versionHash);
+		out.writeLong(keyHash);
+		out.writeLong(versionHash);
 
+		List<T> objRefs = getObjectRefs();
 		out.writeInt(objRefs.size());
 		for (T obj : objRefs) {
 			obj.serialize(out);
@@ -146,8 +214,8 @@ public class Leaf<T extends MerkleObjectRef> extends InnerNode<T> {
 
 	@Override
 	public void deserialize(DataInput in) throws IOException {
-		this.keyHash = in.readInt();
-		this.versionHash = in.readInt();
+		this.keyHash = in.readLong();
+		this.versionHash = in.readLong();
 
 		int size = in.readInt();
 		for (int i = 0; i < size; i++) {
@@ -2,7 +2,6 @@ package com.hopper.util.merkle;
 
 import com.hopper.storage.AbstractStateStorage;
 import com.hopper.storage.StateNode;
-import com.hopper.storage.StateStorage;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -39,17 +38,6 @@ public class MapStorage extends AbstractStateStorage {
         return new ArrayList<StateNode>(map.values());
     }
 
-    /**
-     * Only shallow copy
-     */
-    @Override
-    public StateStorage snapshot() {
-        MapStorage snapshot = new MapStorage();
-        // shallow copy
-        snapshot.map.putAll(map);
-        return snapshot;
-    }
-
     @Override
     public String getInfo() {
         return "Hash storage";
@@ -2,6 +2,7 @@ package com.hopper.util.merkle;
 
 import com.hopper.session.Serializer;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -15,21 +16,27 @@ import java.util.List;
  */
 public interface MerkleNode<T extends MerkleObjectRef> extends Serializer {
 	/**
-	 * Return the key hash
+	 * Return the 64-bit key hash
 	 */
-	int getKeyHash();
+	long getKeyHash();
 
 	/**
-	 * Return the value hash
+	 * Return the 64-bit value hash
 	 */
-	int getVersionHash();
+	long getVersionHash();
 
 	/**
 	 * Lazy-calculate the node's hash value, this caused to recursion
-	 * invocation.
+	 * invocation. Only the sub-trees changed since last calculating are
+	 * visited.
 	 */
 	void hash();
 
+	/**
+	 * Whether or not the node is a leaf
+	 */
+	boolean isLeaf();
+
 	/**
 	 * Return left node
 	 */
@@ -64,4 +71,10 @@ public interface MerkleNode<T extends MerkleObjectRef> extends Serializer {
 	 * Retrieve all state nodes which hash has been mapped to range.
 	 */
 	List<T> getObjectRefs();
+
+	/**
+	 * Retrieve the keys mapped to the leaf(weakly consistent), the inner node
+	 * has no key.
+	 */
+	Collection<String> getKeys();
 }
@@ -0,0 +1,105 @@
+package com.hopper.util.merkle;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * {@link MerkleSpliterator} traverses the objects mapped to merkle tree(s) leaf
+ * by leaf, the objects are retrieved by {@link MerkleObjectFactory}. It splits
+ * by sub-tree, so that each part covers some continuous hash ranges.
+ * <p/>
+ * The traversal is weakly consistent: the objects put or removed during
+ * traversal may or may not be visited, but no object is visited twice.
+ */
+public class MerkleSpliterator<T extends MerkleObjectRef> implements Spliterator<T> {
+
+	private final MerkleObjectFactory<T> objectFactory;
+	/**
+	 * The sub-trees not visited yet
+	 */
+	private final Deque<MerkleNode<T>> pending;
+	/**
+	 * The keys of visiting leaf
+	 */
+	private Iterator<String> keys;
+
+	public MerkleSpliterator(MerkleObjectFactory<T> objectFactory, Collection<? extends MerkleNode<T>> roots) {
+		this.objectFactory = objectFactory;
+		this.pending = new ArrayDeque<MerkleNode<T>>(roots);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		while (true) {
+			if (keys != null) {
+				while (keys.hasNext()) {
+					// the key may be removed from storage after reading
+					T obj = objectFactory.find(keys.next());
+					if (obj != null) {
+						action.accept(obj);
+						return true;
+					}
+				}
+				keys = null;
+			}
+
+			MerkleNode<T> node = pending.pollFirst();
+			if (node == null) {
+				return false;
+			}
+
+			if (node.isLeaf()) {
+				keys = node.getKeys().iterator();
+			} else {
+				pushChildren(node);
+			}
+		}
+	}
+
+	/**
+	 * Replace the inner node with its children(in order)
+	 */
+	private void pushChildren(MerkleNode<T> node) {
+		if (node.getRight() != null) {
+			pending.addFirst(node.getRight());
+		}
+		if (node.getLeft() != null) {
+			pending.addFirst(node.getLeft());
+		}
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		// descend until there are two sub-trees at least
+		while (pending.size() == 1 && !pending.peekFirst().isLeaf()) {
+			pushChildren(pending.pollFirst());
+		}
+
+		if (pending.size() < 2) {
+			return null;
+		}
+
+		Deque<MerkleNode<T>> prefix = new ArrayDeque<MerkleNode<T>>();
+		for (int i = pending.size() / 2; i > 0; i--) {
+			prefix.addLast(pending.pollFirst());
+		}
+		return new MerkleSpliterator<T>(objectFactory, prefix);
+	}
+
+	/**
+	 * The tree doesn't know the object count
+	 */
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return CONCURRENT | DISTINCT | NONNULL;
+	}
+}
@@ -3,6 +3,11 @@ package com.hopper.util.merkle;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import com.hopper.session.Serializer;
 import com.hopper.util.MurmurHash;
@@ -13,6 +18,21 @@ import com.hopper.util.MurmurHash;
  * storage design, see {@link com.hopper.storage.StateStorage}.
  */
 public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
+	/**
+	 * The memory layouts of tree, see {@link ArrayMerkleTree} for
+	 * <code>ARRAY</code>
+	 */
+	public static enum Layout {
+		NODE, ARRAY
+	}
+
+	/**
+	 * The sub-trees higher than it(more than 2<sup>PARALLEL_HEIGHT</sup>
+	 * leaves) are hashed in parallel, the lower ones are hashed serially by
+	 * one task.
+	 */
+	static final int PARALLEL_HEIGHT = 8;
+
 	/**
 	 * Tree height
 	 */
@@ -26,6 +46,14 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 
 	private boolean readonly;
 	private final Class<T> clazz;
+	/**
+	 * The pool for hashing in parallel, null means hashing serially
+	 */
+	private ForkJoinPool hashPool;
+	/**
+	 * The sketch of key/version pairs, null if it's not maintained
+	 */
+	private InvertibleBloomTable sketch;
 
 	public MerkleTree(byte hashDepth, Class<T> clazz) {
 		this(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE), hashDepth, clazz);
@@ -39,12 +67,36 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 		this.clazz = clazz;
 	}
 
+	/**
+	 * Create a tree over the existing nodes, e.g. the sub-trees grafted under
+	 * new top levels. The nodes are shared, so the tree is only used for
+	 * hashing and comparison.
+	 */
+	public MerkleTree(MerkleNode<T> root, byte hashDepth, Class<T> clazz) {
+		this.hashDepth = hashDepth;
+		this.root = root;
+		this.clazz = clazz;
+	}
+
+	/**
+	 * Create an empty tree of <code>layout</code>, the trees of different
+	 * layouts are of same shape, so they can be compared or exchanged with
+	 * each other.
+	 */
+	public static <T extends MerkleObjectRef> MerkleTree<T> create(Layout layout, Range range, byte hashDepth,
+			Class<T> clazz) {
+		if (layout == Layout.ARRAY) {
+			return new ArrayMerkleTree<T>(range, hashDepth, clazz);
+		}
+		return new MerkleTree<T>(range, hashDepth, clazz);
+	}
+
 	/**
 	 * Check whether the range size [left,right) can covers the hash depth
 	 * size(2<sup>hashDepth</sup>). Or, whether or not the range can be split to
 	 * <code>hashDepth</code> levels.
 	 */
-	private void checkRange(Range range, byte hashDepth) {
+	static void checkRange(Range range, byte hashDepth) {
 		if (hashDepth > 30) {
 			throw new IllegalArgumentException("hashDepth muse be less than 31.");
 		}
@@ -62,20 +114,192 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 		this.objectFactory = objectFactory;
 	}
 
+	protected MerkleObjectFactory<T> getObjectFactory() {
+		return objectFactory;
+	}
+
+	protected Class<T> getClazz() {
+		return clazz;
+	}
+
+	public byte getHashDepth() {
+		return hashDepth;
+	}
+
+	/**
+	 * Set the pool for hashing the large dirty sub-trees in parallel(e.g. the
+	 * first hashing after loading), the digests are same with the serial
+	 * ones.
+	 */
+	public void setHashPool(ForkJoinPool hashPool) {
+		this.hashPool = hashPool;
+	}
+
+	protected ForkJoinPool getHashPool() {
+		return hashPool;
+	}
+
 	/**
-	 * Lazy-calculate tree's hash
+	 * Maintain the sketch of the key/version pairs of tree on each change, it
+	 * must be set before putting any object.
+	 */
+	public void setSketch(InvertibleBloomTable sketch) {
+		this.sketch = sketch;
+	}
+
+	/**
+	 * Return the sketch of the key/version pairs, null if it's not maintained
+	 */
+	public InvertibleBloomTable getSketch() {
+		return sketch;
+	}
+
+	/**
+	 * The heap-style position of the leaf covering <code>hash</code>(root is
+	 * 0, the children of <code>i</code> are <code>2i+1</code> and
+	 * <code>2i+2</code>)
+	 */
+	public long leafPosition(int hash) {
+		Range range = root.getRange();
+		long position = 0;
+		// the leaves are hashDepth + 1 levels below root
+		for (int depth = 0; depth <= hashDepth; depth++) {
+			Range left = range.getLeftRange();
+			if (left.contains(hash)) {
+				range = left;
+				position = 2 * position + 1;
+			} else {
+				range = range.getRightRange();
+				position = 2 * position + 2;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Run the task in the hash pool, it runs in the current worker if it's
+	 * invoked by a task of the pool.
+	 */
+	protected void invoke(ForkJoinTask<?> task) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			hashPool.invoke(task);
+		}
+	}
+
+	/**
+	 * Lazy-calculate tree's hash, the leaf digests are maintained on each
+	 * change, so only the dirty paths are re-hashed(O(depth) per change since
+	 * last calculating).
 	 */
 	public void loadHash() {
 		if (readonly) {
 			throw new IllegalStateException("Forbidden to calculate hash for readonly tree.");
 		}
-		this.root.hash();
+		if (hashPool == null) {
+			this.root.hash();
+		} else {
+			invoke(new HashTask(root, hashDepth + 1));
+		}
+	}
+
+	/**
+	 * Re-hash the sub-tree of node, the two dirty children of a high inner
+	 * node are hashed in parallel. The other nodes(e.g. the grafted roots of
+	 * other trees) are hashed by themselves.
+	 */
+	private static class HashTask extends RecursiveAction {
+		private static final long serialVersionUID = 5184046719624812215L;
+
+		private final MerkleNode<?> node;
+		/**
+		 * The levels from node to leaves
+		 */
+		private final int height;
+
+		HashTask(MerkleNode<?> node, int height) {
+			this.node = node;
+			this.height = height;
+		}
+
+		@Override
+		protected void compute() {
+			if (height <= PARALLEL_HEIGHT || !(node instanceof InnerNode)) {
+				node.hash();
+				return;
+			}
+
+			InnerNode<?> inner = (InnerNode<?>) node;
+			if (!inner.clearDirty()) {
+				return;
+			}
+
+			MerkleNode<?> left = inner.getLeft();
+			MerkleNode<?> right = inner.getRight();
+			if (left != null && right != null) {
+				invokeAll(new HashTask(left, height - 1), new HashTask(right, height - 1));
+			} else if (left != null || right != null) {
+				new HashTask(left != null ? left : right, height - 1).compute();
+			}
+			inner.combine();
+		}
 	}
 
 	public MerkleNode<T> getRoot() {
 		return root;
 	}
 
+	/**
+	 * Retrieve the node at <code>position</code>, the position is the
+	 * heap-style index(root is 0, the children of <code>i</code> are
+	 * <code>2i+1</code> and <code>2i+2</code>). Return null if it's absent.
+	 */
+	public MerkleNode<T> getNode(long position) {
+		// the path from root, the lowest bit is the first step
+		long path = 0;
+		int level = 0;
+		for (long i = position; i > 0; i = (i - 1) >> 1) {
+			path = (path << 1) | ((i & 1) == 0 ? 1 : 0);
+			level++;
+		}
+
+		if (position < 0 || level > hashDepth + 1) {
+			throw new IllegalArgumentException("Position " + position + " is out of tree.");
+		}
+
+		MerkleNode<T> node = getRoot();
+		for (; level > 0 && node != null; level--, path >>= 1) {
+			node = (path & 1) == 0 ? node.getLeft() : node.getRight();
+		}
+		return node;
+	}
+
+	/**
+	 * Collect the digests of the descendants of node <code>position</code> at
+	 * <code>levels</code> below(2<sup>levels</sup> nodes, from left to right)
+	 * into the arrays from <code>offset</code>. The absent nodes are skipped,
+	 * so the arrays must be zero-filled.
+	 */
+	public void collectDigests(long position, int levels, long[] keyHashes, long[] versionHashes, int offset) {
+		collectDigests(getNode(position), levels, keyHashes, versionHashes, offset);
+	}
+
+	private void collectDigests(MerkleNode<T> node, int levels, long[] keyHashes, long[] versionHashes, int offset) {
+		if (node == null) {
+			return;
+		}
+
+		if (levels == 0) {
+			keyHashes[offset] = node.getKeyHash();
+			versionHashes[offset] = node.getVersionHash();
+			return;
+		}
+
+		collectDigests(node.getLeft(), levels - 1, keyHashes, versionHashes, offset);
+		collectDigests(node.getRight(), levels - 1, keyHashes, versionHashes, offset + (1 << (levels - 1)));
+	}
+
 	/**
 	 * Find a leaf range by hash, if it doesn't exists, create it first. The
 	 * method will cause to lazy loading the entire tree nodes. The mechanism
@@ -87,7 +311,7 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 
 		while (!(node instanceof Leaf)) {
 
-			if (node.getRange().contains(hash)) {
+			if (node.getRange().getLeftRange().contains(hash)) {
 				node = createMerkleNode(node, node.getRange().getLeftRange(), depth++, true);
 			} else {
 				node = createMerkleNode(node, node.getRange().getRightRange(), depth++, false);
@@ -120,7 +344,9 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 				child = isLeft ? parent.getLeft() : parent.getRight();
 				if (child == null) {
 					if (depth == hashDepth) {
-						child = new Leaf<T>(range);
+						Leaf<T> leaf = new Leaf<T>(range);
+						leaf.setSketch(sketch);
+						child = leaf;
 					} else {
 						child = new InnerNode<T>(range);
 					}
@@ -151,8 +377,22 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 			throw new NullPointerException();
 		}
 
-		Leaf<T> leaf = findAndCreateLeaf(MurmurHash.hash(obj.getKey()));
-		leaf.put(obj);
+		int hash = MurmurHash.hash(obj.getKey());
+		findAndCreateLeaf(hash).put(obj);
+		markDirty(hash);
+	}
+
+	/**
+	 * Bump the version of stored object, the method should only be invoked by
+	 * StateStorage.
+	 */
+	public void update(String key, long version) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to update for readonly tree.");
+		}
+		int hash = MurmurHash.hash(key);
+		findAndCreateLeaf(hash).update(key, version);
+		markDirty(hash);
 	}
 
 	/**
@@ -165,8 +405,100 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 		if (key == null) {
 			throw new NullPointerException();
 		}
-		Leaf<T> leaf = findAndCreateLeaf(MurmurHash.hash(key));
-		leaf.remove(key);
+		int hash = MurmurHash.hash(key);
+		findAndCreateLeaf(hash).remove(key);
+		markDirty(hash);
+	}
+
+	/**
+	 * Put the objects in a batch, each leaf is located and its path is marked
+	 * dirty only once for all objects falling into it. The method should only
+	 * be invoked by StateStorage.
+	 */
+	public void putAll(List<T> objs) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to put for readonly tree.");
+		}
+
+		int[] hashes = new int[objs.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = MurmurHash.hash(objs.get(i).getKey());
+		}
+
+		Leaf<T> leaf = null;
+		int leafHash = 0;
+		for (long entry : hashOrder(hashes)) {
+			int hash = (int) (entry >> 32);
+			if (leaf == null || !leaf.getRange().contains(hash)) {
+				if (leaf != null) {
+					markDirty(leafHash);
+				}
+				leaf = findAndCreateLeaf(hash);
+				leafHash = hash;
+			}
+			leaf.put(objs.get((int) entry));
+		}
+		if (leaf != null) {
+			markDirty(leafHash);
+		}
+	}
+
+	/**
+	 * Remove the keys in a batch, see {@link #putAll(List)}. The method should
+	 * only be invoked by StateStorage.
+	 */
+	public void removeAll(List<String> keys) {
+		if (readonly) {
+			throw new IllegalStateException("Forbidden to remove for readonly tree.");
+		}
+
+		int[] hashes = new int[keys.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = MurmurHash.hash(keys.get(i));
+		}
+
+		Leaf<T> leaf = null;
+		int leafHash = 0;
+		for (long entry : hashOrder(hashes)) {
+			int hash = (int) (entry >> 32);
+			if (leaf == null || !leaf.getRange().contains(hash)) {
+				if (leaf != null) {
+					markDirty(leafHash);
+				}
+				leaf = findAndCreateLeaf(hash);
+				leafHash = hash;
+			}
+			leaf.remove(keys.get((int) entry));
+		}
+		if (leaf != null) {
+			markDirty(leafHash);
+		}
+	}
+
+	/**
+	 * Sort the indexes of <code>hashes</code> by hash, each entry holds the
+	 * hash in the high 32 bits and the index in the low 32 bits. The leaves are
+	 * ordered by hash, so the entries of a leaf are adjacent.
+	 */
+	protected static long[] hashOrder(int[] hashes) {
+		long[] order = new long[hashes.length];
+		for (int i = 0; i < hashes.length; i++) {
+			order[i] = ((long) hashes[i] << 32) | i;
+		}
+		Arrays.sort(order);
+		return order;
+	}
+
+	/**
+	 * Mark the inner nodes on the path of <code>hash</code> dirty, it must be
+	 * invoked after changing the leaf.
+	 */
+	private void markDirty(int hash) {
+		MerkleNode<T> node = root;
+		while (node != null && !(node instanceof Leaf)) {
+			((InnerNode<T>) node).markDirty();
+			node = node.getRange().getLeftRange().contains(hash) ? node.getLeft() : node.getRight();
+		}
 	}
 
 	/**
@@ -179,7 +511,7 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 	 */
 	public Difference<T> difference(MerkleTree<T> target) {
 		Difference<T> difference = new Difference<T>();
-		difference(root, target.root, difference);
+		difference(getRoot(), target.getRoot(), difference);
 		return difference;
 	}
 
@@ -206,11 +538,11 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 				return;
 			}
 
-			if (node1 instanceof Leaf) {
-				if (!(node2 instanceof Leaf)) {
+			if (node1.isLeaf()) {
+				if (!node2.isLeaf()) {
 					throw new IllegalStateException("Different tree structure.");
 				}
-				difference.updated((Leaf<T>) node1, (Leaf<T>) node2);
+				difference.updated(node1, node2);
 			} else {
 				difference(node1.getLeft(), node2.getLeft(), difference);
 				difference(node1.getRight(), node2.getRight(), difference);
@@ -224,6 +556,7 @@ public class MerkleTree<T extends MerkleObjectRef> implements Serializer {
 
 	@Override
 	public void serialize(DataOutput out) throws IOException {
+		MerkleNode<T> root = getRoot();
 		out.writeInt(root.getRange().getLeft());
 		out.writeInt(root.getRange().getRight());
 		root.serialize(out);
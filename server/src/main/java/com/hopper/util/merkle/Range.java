@@ -31,7 +31,8 @@ public class Range {
 	}
 
 	public int getMidPosition() {
-		return (left + right) / 2;
+		// avoid overflowing on the right half of int range
+		return (int) (((long) left + (long) right) / 2);
 	}
 
 	public Range getLeftRange() {
@@ -83,7 +83,42 @@ public enum Verb {
     /**
      * Expand lease
      */
-    NOTIFY_STATUS_CHANGE(32);
+    NOTIFY_STATUS_CHANGE(32),
+    /**
+     * Merkle exchange: digests of the descendants of nodes
+     */
+    REQUIRE_DIGESTS(33),
+    DIGESTS_RESULT(34),
+    /**
+     * Merkle exchange: key/version entries of leaves
+     */
+    REQUIRE_LEAF_ENTRIES(35),
+    LEAF_ENTRIES_RESULT(36),
+    /**
+     * Merkle exchange: state nodes of keys
+     */
+    REQUIRE_STATE_NODES(37),
+    STATE_NODES_RESULT(38),
+    /**
+     * Log shipping: the mutations after the follower xid
+     */
+    REQUIRE_MUTATIONS(39),
+    MUTATIONS_RESULT(40),
+    /**
+     * Snapshot bootstrap: the leader streams a point-in-time snapshot file after the message
+     */
+    REQUIRE_SNAPSHOT(41),
+    SNAPSHOT_TRANSFER(42),
+    /**
+     * Set reconciliation: the key/version sketch compared before the merkle exchange
+     */
+    REQUIRE_SKETCH(43),
+    SKETCH_RESULT(44),
+    /**
+     * Replication stream: the sequenced mutations from leader and the cumulative acknowledgements
+     */
+    REPLICATE(45),
+    REPLICATE_ACK(46);
 
     public final int type;
 
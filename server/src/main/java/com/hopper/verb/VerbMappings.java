@@ -2,7 +2,6 @@ package com.hopper.verb;
 
 import com.hopper.quorum.*;
 import com.hopper.session.Serializer;
-import com.hopper.util.merkle.Difference;
 import com.hopper.util.merkle.MerkleTree;
 import com.hopper.sync.*;
 import com.hopper.verb.handler.*;
@@ -37,9 +36,21 @@ public class VerbMappings {
         registerVerbBody(Verb.REQUIRE_DIFF, RequireDiff.class);
         registerVerbBody(Verb.DIFF_RESULT, DiffResult.class);
         registerVerbBody(Verb.TREE_RESULT, MerkleTree.class);
-        registerVerbBody(Verb.APPLY_DIFF, Difference.class);
+        registerVerbBody(Verb.APPLY_DIFF, DiffResult.class);
         registerVerbBody(Verb.MUTATION, Mutation.class);
         registerVerbBody(Verb.NOTIFY_STATUS_CHANGE, NotifyStatusChange.class);
+        registerVerbBody(Verb.REQUIRE_DIGESTS, RequireDigests.class);
+        registerVerbBody(Verb.DIGESTS_RESULT, Digests.class);
+        registerVerbBody(Verb.REQUIRE_LEAF_ENTRIES, RequireLeafEntries.class);
+        registerVerbBody(Verb.LEAF_ENTRIES_RESULT, LeafEntries.class);
+        registerVerbBody(Verb.REQUIRE_STATE_NODES, RequireStateNodes.class);
+        registerVerbBody(Verb.STATE_NODES_RESULT, StateNodes.class);
+        registerVerbBody(Verb.REQUIRE_MUTATIONS, RequireMutations.class);
+        registerVerbBody(Verb.MUTATIONS_RESULT, Mutations.class);
+        registerVerbBody(Verb.SNAPSHOT_TRANSFER, SnapshotTransfer.class);
+        registerVerbBody(Verb.SKETCH_RESULT, Sketch.class);
+        registerVerbBody(Verb.REPLICATE, Replicate.class);
+        registerVerbBody(Verb.REPLICATE_ACK, ReplicateAck.class);
 
         // register response verb handler
         registerVerbHandler(Verb.QUERY_LEADER, new QueryLeaderVerbHandler());
@@ -74,6 +85,23 @@ public class VerbMappings {
         registerVerbHandler(Verb.REPLY_MUTATION, new ReplyVerbHandler());
 
         registerVerbHandler(Verb.NOTIFY_STATUS_CHANGE, new NotifyStatusChangeVerbHandler());
+
+        registerVerbHandler(Verb.REQUIRE_DIGESTS, new RequireDigestsVerbHandler());
+        registerVerbHandler(Verb.DIGESTS_RESULT, new ReplyVerbHandler());
+
+        registerVerbHandler(Verb.REQUIRE_LEAF_ENTRIES, new RequireLeafEntriesVerbHandler());
+        registerVerbHandler(Verb.LEAF_ENTRIES_RESULT, new ReplyVerbHandler());
+
+        registerVerbHandler(Verb.REQUIRE_STATE_NODES, new RequireStateNodesVerbHandler());
+        registerVerbHandler(Verb.STATE_NODES_RESULT, new ReplyVerbHandler());
+        registerVerbHandler(Verb.REQUIRE_MUTATIONS, new RequireMutationsVerbHandler());
+        registerVerbHandler(Verb.MUTATIONS_RESULT, new ReplyVerbHandler());
+        registerVerbHandler(Verb.REQUIRE_SNAPSHOT, new RequireSnapshotVerbHandler());
+        registerVerbHandler(Verb.SNAPSHOT_TRANSFER, new SnapshotTransferVerbHandler());
+        registerVerbHandler(Verb.REQUIRE_SKETCH, new RequireSketchVerbHandler());
+        registerVerbHandler(Verb.SKETCH_RESULT, new ReplyVerbHandler());
+        registerVerbHandler(Verb.REPLICATE, new ReplicateVerbHandler());
+        registerVerbHandler(Verb.REPLICATE_ACK, new ReplicateAckVerbHandler());
     }
 
     /**
@@ -15,6 +15,14 @@ public class HeartBeat implements Serializer {
 	 * Local's max transaction id
 	 */
 	private long maxXid;
+	/**
+	 * The replication stream of leader, 0 if it's not leader
+	 */
+	private long streamId;
+	/**
+	 * The replication sequence of the latest mutation in leader ring
+	 */
+	private long lastSeq;
 
 	public boolean isLeader() {
 		return isLeader;
@@ -32,11 +40,29 @@ public class HeartBeat implements Serializer {
 		this.maxXid = maxXid;
 	}
 
+	public long getStreamId() {
+		return streamId;
+	}
+
+	public void setStreamId(long streamId) {
+		this.streamId = streamId;
+	}
+
+	public long getLastSeq() {
+		return lastSeq;
+	}
+
+	public void setLastSeq(long lastSeq) {
+		this.lastSeq = lastSeq;
+	}
+
 	@Override
 	public void serialize(DataOutput out) throws IOException {
 		byte b = isLeader ? (byte) 1 : 0;
 		out.writeByte(b);
 		out.writeLong(maxXid);
+		out.writeLong(streamId);
+		out.writeLong(lastSeq);
 	}
 
 	@Override
@@ -46,5 +72,7 @@ public class HeartBeat implements Serializer {
 
 		this.isLeader = b == 1;
 		this.maxXid = in.readLong();
+		this.streamId = in.readLong();
+		this.lastSeq = in.readLong();
 	}
 }
@@ -5,6 +5,8 @@ import com.hopper.session.Serializer;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Mutation collects all state update operations
@@ -14,7 +16,7 @@ public class Mutation implements Serializer {
      * Operation
      */
     public static enum OP {
-        CREATE(0), UPDATE_STATUS(1), UPDATE_LEASE(2), WATCH(3);
+        CREATE(0), UPDATE_STATUS(1), UPDATE_LEASE(2), WATCH(3), BATCH(4);
 
         public final int value;
 
@@ -38,11 +40,24 @@ public class Mutation implements Serializer {
     private OP op;
 
     private Serializer entity;
+    /**
+     * The replication sequence assigned by leader ring in the replication order(see {@link
+     * com.hopper.sync.MutationRing}), 0 if it isn't kept in ring(e.g. a batch)
+     */
+    private long seq;
 
     public OP getOp() {
         return op;
     }
 
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
     public <T> T getEntity() {
         return (T) entity;
     }
@@ -87,10 +102,21 @@ public class Mutation implements Serializer {
         this.entity = w;
     }
 
+    /**
+     * Groups the mutations replicated together by leader, they're applied in order
+     */
+    public void addBatch(List<Mutation> mutations) {
+        this.op = OP.BATCH;
+        Batch b = new Batch();
+        b.mutations = mutations;
+        this.entity = b;
+    }
+
     @Override
     public void serialize(DataOutput out) throws IOException {
 
         out.writeByte((byte) op.value);
+        out.writeLong(seq);
 
         switch (op) {
             case CREATE:
@@ -108,12 +134,17 @@ public class Mutation implements Serializer {
             case WATCH:
                 Watch w = (Watch) entity;
                 w.serialize(out);
+                break;
+            case BATCH:
+                Batch b = (Batch) entity;
+                b.serialize(out);
         }
     }
 
     @Override
     public void deserialize(DataInput in) throws IOException {
         this.op = OP.get(in.readByte());
+        this.seq = in.readLong();
 
         switch (op) {
             case CREATE:
@@ -135,6 +166,11 @@ public class Mutation implements Serializer {
                 Watch w = new Watch();
                 w.deserialize(in);
                 this.entity = w;
+                break;
+            case BATCH:
+                Batch b = new Batch();
+                b.deserialize(in);
+                this.entity = b;
         }
     }
 
@@ -229,4 +265,27 @@ public class Mutation implements Serializer {
             this.expectStatus = in.readInt();
         }
     }
+
+    public static class Batch implements Serializer {
+        public List<Mutation> mutations;
+
+        @Override
+        public void serialize(DataOutput out) throws IOException {
+            out.writeInt(mutations.size());
+            for (Mutation mutation : mutations) {
+                mutation.serialize(out);
+            }
+        }
+
+        @Override
+        public void deserialize(DataInput in) throws IOException {
+            int size = in.readInt();
+            this.mutations = new ArrayList<Mutation>(size);
+            for (int i = 0; i < size; i++) {
+                Mutation mutation = new Mutation();
+                mutation.deserialize(in);
+                mutations.add(mutation);
+            }
+        }
+    }
 }
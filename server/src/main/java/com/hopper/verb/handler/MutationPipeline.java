@@ -0,0 +1,277 @@
+package com.hopper.verb.handler;
+
+import com.hopper.future.DefaultLatchFuture;
+import com.hopper.future.LatchFuture;
+import com.hopper.future.LatchFutureListener;
+import com.hopper.quorum.NoQuorumException;
+import com.hopper.util.ScheduleManager;
+import com.hopper.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link MutationPipeline} group-commits the mutations replicated by leader. The concurrent mutations are queued and
+ * sent to followers as one batched mutation, all callers of a batch are acknowledged by the same quorum replies.
+ * <p/>
+ * There is no dedicated thread: a caller sends the queued mutations if less than <code>window</code> batches are in
+ * flight, and the acknowledgement of a batch sends the mutations queued meanwhile, so the mutations arriving during
+ * the round trips are grouped into the next batch. A batch which isn't full waits up to <code>linger</code>
+ * milliseconds on a timeout of {@link ScheduleManager} rather than on the caller(e.g. a Netty worker), a full batch
+ * is sent at once. The batches are passed to {@link Sender} in order, and are acknowledged independently.
+ */
+public class MutationPipeline {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MutationPipeline.class);
+
+    /**
+     * The replication of a mutation(a single one or a batch) to quorum
+     */
+    public interface Sender {
+        /**
+         * Sends the mutation after the previous ones, it's invoked under the pipeline lock, so it mustn't block
+         *
+         * @return the future of whether or not quorum acknowledges it, it must be completed(e.g. false after timeout)
+         */
+        LatchFuture<Boolean> send(Mutation mutation);
+    }
+
+    private final int maxBatchSize;
+
+    private final int window;
+
+    private final long linger;
+
+    private final ScheduleManager scheduleManager;
+
+    private final Sender sender;
+    /**
+     * The mutations waiting to be sent, guarded by this
+     */
+    private final List<Pending> pending = new ArrayList<Pending>();
+    /**
+     * The count of batches in flight, guarded by this
+     */
+    private int inFlight;
+    /**
+     * The timeout sending the lingering batch, null if no batch is lingering, guarded by this
+     */
+    private Timeout lingering;
+    /**
+     * Sends the lingering batch when linger elapses
+     */
+    private final Runnable lingerTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MutationPipeline.this) {
+                lingering = null;
+            }
+            flush(false);
+        }
+    };
+
+    private long batchCount;
+    private long mutationCount;
+
+    /**
+     * @param maxBatchSize The max mutations per batch
+     * @param window       The max batches in flight
+     * @param linger          The max milliseconds for waiting a batch to fill up, 0 sends the queued mutations at once
+     * @param scheduleManager The timer of lingering batches, it may be null if <code>linger</code> is 0
+     * @param sender          The replication to quorum
+     */
+    public MutationPipeline(int maxBatchSize, int window, long linger, ScheduleManager scheduleManager,
+                            Sender sender) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.window = Math.max(1, window);
+        this.linger = linger;
+        this.scheduleManager = scheduleManager;
+        this.sender = sender;
+    }
+
+    /**
+     * Replicates the mutation to quorum with the concurrent ones, it returns after the batch has been acknowledged.
+     *
+     * @throws NoQuorumException if quorum doesn't acknowledge the batch
+     */
+    public void replicate(Mutation mutation) {
+        if (!awaitReplication(replicateAsync(mutation))) {
+            throw new NoQuorumException();
+        }
+    }
+
+    /**
+     * Queues the mutation to be replicated with the concurrent ones, the caller may send the queued mutations but
+     * never waits for the acknowledgement.
+     *
+     * @return the future of whether or not quorum acknowledges the batch of mutation
+     */
+    public LatchFuture<Boolean> replicateAsync(Mutation mutation) {
+        LatchFuture<Boolean> future = queue(mutation);
+        flush();
+        return future;
+    }
+
+    /**
+     * Queues the mutation without sending it, so that the caller may queue it under its own ordering(e.g. the lock of
+     * applying it on local) and {@link #flush()} out of it. The mutations are sent in the queued order.
+     *
+     * @return the future of whether or not quorum acknowledges the batch of mutation
+     */
+    public LatchFuture<Boolean> queue(Mutation mutation) {
+        Pending self = new Pending(mutation);
+
+        synchronized (this) {
+            pending.add(self);
+        }
+        return self.future;
+    }
+
+    /**
+     * Sends the queued mutations while the window allows, a batch which isn't full lingers on the timer, the caller
+     * never waits.
+     */
+    public void flush() {
+        flush(true);
+    }
+
+    /**
+     * Waits for the replication, the thread is interrupted again if it's interrupted during waiting
+     *
+     * @return whether or not quorum acknowledges it
+     */
+    static boolean awaitReplication(LatchFuture<Boolean> replication) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return replication.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    return false;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Sends the queued mutations in batches while the window allows
+     *
+     * @param linger whether or not to linger for a batch(it's false on the acknowledging and timer threads)
+     */
+    private void flush(boolean linger) {
+        while (true) {
+            final List<Pending> batch;
+            LatchFuture<Boolean> future = null;
+            synchronized (this) {
+                if (pending.isEmpty() || inFlight >= window) {
+                    break;
+                }
+
+                if (linger && this.linger > 0 && pending.size() < maxBatchSize) {
+                    if (lingering == null) {
+                        lingering = scheduleManager.newTimeout(lingerTask, this.linger);
+                    }
+                    break;
+                }
+
+                inFlight++;
+                batch = new ArrayList<Pending>(pending.subList(0, Math.min(maxBatchSize, pending.size())));
+                pending.subList(0, batch.size()).clear();
+
+                // the lingering mutations are sent already
+                if (pending.isEmpty() && lingering != null) {
+                    lingering.cancel();
+                    lingering = null;
+                }
+
+                try {
+                    future = sender.send(merge(batch));
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to replicate the mutations.", e);
+                }
+            }
+
+            if (future == null) {
+                complete(batch, false);
+                continue;
+            }
+
+            future.addListener(new LatchFutureListener<Boolean>() {
+                @Override
+                public void complete(LatchFuture<Boolean> future) {
+                    boolean acknowledged = false;
+                    try {
+                        acknowledged = future.isSuccess() && future.get();
+                    } catch (Exception e) {
+                        logger.warn("Failed to replicate the mutations.", e);
+                    }
+                    MutationPipeline.this.complete(batch, acknowledged);
+                    flush(false);
+                }
+            });
+        }
+    }
+
+    private void complete(List<Pending> batch, boolean acknowledged) {
+        synchronized (this) {
+            batchCount++;
+            mutationCount += batch.size();
+            inFlight--;
+        }
+
+        if (!acknowledged) {
+            logger.debug("Quorum doesn't acknowledge the {} mutations.", batch.size());
+        }
+        for (Pending p : batch) {
+            p.future.set(acknowledged);
+        }
+    }
+
+    private Mutation merge(List<Pending> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).mutation;
+        }
+
+        List<Mutation> mutations = new ArrayList<Mutation>(batch.size());
+        for (Pending p : batch) {
+            mutations.add(p.mutation);
+        }
+        Mutation mutation = new Mutation();
+        mutation.addBatch(mutations);
+        return mutation;
+    }
+
+    /**
+     * The count of sent batches(including the single mutations)
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * The count of sent mutations
+     */
+    public synchronized long getMutationCount() {
+        return mutationCount;
+    }
+
+    private static class Pending {
+        final Mutation mutation;
+        final DefaultLatchFuture<Boolean> future = new DefaultLatchFuture<Boolean>();
+
+        Pending(Mutation mutation) {
+            this.mutation = mutation;
+        }
+    }
+}
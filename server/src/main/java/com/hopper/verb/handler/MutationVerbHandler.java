@@ -1,24 +1,30 @@
 package com.hopper.verb.handler;
 
 import com.hopper.GlobalConfiguration;
+import com.hopper.future.DefaultLatchFuture;
+import com.hopper.future.LatchFuture;
+import com.hopper.future.LatchFutureListener;
 import com.hopper.quorum.NoQuorumException;
 import com.hopper.server.ComponentManager;
 import com.hopper.server.ComponentManagerFactory;
+import com.hopper.server.Endpoint;
 import com.hopper.server.Server;
 import com.hopper.server.ServiceUnavailableException;
 import com.hopper.session.Message;
-import com.hopper.session.MessageService;
 import com.hopper.stage.Stage;
 import com.hopper.storage.NotMatchOwnerException;
 import com.hopper.storage.NotMatchStatusException;
 import com.hopper.storage.StateNode;
 import com.hopper.storage.StateStorage;
+import com.hopper.sync.MutationRing;
+import com.hopper.thrift.ChannelBound;
+import com.hopper.util.Timeout;
 import com.hopper.verb.Verb;
 import com.hopper.verb.VerbHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -37,11 +43,65 @@ public class MutationVerbHandler implements VerbHandler {
     private final Server server = componentManager.getDefaultServer();
 
     private final StateStorage storage = componentManager.getStateStorage();
+    /**
+     * The ordered replication to followers(as leader)
+     */
+    private final ReplicationStream stream = newReplicationStream();
+    /**
+     * Group-commits the mutations replicated by local(as leader)
+     */
+    private final MutationPipeline pipeline = new MutationPipeline(config.getMutationBatchSize(), config
+            .getReplicationWindow(), config.getMutationBatchLinger(), componentManager.getScheduleManager(),
+            new MutationPipeline.Sender() {
+                @Override
+                public LatchFuture<Boolean> send(Mutation mutation) {
+                    // keeps it for the lagging followers, the sequences are assigned in the replication order
+                    MutationRing ring = componentManager.getDataSyncService().getMutationRing();
+                    if (ring != null) {
+                        if (mutation.getOp() == Mutation.OP.BATCH) {
+                            for (Mutation m : ((Mutation.Batch) mutation.getEntity()).mutations) {
+                                ring.append(m);
+                            }
+                        } else {
+                            ring.append(mutation);
+                        }
+                    }
+
+                    final DefaultLatchFuture<Boolean> future = stream.send(mutation);
+
+                    // fails the batch if quorum doesn't acknowledge it in time
+                    final Timeout timeout = componentManager.getScheduleManager().newTimeout(new Runnable() {
+                        @Override
+                        public void run() {
+                            future.set(false);
+                        }
+                    }, config.getRpcTimeout());
+                    future.addListener(new LatchFutureListener<Boolean>() {
+                        @Override
+                        public void complete(LatchFuture<Boolean> future) {
+                            timeout.cancel();
+                        }
+                    });
+                    return future;
+                }
+            });
+    /**
+     * The striped locks of applying the mutations on local(as leader), a mutation is queued to pipeline under the
+     * lock, so the mutations of a key are replicated in the order of applying them on local
+     */
+    private final Object[] applyLocks = new Object[64];
+
+    {
+        for (int i = 0; i < applyLocks.length; i++) {
+            applyLocks[i] = new Object();
+        }
+    }
 
     @Override
     public void doVerb(Message message) {
 
         Mutation mutation = (Mutation) message.getBody();
+        long start = System.currentTimeMillis();
 
         if (mutation.getOp() == Mutation.OP.CREATE) {
             create(message);
@@ -51,7 +111,13 @@ public class MutationVerbHandler implements VerbHandler {
             updateLease(message);
         } else if (mutation.getOp() == Mutation.OP.WATCH) {
             watch(message);
+        } else if (mutation.getOp() == Mutation.OP.BATCH) {
+            batch(message);
         }
+
+        // the synchronization backs off if the replicated mutations slow down
+        componentManager.getDataSyncService().getSyncThrottle().recordMutationLatency(System.currentTimeMillis() -
+                start);
     }
 
     private void create(Message message) {
@@ -60,11 +126,9 @@ public class MutationVerbHandler implements VerbHandler {
 
         MutationReply reply = new MutationReply();
         try {
-            create(create.key, create.owner, create.initStatus, create.invalidateStatus);
             // reply mutation request only the operation success
-            replyMutation(message, MutationReply.SUCCESS);
-        } catch (NoQuorumException e) {
-            logger.warn("No quorum nodes are alive, drops the create request.");
+            replyAfterReplication(message, createAsync(create.key, create.owner, create.initStatus, create
+                    .invalidateStatus));
         } catch (ServiceUnavailableException e) {
             logger.warn("The server is unavailable, drops the create request.");
         }
@@ -75,31 +139,44 @@ public class MutationVerbHandler implements VerbHandler {
      */
     public void create(String key, String owner, int initStatus, int invalidateStatus) throws
             ServiceUnavailableException, NoQuorumException {
+        awaitReplication(createAsync(key, owner, initStatus, invalidateStatus));
+    }
+
+    /**
+     * Create a state on local, the returned future completes when the creation is replicated to quorum(at once on
+     * follower)
+     */
+    public LatchFuture<Boolean> createAsync(String key, String owner, int initStatus, int invalidateStatus) throws
+            ServiceUnavailableException {
         // check server state
         server.assertServiceAvailable();
 
         // Local modification first
         StateNode node = newStateNode(key, initStatus, invalidateStatus, componentManager.getLeaderElection().getPaxos().getEpoch());
 
-        storage.put(node);
+        LatchFuture<Boolean> replication;
+        synchronized (applyLock(key)) {
+            storage.put(node);
 
-        if (server.isLeader()) {
+            if (!server.isLeader()) {
+                return replicated();
+            }
             Mutation mutation = new Mutation();
             mutation.addCreate(key, owner, initStatus, invalidateStatus);
 
-            // Synchronizes the modification to majority nodes
-            synchronizeMutationToQuorum(mutation);
+            replication = pipeline.queue(mutation);
         }
+
+        // Synchronizes the modification to majority nodes
+        return synchronizeMutationToQuorum(replication);
     }
 
     private void updateStatus(Message message) {
         Mutation mutation = (Mutation) message.getBody();
         Mutation.UpdateStatus us = (Mutation.UpdateStatus) mutation.getEntity();
         try {
-            updateStatus(us.key, us.expectStatus, us.newStatus, us.owner, us.lease);
-            replyMutation(message, MutationReply.SUCCESS);
-        } catch (NoQuorumException e) {
-            logger.warn("No quorum nodes are alive, drops the create request.");
+            replyAfterReplication(message, updateStatusAsync(us.key, us.expectStatus, us.newStatus, us.owner,
+                    us.lease));
         } catch (ServiceUnavailableException e) {
             logger.warn("The server is unavailable, drops the create request.");
         } catch (NotMatchStatusException e) {
@@ -115,20 +192,36 @@ public class MutationVerbHandler implements VerbHandler {
     public void updateStatus(String key, int expectStatus, int newStatus, String owner,
                              int lease) throws ServiceUnavailableException, NotMatchStatusException,
             NotMatchOwnerException {
+        awaitReplication(updateStatusAsync(key, expectStatus, newStatus, owner, lease));
+    }
+
+    /**
+     * Update the status on local, the returned future completes when the update is replicated to quorum
+     */
+    public LatchFuture<Boolean> updateStatusAsync(String key, int expectStatus, int newStatus, String owner,
+                                                  int lease) throws ServiceUnavailableException,
+            NotMatchStatusException, NotMatchOwnerException {
 
         // check server state
         server.assertServiceAvailable();
 
         StateNode node = getAndCreateNode(key);
-        node.setStatus(expectStatus, newStatus, owner, lease);
 
-        // Synchronizes the modification to majority nodes
-        if (server.isLeader()) {
+        LatchFuture<Boolean> replication;
+        synchronized (applyLock(key)) {
+            node.setStatus(expectStatus, newStatus, owner, lease);
+
+            if (!server.isLeader()) {
+                return replicated();
+            }
             Mutation mutation = new Mutation();
             mutation.addUpdateStatus(key, expectStatus, newStatus, owner, lease);
 
-            synchronizeMutationToQuorum(mutation);
+            replication = pipeline.queue(mutation);
         }
+
+        // Synchronizes the modification to majority nodes
+        return synchronizeMutationToQuorum(replication);
     }
 
     private void updateLease(Message message) {
@@ -141,11 +234,8 @@ public class MutationVerbHandler implements VerbHandler {
         }
 
         try {
-            updateLease(ul.key, ul.expectStatus, ul.owner, ul.lease);
-            replyMutation(message, MutationReply.SUCCESS);
+            replyAfterReplication(message, updateLeaseAsync(ul.key, ul.expectStatus, ul.owner, ul.lease));
         } catch (ServiceUnavailableException e) {
-            logger.warn("No quorum nodes are alive, drops the updateLease request.");
-        } catch (NoQuorumException e) {
             logger.warn("The server is unavailable, drops the updateLease request.");
         } catch (NotMatchStatusException e) {
             replyMutation(message, MutationReply.STATUS_CAS);
@@ -160,19 +250,35 @@ public class MutationVerbHandler implements VerbHandler {
     public void updateLease(String key, int expectStatus, String owner,
                             int lease) throws ServiceUnavailableException, NotMatchStatusException,
             NotMatchOwnerException {
+        awaitReplication(updateLeaseAsync(key, expectStatus, owner, lease));
+    }
+
+    /**
+     * Update the lease on local, the returned future completes when the update is replicated to quorum
+     */
+    public LatchFuture<Boolean> updateLeaseAsync(String key, int expectStatus, String owner,
+                                                 int lease) throws ServiceUnavailableException,
+            NotMatchStatusException, NotMatchOwnerException {
         // check server state
         server.assertServiceAvailable();
 
         StateNode node = getAndCreateNode(key);
-        node.expandLease(expectStatus, owner, lease);
 
-        // Synchronizes the modification to majority nodes
-        if (server.isLeader()) {
+        LatchFuture<Boolean> replication;
+        synchronized (applyLock(key)) {
+            node.expandLease(expectStatus, owner, lease);
+
+            if (!server.isLeader()) {
+                return replicated();
+            }
             Mutation mutation = new Mutation();
             mutation.addUpdateLease(key, expectStatus, owner, lease);
 
-            synchronizeMutationToQuorum(mutation);
+            replication = pipeline.queue(mutation);
         }
+
+        // Synchronizes the modification to majority nodes
+        return synchronizeMutationToQuorum(replication);
     }
 
     private void watch(Message message) {
@@ -184,12 +290,9 @@ public class MutationVerbHandler implements VerbHandler {
         }
 
         try {
-            watch(watch.sessionId, watch.key, watch.expectStatus);
-            replyMutation(message, MutationReply.SUCCESS);
+            replyAfterReplication(message, watchAsync(watch.sessionId, watch.key, watch.expectStatus));
         } catch (ServiceUnavailableException e) {
-            logger.warn("No quorum nodes are alive, drops the updateLease request.");
-        } catch (NoQuorumException e) {
-            logger.warn("The server is unavailable, drops the updateLease request.");
+            logger.warn("The server is unavailable, drops the watch request.");
         } catch (NotMatchStatusException e) {
             replyMutation(message, MutationReply.STATUS_CAS);
         }
@@ -199,18 +302,49 @@ public class MutationVerbHandler implements VerbHandler {
      * Watch the special status(add a listener)
      */
     public void watch(String sessionId, String key, int expectStatus) {
+        awaitReplication(watchAsync(sessionId, key, expectStatus));
+    }
+
+    /**
+     * Watch the status on local, the returned future completes when the watch is replicated to quorum
+     */
+    public LatchFuture<Boolean> watchAsync(String sessionId, String key, int expectStatus) {
         // check server state
         server.assertServiceAvailable();
 
         StateNode node = getAndCreateNode(key);
-        node.watch(sessionId, expectStatus);
 
-        // Synchronizes the modification to majority nodes
-        if (server.isLeader()) {
+        LatchFuture<Boolean> replication;
+        synchronized (applyLock(key)) {
+            node.watch(sessionId, expectStatus);
+
+            if (!server.isLeader()) {
+                return replicated();
+            }
             Mutation mutation = new Mutation();
             mutation.addWatch(sessionId, key, expectStatus);
 
-            synchronizeMutationToQuorum(mutation);
+            replication = pipeline.queue(mutation);
+        }
+
+        // Synchronizes the modification to majority nodes
+        return synchronizeMutationToQuorum(replication);
+    }
+
+    /**
+     * Applies the mutations replicated by leader in a batch, the batch is acknowledged once(the failed mutations are
+     * acknowledged as the single ones with CAS replies)
+     */
+    private void batch(Message message) {
+        Mutation mutation = (Mutation) message.getBody();
+
+        try {
+            applyReplicated(mutation, 0);
+            replyMutation(message, MutationReply.SUCCESS);
+        } catch (NoQuorumException e) {
+            logger.warn("No quorum nodes are alive, drops the batch request.");
+        } catch (ServiceUnavailableException e) {
+            logger.warn("The server is unavailable, drops the batch request.");
         }
     }
 
@@ -228,6 +362,9 @@ public class MutationVerbHandler implements VerbHandler {
                     ExecutorService notifyExecutorService = componentManager.getStageManager().getThreadPool(Stage.STATE_CHANGE);
                     node.setNotifyExecutorService(notifyExecutorService);
                     storage.put(node);
+
+                    // the storage may hold a copy(off-heap)
+                    node = storage.get(key);
                 }
             }
         }
@@ -235,31 +372,178 @@ public class MutationVerbHandler implements VerbHandler {
         return node;
     }
 
-    private void synchronizeMutationToQuorum(Mutation mutation) {
-        Message message = new Message();
-        message.setVerb(Verb.MUTATION);
-        message.setBody(mutation);
+    /**
+     * Replay a mutation replicated by leader(e.g. the one shipped to a lagging follower), it's applied as the MUTATION
+     * message on follower.
+     */
+    public void apply(Mutation mutation) throws ServiceUnavailableException, NotMatchStatusException,
+            NotMatchOwnerException {
+        awaitReplication(mutateAsync(mutation));
+    }
+
+    /**
+     * Applies a single mutation on local, the returned future completes when it's replicated to quorum(at once on
+     * follower)
+     */
+    public LatchFuture<Boolean> mutateAsync(Mutation mutation) throws ServiceUnavailableException,
+            NotMatchStatusException, NotMatchOwnerException {
+        if (mutation.getOp() == Mutation.OP.CREATE) {
+            Mutation.Create c = mutation.getEntity();
+            return createAsync(c.key, c.owner, c.initStatus, c.invalidateStatus);
+        } else if (mutation.getOp() == Mutation.OP.UPDATE_STATUS) {
+            Mutation.UpdateStatus us = mutation.getEntity();
+            return updateStatusAsync(us.key, us.expectStatus, us.newStatus, us.owner, us.lease);
+        } else if (mutation.getOp() == Mutation.OP.UPDATE_LEASE) {
+            Mutation.UpdateLease ul = mutation.getEntity();
+            return updateLeaseAsync(ul.key, ul.expectStatus, ul.owner, ul.lease);
+        } else if (mutation.getOp() == Mutation.OP.WATCH) {
+            Mutation.Watch w = mutation.getEntity();
+            return watchAsync(w.sessionId, w.key, w.expectStatus);
+        }
+        throw new IllegalArgumentException("Unsupported mutation " + mutation.getOp());
+    }
+
+    /**
+     * Applies a mutation(a single one or a batch) replicated by leader, a failed CAS condition(leader has checked it
+     * already) means local diverges, it's repaired by synchronizing from leader. The applied mutations advance the
+     * local position in leader stream.
+     *
+     * @param streamId the leader replication stream, 0 if it isn't replicated by stream
+     */
+    public void applyReplicated(Mutation mutation, long streamId) throws ServiceUnavailableException {
+        if (mutation.getOp() == Mutation.OP.BATCH) {
+            for (Mutation m : ((Mutation.Batch) mutation.getEntity()).mutations) {
+                applyReplicated(m, streamId);
+            }
+            return;
+        }
+
+        try {
+            apply(mutation);
+            componentManager.getDataSyncService().replicated(streamId, mutation.getSeq());
+        } catch (NotMatchStatusException e) {
+            diverged(e);
+        } catch (NotMatchOwnerException e) {
+            diverged(e);
+        }
+    }
 
-        List<Message> replies = componentManager.getMessageService().sendMessageToQuorum(message,
-                MessageService.WAITING_MODE_QUORUM);
+    /**
+     * The replicated mutation fails the CAS condition checked by leader, so local diverges from leader, the data is
+     * synchronized from leader(the triggers of a batch are coalesced)
+     */
+    private void diverged(RuntimeException e) {
+        int leader = server.getLeader();
+        logger.warn("Failed to apply the replicated mutation, synchronize data from leader {}: {}", leader, e
+                .getMessage());
+        componentManager.getDataSyncService().syncDataFromRemote(leader);
+    }
 
-        // Failed to synchronize the modification to quorum
-        if (replies.size() < config.getQuorumSize() - 1) {
+    private LatchFuture<Boolean> synchronizeMutationToQuorum(LatchFuture<Boolean> replication) {
+        // the concurrent mutations are sent in a batch, it's out of the apply lock as the batch may be sent here
+        final long start = System.currentTimeMillis();
+        pipeline.flush();
+        replication.addListener(new LatchFutureListener<Boolean>() {
+            @Override
+            public void complete(LatchFuture<Boolean> future) {
+                // the synchronization backs off if the replication slows down
+                componentManager.getDataSyncService().getSyncThrottle().recordMutationLatency(System
+                        .currentTimeMillis() - start);
+            }
+        });
+        return replication;
+    }
+
+    /**
+     * Waits for the replication to quorum
+     *
+     * @throws NoQuorumException if quorum doesn't acknowledge it
+     */
+    private void awaitReplication(LatchFuture<Boolean> replication) {
+        if (!MutationPipeline.awaitReplication(replication)) {
             throw new NoQuorumException();
         }
     }
 
+    /**
+     * The replication of the mutation not replicated by local(as follower)
+     */
+    private LatchFuture<Boolean> replicated() {
+        DefaultLatchFuture<Boolean> future = new DefaultLatchFuture<Boolean>();
+        future.set(true);
+        return future;
+    }
+
+    /**
+     * The stream id is unique per leader and restart
+     */
+    private ReplicationStream newReplicationStream() {
+        Endpoint local = config.getLocalServerEndpoint();
+        Endpoint[] group = config.getGroupEndpoints();
+        int[] followers = new int[group.length];
+        int count = 0;
+        for (Endpoint endpoint : group) {
+            if (endpoint.serverId != local.serverId) {
+                followers[count++] = endpoint.serverId;
+            }
+        }
+
+        long streamId = System.currentTimeMillis() << 16 | (local.serverId & 0xFFFF);
+        return new ReplicationStream(streamId, Arrays.copyOf(followers, count), config.getQuorumSize() - 1, config
+                .getReplicationBuffer(), config.getRpcTimeout(), new ReplicationStream.Transport() {
+            @Override
+            public void send(int serverId, Replicate replicate) {
+                Message message = new Message();
+                message.setVerb(Verb.REPLICATE);
+                message.setBody(replicate);
+                componentManager.getMessageService().sendOneway(message, serverId);
+            }
+        });
+    }
+
+    public ReplicationStream getReplicationStream() {
+        return stream;
+    }
+
+    private Object applyLock(String key) {
+        return applyLocks[(key.hashCode() & 0x7fffffff) % applyLocks.length];
+    }
+
     /**
      * Reply the mutation result to sender
      */
     private void replyMutation(Message message, int replyStatus) {
+        // send response
+        componentManager.getMessageService().responseOneway(newMutationReply(message, replyStatus));
+    }
+
+    /**
+     * Reply the success to sender after the mutation has been replicated to quorum, the S2S worker isn't blocked
+     * during replication(the acknowledgements arrive on the S2S workers too)
+     */
+    private void replyAfterReplication(final Message message, LatchFuture<Boolean> replication) {
+        // the reply is sent from the replication callback, out of the bound channel
+        final Endpoint endpoint = config.getEndpoint(ChannelBound.get().getRemoteAddress());
+
+        replication.addListener(new LatchFutureListener<Boolean>() {
+            @Override
+            public void complete(LatchFuture<Boolean> future) {
+                if (MutationPipeline.awaitReplication(future)) {
+                    componentManager.getMessageService().responseOneway(newMutationReply(message, MutationReply
+                            .SUCCESS), endpoint);
+                } else {
+                    logger.warn("No quorum nodes are alive, drops the mutation request.");
+                }
+            }
+        });
+    }
+
+    private Message newMutationReply(Message message, int replyStatus) {
         MutationReply reply = new MutationReply();
         reply.setStatus(replyStatus);
         Message response = message.createResponse(Verb.REPLY_MUTATION);
         response.setBody(reply);
-
-        // send response
-        componentManager.getMessageService().responseOneway(response);
+        return response;
     }
 
     private StateNode newStateNode(String key, int initialStatus, int invalidateStatus, long initialVersion) {
@@ -0,0 +1,77 @@
+package com.hopper.verb.handler;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A mutation(a single one or a batch) of the replication stream from leader to a follower, see {@link
+ * ReplicationStream}
+ */
+public class Replicate implements Serializer {
+    /**
+     * The stream id, a new leader(or a restarted one) starts a new stream
+     */
+    private long streamId;
+    /**
+     * The sequence number in stream, it starts from 1 and increases by 1 per mutation
+     */
+    private long seq;
+    /**
+     * Whether or not the mutations before it are no longer kept by leader, the follower restarts from it
+     */
+    private boolean reset;
+
+    private Mutation mutation;
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(long streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    public Mutation getMutation() {
+        return mutation;
+    }
+
+    public void setMutation(Mutation mutation) {
+        this.mutation = mutation;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeLong(streamId);
+        out.writeLong(seq);
+        out.writeBoolean(reset);
+        mutation.serialize(out);
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.streamId = in.readLong();
+        this.seq = in.readLong();
+        this.reset = in.readBoolean();
+        this.mutation = new Mutation();
+        mutation.deserialize(in);
+    }
+}
@@ -0,0 +1,46 @@
+package com.hopper.verb.handler;
+
+import com.hopper.session.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The cumulative acknowledgement of a replication stream: all mutations up to <code>seq</code> have been applied by
+ * the follower
+ */
+public class ReplicateAck implements Serializer {
+
+    private long streamId;
+
+    private long seq;
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(long streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    @Override
+    public void serialize(DataOutput out) throws IOException {
+        out.writeLong(streamId);
+        out.writeLong(seq);
+    }
+
+    @Override
+    public void deserialize(DataInput in) throws IOException {
+        this.streamId = in.readLong();
+        this.seq = in.readLong();
+    }
+}
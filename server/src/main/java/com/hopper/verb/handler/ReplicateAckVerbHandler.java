@@ -0,0 +1,31 @@
+package com.hopper.verb.handler;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.server.Endpoint;
+import com.hopper.session.Message;
+import com.hopper.thrift.ChannelBound;
+import com.hopper.verb.Verb;
+import com.hopper.verb.VerbHandler;
+import com.hopper.verb.VerbMappings;
+
+/**
+ * The message handler for processing the REPLICATE_ACK message on leader
+ */
+public class ReplicateAckVerbHandler implements VerbHandler {
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+
+    @Override
+    public void doVerb(Message message) {
+        Endpoint endpoint = componentManager.getGlobalConfiguration().getEndpoint(ChannelBound.get()
+                .getRemoteAddress());
+
+        if (endpoint == null) {
+            throw new IllegalStateException("Not found endpoint for address:" + ChannelBound.get().getRemoteAddress());
+        }
+
+        ReplicateAck ack = (ReplicateAck) message.getBody();
+        MutationVerbHandler handler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb.MUTATION);
+        handler.getReplicationStream().acked(endpoint.serverId, ack.getStreamId(), ack.getSeq());
+    }
+}
@@ -0,0 +1,86 @@
+package com.hopper.verb.handler;
+
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.server.Endpoint;
+import com.hopper.server.ServiceUnavailableException;
+import com.hopper.session.Message;
+import com.hopper.thrift.ChannelBound;
+import com.hopper.verb.Verb;
+import com.hopper.verb.VerbHandler;
+import com.hopper.verb.VerbMappings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The message handler for processing the REPLICATE message on follower, the mutations of stream are applied strictly
+ * in order and acknowledged cumulatively(see {@link ReplicationStream}).
+ */
+public class ReplicateVerbHandler implements VerbHandler {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ReplicateVerbHandler.class);
+
+    private final ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+    /**
+     * The current stream and its last applied sequence, guarded by this
+     */
+    private long streamId;
+    private long appliedSeq;
+
+    @Override
+    public synchronized void doVerb(Message message) {
+        Replicate replicate = (Replicate) message.getBody();
+
+        if (replicate.getStreamId() != streamId || replicate.isReset()) {
+            // follows a new stream from its start, otherwise requires the retransmission from leader
+            if (replicate.getSeq() != 1 && !replicate.isReset()) {
+                ack(message, replicate.getStreamId(), 0);
+                return;
+            }
+            streamId = replicate.getStreamId();
+            appliedSeq = replicate.getSeq() - 1;
+
+            if (replicate.isReset()) {
+                logger.info("The replication stream is reset at {}, synchronize the skipped mutations.", replicate
+                        .getSeq());
+                componentManager.getDataSyncService().syncDataFromRemote(getRemoteServerId());
+            }
+        }
+
+        // the duplicated or out of order mutations are acknowledged with the last applied sequence
+        if (replicate.getSeq() == appliedSeq + 1) {
+            MutationVerbHandler handler = (MutationVerbHandler) VerbMappings.getVerbHandler(Verb.MUTATION);
+            try {
+                handler.applyReplicated(replicate.getMutation(), streamId);
+            } catch (ServiceUnavailableException e) {
+                logger.warn("The server is unavailable, drops the replicated mutation.");
+                return;
+            }
+            appliedSeq = replicate.getSeq();
+        }
+
+        ack(message, streamId, appliedSeq);
+    }
+
+    private void ack(Message message, long streamId, long seq) {
+        ReplicateAck ack = new ReplicateAck();
+        ack.setStreamId(streamId);
+        ack.setSeq(seq);
+
+        Message response = message.createResponse(Verb.REPLICATE_ACK);
+        response.setBody(ack);
+        componentManager.getMessageService().responseOneway(response);
+    }
+
+    private int getRemoteServerId() {
+        Endpoint endpoint = componentManager.getGlobalConfiguration().getEndpoint(ChannelBound.get()
+                .getRemoteAddress());
+
+        if (endpoint == null) {
+            throw new IllegalStateException("Not found endpoint for address:" + ChannelBound.get().getRemoteAddress());
+        }
+        return endpoint.serverId;
+    }
+}
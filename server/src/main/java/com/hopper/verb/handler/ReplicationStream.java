@@ -0,0 +1,241 @@
+package com.hopper.verb.handler;
+
+import com.hopper.future.DefaultLatchFuture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link ReplicationStream} is the ordered replication from leader to followers. Each mutation(a single one or a
+ * batch) gets the next sequence number and is sent to all followers one-way without waiting the previous ones, the
+ * followers apply the mutations strictly in order and acknowledge cumulatively(see {@link ReplicateAck}). A mutation
+ * is acknowledged when <code>acksRequired</code> followers have acknowledged it.
+ * <p/>
+ * The mutations not acknowledged by a follower are kept(up to <code>maxUnacked</code>) for retransmission. A
+ * follower acknowledges the same sequence again if it receives a mutation out of order, the kept mutations after it
+ * are retransmitted then; if they have been evicted, the retransmission restarts from the oldest kept one with the
+ * reset flag, and the follower synchronizes the skipped ones from leader.
+ * <p/>
+ * The futures are completed out of the stream lock, the caller fails them on timeout(the waiters are dropped after
+ * <code>timeout</code>).
+ */
+public class ReplicationStream {
+    /**
+     * The one-way sending of stream messages
+     */
+    public interface Transport {
+        void send(int serverId, Replicate replicate);
+    }
+
+    private final long streamId;
+
+    private final int acksRequired;
+
+    private final int maxUnacked;
+
+    private final long timeout;
+
+    private final Transport transport;
+
+    private final Map<Integer, Follower> followers = new HashMap<Integer, Follower>();
+    /**
+     * The mutations waiting for acknowledgements by sequence number
+     */
+    private final TreeMap<Long, Waiter> waiters = new TreeMap<Long, Waiter>();
+
+    private long nextSeq = 1;
+
+    private long retransmitCount;
+
+    /**
+     * @param streamId     The unique id of stream
+     * @param followerIds  The server ids of followers
+     * @param acksRequired The acknowledgements required by a mutation(excluding leader)
+     * @param maxUnacked   The max mutations kept per follower for retransmission
+     * @param timeout      The milliseconds after which an unacknowledged mutation is no longer waited
+     * @param transport    The sending of stream messages
+     */
+    public ReplicationStream(long streamId, int[] followerIds, int acksRequired, int maxUnacked, long timeout,
+                             Transport transport) {
+        this.streamId = streamId;
+        this.acksRequired = acksRequired;
+        this.maxUnacked = Math.max(1, maxUnacked);
+        this.timeout = timeout;
+        this.transport = transport;
+        for (int serverId : followerIds) {
+            followers.put(serverId, new Follower(serverId));
+        }
+    }
+
+    /**
+     * Sends the mutation after the previous ones
+     *
+     * @return the future completed when it's acknowledged by <code>acksRequired</code> followers
+     */
+    public synchronized DefaultLatchFuture<Boolean> send(Mutation mutation) {
+        expireWaiters();
+
+        Replicate replicate = new Replicate();
+        replicate.setStreamId(streamId);
+        replicate.setSeq(nextSeq++);
+        replicate.setMutation(mutation);
+
+        DefaultLatchFuture<Boolean> future = new DefaultLatchFuture<Boolean>();
+        if (acksRequired <= 0) {
+            future.set(true);
+        } else {
+            waiters.put(replicate.getSeq(), new Waiter(future, System.currentTimeMillis() + timeout));
+        }
+
+        for (Follower follower : followers.values()) {
+            follower.unacked.addLast(replicate);
+            if (follower.unacked.size() > maxUnacked) {
+                follower.unacked.removeFirst();
+            }
+            transport.send(follower.serverId, replicate);
+        }
+
+        return future;
+    }
+
+    /**
+     * Processes the cumulative acknowledgement of <code>seq</code> from the follower
+     */
+    public void acked(int serverId, long streamId, long seq) {
+        List<DefaultLatchFuture<Boolean>> acknowledged = new ArrayList<DefaultLatchFuture<Boolean>>();
+        synchronized (this) {
+            acked(serverId, streamId, seq, acknowledged);
+        }
+
+        // the completion may send the next mutations
+        for (DefaultLatchFuture<Boolean> future : acknowledged) {
+            future.set(true);
+        }
+    }
+
+    private void acked(int serverId, long streamId, long seq, List<DefaultLatchFuture<Boolean>> acknowledged) {
+        Follower follower = followers.get(serverId);
+        if (follower == null || streamId != this.streamId || seq >= nextSeq) {
+            return;
+        }
+
+        if (seq > follower.credited) {
+            credit(follower.credited + 1, seq, acknowledged);
+            follower.credited = seq;
+        }
+
+        boolean duplicated = seq <= follower.acked;
+        follower.acked = seq;
+        while (!follower.unacked.isEmpty() && follower.unacked.getFirst().getSeq() <= seq) {
+            follower.unacked.removeFirst();
+        }
+
+        // the follower misses the mutation after seq, it's retransmitted once per duplicated acknowledgement unless
+        // more mutations have been sent since
+        if (duplicated && seq < nextSeq - 1 && (seq != follower.retransmitAck || follower.retransmitSeq < nextSeq -
+                1)) {
+            retransmit(follower, seq);
+        }
+    }
+
+    /**
+     * Counts an acknowledgement for the mutations from <code>fromSeq</code> to <code>toSeq</code>
+     */
+    private void credit(long fromSeq, long toSeq, List<DefaultLatchFuture<Boolean>> acknowledged) {
+        Iterator<Waiter> iterator = waiters.subMap(fromSeq, true, toSeq, true).values().iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (++waiter.acks >= acksRequired) {
+                acknowledged.add(waiter.future);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void retransmit(Follower follower, long ackedSeq) {
+        boolean reset = follower.unacked.isEmpty() || follower.unacked.getFirst().getSeq() > ackedSeq + 1;
+
+        for (Replicate replicate : follower.unacked) {
+            if (reset) {
+                // the skipped mutations aren't counted as acknowledged by the follower
+                follower.credited = Math.max(follower.credited, replicate.getSeq() - 1);
+
+                Replicate first = new Replicate();
+                first.setStreamId(streamId);
+                first.setSeq(replicate.getSeq());
+                first.setReset(true);
+                first.setMutation(replicate.getMutation());
+                replicate = first;
+                reset = false;
+            }
+            transport.send(follower.serverId, replicate);
+        }
+
+        follower.retransmitAck = ackedSeq;
+        follower.retransmitSeq = nextSeq - 1;
+        retransmitCount++;
+    }
+
+    /**
+     * Drops the mutations waiting longer than timeout
+     */
+    private void expireWaiters() {
+        long now = System.currentTimeMillis();
+        Iterator<Waiter> iterator = waiters.values().iterator();
+        while (iterator.hasNext() && iterator.next().deadline <= now) {
+            iterator.remove();
+        }
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * The count of retransmissions to followers
+     */
+    public synchronized long getRetransmitCount() {
+        return retransmitCount;
+    }
+
+    private static class Follower {
+        final int serverId;
+        /**
+         * The mutations sent but not acknowledged, in order of sequence
+         */
+        final LinkedList<Replicate> unacked = new LinkedList<Replicate>();
+        /**
+         * The last acknowledged sequence
+         */
+        long acked;
+        /**
+         * The max sequence counted for the waiters, a mutation is counted once per follower
+         */
+        long credited;
+        /**
+         * The acknowledged sequence and the last sent sequence of the last retransmission
+         */
+        long retransmitAck = -1;
+        long retransmitSeq;
+
+        Follower(int serverId) {
+            this.serverId = serverId;
+        }
+    }
+
+    private static class Waiter {
+        final DefaultLatchFuture<Boolean> future;
+        final long deadline;
+        int acks;
+
+        Waiter(DefaultLatchFuture<Boolean> future, long deadline) {
+            this.future = future;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -1,26 +1,78 @@
 package com.hopper.verb.handler;
 
 import com.hopper.session.Message;
+import com.hopper.sync.SnapshotTransfer;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 
+/**
+ * Decodes the length-prefixed messages. A {@link SnapshotTransfer} message is followed by the raw bytes of snapshot
+ * file, they are written to a local file before the message is passed on.
+ */
 public class ServerMessageDecoder extends FrameDecoder {
+    /**
+     * The message whose snapshot is being received
+     */
+    private Message transferMessage;
 
     @Override
     protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (transferMessage != null) {
+            return receiveSnapshot(buffer);
+        }
 
         // Read the message size and body
-        if (buffer.readableBytes() < 4 || buffer.readableBytes() < 4 + buffer.getInt(0)) {
+        if (buffer.readableBytes() < 4 || buffer.readableBytes() < 4 + buffer.getInt(buffer.readerIndex())) {
             return null;
         }
 
-        // Deserialize the message instance
+        // Deserialize the message instance from its own frame, so a body reading less(or more) never misaligns the
+        // next message
+        ChannelBuffer frame = buffer.readSlice(4 + buffer.getInt(buffer.readerIndex()));
         Message message = new Message();
 
-        message.deserialize(buffer);
+        message.deserialize(frame);
+
+        if (message.getBody() instanceof SnapshotTransfer) {
+            ((SnapshotTransfer) message.getBody()).open();
+            transferMessage = message;
+            return receiveSnapshot(buffer);
+        }
+
+        return message;
+    }
+
+    /**
+     * Writes the snapshot bytes to file
+     *
+     * @return the message after the whole snapshot has been received, otherwise null
+     */
+    private Message receiveSnapshot(ChannelBuffer buffer) throws Exception {
+        SnapshotTransfer transfer = (SnapshotTransfer) transferMessage.getBody();
+        try {
+            if (!transfer.receive(buffer)) {
+                return null;
+            }
+        } catch (Exception e) {
+            transfer.abort();
+            transferMessage = null;
+            throw e;
+        }
 
+        Message message = transferMessage;
+        transferMessage = null;
         return message;
     }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        if (transferMessage != null) {
+            ((SnapshotTransfer) transferMessage.getBody()).abort();
+            transferMessage = null;
+        }
+        super.channelClosed(ctx, e);
+    }
 }
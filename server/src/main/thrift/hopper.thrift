@@ -25,6 +25,25 @@ exception NoStateNodeException {
     1:string key
 }
 
+/**
+ * The state of a state node returned by scan
+ */
+struct StateInfo {
+    1:string key,
+    2:i32 status,
+    3:string owner,
+    4:i32 lease,
+    5:i64 version
+}
+
+/**
+ * A page of scan, cursor is the last key of the page, it's absent if there are no more states
+ */
+struct ScanResult {
+    1:list<StateInfo> states,
+    2:string cursor
+}
+
 /**
  * Hopper service interface
  */
@@ -75,5 +94,12 @@ service HopperService{
     /**
      * Callback method by server for notifying the status change
      */
-    oneway void statusChange(1:i32 oldStatus,2:i32 newStatus)
+    oneway void statusChange(1:i32 oldStatus,2:i32 newStatus),
+
+    /**
+     * Scan the states whose key starts with prefix, or whose key is in range [fromKey, toKey) if prefix
+     * is absent. The scan starts after cursor(exclusive) and returns limit states at most.
+     */
+    ScanResult scan(1:string prefix, 2:string fromKey, 3:string toKey, 4:i32 limit,
+    5:string cursor) throws(1:RetryException re)
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.hopper.future;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestDefaultLatchFuture {
+
+    @Test
+    public void testListenerSeesResult() throws Exception {
+        final AtomicInteger missed = new AtomicInteger();
+        final LatchFutureListener<Boolean> listener = new LatchFutureListener<Boolean>() {
+            @Override
+            public void complete(LatchFuture<Boolean> future) {
+                try {
+                    if (future.get() == null) {
+                        missed.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    missed.incrementAndGet();
+                }
+            }
+        };
+
+        for (int i = 0; i < 2000; i++) {
+            final DefaultLatchFuture<Boolean> future = new DefaultLatchFuture<Boolean>();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread setter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    future.set(true);
+                }
+            };
+            setter.start();
+            start.countDown();
+            // races with the setter, the listener is either registered or invoked at once
+            future.addListener(listener);
+            setter.join();
+        }
+
+        Assert.assertEquals(0, missed.get());
+    }
+
+    @Test
+    public void testCompletedOnce() throws Exception {
+        DefaultLatchFuture<Boolean> future = new DefaultLatchFuture<Boolean>();
+        future.set(true);
+        future.set(false);
+        future.setException(new IllegalStateException());
+        Assert.assertTrue(future.isSuccess());
+        Assert.assertEquals(Boolean.TRUE, future.get());
+
+        future = new DefaultLatchFuture<Boolean>();
+        future.setException(new IllegalStateException());
+        future.set(true);
+        Assert.assertFalse(future.isSuccess());
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.hopper.storage;
+
+import com.hopper.lifecycle.LifecycleException;
+import com.hopper.lifecycle.LifecycleListener;
+import com.hopper.util.ScheduleManager;
+import com.hopper.util.Timeout;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compares the CAS based {@link StateNode} with the previous read-write-lock model under a read-mostly workload
+ * (getStatus/getVersion/getLease with a share of expandLease).
+ * <p/>
+ * Usage: StateNodeBenchmark [threads] [nodes] [write percent] [seconds]
+ */
+public class StateNodeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int writePercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        System.out.printf("threads=%d nodes=%d write=%d%% duration=%ds%n", threads, nodes, writePercent, seconds);
+
+        // warm up both models
+        run(new CasModel(nodes), threads, writePercent, 1);
+        run(new LockModel(nodes), threads, writePercent, 1);
+
+        report("cas node ", run(new CasModel(nodes), threads, writePercent, seconds), seconds);
+        report("lock node", run(new LockModel(nodes), threads, writePercent, seconds), seconds);
+    }
+
+    private static void report(String name, long ops, int seconds) {
+        System.out.printf("%s: %,d ops/s%n", name, ops / seconds);
+    }
+
+    private static long run(final Model model, int threads, final int writePercent, int seconds) throws Exception {
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long count = 0;
+                    long sink = 0;
+                    while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                        int index = random.nextInt(model.size());
+                        if (random.nextInt(100) < writePercent) {
+                            model.write(index);
+                        } else {
+                            sink += model.read(index);
+                        }
+                        count++;
+                    }
+                    ops.addAndGet(count);
+                    if (sink == 42) {
+                        System.out.print("");
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        done.await();
+        return ops.get();
+    }
+
+    private interface Model {
+        int size();
+
+        long read(int index);
+
+        void write(int index);
+    }
+
+    private static class CasModel implements Model {
+        final StateNode[] nodes;
+
+        CasModel(int size) {
+            ScheduleManager scheduleManager = new NoopScheduleManager();
+            nodes = new StateNode[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = new StateNode("/key/" + i, 0);
+                nodes[i].setScheduleManager(scheduleManager);
+            }
+        }
+
+        @Override
+        public int size() {
+            return nodes.length;
+        }
+
+        @Override
+        public long read(int index) {
+            StateNode node = nodes[index];
+            return node.getStatus() + node.getVersion() + node.getLease();
+        }
+
+        @Override
+        public void write(int index) {
+            nodes[index].expandLease(StateNode.DEFAULT_STATUS, null, 30);
+        }
+    }
+
+    /**
+     * The previous locking model: every getter and setter takes the node's read-write lock.
+     */
+    private static class LockModel implements Model {
+        final LockingNode[] nodes;
+
+        LockModel(int size) {
+            nodes = new LockingNode[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = new LockingNode();
+            }
+        }
+
+        @Override
+        public int size() {
+            return nodes.length;
+        }
+
+        @Override
+        public long read(int index) {
+            LockingNode node = nodes[index];
+            return node.getStatus() + node.getVersion() + node.getLease();
+        }
+
+        @Override
+        public void write(int index) {
+            nodes[index].expandLease(StateNode.DEFAULT_STATUS, 30);
+        }
+    }
+
+    private static class LockingNode {
+        final ReadWriteLock nodeLock = new ReentrantReadWriteLock();
+        int status;
+        int lease = -1;
+        long lastModified;
+        long version;
+
+        int getStatus() {
+            nodeLock.readLock().lock();
+            try {
+                return status;
+            } finally {
+                nodeLock.readLock().unlock();
+            }
+        }
+
+        long getVersion() {
+            nodeLock.readLock().lock();
+            try {
+                return version;
+            } finally {
+                nodeLock.readLock().unlock();
+            }
+        }
+
+        int getLease() {
+            nodeLock.readLock().lock();
+            try {
+                return lease;
+            } finally {
+                nodeLock.readLock().unlock();
+            }
+        }
+
+        void expandLease(int expectStatus, int lease) {
+            nodeLock.writeLock().lock();
+            try {
+                if (expectStatus != status) {
+                    throw new NotMatchStatusException(expectStatus, status);
+                }
+                this.lease = lease;
+                this.lastModified = System.currentTimeMillis();
+                this.version++;
+            } finally {
+                nodeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static class NoopScheduleManager implements ScheduleManager {
+        private static final Timeout TIMEOUT = new Timeout() {
+            @Override
+            public Runnable getTask() {
+                return null;
+            }
+
+            @Override
+            public boolean cancel() {
+                return true;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public boolean isExpired() {
+                return false;
+            }
+        };
+
+        @Override
+        public void schedule(Runnable command, long delay) {
+        }
+
+        @Override
+        public void schedule(Runnable command, long initialDelay, long period) {
+        }
+
+        @Override
+        public void removeTask(Runnable command) {
+        }
+
+        @Override
+        public Timeout newTimeout(Runnable task, long delay) {
+            return TIMEOUT;
+        }
+
+        @Override
+        public void initialize() throws LifecycleException {
+        }
+
+        @Override
+        public void start() throws LifecycleException {
+        }
+
+        @Override
+        public void pause() throws LifecycleException {
+        }
+
+        @Override
+        public void resume() throws LifecycleException {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public LifecycleState getState() {
+            return null;
+        }
+
+        @Override
+        public void addListener(LifecycleListener listener) {
+        }
+
+        @Override
+        public void removeListener(LifecycleListener listener) {
+        }
+
+        @Override
+        public String getInfo() {
+            return "No-op schedule manager";
+        }
+    }
+}
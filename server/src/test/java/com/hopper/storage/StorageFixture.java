@@ -0,0 +1,46 @@
+package com.hopper.storage;
+
+import com.hopper.GlobalConfiguration;
+import com.hopper.server.ComponentManager;
+import com.hopper.server.ComponentManagerFactory;
+import com.hopper.stage.StageManager;
+
+import java.lang.reflect.Field;
+
+/**
+ * Installs the components required by the storages into {@link ComponentManager} without starting the server: the
+ * configuration of test classpath and an idle {@link StageManager}.
+ */
+public final class StorageFixture {
+
+    private StorageFixture() {
+    }
+
+    public static synchronized void install() throws Exception {
+        ComponentManager componentManager = ComponentManagerFactory.getComponentManager();
+        if (componentManager.getGlobalConfiguration() != null) {
+            return;
+        }
+
+        GlobalConfiguration config = new GlobalConfiguration();
+        config.initialize();
+        config.start();
+        set(componentManager, "globalConfiguration", config);
+
+        // the stage manager reads the configuration on creating
+        set(componentManager, "stageManager", new StageManager());
+    }
+
+    /**
+     * Replaces the storage of {@link ComponentManager}, the verb handlers take it on creating
+     */
+    public static void setStateStorage(StateStorage storage) throws Exception {
+        set(ComponentManagerFactory.getComponentManager(), "stateStorage", storage);
+    }
+
+    private static void set(ComponentManager componentManager, String name, Object value) throws Exception {
+        Field field = ComponentManager.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(componentManager, value);
+    }
+}
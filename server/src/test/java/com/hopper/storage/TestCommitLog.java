@@ -0,0 +1,175 @@
+package com.hopper.storage;
+
+import com.hopper.session.BufferDataInput;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for {@link CommitLog}
+ */
+public class TestCommitLog {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("commitlog", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testAppendAndReplay() throws Exception {
+        CommitLog log = startCommitLog(1024 * 1024);
+
+        StateNode node = new StateNode("/key/1", StateNode.TYPE_PERSIST, 2, 5, 10);
+        log.sync(log.append(1, CommitLog.OP_PUT, node));
+        log.sync(log.appendRemove(2, "/key/2"));
+        log.shutdown();
+
+        List<Object[]> records = replay(newCommitLog(1024 * 1024));
+
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(1L, records.get(0)[0]);
+        Assert.assertEquals(CommitLog.OP_PUT, records.get(0)[1]);
+        StateNode replayed = (StateNode) records.get(0)[2];
+        Assert.assertEquals("/key/1", replayed.key);
+        Assert.assertEquals(2, replayed.getStatus());
+        Assert.assertEquals(10, replayed.getVersion());
+
+        Assert.assertEquals(2L, records.get(1)[0]);
+        Assert.assertEquals(CommitLog.OP_REMOVE, records.get(1)[1]);
+        Assert.assertEquals("/key/2", records.get(1)[2]);
+    }
+
+    @Test
+    public void testConcurrentAppend() throws Exception {
+        // small segments for rolling
+        final CommitLog log = startCommitLog(4096);
+        final int threads = 8;
+        final int count = 200;
+        final CountDownLatch latch = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int base = t * count;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        log.sync(log.append(base + i + 1, CommitLog.OP_PUT, new StateNode("/key/" + (base + i), 0)));
+                    }
+                    latch.countDown();
+                }
+            }.start();
+        }
+
+        latch.await();
+        log.shutdown();
+
+        Assert.assertTrue(newCommitLog(4096).listSegments().length > 1);
+        Assert.assertEquals(threads * count, replay(newCommitLog(4096)).size());
+    }
+
+    @Test
+    public void testTruncateTornTail() throws Exception {
+        CommitLog log = startCommitLog(1024 * 1024);
+        log.sync(log.append(1, CommitLog.OP_PUT, new StateNode("/key/1", 0)));
+        log.sync(log.append(2, CommitLog.OP_PUT, new StateNode("/key/2", 0)));
+        log.shutdown();
+
+        // cut the last record in half
+        File segment = log.listSegments()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        long length = file.length();
+        file.setLength(length - 6);
+        file.close();
+
+        CommitLog reopened = newCommitLog(1024 * 1024);
+        Assert.assertEquals(1, replay(reopened).size());
+        Assert.assertTrue(segment.length() < length - 6);
+
+        // appending after truncation
+        reopened.start();
+        reopened.sync(reopened.append(3, CommitLog.OP_PUT, new StateNode("/key/3", 0)));
+        reopened.shutdown();
+
+        Assert.assertEquals(2, replay(newCommitLog(1024 * 1024)).size());
+    }
+
+    @Test
+    public void testCorruptedInactiveSegment() throws Exception {
+        // small segments for rolling
+        CommitLog log = startCommitLog(256);
+        for (int i = 1; i <= 20; i++) {
+            log.sync(log.append(i, CommitLog.OP_PUT, new StateNode("/key/" + i, 0)));
+        }
+        log.shutdown();
+
+        File[] segments = log.listSegments();
+        Assert.assertTrue(segments.length > 1);
+
+        // flip a byte in the first record of the first segment
+        RandomAccessFile file = new RandomAccessFile(segments[0], "rw");
+        file.seek(8);
+        int b = file.read();
+        file.seek(8);
+        file.write(b ^ 0xFF);
+        file.close();
+
+        try {
+            replay(newCommitLog(256));
+            Assert.fail();
+        } catch (IOException e) {
+            // expected, the later segments aren't replayed over a gap
+        }
+    }
+
+    private CommitLog newCommitLog(long segmentSize) throws Exception {
+        CommitLog log = new CommitLog(directory, segmentSize);
+        log.initialize();
+        return log;
+    }
+
+    private CommitLog startCommitLog(long segmentSize) throws Exception {
+        CommitLog log = newCommitLog(segmentSize);
+        log.start();
+        return log;
+    }
+
+    private List<Object[]> replay(CommitLog log) throws Exception {
+        final List<Object[]> records = new ArrayList<Object[]>();
+        log.replay(new CommitLog.ReplayHandler() {
+            @Override
+            public void replay(long xid, byte op, BufferDataInput in) throws IOException {
+                if (op == CommitLog.OP_REMOVE) {
+                    records.add(new Object[]{xid, op, in.readUTF()});
+                } else {
+                    StateNode node = new StateNode();
+                    node.deserialize(in);
+                    records.add(new Object[]{xid, op, node});
+                }
+            }
+        });
+        return records;
+    }
+}
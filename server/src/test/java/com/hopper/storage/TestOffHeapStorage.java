@@ -0,0 +1,148 @@
+package com.hopper.storage;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for {@link OffHeapStorage}
+ */
+public class TestOffHeapStorage {
+
+    @Before
+    public void setUp() throws Exception {
+        StorageFixture.install();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        OffHeapStorage storage = new OffHeapStorage();
+
+        StateNode node = new StateNode("/key/1", StateNode.TYPE_PERSIST, 2, -2, 5);
+        List<String> listeners = new ArrayList<String>();
+        listeners.add("session-1");
+        node.restore("owner-1", 30, 1000L, listeners);
+        Assert.assertNull(storage.put(node));
+
+        StateNode stored = storage.get("/key/1");
+        Assert.assertEquals(StateNode.TYPE_PERSIST, stored.type);
+        Assert.assertEquals(2, stored.getStatus());
+        Assert.assertEquals(-2, stored.getInvalidateStatus());
+        Assert.assertEquals("owner-1", stored.getOwner());
+        Assert.assertEquals(30, stored.getLease());
+        Assert.assertEquals(1000L, stored.getLastModified());
+        Assert.assertEquals(5, stored.getVersion());
+        Assert.assertEquals(listeners, stored.getStateChangeListeners());
+        Assert.assertNull(storage.get("/key/2"));
+
+        // the mutation is written through the view
+        storage.put(new StateNode("/key/3", StateNode.TYPE_PERSIST, 2, -2, 5));
+        stored = storage.get("/key/3");
+        stored.setStatus(2, 3, "owner-3", -1);
+        Assert.assertEquals(3, storage.get("/key/3").getStatus());
+        Assert.assertEquals("owner-3", storage.get("/key/3").getOwner());
+        Assert.assertEquals(6, storage.get("/key/3").getVersion());
+        Assert.assertTrue(storage.get("/key/3").isSameNode(stored));
+    }
+
+    @Test
+    public void testSpill() {
+        OffHeapStorage storage = new OffHeapStorage();
+
+        String key = "/long/" + repeat('k', 200);
+        String owner = "owner-" + repeat('o', 100);
+        StateNode node = new StateNode(key, 0);
+        node.restore(owner, 0, 1000L, new ArrayList<String>());
+        storage.put(node);
+        storage.put(new StateNode("/short", 0));
+
+        StateNode stored = storage.get(key);
+        Assert.assertEquals(key, stored.key);
+        Assert.assertEquals(owner, stored.getOwner());
+
+        // the owner is moved back inline
+        stored.setStatus(0, 1, null, -1);
+        stored.setStatus(1, 2, "owner", -1);
+        Assert.assertEquals("owner", storage.get(key).getOwner());
+
+        Set<String> keys = new HashSet<String>();
+        for (StateNode n : storage.getStateNodes()) {
+            keys.add(n.key);
+        }
+        Assert.assertEquals(2, keys.size());
+        Assert.assertTrue(keys.contains(key));
+
+        Assert.assertNotNull(storage.remove(key));
+        Assert.assertNull(storage.get(key));
+        Assert.assertNotNull(storage.get("/short"));
+    }
+
+    @Test
+    public void testSlabGrowth() {
+        OffHeapStorage storage = new OffHeapStorage();
+
+        // more than one slab of 2^14 records
+        int count = (1 << 14) * 2 + 100;
+        for (int i = 0; i < count; i++) {
+            storage.put(new StateNode("/key/" + i, StateNode.TYPE_PERSIST, i % 5, -2, i));
+        }
+        Assert.assertEquals(count, storage.size());
+        Assert.assertEquals(count, storage.getStateNodes().size());
+
+        for (int i = 0; i < count; i++) {
+            StateNode node = storage.get("/key/" + i);
+            Assert.assertEquals(i % 5, node.getStatus());
+            Assert.assertEquals(i, node.getVersion());
+        }
+    }
+
+    @Test
+    public void testRemoveAndReuse() {
+        OffHeapStorage storage = new OffHeapStorage();
+
+        storage.put(new StateNode("/key/1", 0));
+        StateNode stale = storage.get("/key/1");
+
+        StateNode removed = storage.remove("/key/1");
+        Assert.assertEquals("/key/1", removed.key);
+        Assert.assertEquals(0, storage.size());
+
+        // the freed record is reused by the next node
+        storage.put(new StateNode("/key/2", StateNode.TYPE_PERSIST, 7, -2, 0));
+        StateNode reused = storage.get("/key/2");
+        Assert.assertEquals(7, reused.getStatus());
+        Assert.assertFalse(reused.isSameNode(stale));
+
+        try {
+            stale.getStatus();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected, the record has a new generation
+        }
+        try {
+            stale.setStatus(0, 1, null, -1);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // put the removed key again
+        storage.put(new StateNode("/key/1", 0));
+        Assert.assertEquals(2, storage.size());
+        Assert.assertEquals(0, storage.get("/key/1").getStatus());
+        Assert.assertEquals(7, storage.get("/key/2").getStatus());
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
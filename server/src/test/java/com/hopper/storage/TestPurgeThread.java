@@ -0,0 +1,70 @@
+package com.hopper.storage;
+
+import com.hopper.server.ComponentManagerFactory;
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PurgeThread} and {@link PurgeIndex}
+ */
+public class TestPurgeThread {
+
+    @Before
+    public void setUp() throws Exception {
+        StorageFixture.install();
+    }
+
+    @Test
+    public void testPollDue() {
+        PurgeIndex index = new PurgeIndex();
+        index.add("/c", 300);
+        index.add("/a", 100);
+        index.add("/b", 200);
+        Assert.assertEquals(3, index.size());
+
+        Assert.assertNull(index.pollDue(50));
+
+        // the due keys only, in deadline order
+        Assert.assertEquals("/a", index.pollDue(250));
+        Assert.assertEquals("/b", index.pollDue(250));
+        Assert.assertNull(index.pollDue(250));
+        Assert.assertEquals(1, index.size());
+
+        Assert.assertEquals("/c", index.pollDue(300));
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testPurge() {
+        long expire = ComponentManagerFactory.getComponentManager().getGlobalConfiguration()
+                .getStateNodePurgeExpire();
+        long now = System.currentTimeMillis();
+
+        TreeStorage storage = new TreeStorage();
+        storage.put(new StateNode("/old", StateNode.TYPE_PERSIST, 1, -2, 0));
+        storage.get("/old").setLastModified(now - 2 * expire);
+        storage.put(new StateNode("/touched", StateNode.TYPE_PERSIST, 1, -2, 0));
+        storage.get("/touched").setLastModified(now);
+
+        // all of them are indexed as due, the touched one has been modified since
+        PurgeIndex index = new PurgeIndex();
+        index.add("/old", 0);
+        index.add("/touched", 0);
+        index.add("/removed", 0);
+
+        PurgeThread thread = new PurgeThread(storage, index);
+        thread.run();
+
+        Assert.assertNull(storage.get("/old"));
+        Assert.assertNotNull(storage.get("/touched"));
+        Assert.assertEquals(3, thread.getLastVisitedCount());
+        Assert.assertEquals(1, thread.getLastPurgedCount());
+
+        // the touched node is re-indexed with its real deadline, the removed key is dropped
+        Assert.assertEquals(1, index.size());
+        Assert.assertNull(index.pollDue(now + expire / 2));
+        Assert.assertEquals("/touched", index.pollDue(Long.MAX_VALUE));
+        Assert.assertNull(index.pollDue(Long.MAX_VALUE));
+    }
+}
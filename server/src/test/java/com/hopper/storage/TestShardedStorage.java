@@ -0,0 +1,78 @@
+package com.hopper.storage;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for {@link ShardedStorage}
+ */
+public class TestShardedStorage {
+
+    @Before
+    public void setUp() throws Exception {
+        StorageFixture.install();
+    }
+
+    @Test
+    public void testUniqueXid() throws Exception {
+        final ShardedStorage storage = new ShardedStorage();
+        final Set<Long> xids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 10000; i++) {
+                            Assert.assertTrue(xids.add(storage.nextXid("/key/" + (i % 64))));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(40000, xids.size());
+        Assert.assertEquals(40000, storage.getMaxXid());
+    }
+
+    @Test
+    public void testXidAfterPinning() {
+        ShardedStorage storage = new ShardedStorage();
+        for (int i = 0; i < 100; i++) {
+            storage.put(new StateNode("/key/" + i, 0));
+        }
+
+        // the mutations on any shard are ordered after the snapshot
+        StorageSnapshot snapshot = storage.snapshot();
+        try {
+            Assert.assertEquals(100, snapshot.getMaxXid());
+            long covered = storage.toLogXid(snapshot.getMaxXid());
+            for (int i = 0; i < 100; i++) {
+                long xid = storage.nextXid("/key/" + i);
+                Assert.assertTrue(xid > covered);
+                Assert.assertTrue(storage.fromLogXid(xid) > snapshot.getMaxXid());
+            }
+        } finally {
+            snapshot.release();
+        }
+        Assert.assertEquals(200, storage.getMaxXid());
+    }
+}
@@ -0,0 +1,68 @@
+package com.hopper.storage;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests for {@link Snapshot}
+ */
+public class TestSnapshot {
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        List<StateNode> nodes = new ArrayList<StateNode>();
+        for (int i = 0; i < 100000; i++) {
+            StateNode node = new StateNode("/key/" + i, StateNode.TYPE_PERSIST, i % 3, -2, i);
+            List<String> listeners = new ArrayList<String>();
+            if (i % 10 == 0) {
+                listeners.add("session-" + (i % 7));
+                listeners.add("session-" + (i % 5));
+            }
+            node.restore(i % 2 == 0 ? null : "owner-" + (i % 11), i % 60, 1000L + i, listeners);
+            nodes.add(node);
+        }
+
+        File file = File.createTempFile("snapshot", ".db");
+        file.delete();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Snapshot written = Snapshot.write(file, 12345L, 7, nodes);
+            Assert.assertEquals(nodes.size(), written.getNodeCount());
+
+            final Map<String, StateNode> loaded = new ConcurrentHashMap<String, StateNode>();
+            Snapshot snapshot = Snapshot.load(file, executor, new Snapshot.NodeHandler() {
+                @Override
+                public void load(StateNode node) {
+                    loaded.put(node.key, node);
+                }
+            });
+
+            Assert.assertEquals(12345L, snapshot.getMaxXid());
+            Assert.assertEquals(7, snapshot.getEpoch());
+            Assert.assertEquals(nodes.size(), loaded.size());
+
+            for (StateNode expected : nodes) {
+                StateNode node = loaded.get(expected.key);
+                Assert.assertEquals(expected.type, node.type);
+                Assert.assertEquals(expected.getStatus(), node.getStatus());
+                Assert.assertEquals(expected.getInvalidateStatus(), node.getInvalidateStatus());
+                Assert.assertEquals(expected.getOwner(), node.getOwner());
+                Assert.assertEquals(expected.getLease(), node.getLease());
+                Assert.assertEquals(expected.getLastModified(), node.getLastModified());
+                Assert.assertEquals(expected.getVersion(), node.getVersion());
+                Assert.assertEquals(expected.getStateChangeListeners(), node.getStateChangeListeners());
+            }
+        } finally {
+            executor.shutdown();
+            file.delete();
+        }
+    }
+}
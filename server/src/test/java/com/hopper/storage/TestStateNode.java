@@ -3,6 +3,7 @@ package com.hopper.storage;
 import com.hopper.lifecycle.LifecycleException;
 import com.hopper.lifecycle.LifecycleListener;
 import com.hopper.util.ScheduleManager;
+import com.hopper.util.Timeout;
 
 import junit.framework.Assert;
 import org.junit.Test;
@@ -64,6 +65,31 @@ public class TestStateNode {
         public void removeTask(Runnable command) {
         }
 
+        @Override
+        public Timeout newTimeout(final Runnable task, long delay) {
+            return new Timeout() {
+                @Override
+                public Runnable getTask() {
+                    return task;
+                }
+
+                @Override
+                public boolean cancel() {
+                    return true;
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+
+                @Override
+                public boolean isExpired() {
+                    return false;
+                }
+            };
+        }
+
         @Override
         public void initialize() throws LifecycleException {
         }
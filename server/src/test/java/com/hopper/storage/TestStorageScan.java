@@ -0,0 +1,113 @@
+package com.hopper.storage;
+
+import com.hopper.util.merkle.MapStorage;
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the prefix and range scan of {@link AbstractStateStorage}
+ */
+public class TestStorageScan {
+
+    @Before
+    public void setUp() throws Exception {
+        StorageFixture.install();
+    }
+
+    @Test
+    public void testPrefixPaging() {
+        // unordered and ordered storages
+        testPrefixPaging(new MapStorage());
+        testPrefixPaging(new TreeStorage());
+    }
+
+    @Test
+    public void testRangeCursor() {
+        testRangeCursor(new MapStorage());
+        testRangeCursor(new TreeStorage());
+    }
+
+    @Test
+    public void testEmptyRange() {
+        testEmptyRange(new MapStorage());
+        testEmptyRange(new TreeStorage());
+    }
+
+    private void testPrefixPaging(AbstractStateStorage storage) {
+        fill(storage);
+
+        List<String> keys = new ArrayList<String>();
+        String cursor = null;
+        int pages = 0;
+        while (true) {
+            List<StateNode> page = storage.scan("/b/", 7, cursor);
+            if (page.isEmpty()) {
+                break;
+            }
+            Assert.assertTrue(page.size() <= 7);
+            for (StateNode node : page) {
+                keys.add(node.key);
+            }
+            cursor = page.get(page.size() - 1).key;
+            pages++;
+        }
+
+        Assert.assertEquals(100, keys.size());
+        Assert.assertEquals(15, pages);
+        for (int i = 0; i < keys.size(); i++) {
+            Assert.assertEquals(key("/b/", i), keys.get(i));
+        }
+    }
+
+    private void testRangeCursor(AbstractStateStorage storage) {
+        fill(storage);
+
+        List<StateNode> first = storage.scan(key("/a/", 10), key("/a/", 30), 8, null);
+        Assert.assertEquals(8, first.size());
+        Assert.assertEquals(key("/a/", 10), first.get(0).key);
+        Assert.assertEquals(key("/a/", 17), first.get(7).key);
+
+        // the node removed between pages is skipped
+        storage.remove(key("/a/", 18));
+
+        List<StateNode> second = storage.scan(key("/a/", 10), key("/a/", 30), 8, first.get(7).key);
+        Assert.assertEquals(8, second.size());
+        Assert.assertEquals(key("/a/", 19), second.get(0).key);
+        Assert.assertEquals(key("/a/", 26), second.get(7).key);
+
+        // the end of range is exclusive
+        List<StateNode> third = storage.scan(key("/a/", 10), key("/a/", 30), 8, second.get(7).key);
+        Assert.assertEquals(3, third.size());
+        Assert.assertEquals(key("/a/", 29), third.get(2).key);
+
+        Assert.assertTrue(storage.scan(key("/a/", 10), key("/a/", 30), 8, third.get(2).key).isEmpty());
+
+        // the cursor before the range start is ignored
+        Assert.assertEquals(key("/a/", 10), storage.scan(key("/a/", 10), null, 1, "/").get(0).key);
+    }
+
+    private void testEmptyRange(AbstractStateStorage storage) {
+        fill(storage);
+
+        Assert.assertTrue(storage.scan("/c/", 10, null).isEmpty());
+        Assert.assertTrue(storage.scan(key("/a/", 20), key("/a/", 20), 10, null).isEmpty());
+        Assert.assertTrue(storage.scan(key("/a/", 30), key("/a/", 20), 10, null).isEmpty());
+        Assert.assertTrue(storage.scan("/z", null, 10, null).isEmpty());
+        Assert.assertTrue(storage.scan("/b/", 10, key("/b/", 99)).isEmpty());
+    }
+
+    private void fill(AbstractStateStorage storage) {
+        for (int i = 99; i >= 0; i--) {
+            storage.put(new StateNode(key("/a/", i), 0));
+            storage.put(new StateNode(key("/b/", i), 0));
+        }
+    }
+
+    private static String key(String prefix, int i) {
+        return prefix + (i < 10 ? "0" : "") + i;
+    }
+}
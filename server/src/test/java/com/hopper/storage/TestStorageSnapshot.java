@@ -0,0 +1,105 @@
+package com.hopper.storage;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link StorageSnapshot}
+ */
+public class TestStorageSnapshot {
+
+    private static final int COUNT = 1000;
+
+    @Before
+    public void setUp() throws Exception {
+        StorageFixture.install();
+    }
+
+    @Test
+    public void testConcurrentRemove() throws Exception {
+        testConcurrentRemove(new TreeStorage());
+    }
+
+    @Test
+    public void testConcurrentRemoveOffHeap() throws Exception {
+        testConcurrentRemove(new OffHeapStorage());
+    }
+
+    private void testConcurrentRemove(final AbstractStateStorage storage) throws Exception {
+        for (int i = 0; i < COUNT; i++) {
+            storage.put(new StateNode("/key/" + i, StateNode.TYPE_PERSIST, 1, -2, 0));
+        }
+
+        StorageSnapshot snapshot = storage.snapshot();
+
+        // removes the even nodes and updates the odd ones while the snapshot is read
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    started.countDown();
+                    for (int i = 0; i < COUNT; i++) {
+                        if (i % 2 == 0) {
+                            storage.remove("/key/" + i);
+                        } else {
+                            storage.get("/key/" + i).setStatus(1, 2, null, -1);
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        };
+        writer.start();
+        started.await();
+
+        do {
+            assertPinned(snapshot.getStateNodes());
+        } while (writer.isAlive());
+        writer.join();
+        Assert.assertNull(error.get());
+
+        assertPinned(snapshot.getStateNodes());
+        Assert.assertEquals(1, snapshot.get("/key/0").getStatus());
+        Assert.assertEquals(1, snapshot.get("/key/1").getStatus());
+        Assert.assertNull(storage.get("/key/0"));
+        Assert.assertEquals(2, storage.get("/key/1").getStatus());
+        Assert.assertTrue(storage.getTombstones().iterator().hasNext());
+
+        // the removed nodes are reclaimed after releasing
+        snapshot.release();
+        Assert.assertFalse(storage.getTombstones().iterator().hasNext());
+        try {
+            snapshot.get("/key/0");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        StorageSnapshot latest = storage.snapshot();
+        try {
+            Collection<StateNode> nodes = latest.getStateNodes();
+            Assert.assertEquals(COUNT / 2, nodes.size());
+            for (StateNode node : nodes) {
+                Assert.assertEquals(2, node.getStatus());
+            }
+            Assert.assertNull(latest.get("/key/0"));
+        } finally {
+            latest.release();
+        }
+    }
+
+    private void assertPinned(Collection<StateNode> nodes) {
+        Assert.assertEquals(COUNT, nodes.size());
+        for (StateNode node : nodes) {
+            Assert.assertEquals(1, node.getStatus());
+        }
+    }
+}
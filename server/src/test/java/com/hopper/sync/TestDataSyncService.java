@@ -0,0 +1,188 @@
+package com.hopper.sync;
+
+import com.hopper.storage.Snapshot;
+import com.hopper.storage.StateNode;
+import com.hopper.storage.StorageFixture;
+import com.hopper.storage.TreeStorage;
+import com.hopper.util.merkle.Difference;
+import com.hopper.verb.handler.HeartBeat;
+import junit.framework.Assert;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link DataSyncService}
+ */
+public class TestDataSyncService {
+
+    private TreeStorage storage;
+
+    private DataSyncService service;
+
+    @Before
+    public void setUp() throws Exception {
+        StorageFixture.install();
+
+        storage = new TreeStorage();
+        for (int i = 0; i < 10; i++) {
+            storage.put(new StateNode("/local/" + i, 0));
+        }
+        Assert.assertEquals(10, storage.getMaxXid());
+
+        StorageFixture.setStateStorage(storage);
+        service = new DataSyncService();
+    }
+
+    @Test
+    public void testStaleStream() {
+        // the first chunk is not newer than local, the whole stream is ignored
+        Assert.assertFalse(service.applyDiff(chunk(5, 0, "/a/0", "/a/1")));
+        Assert.assertFalse(service.applyDiff(chunk(5, 1, "/a/2")));
+        Assert.assertFalse(service.applyDiff(chunk(5, 2, "/a/3")));
+
+        Assert.assertNull(storage.get("/a/0"));
+        Assert.assertNull(storage.get("/a/2"));
+        Assert.assertNull(storage.get("/a/3"));
+        Assert.assertEquals(10, storage.getMaxXid());
+    }
+
+    @Test
+    public void testFreshStream() {
+        Assert.assertTrue(service.applyDiff(chunk(12, 0, "/a/0", "/a/1", "/a/2")));
+        // the local xid passes the stream's by applying, the rest of stream is still applied
+        Assert.assertTrue(storage.getMaxXid() >= 12);
+        Assert.assertTrue(service.applyDiff(chunk(12, 1, "/a/3")));
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertNotNull(storage.get("/a/" + i));
+        }
+
+        // a new stream compares with the local xid again
+        Assert.assertFalse(service.applyDiff(chunk(12, 0, "/a/4")));
+        Assert.assertNull(storage.get("/a/4"));
+    }
+
+    @Test
+    public void testBootstrapTimeout() throws Exception {
+        final int[] required = {0};
+        DataSyncService service = new DataSyncService() {
+            @Override
+            void requireSnapshot(int serverId) {
+                // the snapshot never arrives
+                required[0]++;
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(service.bootstrap(2, 100));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+        Assert.assertEquals(1, required[0]);
+
+        // the local storage is left to merkle synchronization
+        Assert.assertEquals(10, storage.getMaxXid());
+        Assert.assertNotNull(storage.get("/local/0"));
+
+        // the late snapshot is discarded
+        service.snapshotReceived(new SnapshotTransfer());
+        Assert.assertEquals(10, storage.getMaxXid());
+    }
+
+    @Test
+    public void testBootstrapPosition() throws Exception {
+        // more nodes than a chunk, they're restored chunk by chunk
+        List<StateNode> nodes = new ArrayList<StateNode>();
+        for (int i = 0; i < 2500; i++) {
+            nodes.add(new StateNode("/snapshot/" + i, StateNode.TYPE_PERSIST, 0, -2, 1));
+        }
+        File file = File.createTempFile("TestDataSyncService", ".snapshot");
+        file.delete();
+        Snapshot.write(file, 5000, 1, nodes);
+
+        final SnapshotTransfer transfer = new SnapshotTransfer();
+        transfer.setStreamId(7);
+        transfer.setLastSeq(42);
+        transfer.setLength(file.length());
+        transfer.open();
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            Assert.assertTrue(transfer.receive(ChannelBuffers.wrappedBuffer(bytes)));
+        } finally {
+            file.delete();
+        }
+
+        DataSyncService service = new DataSyncService() {
+            @Override
+            void requireSnapshot(int serverId) {
+                snapshotReceived(transfer);
+            }
+        };
+        Assert.assertTrue(service.bootstrap(2, 1000));
+
+        Assert.assertEquals(5000, storage.getMaxXid());
+        Assert.assertNotNull(storage.get("/snapshot/0"));
+        Assert.assertNotNull(storage.get("/snapshot/2499"));
+
+        // local follows the leader stream from the snapshot, the drifted xid doesn't matter
+        Assert.assertFalse(service.isBehind(beat(6000, 7, 42)));
+        Assert.assertTrue(service.isBehind(beat(10, 7, 43)));
+    }
+
+    @Test
+    public void testReplicatedPosition() {
+        // not following the leader stream, the xids are compared
+        Assert.assertFalse(service.isBehind(beat(10, 7, 3)));
+        Assert.assertTrue(service.isBehind(beat(11, 7, 0)));
+
+        // a stream is followed from its first mutation only
+        service.replicated(7, 2);
+        Assert.assertFalse(service.isBehind(beat(10, 7, 3)));
+        service.replicated(7, 1);
+        service.replicated(7, 2);
+        // the drifted xid doesn't matter once following the stream
+        Assert.assertFalse(service.isBehind(beat(20, 7, 2)));
+        Assert.assertTrue(service.isBehind(beat(10, 7, 3)));
+
+        // the skipped mutation stops the position
+        service.replicated(7, 4);
+        Assert.assertTrue(service.isBehind(beat(10, 7, 4)));
+        service.replicated(7, 3);
+        service.replicated(7, 4);
+        Assert.assertFalse(service.isBehind(beat(10, 7, 4)));
+    }
+
+    private HeartBeat beat(long maxXid, long streamId, long lastSeq) {
+        HeartBeat beat = new HeartBeat();
+        beat.setLeader(true);
+        beat.setMaxXid(maxXid);
+        beat.setStreamId(streamId);
+        beat.setLastSeq(lastSeq);
+        return beat;
+    }
+
+    private DiffResult chunk(long maxXid, int sequence, String... keys) {
+        Difference<StateNode> difference = new Difference<StateNode>();
+        difference.setClazz(StateNode.class);
+        for (String key : keys) {
+            difference.addedList.add(new StateNode(key, StateNode.TYPE_PERSIST, 0, -2, 1));
+        }
+
+        DiffResult result = new DiffResult();
+        result.setMaxXid(maxXid);
+        result.setSequence(sequence);
+        result.setDifference(difference);
+        return result;
+    }
+}
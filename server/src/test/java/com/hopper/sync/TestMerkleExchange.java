@@ -0,0 +1,155 @@
+package com.hopper.sync;
+
+import com.hopper.session.Serializer;
+import com.hopper.storage.StateNode;
+import com.hopper.storage.StateStorage;
+import com.hopper.storage.StorageFixture;
+import com.hopper.storage.TreeStorage;
+import com.hopper.util.merkle.Difference;
+import com.hopper.verb.Verb;
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link MerkleExchange}, the remote is answered by the verb handlers over another storage
+ */
+public class TestMerkleExchange {
+
+    private TreeStorage local;
+    private TreeStorage remote;
+
+    @Before
+    public void setUp() throws Exception {
+        StorageFixture.install();
+
+        local = new TreeStorage();
+        remote = new TreeStorage();
+        for (int i = 0; i < 1000; i++) {
+            local.put(new StateNode("/key/" + i, StateNode.TYPE_PERSIST, 0, -2, 1));
+            remote.put(new StateNode("/key/" + i, StateNode.TYPE_PERSIST, 0, -2, 1));
+        }
+
+        // a single node is newer on remote
+        remote.put(new StateNode("/key/500", StateNode.TYPE_PERSIST, 1, -2, 2));
+    }
+
+    @Test
+    public void testSingleLeafByDigests() throws Exception {
+        TestExchange exchange = new TestExchange(local, remote, false);
+        List<Difference<StateNode>> chunks = pull(exchange);
+
+        Assert.assertEquals(1, chunks.size());
+        assertSingleUpdate(chunks.get(0));
+
+        // descending level by level, only one leaf is fetched
+        Assert.assertEquals(1, exchange.count(Verb.REQUIRE_SKETCH));
+        Assert.assertTrue(exchange.count(Verb.REQUIRE_DIGESTS) > 1);
+        Assert.assertEquals(1, exchange.count(Verb.REQUIRE_LEAF_ENTRIES));
+        Assert.assertEquals(1, exchange.leafCount);
+        Assert.assertEquals(1, exchange.count(Verb.REQUIRE_STATE_NODES));
+    }
+
+    @Test
+    public void testSingleLeafBySketch() throws Exception {
+        TestExchange exchange = new TestExchange(local, remote, true);
+        List<Difference<StateNode>> chunks = pull(exchange);
+
+        Assert.assertEquals(1, chunks.size());
+        assertSingleUpdate(chunks.get(0));
+
+        // decoded from the sketch without descending
+        Assert.assertEquals(0, exchange.count(Verb.REQUIRE_DIGESTS));
+        Assert.assertEquals(1, exchange.leafCount);
+    }
+
+    @Test
+    public void testEqual() throws Exception {
+        remote.put(new StateNode("/key/500", StateNode.TYPE_PERSIST, 0, -2, 1));
+        local.put(new StateNode("/key/500", StateNode.TYPE_PERSIST, 0, -2, 1));
+
+        TestExchange exchange = new TestExchange(local, remote, false);
+        Assert.assertTrue(pull(exchange).isEmpty());
+        Assert.assertEquals(0, exchange.count(Verb.REQUIRE_LEAF_ENTRIES));
+    }
+
+    private List<Difference<StateNode>> pull(MerkleExchange exchange) throws Exception {
+        final List<Difference<StateNode>> chunks = new ArrayList<Difference<StateNode>>();
+        exchange.pull(new MerkleExchange.ChunkHandler() {
+            @Override
+            public boolean handle(Difference<StateNode> chunk) {
+                chunks.add(chunk);
+                return true;
+            }
+        });
+        return chunks;
+    }
+
+    private void assertSingleUpdate(Difference<StateNode> chunk) {
+        Assert.assertTrue(chunk.addedList.isEmpty());
+        Assert.assertTrue(chunk.removedList.isEmpty());
+        Assert.assertEquals(1, chunk.updatedList.size());
+        Assert.assertEquals("/key/500", chunk.updatedList.get(0).key);
+        Assert.assertEquals(2, chunk.updatedList.get(0).getVersion());
+    }
+
+    /**
+     * Answers the requests by the handlers of remote storage instead of sending messages
+     */
+    private static class TestExchange extends MerkleExchange {
+        private final StateStorage remote;
+        private final boolean sketch;
+        private final RequireDigestsVerbHandler digestsHandler;
+        private final RequireLeafEntriesVerbHandler entriesHandler;
+        private final RequireStateNodesVerbHandler nodesHandler;
+        private final List<Verb> requests = new ArrayList<Verb>();
+        private int leafCount;
+
+        TestExchange(StateStorage local, StateStorage remote, boolean sketch) throws Exception {
+            super(local, 2);
+            this.remote = remote;
+            this.sketch = sketch;
+
+            StorageFixture.setStateStorage(remote);
+            this.digestsHandler = new RequireDigestsVerbHandler();
+            this.entriesHandler = new RequireLeafEntriesVerbHandler();
+            this.nodesHandler = new RequireStateNodesVerbHandler();
+        }
+
+        @Override
+        Object request(Verb verb, Serializer body) {
+            requests.add(verb);
+            switch (verb) {
+                case REQUIRE_SKETCH:
+                    Sketch reply = new Sketch();
+                    reply.setMaxXid(remote.getMaxXid());
+                    reply.setHashDepth(remote.getMerkleTree().getHashDepth());
+                    reply.setTable(sketch ? remote.getSketch() : null);
+                    return reply;
+                case REQUIRE_DIGESTS:
+                    return digestsHandler.digests((RequireDigests) body);
+                case REQUIRE_LEAF_ENTRIES:
+                    LeafEntries entries = entriesHandler.entries((RequireLeafEntries) body);
+                    leafCount += entries.getLeaves();
+                    return entries;
+                case REQUIRE_STATE_NODES:
+                    return nodesHandler.nodes((RequireStateNodes) body);
+                default:
+                    throw new IllegalArgumentException(verb.name());
+            }
+        }
+
+        int count(Verb verb) {
+            int count = 0;
+            for (Verb request : requests) {
+                if (request == verb) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.hopper.sync;
+
+import com.hopper.verb.handler.Mutation;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TestMutationRing {
+
+    @Test
+    public void testSince() {
+        MutationRing ring = new MutationRing(4);
+        for (int i = 1; i <= 6; i++) {
+            Mutation mutation = new Mutation();
+            mutation.addCreate("/a/b/c" + i, "owner", 0, -1);
+            Assert.assertEquals(i, ring.append(mutation));
+            Assert.assertEquals(i, mutation.getSeq());
+        }
+        Assert.assertEquals(6, ring.getLastSeq());
+
+        // 1 and 2 are evicted
+        Assert.assertNull(ring.since(0, 10));
+        Assert.assertNull(ring.since(1, 10));
+
+        List<Mutation> mutations = ring.since(2, 10);
+        Assert.assertEquals(4, mutations.size());
+        Assert.assertEquals("/a/b/c3", ((Mutation.Create) mutations.get(0).getEntity()).key);
+        Assert.assertEquals("/a/b/c6", ((Mutation.Create) mutations.get(3).getEntity()).key);
+
+        Assert.assertEquals(2, ring.since(3, 2).size());
+        Assert.assertTrue(ring.since(6, 10).isEmpty());
+    }
+
+    @Test
+    public void testUnknownSeq() {
+        MutationRing ring = new MutationRing(4);
+        Assert.assertTrue(ring.since(0, 10).isEmpty());
+
+        ring.append(new Mutation());
+        Assert.assertEquals(1, ring.since(0, 10).size());
+
+        // reported by a follower of another ring
+        Assert.assertNull(ring.since(2, 10));
+        Assert.assertNull(ring.since(-1, 10));
+    }
+}
@@ -0,0 +1,58 @@
+package com.hopper.sync;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSyncCoordinator {
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicInteger syncs = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SyncCoordinator coordinator = new SyncCoordinator(executor, null, 0, new SyncCoordinator.SyncAction() {
+                @Override
+                public void sync(int serverId) throws Exception {
+                    syncs.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    done.countDown();
+                }
+            });
+
+            coordinator.trigger(1);
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // the first one is deferred as the follow-up, the others are coalesced
+            for (int i = 0; i < 5; i++) {
+                coordinator.trigger(1);
+            }
+            Assert.assertEquals(1, syncs.get());
+            Assert.assertEquals(1, coordinator.getRunningCount());
+            Assert.assertEquals(1, coordinator.getQueueDepth());
+            Assert.assertEquals(4, coordinator.getCoalescedCount());
+
+            release.countDown();
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2, syncs.get());
+            Assert.assertEquals(2, coordinator.getSyncCount());
+            Assert.assertEquals(6, coordinator.getTriggerCount());
+            Assert.assertEquals(0, coordinator.getQueueDepth());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
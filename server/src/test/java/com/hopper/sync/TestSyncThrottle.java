@@ -0,0 +1,49 @@
+package com.hopper.sync;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class TestSyncThrottle {
+
+    @Test
+    public void testBytesDebt() throws Exception {
+        SyncThrottle throttle = new SyncThrottle(0, 1000, 0);
+
+        // the first second is allowed at once
+        throttle.acquire();
+        throttle.consume(1500);
+        Assert.assertEquals(0, throttle.getThrottledCount());
+
+        // the debt of 500 bytes takes half a second to pay off
+        long start = System.currentTimeMillis();
+        throttle.acquire();
+        Assert.assertTrue(System.currentTimeMillis() - start >= 400);
+        Assert.assertEquals(1, throttle.getThrottledCount());
+        Assert.assertEquals(2, throttle.getAcquiredOps());
+        Assert.assertEquals(1500, throttle.getConsumedBytes());
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        SyncThrottle throttle = new SyncThrottle(100, 0, 10);
+
+        throttle.recordMutationLatency(100);
+        throttle.adjust();
+        Assert.assertEquals(0.5, throttle.getRateFactor());
+        Assert.assertTrue(throttle.isBackingOff());
+
+        for (int i = 0; i < 10; i++) {
+            throttle.recordMutationLatency(100);
+            throttle.adjust();
+        }
+        Assert.assertEquals(SyncThrottle.MIN_RATE_FACTOR, throttle.getRateFactor());
+        Assert.assertEquals(4, throttle.getBackoffCount());
+
+        // the latency decays without mutations, then the rates recover
+        for (int i = 0; i < 50 && throttle.isBackingOff(); i++) {
+            throttle.adjust();
+        }
+        Assert.assertFalse(throttle.isBackingOff());
+        Assert.assertTrue(throttle.getMutationLatency() <= 10);
+    }
+}
@@ -0,0 +1,59 @@
+package com.hopper.thrift.netty;
+
+import com.hopper.thrift.HopperService;
+import com.hopper.thrift.RetryException;
+import junit.framework.Assert;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestContinuation {
+
+    @Test
+    public void testResume() throws Exception {
+        final List<Object> written = new ArrayList<Object>();
+        Channel channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class[]{Channel.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("write")) {
+                            written.add(args[0]);
+                        }
+                        return null;
+                    }
+                });
+
+        Continuation continuation = new Continuation(channel, new TBinaryProtocol.Factory(), new TMessage
+                ("updateStatus", TMessageType.CALL, 9), 64);
+
+        HopperService.updateStatus_result result = new HopperService.updateStatus_result();
+        result.re = new RetryException(1000);
+        Assert.assertTrue(continuation.resume(result));
+
+        // a request is responded once(e.g. the timeout after the reply)
+        Assert.assertFalse(continuation.resume(new HopperService.updateStatus_result()));
+        Assert.assertEquals(1, written.size());
+
+        TProtocol protocol = new TBinaryProtocol.Factory().getProtocol(new TNettyServerTransport((ChannelBuffer)
+                written.get(0), ChannelBuffers.EMPTY_BUFFER));
+        TMessage message = protocol.readMessageBegin();
+        Assert.assertEquals("updateStatus", message.name);
+        Assert.assertEquals(TMessageType.REPLY, message.type);
+        Assert.assertEquals(9, message.seqid);
+
+        HopperService.updateStatus_result read = new HopperService.updateStatus_result();
+        read.read(protocol);
+        Assert.assertEquals(1000, read.re.getPeriod());
+    }
+}
@@ -0,0 +1,60 @@
+package com.hopper.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link HashedTimingWheel}
+ */
+public class TestHashedTimingWheel {
+
+    @Test
+    public void testExpireAndCancel() throws Exception {
+        // 3 levels with 4 buckets, covers 64 ticks only, so that the longer timeouts will be cascaded and re-placed
+        HashedTimingWheel wheel = new HashedTimingWheel(null, 1, 2, 3, "TestTimingWheel");
+        wheel.start();
+        try {
+            final int count = 200;
+            final CountDownLatch latch = new CountDownLatch(count / 2);
+            final AtomicInteger fired = new AtomicInteger();
+            List<Timeout> timeouts = new ArrayList<Timeout>();
+
+            for (int i = 0; i < count; i++) {
+                final long delay = 100 + i;
+                final long start = System.currentTimeMillis();
+                timeouts.add(wheel.newTimeout(new Runnable() {
+                    @Override
+                    public void run() {
+                        Assert.assertTrue(System.currentTimeMillis() - start >= delay);
+                        fired.incrementAndGet();
+                        latch.countDown();
+                    }
+                }, delay));
+            }
+
+            // cancel the odd timeouts
+            for (int i = 1; i < count; i += 2) {
+                Assert.assertTrue(timeouts.get(i).cancel());
+            }
+
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+
+            Assert.assertEquals(count / 2, fired.get());
+            for (int i = 0; i < count; i++) {
+                Timeout timeout = timeouts.get(i);
+                Assert.assertEquals(i % 2 == 0, timeout.isExpired());
+                Assert.assertEquals(i % 2 == 1, timeout.isCancelled());
+                Assert.assertFalse(timeout.cancel());
+            }
+        } finally {
+            wheel.stop();
+        }
+    }
+}
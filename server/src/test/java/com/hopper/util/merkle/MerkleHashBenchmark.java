@@ -0,0 +1,87 @@
+package com.hopper.util.merkle;
+
+import com.hopper.util.merkle.TestMerkleTree.TestObject;
+import com.hopper.util.merkle.TestMerkleTree.TestObjectFactory;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures the full hashing of a freshly loaded merkle tree(the one on the election-to-leading path) with the serial
+ * hashing and the parallel hashing of 2, 4, ... threads up to the count of processors(by default). The digests of each run are
+ * checked against the serial ones.
+ * <p/>
+ * Usage: MerkleHashBenchmark [keys] [depth] [layout] [rounds] [max threads]
+ */
+public class MerkleHashBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        byte depth = args.length > 1 ? Byte.parseByte(args[1]) : 15;
+        MerkleTree.Layout layout = args.length > 2 ? MerkleTree.Layout.valueOf(args[2].toUpperCase()) : MerkleTree
+                .Layout.NODE;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int processors = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 4 ? Integer.parseInt(args[4]) : processors;
+
+        System.out.printf("keys=%,d depth=%d layout=%s rounds=%d processors=%d%n", keys, depth, layout, rounds,
+                processors);
+
+        TestObjectFactory factory = new TestObjectFactory();
+        for (int i = 0; i < keys; i++) {
+            TestObject node = new TestObject("/bench/node" + i, i);
+            factory.nodes.put(node.getKey(), node);
+        }
+
+        MerkleTree<TestObject> serial = load(factory, depth, layout, null);
+        serial.loadHash();
+        long serialNanos = run(factory, depth, layout, null, rounds, serial);
+        System.out.printf("threads=1(serial): %,d us%n", serialNanos / 1000);
+
+        for (int threads = 2; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                long nanos = run(factory, depth, layout, pool, rounds, serial);
+                System.out.printf("threads=%d: %,d us speedup=%.2f%n", threads, nanos / 1000,
+                        (double) serialNanos / nanos);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * The average nanos of full hashing, a new tree is loaded for each round(and a warming up round)
+     */
+    private static long run(TestObjectFactory factory, byte depth, MerkleTree.Layout layout, ForkJoinPool pool,
+                            int rounds, MerkleTree<TestObject> expected) {
+        long total = 0;
+        for (int i = 0; i <= rounds; i++) {
+            MerkleTree<TestObject> tree = load(factory, depth, layout, pool);
+
+            long start = System.nanoTime();
+            tree.loadHash();
+            long nanos = System.nanoTime() - start;
+
+            if (tree.getRoot().getKeyHash() != expected.getRoot().getKeyHash() || tree.getRoot().getVersionHash()
+                    != expected.getRoot().getVersionHash() || tree.difference(expected).hasDifferences()) {
+                throw new IllegalStateException("The parallel digests differ from the serial ones.");
+            }
+            if (i > 0) {
+                total += nanos;
+            }
+        }
+        return total / rounds;
+    }
+
+    private static MerkleTree<TestObject> load(TestObjectFactory factory, byte depth, MerkleTree.Layout layout,
+                                               ForkJoinPool pool) {
+        MerkleTree<TestObject> tree = MerkleTree.create(layout, new Range(Integer.MIN_VALUE, Integer.MAX_VALUE),
+                depth, TestObject.class);
+        tree.setObjectFactory(factory);
+        tree.setHashPool(pool);
+        for (TestObject node : factory.nodes.values()) {
+            tree.put(node);
+        }
+        return tree;
+    }
+}
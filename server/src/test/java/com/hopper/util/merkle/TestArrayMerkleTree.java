@@ -0,0 +1,164 @@
+package com.hopper.util.merkle;
+
+import com.hopper.session.BufferDataInput;
+import com.hopper.session.BufferDataOutput;
+import com.hopper.util.merkle.TestMerkleTree.TestObject;
+import com.hopper.util.merkle.TestMerkleTree.TestObjectFactory;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the array layout against the node layout
+ */
+public class TestArrayMerkleTree {
+
+    @Test
+    public void testSameHash() {
+        TestObjectFactory factory = new TestObjectFactory();
+        MerkleTree<TestObject> tree1 = new MerkleTree<TestObject>((byte) 15, TestObject.class);
+        MerkleTree<TestObject> tree2 = new ArrayMerkleTree<TestObject>((byte) 15, TestObject.class);
+        tree1.setObjectFactory(factory);
+        tree2.setObjectFactory(factory);
+
+        for (int i = 0; i < 1000; i++) {
+            TestObject node = new TestObject("/a/b/c" + i, i);
+            factory.nodes.put(node.getKey(), node);
+            tree1.put(node);
+            tree2.put(node);
+        }
+        tree2.loadHash();
+
+        for (int i = 0; i < 1000; i += 3) {
+            tree1.update("/a/b/c" + i, i + 10);
+            tree2.update("/a/b/c" + i, i + 10);
+            factory.nodes.get("/a/b/c" + i).setVersion(i + 10);
+        }
+        for (int i = 1; i < 1000; i += 7) {
+            tree1.remove("/a/b/c" + i);
+            tree2.remove("/a/b/c" + i);
+            factory.nodes.remove("/a/b/c" + i);
+        }
+        tree1.loadHash();
+        tree2.loadHash();
+
+        Assert.assertEquals(tree1.getRoot().getKeyHash(), tree2.getRoot().getKeyHash());
+        Assert.assertEquals(tree1.getRoot().getVersionHash(), tree2.getRoot().getVersionHash());
+        Assert.assertFalse(tree1.difference(tree2).hasDifferences());
+        Assert.assertFalse(tree2.difference(tree1).hasDifferences());
+    }
+
+    @Test
+    public void testSerializer() throws Exception {
+        TestObjectFactory factory = new TestObjectFactory();
+        MerkleTree<TestObject> tree = new ArrayMerkleTree<TestObject>((byte) 15, TestObject.class);
+        tree.setObjectFactory(factory);
+
+        for (int i = 0; i < 100; i++) {
+            TestObject node = new TestObject("/a/b/c" + i, i);
+            factory.nodes.put(node.getKey(), node);
+            tree.put(node);
+        }
+        tree.loadHash();
+
+        // array to node
+        BufferDataOutput out = new BufferDataOutput();
+        tree.serialize(out);
+        MerkleTree<TestObject> tree2 = new MerkleTree<TestObject>((byte) 15, TestObject.class);
+        tree2.deserialize(new BufferDataInput(out.buffer()));
+
+        Assert.assertEquals(tree.getRoot().getKeyHash(), tree2.getRoot().getKeyHash());
+        Assert.assertEquals(tree.getRoot().getVersionHash(), tree2.getRoot().getVersionHash());
+        Assert.assertEquals(100, tree2.getRoot().getObjectRefs().size());
+
+        // node to array
+        out = new BufferDataOutput();
+        tree2.serialize(out);
+        MerkleTree<TestObject> tree3 = new ArrayMerkleTree<TestObject>((byte) 15, TestObject.class);
+        tree3.deserialize(new BufferDataInput(out.buffer()));
+
+        Assert.assertEquals(tree.getRoot().getKeyHash(), tree3.getRoot().getKeyHash());
+        Assert.assertEquals(tree.getRoot().getVersionHash(), tree3.getRoot().getVersionHash());
+        Assert.assertEquals(100, tree3.getRoot().getObjectRefs().size());
+        Assert.assertFalse(tree.difference(tree3).hasDifferences());
+    }
+
+    @Test
+    public void testDiff() throws Exception {
+        TestObjectFactory factory1 = new TestObjectFactory();
+        TestObjectFactory factory2 = new TestObjectFactory();
+
+        for (int i = 0; i < 100; i++) {
+            TestObject node = new TestObject("/a/b/c" + i, 1);
+            factory1.nodes.put(node.getKey(), node);
+            factory2.nodes.put(node.getKey(), node);
+        }
+
+        // added, removed and updated
+        factory1.nodes.put("/a/b/x1", new TestObject("/a/b/x1", 1));
+        factory1.nodes.put("/a/b/x2", new TestObject("/a/b/x2", 1));
+        factory2.nodes.put("/a/b/y1", new TestObject("/a/b/y1", 1));
+        factory1.nodes.put("/a/b/c5", new TestObject("/a/b/c5", 2));
+
+        MerkleTree<TestObject> tree1 = new ArrayMerkleTree<TestObject>((byte) 10, TestObject.class);
+        tree1.setObjectFactory(factory1);
+        for (TestObject node : factory1.nodes.values()) {
+            tree1.put(node);
+        }
+        tree1.loadHash();
+
+        MerkleTree<TestObject> tree2 = new MerkleTree<TestObject>((byte) 10, TestObject.class);
+        tree2.setObjectFactory(factory2);
+        for (TestObject node : factory2.nodes.values()) {
+            tree2.put(node);
+        }
+        tree2.loadHash();
+
+        // with the node layout
+        Difference<TestObject> diff = tree1.difference(tree2);
+        Assert.assertEquals(2, diff.addedList.size());
+        Assert.assertEquals(1, diff.removedList.size());
+        Assert.assertEquals(1, diff.updatedList.size());
+
+        // with the array layout
+        BufferDataOutput out = new BufferDataOutput();
+        tree2.serialize(out);
+        MerkleTree<TestObject> tree3 = new ArrayMerkleTree<TestObject>((byte) 10, TestObject.class);
+        tree3.deserialize(new BufferDataInput(out.buffer()));
+
+        diff = tree1.difference(tree3);
+        Assert.assertEquals(2, diff.addedList.size());
+        Assert.assertEquals(1, diff.removedList.size());
+        Assert.assertEquals(1, diff.updatedList.size());
+    }
+
+    @Test
+    public void testKeyTable() {
+        TestObjectFactory factory = new TestObjectFactory();
+        // a few leaves, so the key tables grow and shrink
+        MerkleTree<TestObject> tree = new ArrayMerkleTree<TestObject>((byte) 1, TestObject.class);
+        tree.setObjectFactory(factory);
+
+        for (int i = 0; i < 5000; i++) {
+            TestObject node = new TestObject("/k" + i, i);
+            factory.nodes.put(node.getKey(), node);
+            tree.put(node);
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            tree.remove("/k" + i);
+            factory.nodes.remove("/k" + i);
+        }
+        tree.loadHash();
+
+        MerkleTree<TestObject> fresh = new MerkleTree<TestObject>((byte) 1, TestObject.class);
+        fresh.setObjectFactory(factory);
+        for (TestObject node : factory.nodes.values()) {
+            fresh.put(node);
+        }
+        fresh.loadHash();
+
+        Assert.assertEquals(fresh.getRoot().getKeyHash(), tree.getRoot().getKeyHash());
+        Assert.assertEquals(fresh.getRoot().getVersionHash(), tree.getRoot().getVersionHash());
+        Assert.assertEquals(2500, tree.getRoot().getObjectRefs().size());
+        Assert.assertFalse(tree.difference(fresh).hasDifferences());
+    }
+}
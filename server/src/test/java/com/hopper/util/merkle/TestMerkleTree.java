@@ -10,8 +10,16 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * Created with IntelliJ IDEA. User: chenguoqing Date: 12-7-19 Time: 下午3:11 To
@@ -181,6 +189,205 @@ public class TestMerkleTree {
         Assert.assertEquals(diff.updatedList.size(), 1);
     }
 
+    @Test
+    public void testIncrementalHash() {
+        TestObjectFactory factory = new TestObjectFactory();
+        MerkleTree<TestObject> tree = new MerkleTree<TestObject>((byte) 15, TestObject.class);
+        tree.setObjectFactory(factory);
+
+        for (int i = 0; i < 100; i++) {
+            TestObject node = new TestObject("/a/b/c" + i, i);
+            factory.nodes.put(node.key, node);
+            tree.put(node);
+        }
+        tree.loadHash();
+
+        // bump versions(the stale bump is ignored) and remove some keys after hashing
+        for (int i = 0; i < 100; i += 3) {
+            factory.nodes.get("/a/b/c" + i).setVersion(i + 10);
+            tree.update("/a/b/c" + i, i + 10);
+            tree.update("/a/b/c" + i, i + 5);
+        }
+        for (int i = 1; i < 100; i += 7) {
+            factory.nodes.remove("/a/b/c" + i);
+            tree.remove("/a/b/c" + i);
+        }
+        tree.loadHash();
+
+        MerkleTree<TestObject> fresh = new MerkleTree<TestObject>((byte) 15, TestObject.class);
+        fresh.setObjectFactory(factory);
+        for (TestObject node : factory.nodes.values()) {
+            fresh.put(node);
+        }
+        fresh.loadHash();
+
+        Assert.assertEquals(fresh.getRoot().getKeyHash(), tree.getRoot().getKeyHash());
+        Assert.assertEquals(fresh.getRoot().getVersionHash(), tree.getRoot().getVersionHash());
+        Assert.assertFalse(tree.difference(fresh).hasDifferences());
+    }
+
+    @Test
+    public void testParallelHash() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (MerkleTree.Layout layout : MerkleTree.Layout.values()) {
+                TestObjectFactory factory = new TestObjectFactory();
+                Range range = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+                MerkleTree<TestObject> serial = MerkleTree.create(layout, range, (byte) 15, TestObject.class);
+                MerkleTree<TestObject> parallel = MerkleTree.create(layout, range, (byte) 15, TestObject.class);
+                serial.setObjectFactory(factory);
+                parallel.setObjectFactory(factory);
+                parallel.setHashPool(pool);
+
+                for (int i = 0; i < 20000; i++) {
+                    TestObject node = new TestObject("/a/b/c" + i, i);
+                    factory.nodes.put(node.key, node);
+                    serial.put(node);
+                    parallel.put(node);
+                }
+                serial.loadHash();
+                parallel.loadHash();
+                assertHashEquals(serial, parallel);
+
+                // re-hash the dirty paths only
+                for (int i = 0; i < 20000; i += 13) {
+                    serial.update("/a/b/c" + i, i + 1);
+                    parallel.update("/a/b/c" + i, i + 1);
+                    serial.remove("/a/b/c" + (i + 1));
+                    parallel.remove("/a/b/c" + (i + 1));
+                }
+                serial.loadHash();
+                parallel.loadHash();
+                assertHashEquals(serial, parallel);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        for (MerkleTree.Layout layout : MerkleTree.Layout.values()) {
+            TestObjectFactory factory = new TestObjectFactory();
+            Range range = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            MerkleTree<TestObject> single = MerkleTree.create(layout, range, (byte) 10, TestObject.class);
+            MerkleTree<TestObject> batch = MerkleTree.create(layout, range, (byte) 10, TestObject.class);
+            single.setObjectFactory(factory);
+            batch.setObjectFactory(factory);
+
+            List<TestObject> nodes = new ArrayList<TestObject>();
+            for (int i = 0; i < 5000; i++) {
+                TestObject node = new TestObject("/a/b/c" + i, i);
+                factory.nodes.put(node.key, node);
+                nodes.add(node);
+                single.put(node);
+            }
+            batch.putAll(nodes);
+            single.loadHash();
+            batch.loadHash();
+            // the keys of leaf may be in different orders
+            Assert.assertEquals(single.getRoot().getKeyHash(), batch.getRoot().getKeyHash());
+            Assert.assertEquals(single.getRoot().getVersionHash(), batch.getRoot().getVersionHash());
+
+            List<String> keys = new ArrayList<String>();
+            for (int i = 0; i < 5000; i += 3) {
+                keys.add("/a/b/c" + i);
+                single.remove("/a/b/c" + i);
+            }
+            // the absent keys are ignored
+            keys.add("/a/b/none");
+            batch.removeAll(keys);
+            single.loadHash();
+            batch.loadHash();
+            Assert.assertEquals(single.getRoot().getKeyHash(), batch.getRoot().getKeyHash());
+            Assert.assertEquals(single.getRoot().getVersionHash(), batch.getRoot().getVersionHash());
+            Assert.assertFalse(single.difference(batch).hasDifferences());
+        }
+    }
+
+    @Test
+    public void testNoCancellation() {
+        for (MerkleTree.Layout layout : MerkleTree.Layout.values()) {
+            Range range = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            // one leaf, so all changes are under the same node
+            MerkleTree<TestObject> tree1 = MerkleTree.create(layout, range, (byte) 0, TestObject.class);
+            MerkleTree<TestObject> tree2 = MerkleTree.create(layout, range, (byte) 0, TestObject.class);
+            TestObjectFactory factory1 = new TestObjectFactory();
+            TestObjectFactory factory2 = new TestObjectFactory();
+            tree1.setObjectFactory(factory1);
+            tree2.setObjectFactory(factory2);
+
+            // the same bumps of two keys
+            for (int i = 0; i < 10; i++) {
+                TestObject node1 = new TestObject("/a/b/c" + i, i < 2 ? 2 : 1);
+                TestObject node2 = new TestObject("/a/b/c" + i, 1);
+                factory1.nodes.put(node1.key, node1);
+                factory2.nodes.put(node2.key, node2);
+                tree1.put(node1);
+                tree2.put(node2);
+            }
+            tree1.loadHash();
+            tree2.loadHash();
+
+            Assert.assertEquals(tree1.getRoot().getKeyHash(), tree2.getRoot().getKeyHash());
+            Assert.assertTrue(tree1.getRoot().getVersionHash() != tree2.getRoot().getVersionHash());
+            Assert.assertEquals(2, tree1.difference(tree2).updatedList.size());
+        }
+    }
+
+    @Test
+    public void testSketch() {
+        for (MerkleTree.Layout layout : MerkleTree.Layout.values()) {
+            Range range = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            MerkleTree<TestObject> tree1 = MerkleTree.create(layout, range, (byte) 10, TestObject.class);
+            MerkleTree<TestObject> tree2 = MerkleTree.create(layout, range, (byte) 10, TestObject.class);
+            tree1.setSketch(new InvertibleBloomTable(90));
+            tree2.setSketch(new InvertibleBloomTable(90));
+
+            for (int i = 0; i < 3000; i++) {
+                tree1.put(new TestObject("/a/b/c" + i, i));
+                tree2.put(new TestObject("/a/b/c" + i, i));
+            }
+            Assert.assertTrue(tree1.getSketch().difference(tree2.getSketch()).isEmpty());
+
+            // a bumped version is a pair of each side, the removed and the new keys are of tree2 only
+            tree1.update("/a/b/c5", 10000);
+            tree1.remove("/a/b/c7");
+            tree2.put(new TestObject("/a/b/new", 1));
+
+            List<InvertibleBloomTable.Entry> entries = tree1.getSketch().difference(tree2.getSketch());
+            Assert.assertEquals(4, entries.size());
+
+            Map<Integer, Integer> sides = new HashMap<Integer, Integer>();
+            for (InvertibleBloomTable.Entry entry : entries) {
+                Integer count = sides.get(entry.hash);
+                sides.put(entry.hash, (count == null ? 0 : count) + (entry.local ? 1 : -1));
+
+                MerkleNode<TestObject> leaf = tree1.getNode(tree1.leafPosition(entry.hash));
+                Assert.assertTrue(leaf.isLeaf());
+                Assert.assertTrue(leaf.getRange().contains(entry.hash));
+            }
+            Assert.assertEquals(Integer.valueOf(0), sides.get(MurmurHash.hash("/a/b/c5")));
+            Assert.assertEquals(Integer.valueOf(-1), sides.get(MurmurHash.hash("/a/b/c7")));
+            Assert.assertEquals(Integer.valueOf(-1), sides.get(MurmurHash.hash("/a/b/new")));
+
+            // too large to decode
+            for (int i = 0; i < 200; i++) {
+                tree2.remove("/a/b/c" + i);
+            }
+            Assert.assertNull(tree1.getSketch().difference(tree2.getSketch()));
+        }
+    }
+
+    private void assertHashEquals(MerkleTree<TestObject> tree1, MerkleTree<TestObject> tree2) {
+        Assert.assertEquals(tree1.getRoot().getKeyHash(), tree2.getRoot().getKeyHash());
+        Assert.assertEquals(tree1.getRoot().getVersionHash(), tree2.getRoot().getVersionHash());
+        Assert.assertFalse(tree1.difference(tree2).hasDifferences());
+        if (!(tree1 instanceof ArrayMerkleTree)) {
+            assertTreeEquals(tree1, tree2);
+        }
+    }
+
     private void assertTreeEquals(MerkleTree<TestObject> tree1, MerkleTree<TestObject> tree2) {
         assertMerkleNodeEquals(tree1.getRoot(), tree2.getRoot());
     }
@@ -240,6 +447,89 @@ public class TestMerkleTree {
         }
     }
 
+    @Test
+    public void testMonotonicPut() {
+        for (MerkleTree.Layout layout : MerkleTree.Layout.values()) {
+            Range range = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            MerkleTree<TestObject> tree = MerkleTree.create(layout, range, (byte) 7, TestObject.class);
+            MerkleTree<TestObject> expected = MerkleTree.create(layout, range, (byte) 7, TestObject.class);
+
+            tree.put(new TestObject("/a/b/c", 5));
+            // a stale put doesn't roll the version back
+            tree.put(new TestObject("/a/b/c", 3));
+            expected.put(new TestObject("/a/b/c", 5));
+            tree.loadHash();
+            expected.loadHash();
+            Assert.assertEquals(expected.getRoot().getVersionHash(), tree.getRoot().getVersionHash());
+
+            // the replaced object is removed before putting
+            tree.remove("/a/b/c");
+            tree.put(new TestObject("/a/b/c", 3));
+            expected.remove("/a/b/c");
+            expected.put(new TestObject("/a/b/c", 3));
+            tree.loadHash();
+            expected.loadHash();
+            Assert.assertEquals(expected.getRoot().getVersionHash(), tree.getRoot().getVersionHash());
+        }
+    }
+
+    @Test
+    public void testSpliterator() {
+        for (MerkleTree.Layout layout : MerkleTree.Layout.values()) {
+            TestObjectFactory factory = new TestObjectFactory();
+            Range range = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            MerkleTree<TestObject> tree = MerkleTree.create(layout, range, (byte) 7, TestObject.class);
+            tree.setObjectFactory(factory);
+            for (int i = 0; i < 5000; i++) {
+                TestObject node = new TestObject("/a/b/c" + i, i);
+                factory.nodes.put(node.key, node);
+                tree.put(node);
+            }
+
+            List<MerkleNode<TestObject>> leaves = new ArrayList<MerkleNode<TestObject>>();
+            collectLeaves(tree.getRoot(), leaves);
+
+            // split until each part is a single leaf
+            List<Spliterator<TestObject>> parts = new ArrayList<Spliterator<TestObject>>();
+            split(new MerkleSpliterator<TestObject>(factory, Collections.singletonList(tree.getRoot())), parts);
+            Assert.assertEquals(leaves.size(), parts.size());
+
+            // the parts are the leaves in order
+            final Set<String> visited = new HashSet<String>();
+            for (int i = 0; i < parts.size(); i++) {
+                final Set<String> keys = new HashSet<String>();
+                parts.get(i).forEachRemaining(new Consumer<TestObject>() {
+                    @Override
+                    public void accept(TestObject o) {
+                        Assert.assertTrue(visited.add(o.getKey()));
+                        keys.add(o.getKey());
+                    }
+                });
+                Assert.assertEquals(new HashSet<String>(leaves.get(i).getKeys()), keys);
+            }
+            Assert.assertEquals(factory.nodes.keySet(), visited);
+        }
+    }
+
+    private void collectLeaves(MerkleNode<TestObject> node, List<MerkleNode<TestObject>> leaves) {
+        if (node.isLeaf()) {
+            leaves.add(node);
+        } else {
+            collectLeaves(node.getLeft(), leaves);
+            collectLeaves(node.getRight(), leaves);
+        }
+    }
+
+    private void split(Spliterator<TestObject> spliterator, List<Spliterator<TestObject>> parts) {
+        Spliterator<TestObject> prefix = spliterator.trySplit();
+        if (prefix == null) {
+            parts.add(spliterator);
+        } else {
+            split(prefix, parts);
+            split(spliterator, parts);
+        }
+    }
+
     private void assertLeafEquals(Leaf<TestObject> leaf1, Leaf<TestObject> leaf2) {
         Assert.assertEquals(leaf1.getKeyHash(), leaf2.getKeyHash());
         Assert.assertEquals(leaf1.getVersionHash(), leaf2.getVersionHash());
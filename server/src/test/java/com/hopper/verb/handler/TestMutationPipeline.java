@@ -0,0 +1,253 @@
+package com.hopper.verb.handler;
+
+import com.hopper.future.DefaultLatchFuture;
+import com.hopper.future.LatchFuture;
+import com.hopper.lifecycle.LifecycleProxy;
+import com.hopper.quorum.NoQuorumException;
+import com.hopper.util.HashedTimingWheel;
+import com.hopper.util.ScheduleManager;
+import com.hopper.util.Timeout;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestMutationPipeline {
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final CountDownLatch first = new CountDownLatch(1);
+        final AtomicBoolean acknowledged = new AtomicBoolean(true);
+        final PendingSender sender = new PendingSender(first, acknowledged);
+        final List<Mutation> sent = sender.sent;
+
+        final MutationPipeline pipeline = new MutationPipeline(8, 1, 0, null, sender);
+
+        ExecutorService executor = Executors.newFixedThreadPool(21);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            futures.add(executor.submit(replicate(pipeline, "/a/0")));
+            Assert.assertTrue(first.await(5, TimeUnit.SECONDS));
+
+            // queued during the first round trip
+            for (int i = 1; i <= 20; i++) {
+                futures.add(executor.submit(replicate(pipeline, "/a/" + i)));
+            }
+            Thread.sleep(200);
+            sender.release();
+
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+
+            // 1 + 8 + 8 + 4
+            Assert.assertEquals(4, pipeline.getBatchCount());
+            Assert.assertEquals(21, pipeline.getMutationCount());
+            Assert.assertEquals(Mutation.OP.CREATE, sent.get(0).getOp());
+            Assert.assertEquals(Mutation.OP.BATCH, sent.get(1).getOp());
+            Assert.assertEquals(8, ((Mutation.Batch) sent.get(1).getEntity()).mutations.size());
+
+            // all callers of the batch fail without quorum
+            acknowledged.set(false);
+            try {
+                replicate(pipeline, "/a/21").run();
+                Assert.fail();
+            } catch (NoQuorumException e) {
+                // expected
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        final CountDownLatch first = new CountDownLatch(1);
+        final PendingSender sender = new PendingSender(first, new AtomicBoolean(true));
+
+        final MutationPipeline pipeline = new MutationPipeline(8, 2, 0, null, sender);
+
+        ExecutorService executor = Executors.newFixedThreadPool(21);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            futures.add(executor.submit(replicate(pipeline, "/b/0")));
+            Assert.assertTrue(first.await(5, TimeUnit.SECONDS));
+
+            for (int i = 1; i <= 20; i++) {
+                futures.add(executor.submit(replicate(pipeline, "/b/" + i)));
+            }
+            Thread.sleep(200);
+
+            // the second batch is on the wire before the first one is acknowledged
+            Assert.assertEquals(2, sender.sent.size());
+            sender.release();
+
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            Assert.assertEquals(21, pipeline.getMutationCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        PendingSender sender = new PendingSender(new CountDownLatch(1), new AtomicBoolean(true));
+        MutationPipeline pipeline = new MutationPipeline(8, 1, 0, null, sender);
+
+        List<LatchFuture<Boolean>> futures = new ArrayList<LatchFuture<Boolean>>();
+        for (int i = 0; i < 3; i++) {
+            Mutation mutation = new Mutation();
+            mutation.addCreate("/c/" + i, "owner", 0, -1);
+            futures.add(pipeline.queue(mutation));
+        }
+        // nothing is sent until flushing
+        Assert.assertTrue(sender.sent.isEmpty());
+
+        sender.release();
+        pipeline.flush();
+
+        Assert.assertEquals(1, sender.sent.size());
+        List<Mutation> batch = ((Mutation.Batch) sender.sent.get(0).getEntity()).mutations;
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("/c/" + i, ((Mutation.Create) batch.get(i).getEntity()).key);
+            Assert.assertTrue(futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testLinger() throws Exception {
+        PendingSender sender = new PendingSender(new CountDownLatch(1), new AtomicBoolean(true));
+        sender.release();
+        HashedTimingWheel wheel = new HashedTimingWheel(null, 1, 8, 2, "TestPipelineWheel");
+        wheel.start();
+        try {
+            MutationPipeline pipeline = new MutationPipeline(4, 1, 200, new WheelScheduleManager(wheel), sender);
+
+            // the caller isn't blocked by the lingering batch
+            long start = System.currentTimeMillis();
+            List<LatchFuture<Boolean>> futures = new ArrayList<LatchFuture<Boolean>>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(pipeline.replicateAsync(create("/d/" + i)));
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 200);
+            Assert.assertTrue(sender.sent.isEmpty());
+
+            // sent by the timer when linger elapses
+            for (LatchFuture<Boolean> future : futures) {
+                Assert.assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, sender.sent.size());
+            Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+
+            // a full batch is sent at once
+            futures.clear();
+            for (int i = 0; i < 4; i++) {
+                futures.add(pipeline.replicateAsync(create("/e/" + i)));
+            }
+            Assert.assertEquals(2, sender.sent.size());
+            Assert.assertTrue(futures.get(3).isDone());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    /**
+     * Holds the acknowledgements until it's released
+     */
+    private static class PendingSender implements MutationPipeline.Sender {
+        final List<Mutation> sent = Collections.synchronizedList(new ArrayList<Mutation>());
+        final List<DefaultLatchFuture<Boolean>> pending = new ArrayList<DefaultLatchFuture<Boolean>>();
+        final CountDownLatch first;
+        final AtomicBoolean acknowledged;
+        boolean released;
+
+        PendingSender(CountDownLatch first, AtomicBoolean acknowledged) {
+            this.first = first;
+            this.acknowledged = acknowledged;
+        }
+
+        @Override
+        public synchronized LatchFuture<Boolean> send(Mutation mutation) {
+            sent.add(mutation);
+            first.countDown();
+            DefaultLatchFuture<Boolean> future = new DefaultLatchFuture<Boolean>();
+            if (released) {
+                future.set(acknowledged.get());
+            } else {
+                pending.add(future);
+            }
+            return future;
+        }
+
+        synchronized void release() {
+            released = true;
+            for (DefaultLatchFuture<Boolean> future : pending) {
+                future.set(acknowledged.get());
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Schedules the timeouts only
+     */
+    private static class WheelScheduleManager extends LifecycleProxy implements ScheduleManager {
+        final HashedTimingWheel wheel;
+
+        WheelScheduleManager(HashedTimingWheel wheel) {
+            this.wheel = wheel;
+        }
+
+        @Override
+        public void schedule(Runnable command, long delay) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void schedule(Runnable command, long initialDelay, long period) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeTask(Runnable command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Timeout newTimeout(Runnable task, long delay) {
+            return wheel.newTimeout(task, delay);
+        }
+
+        @Override
+        public String getInfo() {
+            return "WheelScheduleManager";
+        }
+    }
+
+    private Mutation create(String key) {
+        Mutation mutation = new Mutation();
+        mutation.addCreate(key, "owner", 0, -1);
+        return mutation;
+    }
+
+    private Runnable replicate(final MutationPipeline pipeline, final String key) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Mutation mutation = new Mutation();
+                mutation.addCreate(key, "owner", 0, -1);
+                pipeline.replicate(mutation);
+            }
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package com.hopper.verb.handler;
+
+import com.hopper.future.LatchFuture;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestReplicationStream {
+
+    @Test
+    public void testAckAndRetransmit() throws Exception {
+        final List<String> sent = new ArrayList<String>();
+        ReplicationStream stream = new ReplicationStream(7, new int[]{2, 3}, 1, 2, 5000,
+                new ReplicationStream.Transport() {
+                    @Override
+                    public void send(int serverId, Replicate replicate) {
+                        sent.add(serverId + ":" + replicate.getSeq() + (replicate.isReset() ? "R" : ""));
+                    }
+                });
+
+        List<LatchFuture<Boolean>> futures = new ArrayList<LatchFuture<Boolean>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(stream.send(newMutation("/a/" + i)));
+        }
+        Assert.assertEquals(6, sent.size());
+
+        // a cumulative acknowledgement of another stream is ignored
+        stream.acked(2, 8, 3);
+        Assert.assertFalse(futures.get(0).isDone());
+
+        stream.acked(2, 7, 2);
+        Assert.assertTrue(futures.get(0).get());
+        Assert.assertTrue(futures.get(1).get());
+        Assert.assertFalse(futures.get(2).isDone());
+
+        // the follower 3 misses seq 1, only seq 2 and 3 are kept for it
+        sent.clear();
+        stream.acked(3, 7, 0);
+        Assert.assertEquals("[3:2R, 3:3]", sent.toString());
+        Assert.assertEquals(1, stream.getRetransmitCount());
+
+        // the same duplicated acknowledgement isn't retransmitted again
+        stream.acked(3, 7, 0);
+        Assert.assertEquals(1, stream.getRetransmitCount());
+
+        // the follower is reset at 2, so the skipped seq 1 isn't counted
+        stream.acked(3, 7, 3);
+        Assert.assertTrue(futures.get(2).get());
+    }
+
+    private Mutation newMutation(String key) {
+        Mutation mutation = new Mutation();
+        mutation.addCreate(key, "owner", 0, -1);
+        return mutation;
+    }
+}